@@ -115,6 +115,23 @@ public interface FlowFileQueue {
      */
     QueueSize getUnacknowledgedQueueSize();
 
+    /**
+     * @return the number of swap files that have been swapped back in to this queue
+     */
+    long getSwapInCount();
+
+    /**
+     * @return the number of times that a component pulling from this queue had to wait for a swap file
+     *         to be read before it could obtain FlowFiles, rather than the swap file having been read ahead of time
+     */
+    long getSwapInWaitCount();
+
+    /**
+     * @return an estimate of the number of bytes of Java heap that are used by the FlowFiles that this queue
+     *         currently holds in memory, including their attributes. FlowFiles that are swapped out are not included.
+     */
+    long getEstimatedHeapBytes();
+
     void acknowledge(FlowFileRecord flowFile);
 
     void acknowledge(Collection<FlowFileRecord> flowFiles);
@@ -139,6 +156,15 @@ public interface FlowFileQueue {
      */
     void putAll(Collection<FlowFileRecord> files);
 
+    /**
+     * Returns FlowFiles that were polled from this queue, and whose processing was rolled back, to the queue. If the queue
+     * has no prioritizers, they are placed at the head of the queue in the given order, so that rolling back does not
+     * reorder the queue. Otherwise, they are placed according to the prioritizers, as with {@link #putAll(Collection)}.
+     *
+     * @param files the FlowFiles to return to the queue, in the order in which they were polled
+     */
+    void requeue(Collection<FlowFileRecord> files);
+
     /**
      * @param expiredRecords expired records
      * @return the next flow file on the queue; null if empty
@@ -153,6 +179,23 @@ public interface FlowFileQueue {
      */
     List<FlowFileRecord> poll(int maxResults, Set<FlowFileRecord> expiredRecords);
 
+    /**
+     * Polls up to <code>maxResults</code> FlowFiles whose combined size does not exceed
+     * <code>maxBytes</code>, in a single operation. The first FlowFile is always returned, even
+     * if its size alone exceeds <code>maxBytes</code>; polling stops at the first FlowFile that
+     * would exceed it. If <code>groupingAttribute</code> is not <code>null</code>, only FlowFiles
+     * whose value for that attribute is the same as the first FlowFile's are returned, and all
+     * other FlowFiles remain on the queue in their original order.
+     *
+     * @param maxResults the maximum number of FlowFiles to return
+     * @param maxBytes the maximum combined size, in bytes, of the FlowFiles to return
+     * @param groupingAttribute the attribute whose value all FlowFiles returned must share, or
+     *            <code>null</code> if FlowFiles should not be grouped
+     * @param expiredRecords for expired records
+     * @return the FlowFiles polled from the queue; an empty list if none are available
+     */
+    List<FlowFileRecord> poll(int maxResults, long maxBytes, String groupingAttribute, Set<FlowFileRecord> expiredRecords);
+
     /**
      * Drains flow files from the given source queue into the given destination
      * list.
@@ -19,6 +19,9 @@ package org.apache.nifi.controller.repository;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Set;
@@ -175,6 +178,21 @@ public interface ContentRepository {
      */
     long importFrom(InputStream content, ContentClaim claim) throws IOException;
 
+    /**
+     * Imports content from the given channel creating a new content object and
+     * claim within the repository. If the channel is a
+     * {@link java.nio.channels.FileChannel}, the content is imported from the
+     * channel's current position to the end of the file and repositories that
+     * are backed by files may transfer it without copying it through the Java
+     * heap. The channel is not closed.
+     *
+     * @return the size of the claim
+     * @param content to import from
+     * @param claim the claim to write imported content to
+     * @throws IOException if unable to read content
+     */
+    long importFrom(ReadableByteChannel content, ContentClaim claim) throws IOException;
+
     /**
      * Exports the content of the given claim to the given destination.
      *
@@ -226,6 +244,21 @@ public interface ContentRepository {
      */
     long exportTo(ContentClaim claim, OutputStream destination, long offset, long length) throws IOException;
 
+    /**
+     * Exports a subset of the content of the given claim, starting at offset
+     * and copying length bytes, to the given channel. Repositories that are
+     * backed by files may transfer the content without copying it through the
+     * Java heap. The channel is not closed.
+     *
+     * @return the number of bytes copied
+     * @param claim to export from
+     * @param destination where to export data
+     * @param offset the offset into the claim at which the copy should begin
+     * @param length the number of bytes to copy
+     * @throws IOException if an IO error occurs.
+     */
+    long exportTo(ContentClaim claim, WritableByteChannel destination, long offset, long length) throws IOException;
+
     /**
      * @param claim to get size of
      * @return size in bytes of content for given claim
@@ -242,6 +275,22 @@ public interface ContentRepository {
      */
     InputStream read(ContentClaim claim) throws IOException;
 
+    /**
+     * Provides read-only, random access to a subset of the content of the
+     * given claim, starting at offset and covering length bytes. Repositories
+     * that are backed by files should memory-map the content rather than copy
+     * it onto the Java heap.
+     *
+     * @param claim to read from
+     * @param offset the offset into the claim at which the buffer should begin
+     * @param length the number of bytes that the buffer should cover; may not
+     * exceed {@link Integer#MAX_VALUE}
+     * @return a read-only ByteBuffer whose position is 0 and whose limit is
+     * <code>length</code>
+     * @throws IOException if unable to read
+     */
+    ByteBuffer map(ContentClaim claim, long offset, long length) throws IOException;
+
     /**
      * Obtains an OutputStream to the content for the given claim.
      *
@@ -35,6 +35,9 @@ public class ConnectionStatus implements Cloneable {
     private long queuedBytes;
     private int outputCount;
     private long outputBytes;
+    private long swapInCount;
+    private long swapInWaitCount;
+    private long estimatedHeapBytes;
 
     public String getId() {
         return id;
@@ -156,6 +159,40 @@ public class ConnectionStatus implements Cloneable {
         this.outputCount = outputCount;
     }
 
+    /**
+     * @return the number of swap files that have been swapped back in to the connection's queue
+     */
+    public long getSwapInCount() {
+        return swapInCount;
+    }
+
+    public void setSwapInCount(long swapInCount) {
+        this.swapInCount = swapInCount;
+    }
+
+    /**
+     * @return the number of times that the connection's destination had to wait for a swap file to be read
+     *         before it could obtain FlowFiles from the queue
+     */
+    public long getSwapInWaitCount() {
+        return swapInWaitCount;
+    }
+
+    public void setSwapInWaitCount(long swapInWaitCount) {
+        this.swapInWaitCount = swapInWaitCount;
+    }
+
+    /**
+     * @return an estimate of the number of bytes of heap used by the FlowFiles that the connection's queue holds in memory
+     */
+    public long getEstimatedHeapBytes() {
+        return estimatedHeapBytes;
+    }
+
+    public void setEstimatedHeapBytes(long estimatedHeapBytes) {
+        this.estimatedHeapBytes = estimatedHeapBytes;
+    }
+
     @Override
     public ConnectionStatus clone() {
         final ConnectionStatus clonedObj = new ConnectionStatus();
@@ -174,6 +211,9 @@ public class ConnectionStatus implements Cloneable {
         clonedObj.destinationName = destinationName;
         clonedObj.backPressureDataSizeThreshold = backPressureDataSizeThreshold;
         clonedObj.backPressureObjectThreshold = backPressureObjectThreshold;
+        clonedObj.swapInCount = swapInCount;
+        clonedObj.swapInWaitCount = swapInWaitCount;
+        clonedObj.estimatedHeapBytes = estimatedHeapBytes;
         return clonedObj;
     }
 
@@ -210,6 +250,12 @@ public class ConnectionStatus implements Cloneable {
         builder.append(outputCount);
         builder.append(", outputBytes=");
         builder.append(outputBytes);
+        builder.append(", swapInCount=");
+        builder.append(swapInCount);
+        builder.append(", swapInWaitCount=");
+        builder.append(swapInWaitCount);
+        builder.append(", estimatedHeapBytes=");
+        builder.append(estimatedHeapBytes);
         builder.append("]");
         return builder.toString();
     }
@@ -18,6 +18,9 @@ package org.apache.nifi.processor;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.List;
@@ -143,6 +146,31 @@ public interface ProcessSession {
      */
     List<FlowFile> get(int maxResults);
 
+    /**
+     * Returns, from a single incoming queue, up to <code>maxResults</code>
+     * FlowFiles whose combined size does not exceed <code>maxBytes</code>. The
+     * first FlowFile is always returned, even if its size alone exceeds
+     * <code>maxBytes</code>. If <code>groupingAttribute</code> is not
+     * <code>null</code>, only FlowFiles whose value for that attribute matches
+     * the first FlowFile's are returned; any others are left on the queue. The
+     * FlowFiles are obtained in a single operation on the queue, which makes
+     * this more efficient than {@link #get(FlowFileFilter)} for filling a
+     * bundle of FlowFiles, and unlike that method it does not lock all of the
+     * incoming queues. If no FlowFiles are available, returns an empty list.
+     * Will not return null.
+     *
+     * @param maxResults the maximum number of FlowFiles to return
+     * @param maxBytes the maximum combined size, in bytes, of the FlowFiles to
+     * return
+     * @param groupingAttribute the attribute whose value all of the FlowFiles
+     * returned must share, or <code>null</code> if FlowFiles should not be
+     * grouped
+     * @return up to <code>maxResults</code> FlowFiles from the work queue
+     * @throws IllegalArgumentException if <code>maxResults</code> or
+     * <code>maxBytes</code> is less than 0
+     */
+    List<FlowFile> get(int maxResults, long maxBytes, String groupingAttribute);
+
     /**
      * <p>
      * Returns all FlowFiles from all of the incoming queues for which the given
@@ -713,6 +741,61 @@ public interface ProcessSession {
      */
     FlowFile importFrom(InputStream source, FlowFile destination);
 
+    /**
+     * Writes to the given FlowFile all content that can be read from the given
+     * channel. If the channel is a {@link java.nio.channels.FileChannel}, the
+     * content is read from the channel's current position to the end of the
+     * file and may be transferred into the Content Repository without being
+     * copied through the Java heap. The channel is not closed.
+     *
+     * @param source the channel from which content will be obtained
+     * @param destination the FlowFile whose content will be updated
+     * @return the updated destination FlowFile (new size)
+     * @throws IllegalStateException if detected that this method is being
+     * called from within a callback of another method in this session and for
+     * the given FlowFile(s)
+     * @throws FlowFileHandlingException if the given FlowFile is already
+     * transferred or removed or doesn't belong to this session. Automatic
+     * rollback will occur.
+     * @throws FlowFileAccessException if some IO problem occurs accessing
+     * FlowFile content
+     */
+    FlowFile importFrom(ReadableByteChannel source, FlowFile destination);
+
+    /**
+     * Provides read-only, random access to the content of the given FlowFile.
+     * When the content is held in files, the buffer is memory-mapped, so that
+     * the content is not copied onto the Java heap and any part of it that is
+     * not accessed is never read from disk.
+     *
+     * <p>
+     * The buffer is valid only until this session is committed or rolled back,
+     * at which point the mapping is released. Neither the buffer nor any view
+     * of it (such as one obtained by calling {@link ByteBuffer#slice()}) may be
+     * accessed after that; doing so may result in undefined behavior,
+     * including the JVM crashing.
+     * </p>
+     *
+     * @param flowFile the FlowFile whose content should be accessed
+     * @return a read-only ByteBuffer whose position is 0 and whose limit is the
+     * size of the FlowFile
+     * @throws IllegalStateException if detected that this method is being
+     * called from within a callback of another method in this session and for
+     * the given FlowFile(s)
+     * @throws IllegalArgumentException if the size of the FlowFile exceeds
+     * {@link Integer#MAX_VALUE} bytes
+     * @throws FlowFileHandlingException if the given FlowFile is already
+     * transferred or removed or doesn't belong to this session. Automatic
+     * rollback will occur.
+     * @throws MissingFlowFileException if the given FlowFile content cannot be
+     * found. The FlowFile should no longer be reference, will be internally
+     * destroyed, and the session is automatically rolled back and what is left
+     * of the FlowFile is destroyed.
+     * @throws FlowFileAccessException if some IO problem occurs accessing
+     * FlowFile content
+     */
+    ByteBuffer map(FlowFile flowFile);
+
     /**
      * Writes the content of the given FlowFile to the given destination path.
      *
@@ -755,6 +838,30 @@ public interface ProcessSession {
      */
     void exportTo(FlowFile flowFile, OutputStream destination);
 
+    /**
+     * Writes the content of the given FlowFile to the given channel. When the
+     * content is held in files, it may be transferred to the channel without
+     * being copied through the Java heap, which makes this more efficient than
+     * {@link #exportTo(FlowFile, OutputStream)} for sending large content to a
+     * file or a socket. The channel is not closed.
+     *
+     * @param flowFile to export the content of
+     * @param destination to export the content to
+     * @throws IllegalStateException if detected that this method is being
+     * called from within a callback of another method in this session and for
+     * the given FlowFile(s)
+     * @throws FlowFileHandlingException if the given FlowFile is already
+     * transferred or removed or doesn't belong to this session. Automatic
+     * rollback will occur.
+     * @throws MissingFlowFileException if the given FlowFile content cannot be
+     * found. The FlowFile should no longer be reference, will be internally
+     * destroyed, and the session is automatically rolled back and what is left
+     * of the FlowFile is destroyed.
+     * @throws FlowFileAccessException if some IO problem occurs accessing
+     * FlowFile content
+     */
+    void exportTo(FlowFile flowFile, WritableByteChannel destination);
+
     /**
      * Returns a ProvenanceReporter that is tied to this ProcessSession.
      *
@@ -16,12 +16,20 @@
  */
 package org.apache.nifi.processor.util;
 
+import java.util.Objects;
+
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.processor.DataUnit;
 import org.apache.nifi.processor.FlowFileFilter;
 
 public class FlowFileFilters {
 
+    /**
+     * The maximum number of FlowFiles that a grouping filter will skip over
+     * while looking for FlowFiles that belong to the same group.
+     */
+    public static final int MAX_GROUPING_SKIPS = 10000;
+
     /**
      * Returns a new {@link FlowFileFilter} that will pull FlowFiles until the
      * maximum file size has been reached, or the maximum FlowFile Count was
@@ -62,4 +70,55 @@ public class FlowFileFilters {
         };
     }
 
+    /**
+     * Returns a new {@link FlowFileFilter} that behaves like
+     * {@link #newSizeBasedFilter(double, DataUnit, int)} but, if a grouping
+     * attribute is given, selects only those FlowFiles whose value for that
+     * attribute is the same as the first FlowFile's value. FlowFiles that
+     * belong to other groups are skipped, so that they remain queued in their
+     * original order. In order to avoid scanning an arbitrarily large queue,
+     * no more than {@link #MAX_GROUPING_SKIPS} FlowFiles are skipped.
+     *
+     * @param maxBytes the maximum combined size, in bytes, of the FlowFiles to
+     * pull
+     * @param maxCount the maximum number of FlowFiles to pull
+     * @param groupingAttribute the name of the attribute whose value all
+     * selected FlowFiles must share, or <code>null</code> to select FlowFiles
+     * regardless of their attributes
+     * @return filter
+     */
+    public static FlowFileFilter newSizeBasedFilter(final long maxBytes, final int maxCount, final String groupingAttribute) {
+        return new FlowFileFilter() {
+            int count = 0;
+            long size = 0L;
+            int skipped = 0;
+            String groupValue = null;
+
+            @Override
+            public FlowFileFilterResult filter(final FlowFile flowFile) {
+                if (count == 0) {
+                    count++;
+                    size += flowFile.getSize();
+                    if (groupingAttribute != null) {
+                        groupValue = flowFile.getAttribute(groupingAttribute);
+                    }
+
+                    return maxCount > 1 ? FlowFileFilterResult.ACCEPT_AND_CONTINUE : FlowFileFilterResult.ACCEPT_AND_TERMINATE;
+                }
+
+                if (groupingAttribute != null && !Objects.equals(groupValue, flowFile.getAttribute(groupingAttribute))) {
+                    return ++skipped < MAX_GROUPING_SKIPS ? FlowFileFilterResult.REJECT_AND_CONTINUE : FlowFileFilterResult.REJECT_AND_TERMINATE;
+                }
+
+                if (size + flowFile.getSize() > maxBytes) {
+                    return FlowFileFilterResult.REJECT_AND_TERMINATE;
+                }
+
+                count++;
+                size += flowFile.getSize();
+                return count < maxCount ? FlowFileFilterResult.ACCEPT_AND_CONTINUE : FlowFileFilterResult.ACCEPT_AND_TERMINATE;
+            }
+        };
+    }
+
 }
@@ -86,6 +86,20 @@ public class Bin {
         return isFull() || (size >= minimumSizeBytes && (binContents.size() >= minimumEntries));
     }
 
+    /**
+     * @return the number of flow files that can still be added to this bin
+     */
+    public int getRemainingEntries() {
+        return Math.max(0, maximumEntries - binContents.size());
+    }
+
+    /**
+     * @return the number of bytes that can still be added to this bin
+     */
+    public long getRemainingSize() {
+        return Math.max(0L, maximumSizeBytes - size);
+    }
+
     /**
      * Determines if this bin is older than the time specified.
      *
@@ -137,6 +151,38 @@ public class Bin {
         return true;
     }
 
+    /**
+     * If this bin has enough room for all of the given flow files then they are all added otherwise none of them are
+     *
+     * @param flowFiles flowfiles to offer
+     * @param session the ProcessSession to which all of the FlowFiles belong
+     * @return true if added; false otherwise
+     */
+    public boolean offer(final List<FlowFile> flowFiles, final ProcessSession session) {
+        long totalSize = 0L;
+        int maxEntries = this.maximumEntries;
+        for (final FlowFile flowFile : flowFiles) {
+            totalSize += flowFile.getSize();
+
+            if (fileCountAttribute != null) {
+                final Integer count = toInteger(flowFile.getAttribute(fileCountAttribute));
+                if (count != null) {
+                    maxEntries = Math.min(count, maxEntries);
+                }
+            }
+        }
+
+        if (((size + totalSize) > maximumSizeBytes) || (binContents.size() + flowFiles.size() > maxEntries)) {
+            successiveFailedOfferings++;
+            return false;
+        }
+
+        for (final FlowFile flowFile : flowFiles) {
+            offer(flowFile, session);
+        }
+        return true;
+    }
+
     private static final Pattern intPattern = Pattern.compile("\\d+");
 
     public Integer toInteger(final String value) {
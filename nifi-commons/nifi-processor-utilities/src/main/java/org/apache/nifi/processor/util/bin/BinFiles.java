@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
 import java.util.Queue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -100,6 +101,9 @@ public abstract class BinFiles extends AbstractSessionFactoryProcessor {
             .description("If the bundle cannot be created, all FlowFiles that would have been used to created the bundle will be transferred to failure")
             .build();
 
+    // the maximum number of FlowFiles that are pulled from the incoming queue in a single session
+    private static final int MAX_BULK_POLL_SIZE = 1000;
+
     private final BinManager binManager = new BinManager();
     private final Queue<Bin> readyBins = new LinkedBlockingQueue<>();
 
@@ -134,6 +138,20 @@ public abstract class BinFiles extends AbstractSessionFactoryProcessor {
      */
     protected abstract String getGroupId(final ProcessContext context, final FlowFile flowFile);
 
+    /**
+     * Returns the name of the attribute whose value determines the group ID of a flow file, if the group ID depends on nothing other than
+     * that attribute. If not null, flow files are pulled from the incoming queue in bundles that share the same value for this attribute, so
+     * that each bundle can be added to a bin at once. This is called before preprocessFlowFile(), so any change that preprocessFlowFile()
+     * makes to this attribute will be seen only by getGroupId(). Returns null by default, in which case bundles are pulled from the queue
+     * only if getGroupId() assigns them all to the same group.
+     *
+     * @param context context
+     * @return The name of the grouping attribute, or null
+     */
+    protected String getGroupingAttribute(final ProcessContext context) {
+        return null;
+    }
+
     /**
      * Performs any additional setup of the bin manager. Called during the OnScheduled phase.
      *
@@ -266,6 +284,25 @@ public abstract class BinFiles extends AbstractSessionFactoryProcessor {
     }
 
     private int binFlowFiles(final ProcessContext context, final ProcessSessionFactory sessionFactory) {
+        final String groupingAttribute = getGroupingAttribute(context);
+        final int maxBulkEntries = Math.min(binManager.getMaximumEntries(), MAX_BULK_POLL_SIZE);
+
+        // Pull as many FlowFiles as a bin can hold from the queue in a single session. All of the FlowFiles of a session
+        // must be added to the same bin, since a bin commits the sessions of its FlowFiles. If they cannot be, we fall back
+        // to pulling one FlowFile per session for the rest of this invocation.
+        boolean bulkPoll = true;
+
+        // A bundle that does not fit into the open bin of its group would start a new bin and leave the open one partially
+        // filled. So each bundle is sized to the room that is left in the open bin of the group that the previous bundle
+        // belonged to, as the next bundle most likely belongs to the same group. If it does not, and the bundle does not fit,
+        // the session is rolled back once and the bundle is pulled again, sized to the room left in the right bin. Rolling back
+        // returns the FlowFiles to their original position on the queue, so the bundle that is pulled again starts with the same
+        // FlowFile and belongs to the same group. The FlowFiles of a session cannot be split across bins instead, because each
+        // bin commits the sessions of its FlowFiles.
+        String sizingGroupId = null;
+        boolean sizingGroupKnown = false;
+        boolean resized = false;
+
         int flowFilesBinned = 0;
         while (binManager.getBinCount() <= context.getProperty(MAX_BIN_COUNT).asInteger().intValue()) {
             if (!isScheduled()) {
@@ -273,28 +310,122 @@ public abstract class BinFiles extends AbstractSessionFactoryProcessor {
             }
 
             final ProcessSession session = sessionFactory.createSession();
-            FlowFile flowFile = session.get();
+            if (bulkPoll) {
+                int maxResults = maxBulkEntries;
+                long maxBytes = binManager.getMaximumSize();
+                if (sizingGroupKnown) {
+                    final int remainingEntries = binManager.getRemainingEntries(sizingGroupId);
+                    final long remainingSize = binManager.getRemainingSize(sizingGroupId);
+                    if (remainingEntries > 0 && remainingSize > 0L) {
+                        maxResults = Math.min(maxResults, remainingEntries);
+                        maxBytes = Math.min(maxBytes, remainingSize);
+                    }
+                }
+
+                final List<FlowFile> flowFiles = session.get(maxResults, maxBytes, groupingAttribute);
+                if (flowFiles.isEmpty()) {
+                    break;
+                }
+
+                if (flowFiles.size() > 1) {
+                    final List<FlowFile> preprocessed = preprocessBulk(context, session, flowFiles);
+                    if (preprocessed == null) {
+                        session.rollback();
+                        bulkPoll = false;
+                        continue;
+                    }
+
+                    final String groupId = this.getGroupId(context, preprocessed.get(0));
+                    if (!resized && !fitsOpenBin(groupId, preprocessed)) {
+                        session.rollback();
+                        sizingGroupId = groupId;
+                        sizingGroupKnown = true;
+                        resized = true;
+                        continue;
+                    }
+
+                    if (binManager.offer(groupId, preprocessed, session)) {
+                        flowFilesBinned += preprocessed.size();
+                        sizingGroupId = groupId;
+                        sizingGroupKnown = true;
+                        resized = false;
+                    } else {
+                        session.rollback();
+                        bulkPoll = false;
+                    }
+                    continue;
+                }
+
+                flowFilesBinned += binSingle(context, session, flowFiles.get(0));
+                continue;
+            }
+
+            final FlowFile flowFile = session.get();
             if (flowFile == null) {
                 break;
             }
 
-            flowFile = this.preprocessFlowFile(context, session, flowFile);
-
-            String groupId = this.getGroupId(context, flowFile);
+            flowFilesBinned += binSingle(context, session, flowFile);
+        }
 
-            final boolean binned = binManager.offer(groupId, flowFile, session);
+        return flowFilesBinned;
+    }
 
-            // could not be added to a bin -- probably too large by itself, so create a separate bin for just this guy.
-            if (!binned) {
-                Bin bin = new Bin(0, Long.MAX_VALUE, 0, Integer.MAX_VALUE, null);
-                bin.offer(flowFile, session);
-                this.readyBins.add(bin);
+    /**
+     * Preprocesses each of the given FlowFiles and returns the results, or null if they do not all belong to the same group
+     */
+    private List<FlowFile> preprocessBulk(final ProcessContext context, final ProcessSession session, final List<FlowFile> flowFiles) {
+        final List<FlowFile> preprocessed = new ArrayList<>(flowFiles.size());
+        String groupId = null;
+        for (final FlowFile flowFile : flowFiles) {
+            final FlowFile processed = this.preprocessFlowFile(context, session, flowFile);
+            final String flowFileGroupId = this.getGroupId(context, processed);
+            if (preprocessed.isEmpty()) {
+                groupId = flowFileGroupId;
+            } else if (!Objects.equals(groupId, flowFileGroupId)) {
+                return null;
             }
 
-            flowFilesBinned++;
+            preprocessed.add(processed);
         }
 
-        return flowFilesBinned;
+        return preprocessed;
+    }
+
+    /**
+     * Indicates whether the given FlowFiles fit into the open bin of the given group, or the group has no open bin, in which case they
+     * will start a new one
+     */
+    private boolean fitsOpenBin(final String groupId, final List<FlowFile> flowFiles) {
+        final int remainingEntries = binManager.getRemainingEntries(groupId);
+        final long remainingSize = binManager.getRemainingSize(groupId);
+        if (remainingEntries <= 0 || remainingSize <= 0L) {
+            return true;
+        }
+
+        long totalSize = 0L;
+        for (final FlowFile flowFile : flowFiles) {
+            totalSize += flowFile.getSize();
+        }
+
+        return flowFiles.size() <= remainingEntries && totalSize <= remainingSize;
+    }
+
+    private int binSingle(final ProcessContext context, final ProcessSession session, final FlowFile original) {
+        final FlowFile flowFile = this.preprocessFlowFile(context, session, original);
+
+        String groupId = this.getGroupId(context, flowFile);
+
+        final boolean binned = binManager.offer(groupId, flowFile, session);
+
+        // could not be added to a bin -- probably too large by itself, so create a separate bin for just this guy.
+        if (!binned) {
+            Bin bin = new Bin(0, Long.MAX_VALUE, 0, Integer.MAX_VALUE, null);
+            bin.offer(flowFile, session);
+            this.readyBins.add(bin);
+        }
+
+        return 1;
     }
 
     @OnScheduled
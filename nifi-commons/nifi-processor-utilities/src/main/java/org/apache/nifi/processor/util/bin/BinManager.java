@@ -84,6 +84,14 @@ public class BinManager {
         this.maxEntries.set(maximumEntries);
     }
 
+    public int getMaximumEntries() {
+        return maxEntries.get();
+    }
+
+    public long getMaximumSize() {
+        return maxSizeBytes.get();
+    }
+
     public int getBinCount() {
         rLock.lock();
         try {
@@ -147,6 +155,97 @@ public class BinManager {
         }
     }
 
+    /**
+     * Adds all of the given flowFiles to the first available bin in which they all fit for the given group or creates a new bin in the specified group
+     * if necessary. The FlowFiles are never split across bins, so that all of the FlowFiles that belong to a session end up in the same bin.
+     * <p/>
+     * @param groupIdentifier the group to which the flow files belong; can be null
+     * @param flowFiles the flow files to bin
+     * @param session the ProcessSession to which all of the FlowFiles belong
+     * @return true if added; false if no bin exists which can fit all of the items and no bin can be created that can fit them based on current min/max criteria
+     */
+    public boolean offer(final String groupIdentifier, final List<FlowFile> flowFiles, final ProcessSession session) {
+        final long currentMaxSizeBytes = maxSizeBytes.get();
+        long totalSize = 0L;
+        for (final FlowFile flowFile : flowFiles) {
+            totalSize += flowFile.getSize();
+        }
+        if (totalSize > currentMaxSizeBytes) {
+            return false;
+        }
+
+        wLock.lock();
+        try {
+            List<Bin> currentBins = groupBinMap.get(groupIdentifier);
+            if (currentBins == null) {
+                currentBins = new ArrayList<>();
+            } else {
+                for (final Bin bin : currentBins) {
+                    if (bin.offer(flowFiles, session)) {
+                        return true;
+                    }
+                }
+            }
+
+            // only register the new bin if the flow files fit into it, so that we never create an empty bin
+            final Bin bin = new Bin(minSizeBytes.get(), currentMaxSizeBytes, minEntries.get(), maxEntries.get(), fileCountAttribute.get());
+            if (!bin.offer(flowFiles, session)) {
+                return false;
+            }
+
+            currentBins.add(bin);
+            groupBinMap.put(groupIdentifier, currentBins);
+            binCount++;
+            return true;
+        } finally {
+            wLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of flow files that can still be added to the open bin of the given group, that is, the most recently created bin
+     * of the group that is not yet full.
+     * <p/>
+     * @param groupIdentifier the group of the bin; can be null
+     * @return the number of flow files that the open bin can still accept, or -1 if the group has no open bin
+     */
+    public int getRemainingEntries(final String groupIdentifier) {
+        rLock.lock();
+        try {
+            final Bin bin = getOpenBin(groupIdentifier);
+            return bin == null ? -1 : bin.getRemainingEntries();
+        } finally {
+            rLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of bytes that can still be added to the open bin of the given group, that is, the most recently created bin
+     * of the group that is not yet full.
+     * <p/>
+     * @param groupIdentifier the group of the bin; can be null
+     * @return the number of bytes that the open bin can still accept, or -1 if the group has no open bin
+     */
+    public long getRemainingSize(final String groupIdentifier) {
+        rLock.lock();
+        try {
+            final Bin bin = getOpenBin(groupIdentifier);
+            return bin == null ? -1L : bin.getRemainingSize();
+        } finally {
+            rLock.unlock();
+        }
+    }
+
+    private Bin getOpenBin(final String groupIdentifier) {
+        final List<Bin> bins = groupBinMap.get(groupIdentifier);
+        if (bins == null || bins.isEmpty()) {
+            return null;
+        }
+
+        final Bin bin = bins.get(bins.size() - 1);
+        return bin.isFull() ? null : bin;
+    }
+
     /**
      * Finds all bins that are considered full and removes them from the manager.
      * <p/>
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.processor.util.bin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessSession;
+import org.junit.Test;
+
+public class TestBinManager {
+
+    @Test
+    public void testOfferListKeepsFlowFilesInSameBin() {
+        final BinManager binManager = new BinManager();
+        binManager.setMaximumEntries(5);
+
+        final ProcessSession sessionA = mock(ProcessSession.class);
+        assertTrue(binManager.offer("group", createFlowFiles(3, 10L), sessionA));
+        assertEquals(1, binManager.getBinCount());
+
+        // does not fit into the existing bin, so a new bin is created rather than splitting the FlowFiles across bins
+        final ProcessSession sessionB = mock(ProcessSession.class);
+        assertTrue(binManager.offer("group", createFlowFiles(3, 10L), sessionB));
+        assertEquals(2, binManager.getBinCount());
+
+        final ProcessSession sessionC = mock(ProcessSession.class);
+        assertTrue(binManager.offer("group", createFlowFiles(2, 10L), sessionC));
+        assertEquals(2, binManager.getBinCount());
+
+        final Collection<Bin> bins = binManager.removeReadyBins(false);
+        assertEquals(1, bins.size());
+        assertEquals(5, bins.iterator().next().getContents().size());
+    }
+
+    @Test
+    public void testOfferListRejectedIfTooLarge() {
+        final BinManager binManager = new BinManager();
+        binManager.setMaximumEntries(2);
+        binManager.setMaximumSize(100L);
+
+        final ProcessSession session = mock(ProcessSession.class);
+        assertFalse(binManager.offer("group", createFlowFiles(3, 10L), session));
+        assertFalse(binManager.offer("group", createFlowFiles(2, 60L), session));
+        assertEquals(0, binManager.getBinCount());
+    }
+
+    @Test
+    public void testRemainingRoomInOpenBin() {
+        final BinManager binManager = new BinManager();
+        binManager.setMaximumEntries(10);
+        binManager.setMaximumSize(1000L);
+
+        assertEquals(-1, binManager.getRemainingEntries("group"));
+        assertEquals(-1L, binManager.getRemainingSize("group"));
+
+        final ProcessSession sessionA = mock(ProcessSession.class);
+        assertTrue(binManager.offer("group", createFlowFiles(6, 10L), sessionA));
+        assertEquals(4, binManager.getRemainingEntries("group"));
+        assertEquals(940L, binManager.getRemainingSize("group"));
+        assertEquals(-1, binManager.getRemainingEntries("other"));
+
+        // a bundle sized to the remaining room fills the open bin rather than starting a new one
+        final ProcessSession sessionB = mock(ProcessSession.class);
+        assertTrue(binManager.offer("group", createFlowFiles(4, 10L), sessionB));
+        assertEquals(1, binManager.getBinCount());
+        assertEquals(-1, binManager.getRemainingEntries("group"));
+    }
+
+    private List<FlowFile> createFlowFiles(final int count, final long size) {
+        final List<FlowFile> flowFiles = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final FlowFile flowFile = mock(FlowFile.class);
+            when(flowFile.getSize()).thenReturn(size);
+            flowFiles.add(flowFile);
+        }
+        return flowFiles;
+    }
+}
@@ -82,6 +82,11 @@ public class NiFiProperties extends Properties {
     public static final String CONTENT_ARCHIVE_ENABLED = "nifi.content.repository.archive.enabled";
     public static final String CONTENT_ARCHIVE_CLEANUP_FREQUENCY = "nifi.content.repository.archive.cleanup.frequency";
     public static final String CONTENT_VIEWER_URL = "nifi.content.viewer.url";
+    public static final String CONTENT_REPOSITORY_ALWAYS_SYNC_WINDOW = "nifi.content.repository.always.sync.window";
+    public static final String CONTENT_REPOSITORY_INLINE_THRESHOLD = "nifi.content.repository.inline.threshold";
+    public static final String CONTENT_REPOSITORY_DEDUP_ENABLED = "nifi.content.repository.dedup.enabled";
+    public static final String CONTENT_REPOSITORY_DEDUP_DIRECTORY = "nifi.content.repository.dedup.directory";
+    public static final String CONTENT_REPOSITORY_CONTAINER_SELECTION = "nifi.content.repository.container.selection";
 
     // flowfile repository properties
     public static final String FLOWFILE_REPOSITORY_IMPLEMENTATION = "nifi.flowfile.repository.implementation";
@@ -89,12 +94,18 @@ public class NiFiProperties extends Properties {
     public static final String FLOWFILE_REPOSITORY_DIRECTORY = "nifi.flowfile.repository.directory";
     public static final String FLOWFILE_REPOSITORY_PARTITIONS = "nifi.flowfile.repository.partitions";
     public static final String FLOWFILE_REPOSITORY_CHECKPOINT_INTERVAL = "nifi.flowfile.repository.checkpoint.interval";
+    public static final String FLOWFILE_REPOSITORY_FUZZY_CHECKPOINT = "nifi.flowfile.repository.checkpoint.fuzzy";
+    public static final String FLOWFILE_REPOSITORY_GROUP_COMMIT = "nifi.flowfile.repository.group.commit";
+    public static final String FLOWFILE_REPOSITORY_GROUP_COMMIT_MAX_DELAY = "nifi.flowfile.repository.group.commit.max.delay";
     public static final String FLOWFILE_SWAP_MANAGER_IMPLEMENTATION = "nifi.swap.manager.implementation";
     public static final String QUEUE_SWAP_THRESHOLD = "nifi.queue.swap.threshold";
     public static final String SWAP_IN_THREADS = "nifi.swap.in.threads";
     public static final String SWAP_IN_PERIOD = "nifi.swap.in.period";
     public static final String SWAP_OUT_THREADS = "nifi.swap.out.threads";
     public static final String SWAP_OUT_PERIOD = "nifi.swap.out.period";
+    public static final String SWAP_COMPRESSION_ENABLED = "nifi.swap.compression.enabled";
+    public static final String QUEUE_SWAP_PREFETCH_THRESHOLD = "nifi.queue.swap.prefetch.threshold";
+    public static final String QUEUE_HEAP_BUDGET = "nifi.queue.heap.budget";
 
     // provenance properties
     public static final String PROVENANCE_REPO_IMPLEMENTATION_CLASS = "nifi.provenance.repository.implementation";
@@ -109,7 +120,13 @@ public class NiFiProperties extends Properties {
     public static final String PROVENANCE_INDEXED_FIELDS = "nifi.provenance.repository.indexed.fields";
     public static final String PROVENANCE_INDEXED_ATTRIBUTES = "nifi.provenance.repository.indexed.attributes";
     public static final String PROVENANCE_INDEX_SHARD_SIZE = "nifi.provenance.repository.index.shard.size";
+    public static final String PROVENANCE_INDEX_SHARD_DURATION = "nifi.provenance.repository.index.shard.duration";
     public static final String PROVENANCE_JOURNAL_COUNT = "nifi.provenance.repository.journal.count";
+    public static final String PROVENANCE_INGEST_BUFFER_SIZE = "nifi.provenance.repository.ingest.buffer.size";
+
+    // provenance event policy properties
+    public static final String PROVENANCE_COMPONENT_POLICY_PREFIX = "nifi.provenance.event.policy.component.";
+    public static final String PROVENANCE_EVENT_TYPE_POLICY_PREFIX = "nifi.provenance.event.policy.event.type.";
 
     // component status repository properties
     public static final String COMPONENT_STATUS_REPOSITORY_IMPLEMENTATION = "nifi.components.status.repository.implementation";
@@ -197,6 +214,7 @@ public class NiFiProperties extends Properties {
     public static final String DEFAULT_COMPONENT_DOCS_DIRECTORY = "./work/docs/components";
     public static final String DEFAULT_NAR_LIBRARY_DIR = "./lib";
     public static final String DEFAULT_FLOWFILE_REPO_PARTITIONS = "256";
+    public static final String DEFAULT_CONTENT_REPOSITORY_DEDUP_DIRECTORY = "./content_dedup_repository";
     public static final String DEFAULT_FLOWFILE_CHECKPOINT_INTERVAL = "2 min";
     public static final int DEFAULT_MAX_FLOWFILES_PER_CLAIM = 100;
     public static final int DEFAULT_QUEUE_SWAP_THRESHOLD = 20000;
@@ -348,6 +366,45 @@ public class NiFiProperties extends Properties {
         }
     }
 
+    /**
+     * @return the number of FlowFiles on a queue's active queue at or below which the queue begins reading its next swap file
+     *         in the background. Defaults to half a swap file's worth of FlowFiles below the swap threshold.
+     */
+    public int getQueueSwapPrefetchThreshold() {
+        return getIntegerProperty(QUEUE_SWAP_PREFETCH_THRESHOLD, getQueueSwapThreshold() - 5000);
+    }
+
+    /**
+     * @return the amount of heap that FlowFiles held in memory by all connection queues may use, either as a data size
+     *         (e.g., 512 MB) or as a percentage of the maximum heap size (e.g., 40%), or <code>null</code> if there is no limit
+     */
+    public String getQueueHeapBudget() {
+        return getProperty(QUEUE_HEAP_BUDGET);
+    }
+
+    /**
+     * @return the data size (e.g., 1 KB) at or below which FlowFile content is stored inline with the FlowFile in the FlowFile
+     *         Repository rather than in the Content Repository, or <code>null</code> if content is never stored inline
+     */
+    public String getContentRepositoryInlineThreshold() {
+        return getProperty(CONTENT_REPOSITORY_INLINE_THRESHOLD);
+    }
+
+    /**
+     * @return <code>true</code> if content that is identical to content already in the Content Repository should reference the
+     *         existing content rather than being stored again
+     */
+    public boolean isContentRepositoryDedupEnabled() {
+        return Boolean.parseBoolean(getProperty(CONTENT_REPOSITORY_DEDUP_ENABLED, "false"));
+    }
+
+    /**
+     * @return the directory in which the index of the content in the Content Repository is kept when deduplication is enabled
+     */
+    public Path getContentRepositoryDedupPath() {
+        return Paths.get(getProperty(CONTENT_REPOSITORY_DEDUP_DIRECTORY, DEFAULT_CONTENT_REPOSITORY_DEDUP_DIRECTORY));
+    }
+
     public int getSwapInThreads() {
         return getIntegerProperty(SWAP_IN_THREADS, DEFAULT_SWAP_IN_THREADS);
     }
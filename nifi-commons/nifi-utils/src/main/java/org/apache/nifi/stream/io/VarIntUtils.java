@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.stream.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Reads and writes integers using a variable-length encoding of 7 bits per
+ * byte, least significant group first, with the high bit set on every byte
+ * but the last. Small values therefore take a single byte. Signed values are
+ * zig-zag encoded first so that small negative values are also short.
+ */
+public class VarIntUtils {
+
+    private VarIntUtils() {
+    }
+
+    /**
+     * Maps a signed value onto an unsigned one so that values of small
+     * magnitude, positive or negative, become small non-negative values
+     *
+     * @param value the value to encode
+     * @return the zig-zag encoded value
+     */
+    public static long zigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Reverses {@link #zigZag(long)}
+     *
+     * @param value the zig-zag encoded value
+     * @return the original signed value
+     */
+    public static long unZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes the given int, which is treated as unsigned
+     *
+     * @param value the value to write
+     * @param out the stream to write to
+     * @throws IOException if unable to write to the stream
+     */
+    public static void writeVarInt(final int value, final OutputStream out) throws IOException {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            out.write((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        out.write(remaining);
+    }
+
+    /**
+     * Reads an int that was written by {@link #writeVarInt(int, OutputStream)}
+     *
+     * @param in the stream to read from
+     * @return the value read
+     * @throws EOFException if the stream ends before the value is complete
+     * @throws IOException if the encoded value is longer than an int allows
+     */
+    public static int readVarInt(final InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Variable-length integer is too long");
+    }
+
+    /**
+     * Writes the given long, which is treated as unsigned
+     *
+     * @param value the value to write
+     * @param out the stream to write to
+     * @throws IOException if unable to write to the stream
+     */
+    public static void writeVarLong(final long value, final OutputStream out) throws IOException {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0L) {
+            out.write((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        out.write((int) remaining);
+    }
+
+    /**
+     * Reads a long that was written by {@link #writeVarLong(long, OutputStream)}
+     *
+     * @param in the stream to read from
+     * @return the value read
+     * @throws EOFException if the stream ends before the value is complete
+     * @throws IOException if the encoded value is longer than a long allows
+     */
+    public static long readVarLong(final InputStream in) throws IOException {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Variable-length integer is too long");
+    }
+
+    /**
+     * Zig-zag encodes the given signed long and writes it
+     *
+     * @param value the value to write
+     * @param out the stream to write to
+     * @throws IOException if unable to write to the stream
+     */
+    public static void writeSignedVarLong(final long value, final OutputStream out) throws IOException {
+        writeVarLong(zigZag(value), out);
+    }
+
+    /**
+     * Reads a long that was written by {@link #writeSignedVarLong(long, OutputStream)}
+     *
+     * @param in the stream to read from
+     * @return the value read
+     * @throws EOFException if the stream ends before the value is complete
+     * @throws IOException if the encoded value is longer than a long allows
+     */
+    public static long readSignedVarLong(final InputStream in) throws IOException {
+        return unZigZag(readVarLong(in));
+    }
+}
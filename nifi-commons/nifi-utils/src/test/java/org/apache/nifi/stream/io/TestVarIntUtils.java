@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.stream.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TestVarIntUtils {
+
+    @Test
+    public void testVarIntRoundTrip() throws IOException {
+        final int[] values = new int[] {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (final int value : values) {
+            VarIntUtils.writeVarInt(value, baos);
+        }
+
+        final InputStream in = new ByteArrayInputStream(baos.toByteArray());
+        for (final int value : values) {
+            assertEquals(value, VarIntUtils.readVarInt(in));
+        }
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testVarLongRoundTrip() throws IOException {
+        final long[] values = new long[] {0L, 1L, 127L, 128L, System.currentTimeMillis(), Long.MAX_VALUE, -1L, Long.MIN_VALUE};
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        for (final long value : values) {
+            VarIntUtils.writeVarLong(value, baos);
+            VarIntUtils.writeSignedVarLong(value, baos);
+        }
+
+        final InputStream in = new ByteArrayInputStream(baos.toByteArray());
+        for (final long value : values) {
+            assertEquals(value, VarIntUtils.readVarLong(in));
+            assertEquals(value, VarIntUtils.readSignedVarLong(in));
+        }
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testEncodedLength() throws IOException {
+        assertEquals(1, varIntLength(0));
+        assertEquals(1, varIntLength(127));
+        assertEquals(2, varIntLength(128));
+        assertEquals(5, varIntLength(-1));
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        VarIntUtils.writeSignedVarLong(-1L, baos);
+        assertEquals(1, baos.size());
+
+        baos.reset();
+        VarIntUtils.writeVarLong(-1L, baos);
+        assertEquals(10, baos.size());
+    }
+
+    @Test
+    public void testZigZag() {
+        assertEquals(0L, VarIntUtils.zigZag(0L));
+        assertEquals(1L, VarIntUtils.zigZag(-1L));
+        assertEquals(2L, VarIntUtils.zigZag(1L));
+        assertEquals(3L, VarIntUtils.zigZag(-2L));
+        assertEquals(Long.MIN_VALUE, VarIntUtils.unZigZag(VarIntUtils.zigZag(Long.MIN_VALUE)));
+        assertEquals(Long.MAX_VALUE, VarIntUtils.unZigZag(VarIntUtils.zigZag(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testTruncatedValue() throws IOException {
+        try {
+            VarIntUtils.readVarLong(new ByteArrayInputStream(new byte[] {(byte) 0x80, (byte) 0x80}));
+            fail("Expected EOFException");
+        } catch (final EOFException expected) {
+        }
+    }
+
+    @Test
+    public void testValueTooLong() {
+        final byte[] tooLong = new byte[11];
+        Arrays.fill(tooLong, (byte) 0x80);
+
+        try {
+            VarIntUtils.readVarLong(new ByteArrayInputStream(tooLong));
+            fail("Expected IOException");
+        } catch (final EOFException e) {
+            fail("Expected value to be rejected before reaching the end of the stream");
+        } catch (final IOException expected) {
+        }
+
+        try {
+            VarIntUtils.readVarInt(new ByteArrayInputStream(tooLong));
+            fail("Expected IOException");
+        } catch (final EOFException e) {
+            fail("Expected value to be rejected before reaching the end of the stream");
+        } catch (final IOException expected) {
+        }
+    }
+
+    private static int varIntLength(final int value) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        VarIntUtils.writeVarInt(value, baos);
+        return baos.size();
+    }
+}
@@ -27,7 +27,9 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -38,6 +40,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
@@ -48,8 +51,15 @@ import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -61,6 +71,8 @@ import java.util.regex.Pattern;
 
 import org.apache.nifi.stream.io.BufferedInputStream;
 import org.apache.nifi.stream.io.BufferedOutputStream;
+import org.apache.nifi.stream.io.ByteArrayInputStream;
+import org.apache.nifi.stream.io.ByteArrayOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -72,6 +84,16 @@ import org.slf4j.LoggerFactory;
  * updates for a given Record at any one time.
  * </p>
  *
+ * <p>
+ * By default, a checkpoint copies every record while updates are blocked, so
+ * the pause grows with the number of records. If fuzzy checkpointing is enabled,
+ * updates are blocked only while the partitions roll over to new journals. The
+ * snapshot is then written from the live records while updates continue, and
+ * the first update to each record during the checkpoint preserves the version
+ * that the record had when the checkpoint began, so the snapshot still reflects
+ * a single point in time.
+ * </p>
+ *
  * @param <T> type of record this WAL is for
  */
 public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepository<T> {
@@ -97,15 +119,43 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
 
     private static final Logger logger = LoggerFactory.getLogger(MinimalLockingWriteAheadLog.class);
 
+    // marks a record that did not exist when a fuzzy checkpoint began
+    private static final Object NOT_PRESENT = new Object();
+
+    private final boolean fuzzyCheckpoint;
+    // while a fuzzy checkpoint is writing the snapshot, the version of each record updated since the checkpoint began, or NOT_PRESENT
+    private volatile ConcurrentMap<Object, Object> checkpointPreImages = null;
+
+    // the snapshot is written in chunks of about this many bytes so that the chunks can be deserialized concurrently on recovery
+    private static final int SNAPSHOT_CHUNK_SIZE = 1024 * 1024;
+    private final int recoveryThreadCount = Runtime.getRuntime().availableProcessors();
+
     private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
     private final Lock readLock = rwLock.readLock(); // required to update a partition
     private final Lock writeLock = rwLock.writeLock(); // required for checkpoint
 
+    // the thread that syncs the partitions on each disk, if group commit is enabled; otherwise, empty
+    private final Map<Partition<T>, GroupCommitSyncer> groupCommitSyncers = new HashMap<>();
+
     private volatile boolean updated = false;
     private volatile boolean recovered = false;
 
     public MinimalLockingWriteAheadLog(final Path path, final int partitionCount, final SerDe<T> serde, final SyncListener syncListener) throws IOException {
-        this(new TreeSet<>(Collections.singleton(path)), partitionCount, serde, syncListener);
+        this(path, partitionCount, serde, syncListener, false);
+    }
+
+    public MinimalLockingWriteAheadLog(final Path path, final int partitionCount, final SerDe<T> serde, final SyncListener syncListener, final boolean fuzzyCheckpoint)
+            throws IOException {
+        this(path, partitionCount, serde, syncListener, fuzzyCheckpoint, -1L);
+    }
+
+    public MinimalLockingWriteAheadLog(final Path path, final int partitionCount, final SerDe<T> serde, final SyncListener syncListener, final boolean fuzzyCheckpoint,
+            final long groupCommitMaxDelayNanos) throws IOException {
+        this(new TreeSet<>(Collections.singleton(path)), partitionCount, serde, syncListener, fuzzyCheckpoint, groupCommitMaxDelayNanos);
+    }
+
+    public MinimalLockingWriteAheadLog(final SortedSet<Path> paths, final int partitionCount, final SerDe<T> serde, final SyncListener syncListener) throws IOException {
+        this(paths, partitionCount, serde, syncListener, false, -1L);
     }
 
     /**
@@ -118,11 +168,19 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
      * expected to update the repository simultaneously
      * @param serde the serializer/deserializer for records
      * @param syncListener the listener
+     * @param fuzzyCheckpoint whether to write the snapshot while updates continue,
+     * rather than copying every record while updates are blocked
+     * @param groupCommitMaxDelayNanos if not negative, updates that must be
+     * synced are synced together by a single thread for each disk, and an update
+     * waits up to this many nanoseconds for others to join it before the sync
+     * begins; if negative, each update syncs its own partition
      * @throws IOException if unable to initialize due to IO issue
      */
     @SuppressWarnings("unchecked")
-    public MinimalLockingWriteAheadLog(final SortedSet<Path> paths, final int partitionCount, final SerDe<T> serde, final SyncListener syncListener) throws IOException {
+    public MinimalLockingWriteAheadLog(final SortedSet<Path> paths, final int partitionCount, final SerDe<T> serde, final SyncListener syncListener,
+            final boolean fuzzyCheckpoint, final long groupCommitMaxDelayNanos) throws IOException {
         this.syncListener = syncListener;
+        this.fuzzyCheckpoint = fuzzyCheckpoint;
 
         requireNonNull(paths);
         requireNonNull(serde);
@@ -191,6 +249,24 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
 
             partitions[i] = new Partition<>(partitionBasePath.resolve("partition-" + i), serde, i, getVersion());
         }
+
+        if (groupCommitMaxDelayNanos >= 0L) {
+            final Map<FileStore, GroupCommitSyncer> syncersByDisk = new HashMap<>();
+            for (final Partition<T> partition : partitions) {
+                final FileStore fileStore = Files.getFileStore(partition.getEditDirectory());
+                GroupCommitSyncer syncer = syncersByDisk.get(fileStore);
+                if (syncer == null) {
+                    syncer = new GroupCommitSyncer(groupCommitMaxDelayNanos);
+                    syncersByDisk.put(fileStore, syncer);
+
+                    final Thread syncThread = new Thread(syncer, "Write-Ahead Log Group Commit Thread-" + syncersByDisk.size());
+                    syncThread.setDaemon(true);
+                    syncThread.start();
+                }
+
+                groupCommitSyncers.put(partition, syncer);
+            }
+        }
     }
 
     @Override
@@ -217,7 +293,9 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
                 final long partitionIdx = partitionIndex.getAndIncrement();
                 final int resolvedIdx = (int) (partitionIdx % partitions.length);
                 final Partition<T> partition = partitions[resolvedIdx];
+                final GroupCommitSyncer groupCommitSyncer = forceSync ? groupCommitSyncers.get(partition) : null;
                 if (partition.tryClaim()) {
+                    final GroupCommitBatch groupCommitBatch;
                     try {
                         final long transactionId = transactionIdGenerator.getAndIncrement();
                         if (logger.isTraceEnabled()) {
@@ -227,24 +305,38 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
                         }
 
                         try {
-                            partition.update(records, transactionId, unmodifiableRecordMap, forceSync);
+                            partition.update(records, transactionId, unmodifiableRecordMap, forceSync && groupCommitSyncer == null);
                         } catch (final Throwable t) {
                             partition.blackList();
                             numberBlackListedPartitions.incrementAndGet();
                             throw t;
                         }
 
-                        if (forceSync && syncListener != null) {
-                            syncListener.onSync(resolvedIdx);
-                        }
+                        groupCommitBatch = groupCommitSyncer == null ? null : groupCommitSyncer.requestSync(partition);
                     } finally {
                         partition.releaseClaim();
                     }
 
+                    // the partition is released so that other updates can be written to it while this one waits for its sync
+                    if (groupCommitBatch != null) {
+                        groupCommitBatch.awaitSync(partition);
+                    }
+
+                    if (forceSync && syncListener != null) {
+                        syncListener.onSync(resolvedIdx);
+                    }
+
+                    final ConcurrentMap<Object, Object> preImages = checkpointPreImages;
                     for (final T record : records) {
                         final UpdateType updateType = serde.getUpdateType(record);
                         final Object recordIdentifier = serde.getRecordIdentifier(record);
 
+                        if (preImages != null) {
+                            // only this thread can be updating the record, so the version in the map is the one before this update
+                            final T previous = recordMap.get(recordIdentifier);
+                            preImages.putIfAbsent(recordIdentifier, previous == null ? NOT_PRESENT : previous);
+                        }
+
                         if (updateType == UpdateType.DELETE) {
                             recordMap.remove(recordIdentifier);
                         } else if (updateType == UpdateType.SWAP_OUT) {
@@ -287,10 +379,32 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
         }
 
         final long recoverStart = System.nanoTime();
+        final long snapshotNanos;
+        final long editsNanos;
         writeLock.lock();
         try {
-            Long maxTransactionId = recoverFromSnapshot(recordMap);
-            recoverFromEdits(recordMap, maxTransactionId);
+            final ExecutorService recoveryExecutor = Executors.newFixedThreadPool(recoveryThreadCount, new ThreadFactory() {
+                private final AtomicInteger threadCount = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = Executors.defaultThreadFactory().newThread(r);
+                    thread.setName("Recover Write-Ahead Log Thread-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            Long maxTransactionId;
+            try {
+                maxTransactionId = recoverFromSnapshot(recordMap, recoveryExecutor);
+                snapshotNanos = System.nanoTime() - recoverStart;
+
+                recoverFromEdits(recordMap, maxTransactionId, recoveryExecutor);
+                editsNanos = System.nanoTime() - recoverStart - snapshotNanos;
+            } finally {
+                recoveryExecutor.shutdownNow();
+            }
 
             for (final Partition<T> partition : partitions) {
                 final long transId = partition.getMaxRecoveredTransactionId();
@@ -307,8 +421,13 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
         }
         final long recoverNanos = System.nanoTime() - recoverStart;
         final long recoveryMillis = TimeUnit.MILLISECONDS.convert(recoverNanos, TimeUnit.NANOSECONDS);
-        logger.info("Successfully recovered {} records in {} milliseconds", recordMap.size(), recoveryMillis);
+        logger.info("Successfully recovered {} records in {} milliseconds (Snapshot time = {} millis, Edit Logs time = {} millis)",
+                new Object[] {recordMap.size(), recoveryMillis, TimeUnit.NANOSECONDS.toMillis(snapshotNanos), TimeUnit.NANOSECONDS.toMillis(editsNanos)});
+
+        final long checkpointStart = System.nanoTime();
         checkpoint();
+        logger.info("{} finished initial checkpoint in {} milliseconds; total recovery time was {} milliseconds",
+                new Object[] {this, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - checkpointStart), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - recoverStart)});
 
         recovered = true;
         return recordMap.values();
@@ -319,7 +438,7 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
         return recoveredExternalLocations;
     }
 
-    private Long recoverFromSnapshot(final Map<Object, T> recordMap) throws IOException {
+    private Long recoverFromSnapshot(final Map<Object, T> recordMap, final ExecutorService executor) throws IOException {
         final boolean partialExists = Files.exists(partialPath);
         final boolean snapshotExists = Files.exists(snapshotPath);
 
@@ -365,20 +484,10 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
             final long maxTransactionId = dataIn.readLong();
             final int numRecords = dataIn.readInt();
 
-            for (int i = 0; i < numRecords; i++) {
-                final T record = serde.deserializeRecord(dataIn, serdeVersion);
-                if (record == null) {
-                    throw new EOFException();
-                }
-
-                final UpdateType updateType = serde.getUpdateType(record);
-                if (updateType == UpdateType.DELETE) {
-                    logger.warn("While recovering from snapshot, found record with type 'DELETE'; this record will not be restored");
-                    continue;
-                }
-
-                logger.trace("Recovered from snapshot: {}", record);
-                recordMap.put(serde.getRecordIdentifier(record), record);
+            if (waliImplementationVersion < 2) {
+                recoverSnapshotRecords(dataIn, numRecords, serdeVersion, recordMap);
+            } else {
+                recoverSnapshotChunks(dataIn, numRecords, serdeVersion, recordMap, executor);
             }
 
             final int numSwapRecords = dataIn.readInt();
@@ -394,6 +503,79 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
         }
     }
 
+    /**
+     * Reads the chunks of a snapshot sequentially and deserializes them
+     * concurrently. At most two chunks per thread are held in memory at once.
+     */
+    private void recoverSnapshotChunks(final DataInputStream dataIn, final int numRecords, final int serdeVersion, final Map<Object, T> recordMap,
+            final ExecutorService executor) throws IOException {
+        final Queue<Future<?>> futures = new LinkedList<>();
+
+        int recordsRead = 0;
+        while (recordsRead < numRecords) {
+            final int chunkRecords = dataIn.readInt();
+            final byte[] chunk = new byte[dataIn.readInt()];
+            dataIn.readFully(chunk);
+            recordsRead += chunkRecords;
+
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    recoverSnapshotRecords(new DataInputStream(new ByteArrayInputStream(chunk)), chunkRecords, serdeVersion, recordMap);
+                    return null;
+                }
+            }));
+
+            while (futures.size() >= recoveryThreadCount * 2) {
+                waitForRecovery(futures.remove());
+            }
+        }
+
+        while (!futures.isEmpty()) {
+            waitForRecovery(futures.remove());
+        }
+    }
+
+    private void recoverSnapshotRecords(final DataInputStream in, final int numRecords, final int serdeVersion, final Map<Object, T> recordMap) throws IOException {
+        final SerDe<T> snapshotSerde = serde.createStreamSerDe();
+        for (int i = 0; i < numRecords; i++) {
+            final T record = snapshotSerde.deserializeRecord(in, serdeVersion);
+            if (record == null) {
+                throw new EOFException();
+            }
+
+            final UpdateType updateType = serde.getUpdateType(record);
+            if (updateType == UpdateType.DELETE) {
+                logger.warn("While recovering from snapshot, found record with type 'DELETE'; this record will not be restored");
+                continue;
+            }
+
+            logger.trace("Recovered from snapshot: {}", record);
+            recordMap.put(serde.getRecordIdentifier(record), record);
+        }
+    }
+
+    private <R> R waitForRecovery(final Future<R> future) throws IOException {
+        try {
+            return future.get();
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while recovering " + this, ie);
+        } catch (final ExecutionException ee) {
+            final Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
     /**
      * Recovers records from the edit logs via the Partitions. Returns a boolean
      * if recovery of a Partition requires the Write-Ahead Log be checkpointed
@@ -401,43 +583,41 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
      *
      * @param modifiableRecordMap map
      * @param maxTransactionIdRestored index of max restored transaction
+     * @param executor the executor to open the Partitions with
      * @throws IOException if unable to recover from edits
      */
-    private void recoverFromEdits(final Map<Object, T> modifiableRecordMap, final Long maxTransactionIdRestored) throws IOException {
+    private void recoverFromEdits(final Map<Object, T> modifiableRecordMap, final Long maxTransactionIdRestored, final ExecutorService executor) throws IOException {
         final Map<Object, T> updateMap = new HashMap<>();
         final Map<Object, T> unmodifiableRecordMap = Collections.unmodifiableMap(modifiableRecordMap);
-        final Map<Object, T> ignorableMap = new HashMap<>();
-        final Set<String> ignorableSwapLocations = new HashSet<>();
 
-        // populate a map of the next transaction id for each partition to the
-        // partition that has that next transaction id.
-        final SortedMap<Long, Partition<T>> transactionMap = new TreeMap<>();
+        // Each Partition is opened concurrently, skipping any transactions that the snapshot already contains.
+        final List<Future<Long>> firstTransactionIds = new ArrayList<>(partitions.length);
         for (final Partition<T> partition : partitions) {
-            Long transactionId;
-            boolean keepTransaction;
-            do {
-                transactionId = partition.getNextRecoverableTransactionId();
-
-                keepTransaction = transactionId == null || maxTransactionIdRestored == null || transactionId > maxTransactionIdRestored;
-                if (keepTransaction && transactionId != null) {
-                    // map this transaction id to its partition so that we can
-                    // start restoring transactions from this partition,
-                    // starting at 'transactionId'
-                    transactionMap.put(transactionId, partition);
-                } else if (transactionId != null) {
-                    // skip the next transaction, because our snapshot already
-                    // contained this transaction.
-                    try {
-                        partition.recoverNextTransaction(ignorableMap, updateMap, ignorableSwapLocations);
-                    } catch (final EOFException e) {
-                        logger.error("{} unexpectedly reached End of File while reading from {} for Transaction {}; "
-                                + "assuming crash and ignoring this transaction.",
-                                new Object[]{this, partition, transactionId});
-                    }
+            firstTransactionIds.add(executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws IOException {
+                    return skipRecoveredTransactions(partition, maxTransactionIdRestored);
                 }
-            } while (!keepTransaction);
+            }));
         }
 
+        // populate a map of the next transaction id for each partition to the
+        // partition that has that next transaction id. Transactions are then
+        // applied in order of transaction id, because an edit may depend on
+        // the state left by an earlier transaction in another partition.
+        final SortedMap<Long, Partition<T>> transactionMap = new TreeMap<>();
+        for (int i = 0; i < partitions.length; i++) {
+            final Long transactionId = waitForRecovery(firstTransactionIds.get(i));
+            if (transactionId != null) {
+                // map this transaction id to its partition so that we can
+                // start restoring transactions from this partition,
+                // starting at 'transactionId'
+                transactionMap.put(transactionId, partitions[i]);
+            }
+        }
+
+        long transactionsRecovered = 0L;
+
         while (!transactionMap.isEmpty()) {
             final Map.Entry<Long, Partition<T>> firstEntry = transactionMap.entrySet().iterator().next();
             final Long firstTransactionId = firstEntry.getKey();
@@ -457,6 +637,7 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
             }
 
             transactionMap.remove(firstTransactionId);
+            transactionsRecovered++;
 
             Long subsequentTransactionId = null;
             try {
@@ -475,13 +656,48 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
         for (final Partition<T> partition : partitions) {
             partition.endRecovery();
         }
+
+        logger.debug("{} recovered {} transactions from {} Partitions", new Object[] {this, transactionsRecovered, partitions.length});
+    }
+
+    /**
+     * Skips the transactions in the given Partition that were already captured by the snapshot
+     *
+     * @param partition the partition to recover
+     * @param maxTransactionIdRestored the max transaction ID in the snapshot, or <code>null</code> if there was no snapshot
+     * @return the ID of the first transaction to recover from the partition, or <code>null</code> if there is none
+     * @throws IOException if unable to read from the partition
+     */
+    private Long skipRecoveredTransactions(final Partition<T> partition, final Long maxTransactionIdRestored) throws IOException {
+        final Map<Object, T> ignorableMap = new HashMap<>();
+        final Map<Object, T> ignorableUpdateMap = new HashMap<>();
+        final Set<String> ignorableSwapLocations = new HashSet<>();
+
+        while (true) {
+            final Long transactionId = partition.getNextRecoverableTransactionId();
+            if (transactionId == null || maxTransactionIdRestored == null || transactionId > maxTransactionIdRestored) {
+                return transactionId;
+            }
+
+            // skip the next transaction, because our snapshot already
+            // contained this transaction.
+            try {
+                partition.recoverNextTransaction(ignorableMap, ignorableUpdateMap, ignorableSwapLocations);
+            } catch (final EOFException e) {
+                logger.error("{} unexpectedly reached End of File while reading from {} for Transaction {}; "
+                        + "assuming crash and ignoring this transaction.",
+                        new Object[]{this, partition, transactionId});
+            }
+        }
     }
 
     @Override
     public synchronized int checkpoint() throws IOException {
         final Set<T> records;
+        final ConcurrentMap<Object, Object> preImages;
         final Set<String> swapLocations;
         final long maxTransactionId;
+        int recordCount;
 
         final long startNanos = System.nanoTime();
 
@@ -506,7 +722,17 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
                 // and roll over the partitions to new write-ahead logs.
                 // Then, outside of the write lock, we will serialize the data
                 // to disk, and then remove the old Partition data.
-                records = new HashSet<>(recordMap.values());
+                // A fuzzy checkpoint does not even copy the records; it
+                // preserves the version of any record that is updated
+                // while the snapshot is being written instead.
+                if (fuzzyCheckpoint) {
+                    records = null;
+                    preImages = new ConcurrentHashMap<>();
+                    checkpointPreImages = preImages;
+                } else {
+                    records = new HashSet<>(recordMap.values());
+                    preImages = null;
+                }
                 maxTransactionId = transactionIdGenerator.get() - 1;
 
                 swapLocations = new HashSet<>(externalLocations);
@@ -516,6 +742,7 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
                     } catch (final Throwable t) {
                         partition.blackList();
                         numberBlackListedPartitions.getAndIncrement();
+                        checkpointPreImages = null;
                         throw t;
                     }
                 }
@@ -533,24 +760,37 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
 
             // perform checkpoint, writing to .partial file
             fileOut = new FileOutputStream(partialPath.toFile());
-            dataOut = new DataOutputStream(fileOut);
+            dataOut = new DataOutputStream(new BufferedOutputStream(fileOut));
             dataOut.writeUTF(MinimalLockingWriteAheadLog.class.getName());
             dataOut.writeInt(getVersion());
             dataOut.writeUTF(serde.getClass().getName());
             dataOut.writeInt(serde.getVersion());
             dataOut.writeLong(maxTransactionId);
-            dataOut.writeInt(records.size());
 
-            for (final T record : records) {
-                logger.trace("Checkpointing {}", record);
-                serde.serializeRecord(record, dataOut);
-            }
+            final SnapshotWriter snapshotWriter = new SnapshotWriter(dataOut);
+            if (records == null) {
+                // the number of records is not known until they have all been written, so it is filled in afterward
+                final long recordCountOffset = dataOut.size();
+                dataOut.writeInt(0);
+                writeFuzzySnapshotRecords(preImages, snapshotWriter);
+                recordCount = snapshotWriter.finish();
+
+                writeSwapLocations(swapLocations, dataOut);
+                dataOut.flush();
+                fileOut.getChannel().write(ByteBuffer.allocate(4).putInt(0, recordCount), recordCountOffset);
+            } else {
+                recordCount = records.size();
+                dataOut.writeInt(recordCount);
+                for (final T record : records) {
+                    snapshotWriter.write(record);
+                }
+                snapshotWriter.finish();
 
-            dataOut.writeInt(swapLocations.size());
-            for (final String swapLocation : swapLocations) {
-                dataOut.writeUTF(swapLocation);
+                writeSwapLocations(swapLocations, dataOut);
             }
         } finally {
+            checkpointPreImages = null;
+
             if (dataOut != null) {
                 try {
                     dataOut.flush();
@@ -590,15 +830,119 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
 
         logger.info("{} checkpointed with {} Records and {} Swap Files in {} milliseconds (Stop-the-world "
                 + "time = {} milliseconds, Clear Edit Logs time = {} millis), max Transaction ID {}",
-                new Object[]{this, records.size(), swapLocations.size(), millis, stopTheWorldMillis, partitionMillis, maxTransactionId});
+                new Object[]{this, recordCount, swapLocations.size(), millis, stopTheWorldMillis, partitionMillis, maxTransactionId});
+
+        return recordCount;
+    }
+
+    /**
+     * Writes every record as it was when the checkpoint began, while updates continue
+     *
+     * @param preImages the version, as of the start of the checkpoint, of each record updated since then
+     * @param snapshotWriter the writer to write the records to
+     */
+    @SuppressWarnings("unchecked")
+    private void writeFuzzySnapshotRecords(final ConcurrentMap<Object, Object> preImages, final SnapshotWriter snapshotWriter) throws IOException {
+        final Set<Object> preImagesWritten = new HashSet<>();
+
+        // An update records the previous version of a record before it changes the record map, so if the map is read first and the
+        // record has since been updated, its previous version is guaranteed to be found. Records created since the checkpoint began
+        // are skipped, and records removed since then are written from their previous version below.
+        for (final Map.Entry<Object, T> entry : recordMap.entrySet()) {
+            final T current = entry.getValue();
+            final Object preImage = preImages.get(entry.getKey());
+
+            final T record;
+            if (preImage == null) {
+                record = current;
+            } else if (preImage == NOT_PRESENT || !preImagesWritten.add(entry.getKey())) {
+                continue;
+            } else {
+                record = (T) preImage;
+            }
+
+            snapshotWriter.write(record);
+        }
+
+        // A record whose previous version was recorded after the record was read above is written again here. Recovery keeps one
+        // copy of each record, and both copies are the version from the start of the checkpoint.
+        for (final Map.Entry<Object, Object> entry : preImages.entrySet()) {
+            if (entry.getValue() == NOT_PRESENT || preImagesWritten.contains(entry.getKey())) {
+                continue;
+            }
+
+            final T record = (T) entry.getValue();
+            snapshotWriter.write(record);
+        }
+    }
+
+    /**
+     * Writes the records of a snapshot in chunks, each serialized by its own
+     * stream SerDe and preceded by its number of records and length, so that
+     * the chunks can be deserialized concurrently on recovery.
+     */
+    private class SnapshotWriter {
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream chunkBytes = new ByteArrayOutputStream(SNAPSHOT_CHUNK_SIZE);
+        private final DataOutputStream chunkOut = new DataOutputStream(chunkBytes);
+        private SerDe<T> chunkSerde = serde.createStreamSerDe();
+        private int chunkRecordCount = 0;
+        private int recordCount = 0;
+
+        public SnapshotWriter(final DataOutputStream out) {
+            this.out = out;
+        }
+
+        public void write(final T record) throws IOException {
+            logger.trace("Checkpointing {}", record);
+            chunkSerde.serializeRecord(record, chunkOut);
+            chunkRecordCount++;
+            recordCount++;
+
+            if (chunkBytes.size() >= SNAPSHOT_CHUNK_SIZE) {
+                flushChunk();
+            }
+        }
 
-        return records.size();
+        private void flushChunk() throws IOException {
+            if (chunkRecordCount == 0) {
+                return;
+            }
+
+            chunkOut.flush();
+            out.writeInt(chunkRecordCount);
+            out.writeInt(chunkBytes.size());
+            chunkBytes.writeTo(out);
+
+            chunkBytes.reset();
+            chunkSerde = serde.createStreamSerDe();
+            chunkRecordCount = 0;
+        }
+
+        /**
+         * @return the number of records written
+         */
+        public int finish() throws IOException {
+            flushChunk();
+            return recordCount;
+        }
+    }
+
+    private void writeSwapLocations(final Set<String> swapLocations, final DataOutputStream dataOut) throws IOException {
+        dataOut.writeInt(swapLocations.size());
+        for (final String swapLocation : swapLocations) {
+            dataOut.writeUTF(swapLocation);
+        }
     }
 
     @Override
     public void shutdown() throws IOException {
         writeLock.lock();
         try {
+            for (final GroupCommitSyncer syncer : groupCommitSyncers.values()) {
+                syncer.stop();
+            }
+
             for (final Partition<T> partition : partitions) {
                 partition.close();
             }
@@ -609,7 +953,119 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
     }
 
     public int getVersion() {
-        return 1;
+        return 2;
+    }
+
+    /**
+     * Syncs the journals of the partitions on a single disk on behalf of
+     * updates that must be synced, so that one sync of a partition covers every
+     * update written to it since the previous sync. Updates that request a sync
+     * while one is in progress are synced together afterward.
+     */
+    private class GroupCommitSyncer implements Runnable {
+        private final long maxDelayNanos;
+        private final Object mutex = new Object();
+        private GroupCommitBatch pending = new GroupCommitBatch();
+        private boolean stopped = false;
+
+        public GroupCommitSyncer(final long maxDelayNanos) {
+            this.maxDelayNanos = maxDelayNanos;
+        }
+
+        /**
+         * Must be called after the update has been written to the partition
+         *
+         * @param partition the partition that was updated
+         * @return the batch that will sync the update
+         */
+        public GroupCommitBatch requestSync(final Partition<T> partition) {
+            synchronized (mutex) {
+                if (stopped) {
+                    throw new IllegalStateException("Cannot sync " + partition + " because the Write-Ahead Log has been shut down");
+                }
+
+                if (pending.partitions.isEmpty()) {
+                    pending.firstRequestNanos = System.nanoTime();
+                    mutex.notifyAll();
+                }
+                pending.partitions.add(partition);
+                return pending;
+            }
+        }
+
+        public void stop() {
+            synchronized (mutex) {
+                stopped = true;
+                mutex.notifyAll();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final GroupCommitBatch batch;
+                synchronized (mutex) {
+                    try {
+                        while (pending.partitions.isEmpty() && !stopped) {
+                            mutex.wait();
+                        }
+
+                        // give other updates a chance to join this batch
+                        long remainingNanos = pending.firstRequestNanos + maxDelayNanos - System.nanoTime();
+                        while (remainingNanos > 0L && !stopped) {
+                            TimeUnit.NANOSECONDS.timedWait(mutex, remainingNanos);
+                            remainingNanos = pending.firstRequestNanos + maxDelayNanos - System.nanoTime();
+                        }
+                    } catch (final InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        stopped = true;
+                    }
+
+                    batch = pending;
+                    pending = new GroupCommitBatch();
+                }
+
+                for (final Partition<?> partition : batch.partitions) {
+                    try {
+                        partition.sync();
+                    } catch (final IOException ioe) {
+                        logger.error("Failed to sync {} due to {}", new Object[] {partition, ioe.toString()}, ioe);
+                        partition.blackList();
+                        numberBlackListedPartitions.incrementAndGet();
+                        batch.failures.put(partition, ioe);
+                    }
+                }
+                batch.syncCompleted.countDown();
+
+                if (stopped && batch.partitions.isEmpty()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * The updates that are synced together by a single pass of a {@link GroupCommitSyncer}
+     */
+    private static class GroupCommitBatch {
+        private final Set<Partition<?>> partitions = new HashSet<>();
+        private final Map<Partition<?>, IOException> failures = new ConcurrentHashMap<>();
+        private final CountDownLatch syncCompleted = new CountDownLatch(1);
+        private long firstRequestNanos;
+
+        public void awaitSync(final Partition<?> partition) throws IOException {
+            try {
+                syncCompleted.await();
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for " + partition + " to be synced", ie);
+            }
+
+            final IOException failure = failures.get(partition);
+            if (failure != null) {
+                throw new IOException("Failed to sync " + partition, failure);
+            }
+        }
     }
 
     /**
@@ -628,6 +1084,8 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
         private static final Pattern JOURNAL_FILENAME_PATTERN = Pattern.compile("\\d+\\.journal");
 
         private final SerDe<S> serde;
+        private SerDe<S> journalSerde;
+        private SerDe<S> recoverySerde;
 
         private final Path editDirectory;
         private final int writeAheadLogVersion;
@@ -773,6 +1231,7 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
                     outStream.flush();
                     dataOut = outStream;
                     fileOut = fos;
+                    journalSerde = serde.createStreamSerDe();
                 } catch (final IOException ioe) {
                     logger.error("Failed to create new journal for {} due to {}", new Object[] {this, ioe.toString()}, ioe);
                     try {
@@ -915,7 +1374,7 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
                 final Object recordId = serde.getRecordIdentifier(record);
                 final S previousVersion = recordMap.get(recordId);
 
-                serde.serializeEdit(previousVersion, record, out);
+                journalSerde.serializeEdit(previousVersion, record, out);
                 if (++editsSerialized < numEditsToSerialize) {
                     out.write(TRANSACTION_CONTINUE);
                 } else {
@@ -930,6 +1389,25 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
             }
         }
 
+        /**
+         * Syncs everything that has been written to the current journal. May be
+         * called without holding the claim, so long as the partition cannot be
+         * rolled over or closed in the meantime.
+         *
+         * @throws IOException if unable to sync
+         */
+        public void sync() throws IOException {
+            final FileOutputStream out = fileOut;
+            if (out == null) {
+                throw new IOException(this + " is not open for writing");
+            }
+            out.getFD().sync();
+        }
+
+        public Path getEditDirectory() {
+            return editDirectory;
+        }
+
         private DataInputStream createDataInputStream(final Path path) throws IOException {
             return new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
         }
@@ -962,6 +1440,7 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
                     @SuppressWarnings("unused")
                     final String serdeClassName = recoveryIn.readUTF();
                     this.recoveryVersion = recoveryIn.readInt();
+                    this.recoverySerde = serde.createStreamSerDe();
 
                     break;
                 }
@@ -1000,6 +1479,7 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
             if (recoveryIn != null) {
                 recoveryIn.close();
             }
+            recoverySerde = null;
 
             final Path nextRecoveryPath = this.recoveryFiles.poll();
             if (nextRecoveryPath != null) {
@@ -1018,6 +1498,7 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
             outStream.flush();
             dataOut = outStream;
             fileOut = fos;
+            journalSerde = serde.createStreamSerDe();
         }
 
         public Set<Object> recoverNextTransaction(final Map<Object, S> currentRecordMap, final Map<Object, S> updatedRecordMap, final Set<String> swapLocations) throws IOException {
@@ -1025,7 +1506,7 @@ public final class MinimalLockingWriteAheadLog<T> implements WriteAheadRepositor
 
             int transactionFlag;
             do {
-                final S record = serde.deserializeEdit(recoveryIn, currentRecordMap, recoveryVersion);
+                final S record = recoverySerde.deserializeEdit(recoveryIn, currentRecordMap, recoveryVersion);
                 if (logger.isDebugEnabled()) {
                     logger.debug("{} Recovering Transaction {}: {}", new Object[] { this, maxTransactionId.get(), record });
                 }
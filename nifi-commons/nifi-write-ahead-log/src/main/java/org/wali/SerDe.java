@@ -125,4 +125,20 @@ public interface SerDe<T> {
      * @return version
      */
     int getVersion();
+
+    /**
+     * Returns a SerDe to use for a single stream, such as one journal or one
+     * chunk of a snapshot. A SerDe that keeps state across the records of a
+     * stream, such as a dictionary of values that have already been written,
+     * must return a new instance so that each stream begins with no state;
+     * every record in the stream is then serialized or deserialized in order
+     * using the returned SerDe. Because separate streams may be deserialized
+     * concurrently during recovery, a SerDe that returns itself must be
+     * thread-safe. By default, this SerDe is returned.
+     *
+     * @return a SerDe to use for a single stream
+     */
+    default SerDe<T> createStreamSerDe() {
+        return this;
+    }
 }
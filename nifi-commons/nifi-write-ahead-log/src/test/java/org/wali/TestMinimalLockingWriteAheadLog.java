@@ -34,6 +34,7 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -41,6 +42,7 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Assert;
@@ -612,6 +614,199 @@ public class TestMinimalLockingWriteAheadLog {
     }
 
 
+    @Test(timeout = 30000)
+    public void testGroupCommit() throws IOException, InterruptedException {
+        final Path path = Paths.get("target/minimal-locking-repo-group-commit");
+        deleteRecursively(path.toFile());
+        Files.createDirectories(path);
+
+        final AtomicInteger syncCount = new AtomicInteger(0);
+        final SyncListener syncListener = new SyncListener() {
+            @Override
+            public void onSync(final int partitionIndex) {
+                syncCount.incrementAndGet();
+            }
+
+            @Override
+            public void onGlobalSync() {
+            }
+        };
+
+        final DummyRecordSerde serde = new DummyRecordSerde();
+        final WriteAheadRepository<DummyRecord> writeRepo = new MinimalLockingWriteAheadLog<>(path, 4, serde, syncListener, false,
+            TimeUnit.MILLISECONDS.toNanos(1L));
+        assertTrue(writeRepo.recoverRecords().isEmpty());
+
+        final int numThreads = 8;
+        final int updatesPerThread = 200;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            final String prefix = t + "-";
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < updatesPerThread; i++) {
+                            writeRepo.update(Collections.singleton(new DummyRecord(prefix + i, UpdateType.CREATE)), true);
+                        }
+                    } catch (final Throwable t) {
+                        failure.set(t);
+                    }
+                }
+            }));
+        }
+
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        // every update is reported as synced once its group has been synced
+        assertEquals(numThreads * updatesPerThread, syncCount.get());
+        writeRepo.shutdown();
+
+        final WriteAheadRepository<DummyRecord> recoverRepo = new MinimalLockingWriteAheadLog<>(path, 4, serde, null);
+        assertEquals(numThreads * updatesPerThread, recoverRepo.recoverRecords().size());
+        recoverRepo.shutdown();
+    }
+
+    @Test
+    public void testRecoverSnapshotWrittenInChunks() throws IOException {
+        final Path path = Paths.get("target/minimal-locking-repo-snapshot-chunks");
+        deleteRecursively(path.toFile());
+        Files.createDirectories(path);
+
+        final DummyRecordSerde serde = new DummyRecordSerde();
+        final MinimalLockingWriteAheadLog<DummyRecord> writeRepo = new MinimalLockingWriteAheadLog<>(path, 4, serde, null);
+        assertTrue(writeRepo.recoverRecords().isEmpty());
+
+        // enough records that the snapshot is written in several chunks
+        final int numRecords = 200000;
+        final List<DummyRecord> records = new ArrayList<>();
+        for (int i = 0; i < numRecords; i++) {
+            records.add(new DummyRecord(String.valueOf(i), UpdateType.CREATE).setProperty("value", String.valueOf(i)));
+        }
+        writeRepo.update(records, false);
+        writeRepo.checkpoint();
+        assertTrue(path.resolve("snapshot").toFile().length() > 2 * 1024 * 1024);
+
+        // updates after the checkpoint are recovered from the partitions
+        writeRepo.update(Collections.singleton(new DummyRecord("0", UpdateType.DELETE)), false);
+        writeRepo.update(Collections.singleton(new DummyRecord("1", UpdateType.UPDATE).setProperty("value", "updated")), false);
+        writeRepo.shutdown();
+
+        final WriteAheadRepository<DummyRecord> recoverRepo = new MinimalLockingWriteAheadLog<>(path, 4, serde, null);
+        final Collection<DummyRecord> recovered = recoverRepo.recoverRecords();
+        assertEquals(numRecords - 1, recovered.size());
+        for (final DummyRecord record : recovered) {
+            final String expected = record.getId().equals("1") ? "updated" : record.getId();
+            assertEquals(expected, record.getProperty("value"));
+        }
+        recoverRepo.shutdown();
+    }
+
+    @Test
+    public void testFuzzyCheckpointWhileUpdating() throws IOException, InterruptedException {
+        final Path path = Paths.get("target/minimal-locking-repo-fuzzy-checkpoint");
+        deleteRecursively(path.toFile());
+        Files.createDirectories(path);
+
+        final DummyRecordSerde serde = new DummyRecordSerde();
+        final MinimalLockingWriteAheadLog<DummyRecord> writeRepo = new MinimalLockingWriteAheadLog<>(path, 4, serde, null, true);
+        assertTrue(writeRepo.recoverRecords().isEmpty());
+
+        final int numThreads = 4;
+        final int recordsPerThread = 500;
+        for (int t = 0; t < numThreads; t++) {
+            for (int i = 0; i < recordsPerThread; i++) {
+                writeRepo.update(Collections.singleton(new DummyRecord(t + "-" + i, UpdateType.CREATE).setProperty("i", "0")), false);
+            }
+        }
+
+        // each thread updates, deletes, and re-creates only its own records while checkpoints are taken
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<Map<String, String>> expected = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            final String prefix = t + "-";
+            final Map<String, String> values = new HashMap<>();
+            expected.add(values);
+
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final Random random = new Random();
+                        int iteration = 0;
+                        while (!stop.get() || iteration < 1000) {
+                            iteration++;
+                            final String id = prefix + random.nextInt(recordsPerThread);
+                            final DummyRecord record;
+                            if (values.get(id) == null && values.containsKey(id)) {
+                                record = new DummyRecord(id, UpdateType.CREATE).setProperty("i", String.valueOf(iteration));
+                                values.put(id, String.valueOf(iteration));
+                            } else if (iteration % 10 == 0) {
+                                record = new DummyRecord(id, UpdateType.DELETE);
+                                values.put(id, null);
+                            } else {
+                                record = new DummyRecord(id, UpdateType.UPDATE).setProperty("i", String.valueOf(iteration));
+                                values.put(id, String.valueOf(iteration));
+                            }
+                            writeRepo.update(Collections.singleton(record), false);
+                        }
+                    } catch (final Throwable t) {
+                        failure.set(t);
+                    }
+                }
+            }));
+        }
+
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        for (int i = 0; i < 5; i++) {
+            writeRepo.checkpoint();
+        }
+        stop.set(true);
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        // shutting down does not checkpoint, so recovery reads the last fuzzy snapshot and the journals written since
+        writeRepo.shutdown();
+        final WriteAheadRepository<DummyRecord> recoverRepo = new MinimalLockingWriteAheadLog<>(path, 4, serde, null);
+        final Collection<DummyRecord> recovered = recoverRepo.recoverRecords();
+        int expectedCount = 0;
+        for (int t = 0; t < numThreads; t++) {
+            for (int i = 0; i < recordsPerThread; i++) {
+                final String id = t + "-" + i;
+                final Map<String, String> values = expected.get(t);
+                if (!values.containsKey(id) || values.get(id) != null) {
+                    expectedCount++;
+                }
+            }
+        }
+        assertEquals(expectedCount, recovered.size());
+
+        for (final DummyRecord record : recovered) {
+            final Map<String, String> values = expected.get(Integer.parseInt(record.getId().substring(0, record.getId().indexOf('-'))));
+            final String expectedValue = values.containsKey(record.getId()) ? values.get(record.getId()) : "0";
+            assertEquals(expectedValue, record.getProperty("i"));
+        }
+
+        recoverRepo.shutdown();
+    }
+
     private static class InsertThread extends Thread {
 
         private final List<List<DummyRecord>> records;
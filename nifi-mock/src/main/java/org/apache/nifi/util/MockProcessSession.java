@@ -22,6 +22,10 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
@@ -53,6 +57,7 @@ import org.apache.nifi.processor.exception.ProcessException;
 import org.apache.nifi.processor.io.InputStreamCallback;
 import org.apache.nifi.processor.io.OutputStreamCallback;
 import org.apache.nifi.processor.io.StreamCallback;
+import org.apache.nifi.processor.util.FlowFileFilters;
 import org.apache.nifi.provenance.ProvenanceReporter;
 import org.junit.Assert;
 
@@ -204,6 +209,43 @@ public class MockProcessSession implements ProcessSession {
         }
     }
 
+    @Override
+    public ByteBuffer map(final FlowFile flowFile) {
+        validateState(flowFile);
+        if (flowFile == null) {
+            throw new IllegalArgumentException("argument cannot be null");
+        }
+
+        if (!(flowFile instanceof MockFlowFile)) {
+            throw new IllegalArgumentException("Cannot map a flow file that I did not create");
+        }
+
+        return ByteBuffer.wrap(((MockFlowFile) flowFile).getData()).asReadOnlyBuffer();
+    }
+
+    @Override
+    public void exportTo(final FlowFile flowFile, final WritableByteChannel channel) {
+        validateState(flowFile);
+        if (flowFile == null || channel == null) {
+            throw new IllegalArgumentException("arguments cannot be null");
+        }
+
+        if (!(flowFile instanceof MockFlowFile)) {
+            throw new IllegalArgumentException("Cannot export a flow file that I did not create");
+        }
+
+        final MockFlowFile mock = (MockFlowFile) flowFile;
+
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(mock.getData());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (final IOException e) {
+            throw new FlowFileAccessException(e.toString(), e);
+        }
+    }
+
     @Override
     public void exportTo(final FlowFile flowFile, final Path path, final boolean append) {
         validateState(flowFile);
@@ -251,6 +293,18 @@ public class MockProcessSession implements ProcessSession {
         return flowFiles;
     }
 
+    @Override
+    public List<FlowFile> get(final int maxResults, final long maxBytes, final String groupingAttribute) {
+        if (maxResults < 0 || maxBytes < 0) {
+            throw new IllegalArgumentException();
+        }
+        if (maxResults == 0) {
+            return new ArrayList<>();
+        }
+
+        return get(FlowFileFilters.newSizeBasedFilter(maxBytes, maxResults, groupingAttribute));
+    }
+
     @Override
     public List<FlowFile> get(final FlowFileFilter filter) {
         final List<FlowFile> flowFiles = new ArrayList<>();
@@ -309,6 +363,15 @@ public class MockProcessSession implements ProcessSession {
         }
     }
 
+    @Override
+    public MockFlowFile importFrom(final ReadableByteChannel channel, final FlowFile flowFile) {
+        if (channel == null) {
+            throw new IllegalArgumentException("argument cannot be null");
+        }
+
+        return importFrom(Channels.newInputStream(channel), flowFile);
+    }
+
     @Override
     public MockFlowFile importFrom(final Path path, final boolean keepSourceFile, final FlowFile flowFile) {
         validateState(flowFile);
@@ -53,6 +53,10 @@ public class SystemDiagnosticsSnapshotDTO implements Cloneable {
     private Long maxHeapBytes;
     private String heapUtilization;
 
+    private String queuedFlowFileHeap;
+    private Long queuedFlowFileHeapBytes;
+    private Long queuedFlowFileHeapBudgetBytes;
+
     private Integer availableProcessors;
     private Double processorLoadAverage;
 
@@ -302,6 +306,32 @@ public class SystemDiagnosticsSnapshotDTO implements Cloneable {
         this.maxHeapBytes = maxHeapBytes;
     }
 
+    @ApiModelProperty("Estimated amount of heap used by FlowFiles that are held in memory by connection queues.")
+    public String getQueuedFlowFileHeap() {
+        return queuedFlowFileHeap;
+    }
+
+    public void setQueuedFlowFileHeap(String queuedFlowFileHeap) {
+        this.queuedFlowFileHeap = queuedFlowFileHeap;
+    }
+
+    @ApiModelProperty("The estimated number of bytes of heap used by FlowFiles that are held in memory by connection queues")
+    public Long getQueuedFlowFileHeapBytes() {
+        return queuedFlowFileHeapBytes;
+    }
+
+    public void setQueuedFlowFileHeapBytes(Long queuedFlowFileHeapBytes) {
+        this.queuedFlowFileHeapBytes = queuedFlowFileHeapBytes;
+    }
+
+    @ApiModelProperty("The number of bytes of heap that FlowFiles held in memory by connection queues may use, or 0 if there is no limit")
+    public Long getQueuedFlowFileHeapBudgetBytes() {
+        return queuedFlowFileHeapBudgetBytes;
+    }
+
+    public void setQueuedFlowFileHeapBudgetBytes(Long queuedFlowFileHeapBudgetBytes) {
+        this.queuedFlowFileHeapBudgetBytes = queuedFlowFileHeapBudgetBytes;
+    }
 
     @Override
     public SystemDiagnosticsSnapshotDTO clone() {
@@ -329,6 +359,9 @@ public class SystemDiagnosticsSnapshotDTO implements Cloneable {
         other.setUsedHeapBytes(getUsedHeapBytes());
         other.setUsedNonHeap(getUsedNonHeap());
         other.setUsedNonHeapBytes(getUsedNonHeapBytes());
+        other.setQueuedFlowFileHeap(getQueuedFlowFileHeap());
+        other.setQueuedFlowFileHeapBytes(getQueuedFlowFileHeapBytes());
+        other.setQueuedFlowFileHeapBudgetBytes(getQueuedFlowFileHeapBudgetBytes());
 
         other.setFlowFileRepositoryStorageUsage(getFlowFileRepositoryStorageUsage().clone());
 
@@ -361,6 +394,10 @@ public class SystemDiagnosticsSnapshotDTO implements Cloneable {
         private Long totalSpaceBytes;
         private Long usedSpaceBytes;
         private String utilization;
+        private String writeLatency;
+        private Long writeLatencyNanos;
+        private String writeThroughput;
+        private Long writeThroughputBytes;
 
         /**
          * @return identifier for this storage location
@@ -474,6 +511,62 @@ public class SystemDiagnosticsSnapshotDTO implements Cloneable {
             this.usedSpaceBytes = usedSpaceBytes;
         }
 
+        /**
+         * @return average recent write latency
+         */
+        @ApiModelProperty(
+                value = "Average latency of recent writes to this storage location, if measured."
+        )
+        public String getWriteLatency() {
+            return writeLatency;
+        }
+
+        public void setWriteLatency(String writeLatency) {
+            this.writeLatency = writeLatency;
+        }
+
+        /**
+         * @return average recent write latency in nanoseconds
+         */
+        @ApiModelProperty(
+                value = "Average latency of recent writes to this storage location in nanoseconds, if measured."
+        )
+        public Long getWriteLatencyNanos() {
+            return writeLatencyNanos;
+        }
+
+        public void setWriteLatencyNanos(Long writeLatencyNanos) {
+            this.writeLatencyNanos = writeLatencyNanos;
+        }
+
+        /**
+         * @return recent write throughput
+         */
+        @ApiModelProperty(
+                value = "Amount of data recently written to this storage location per second, if measured."
+        )
+        public String getWriteThroughput() {
+            return writeThroughput;
+        }
+
+        public void setWriteThroughput(String writeThroughput) {
+            this.writeThroughput = writeThroughput;
+        }
+
+        /**
+         * @return recent write throughput in bytes per second
+         */
+        @ApiModelProperty(
+                value = "The number of bytes recently written to this storage location per second, if measured."
+        )
+        public Long getWriteThroughputBytes() {
+            return writeThroughputBytes;
+        }
+
+        public void setWriteThroughputBytes(Long writeThroughputBytes) {
+            this.writeThroughputBytes = writeThroughputBytes;
+        }
+
         @Override
         public StorageUsageDTO clone() {
             final StorageUsageDTO other = new StorageUsageDTO();
@@ -485,6 +578,10 @@ public class SystemDiagnosticsSnapshotDTO implements Cloneable {
             other.setTotalSpaceBytes(getTotalSpaceBytes());
             other.setUsedSpaceBytes(getUsedSpaceBytes());
             other.setUtilization(getUtilization());
+            other.setWriteLatency(getWriteLatency());
+            other.setWriteLatencyNanos(getWriteLatencyNanos());
+            other.setWriteThroughput(getWriteThroughput());
+            other.setWriteThroughputBytes(getWriteThroughputBytes());
             return other;
         }
     }
@@ -483,6 +483,8 @@ public class StatusMerger {
         target.setTotalThreads(target.getTotalThreads() + toMerge.getTotalThreads());
         target.setUsedHeapBytes(target.getUsedHeapBytes() + toMerge.getUsedHeapBytes());
         target.setUsedNonHeapBytes(target.getUsedNonHeapBytes() + toMerge.getUsedNonHeapBytes());
+        target.setQueuedFlowFileHeapBytes(target.getQueuedFlowFileHeapBytes() + toMerge.getQueuedFlowFileHeapBytes());
+        target.setQueuedFlowFileHeapBudgetBytes(target.getQueuedFlowFileHeapBudgetBytes() + toMerge.getQueuedFlowFileHeapBudgetBytes());
 
         merge(target.getContentRepositoryStorageUsage(), toMerge.getContentRepositoryStorageUsage());
         merge(target.getFlowFileRepositoryStorageUsage(), toMerge.getFlowFileRepositoryStorageUsage());
@@ -501,6 +503,9 @@ public class StatusMerger {
             target.setHeapUtilization(FormatUtils.formatUtilization(getUtilization(target.getUsedHeapBytes(), target.getMaxHeapBytes())));
         }
 
+        // queued flowfile heap
+        target.setQueuedFlowFileHeap(FormatUtils.formatDataSize(target.getQueuedFlowFileHeapBytes()));
+
         // non heap
         target.setMaxNonHeap(FormatUtils.formatDataSize(target.getMaxNonHeapBytes()));
         target.setTotalNonHeap(FormatUtils.formatDataSize(target.getTotalNonHeapBytes()));
@@ -534,6 +539,14 @@ public class StatusMerger {
         target.setFreeSpaceBytes(target.getFreeSpaceBytes() + toMerge.getFreeSpaceBytes());
         target.setTotalSpaceBytes(target.getTotalSpaceBytes() + toMerge.getTotalSpaceBytes());
         target.setUsedSpaceBytes(target.getUsedSpaceBytes() + toMerge.getUsedSpaceBytes());
+
+        // the slowest node's latency is the one that matters; throughput is the total across nodes
+        if (toMerge.getWriteLatencyNanos() != null) {
+            target.setWriteLatencyNanos(target.getWriteLatencyNanos() == null ? toMerge.getWriteLatencyNanos() : Math.max(target.getWriteLatencyNanos(), toMerge.getWriteLatencyNanos()));
+        }
+        if (toMerge.getWriteThroughputBytes() != null) {
+            target.setWriteThroughputBytes(target.getWriteThroughputBytes() == null ? toMerge.getWriteThroughputBytes() : target.getWriteThroughputBytes() + toMerge.getWriteThroughputBytes());
+        }
         updatePrettyPrintedFields(target);
     }
 
@@ -545,6 +558,13 @@ public class StatusMerger {
         if (target.getTotalSpaceBytes() != -1) {
             target.setUtilization(FormatUtils.formatUtilization(getUtilization(target.getUsedSpaceBytes(), target.getTotalSpaceBytes())));
         }
+
+        if (target.getWriteLatencyNanos() != null) {
+            target.setWriteLatency(String.format("%.2f millis", target.getWriteLatencyNanos() / 1_000_000D));
+        }
+        if (target.getWriteThroughputBytes() != null) {
+            target.setWriteThroughput(FormatUtils.formatDataSize(target.getWriteThroughputBytes()) + "/sec");
+        }
     }
 
 
@@ -44,6 +44,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -76,8 +77,10 @@ public final class StandardConnection implements Connection {
         destination = new AtomicReference<>(builder.destination);
         relationships = new AtomicReference<>(Collections.unmodifiableCollection(builder.relationships));
         scheduler = builder.scheduler;
+        final NiFiProperties properties = NiFiProperties.getInstance();
         flowFileQueue = new StandardFlowFileQueue(id, this, builder.flowFileRepository, builder.provenanceRepository, builder.resourceClaimManager,
-            scheduler, builder.swapManager, builder.eventReporter, NiFiProperties.getInstance().getQueueSwapThreshold());
+            scheduler, builder.swapManager, builder.eventReporter, properties.getQueueSwapThreshold(),
+            builder.swapInExecutor, properties.getQueueSwapPrefetchThreshold());
         hashCode = new HashCodeBuilder(7, 67).append(id).toHashCode();
     }
 
@@ -293,6 +296,7 @@ public final class StandardConnection implements Connection {
         private Connectable destination;
         private Collection<Relationship> relationships;
         private FlowFileSwapManager swapManager;
+        private Executor swapInExecutor;
         private EventReporter eventReporter;
         private FlowFileRepository flowFileRepository;
         private ProvenanceEventRepository provenanceRepository;
@@ -348,6 +352,11 @@ public final class StandardConnection implements Connection {
             return this;
         }
 
+        public Builder swapInExecutor(final Executor swapInExecutor) {
+            this.swapInExecutor = swapInExecutor;
+            return this;
+        }
+
         public Builder eventReporter(final EventReporter eventReporter) {
             this.eventReporter = eventReporter;
             return this;
@@ -33,12 +33,17 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import org.apache.nifi.controller.queue.FlowFileQueue;
 import org.apache.nifi.controller.queue.QueueSize;
@@ -51,6 +56,7 @@ import org.apache.nifi.controller.repository.SwapContents;
 import org.apache.nifi.controller.repository.SwapManagerInitializationContext;
 import org.apache.nifi.controller.repository.SwapSummary;
 import org.apache.nifi.controller.repository.claim.ContentClaim;
+import org.apache.nifi.controller.repository.claim.InlineContentClaim;
 import org.apache.nifi.controller.repository.claim.ResourceClaim;
 import org.apache.nifi.controller.repository.claim.ResourceClaimManager;
 import org.apache.nifi.controller.repository.claim.StandardContentClaim;
@@ -59,6 +65,7 @@ import org.apache.nifi.controller.swap.StandardSwapSummary;
 import org.apache.nifi.events.EventReporter;
 import org.apache.nifi.reporting.Severity;
 import org.apache.nifi.stream.io.BufferedOutputStream;
+import org.apache.nifi.stream.io.VarIntUtils;
 import org.apache.nifi.util.NiFiProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -74,11 +81,22 @@ public class FileSystemSwapManager implements FlowFileSwapManager {
     private static final Pattern SWAP_FILE_PATTERN = Pattern.compile("\\d+-.+\\.swap");
     private static final Pattern TEMP_SWAP_FILE_PATTERN = Pattern.compile("\\d+-.+\\.swap\\.part");
 
-    public static final int SWAP_ENCODING_VERSION = 8;
+    public static final int SWAP_ENCODING_VERSION = 10;
+
+    // references to the Content Claim of a FlowFile in the compact encoding; 0 indicates that there is no Content Claim
+    // and 1 that a Resource Claim is being written for the first time
+    private static final long CLAIM_REFERENCE_INLINE = 2L;
+    private static final long CLAIM_REFERENCE_DICTIONARY_OFFSET = 3L;
+
+    // Swap Encoding Version 9 writes a compression codec identifier immediately after the header
+    private static final int COMPRESSION_NONE = 0;
+    private static final int COMPRESSION_DEFLATE = 1;
+
     public static final String EVENT_CATEGORY = "Swap FlowFiles";
     private static final Logger logger = LoggerFactory.getLogger(FileSystemSwapManager.class);
 
     private final File storageDirectory;
+    private final boolean compress;
 
     // effectively final
     private FlowFileRepository flowFileRepository;
@@ -93,6 +111,8 @@ public class FileSystemSwapManager implements FlowFileSwapManager {
         if (!storageDirectory.exists() && !storageDirectory.mkdirs()) {
             throw new RuntimeException("Cannot create Swap Storage directory " + storageDirectory.getAbsolutePath());
         }
+
+        this.compress = Boolean.parseBoolean(properties.getProperty(NiFiProperties.SWAP_COMPRESSION_ENABLED, "false"));
     }
 
 
@@ -114,7 +134,7 @@ public class FileSystemSwapManager implements FlowFileSwapManager {
         final String swapLocation = swapFile.getAbsolutePath();
 
         try (final FileOutputStream fos = new FileOutputStream(swapTempFile)) {
-            serializeFlowFiles(toSwap, flowFileQueue, swapLocation, fos);
+            serializeFlowFiles(toSwap, flowFileQueue, swapLocation, fos, compress);
             fos.getFD().sync();
         } catch (final IOException ioe) {
             // we failed to write out the entire swap file. Delete the temporary file, if we can.
@@ -287,8 +307,12 @@ public class FileSystemSwapManager implements FlowFileSwapManager {
     }
 
 
-    @SuppressWarnings("deprecation")
     public static int serializeFlowFiles(final List<FlowFileRecord> toSwap, final FlowFileQueue queue, final String swapLocation, final OutputStream destination) throws IOException {
+        return serializeFlowFiles(toSwap, queue, swapLocation, destination, false);
+    }
+
+    public static int serializeFlowFiles(final List<FlowFileRecord> toSwap, final FlowFileQueue queue, final String swapLocation, final OutputStream destination,
+        final boolean compress) throws IOException {
         if (toSwap == null || toSwap.isEmpty()) {
             return 0;
         }
@@ -316,69 +340,132 @@ public class FileSystemSwapManager implements FlowFileSwapManager {
             }
 
             out.writeLong(maxRecordId);
+            out.write(compress ? COMPRESSION_DEFLATE : COMPRESSION_NONE);
+
+            if (compress) {
+                final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                try {
+                    final DeflaterOutputStream deflaterOut = new DeflaterOutputStream(out, deflater);
+                    final DataOutputStream compressedOut = new DataOutputStream(new BufferedOutputStream(deflaterOut));
+                    serializeFlowFileRecords(toSwap, compressedOut);
+                    compressedOut.flush();
+                    deflaterOut.finish();
+                } finally {
+                    deflater.end();
+                }
+            } else {
+                serializeFlowFileRecords(toSwap, out);
+            }
+        } finally {
+            out.flush();
+        }
 
-            for (final FlowFileRecord flowFile : toSwap) {
-                out.writeLong(flowFile.getId());
-                out.writeLong(flowFile.getEntryDate());
+        logger.info("Successfully swapped out {} FlowFiles from {} to Swap File {}", new Object[] {toSwap.size(), queue, swapLocation});
 
-                final Set<String> lineageIdentifiers = flowFile.getLineageIdentifiers();
-                out.writeInt(lineageIdentifiers.size());
-                for (final String lineageId : lineageIdentifiers) {
-                    out.writeUTF(lineageId);
-                }
+        return toSwap.size();
+    }
 
-                out.writeLong(flowFile.getLineageStartDate());
-                out.writeLong(flowFile.getLastQueueDate());
-                out.writeLong(flowFile.getSize());
+    /**
+     * Writes the given FlowFiles using a compact encoding: numeric fields are written as variable-length integers (dates and IDs
+     * as deltas), and Strings and Resource Claims are written in full only the first time that they are encountered in the swap file.
+     * Thereafter, they are written as a reference into a dictionary that the reader rebuilds as it goes. Content that is held inline
+     * with a FlowFile is written in full.
+     */
+    @SuppressWarnings("deprecation")
+    private static void serializeFlowFileRecords(final List<FlowFileRecord> toSwap, final DataOutputStream out) throws IOException {
+        final Map<String, Integer> stringDictionary = new HashMap<>();
+        final Map<ResourceClaim, Integer> claimDictionary = new HashMap<>();
+
+        long previousId = 0L;
+        long previousEntryDate = 0L;
+        for (final FlowFileRecord flowFile : toSwap) {
+            VarIntUtils.writeSignedVarLong(flowFile.getId() - previousId, out);
+            previousId = flowFile.getId();
+
+            final long entryDate = flowFile.getEntryDate();
+            VarIntUtils.writeSignedVarLong(entryDate - previousEntryDate, out);
+            previousEntryDate = entryDate;
+
+            final Set<String> lineageIdentifiers = flowFile.getLineageIdentifiers();
+            VarIntUtils.writeVarLong(lineageIdentifiers.size(), out);
+            for (final String lineageId : lineageIdentifiers) {
+                writeDictionaryString(lineageId, stringDictionary, out);
+            }
 
-                final ContentClaim claim = flowFile.getContentClaim();
-                if (claim == null) {
-                    out.writeBoolean(false);
-                } else {
-                    out.writeBoolean(true);
-                    final ResourceClaim resourceClaim = claim.getResourceClaim();
-                    out.writeUTF(resourceClaim.getId());
-                    out.writeUTF(resourceClaim.getContainer());
-                    out.writeUTF(resourceClaim.getSection());
-                    out.writeLong(claim.getOffset());
-                    out.writeLong(claim.getLength());
-                    out.writeLong(flowFile.getContentClaimOffset());
+            VarIntUtils.writeSignedVarLong(flowFile.getLineageStartDate() - entryDate, out);
+
+            final Long lastQueueDate = flowFile.getLastQueueDate();
+            VarIntUtils.writeVarLong(lastQueueDate == null ? 0L : VarIntUtils.zigZag(lastQueueDate - entryDate) + 1L, out);
+            VarIntUtils.writeVarLong(flowFile.getSize(), out);
+
+            final ContentClaim claim = flowFile.getContentClaim();
+            if (claim == null) {
+                VarIntUtils.writeVarLong(0L, out);
+            } else if (claim instanceof InlineContentClaim && ((InlineContentClaim) claim).isInline()) {
+                final InlineContentClaim inlineClaim = (InlineContentClaim) claim;
+                VarIntUtils.writeVarLong(CLAIM_REFERENCE_INLINE, out);
+                out.writeBoolean(inlineClaim.isLossTolerant());
+
+                final byte[] content = inlineClaim.getContent();
+                VarIntUtils.writeVarLong(content.length, out);
+                out.write(content);
+                VarIntUtils.writeVarLong(flowFile.getContentClaimOffset(), out);
+            } else {
+                final ResourceClaim resourceClaim = claim.getResourceClaim();
+                final Integer claimIndex = claimDictionary.get(resourceClaim);
+                if (claimIndex == null) {
+                    VarIntUtils.writeVarLong(1L, out);
+                    writeDictionaryString(resourceClaim.getId(), stringDictionary, out);
+                    writeDictionaryString(resourceClaim.getContainer(), stringDictionary, out);
+                    writeDictionaryString(resourceClaim.getSection(), stringDictionary, out);
                     out.writeBoolean(resourceClaim.isLossTolerant());
+                    claimDictionary.put(resourceClaim, claimDictionary.size());
+                } else {
+                    VarIntUtils.writeVarLong(claimIndex + CLAIM_REFERENCE_DICTIONARY_OFFSET, out);
                 }
 
-                final Map<String, String> attributes = flowFile.getAttributes();
-                out.writeInt(attributes.size());
-                for (final Map.Entry<String, String> entry : attributes.entrySet()) {
-                    writeString(entry.getKey(), out);
-                    writeString(entry.getValue(), out);
-                }
+                VarIntUtils.writeVarLong(claim.getOffset(), out);
+                VarIntUtils.writeSignedVarLong(claim.getLength(), out);
+                VarIntUtils.writeVarLong(flowFile.getContentClaimOffset(), out);
+            }
+
+            final Map<String, String> attributes = flowFile.getAttributes();
+            VarIntUtils.writeVarLong(attributes.size(), out);
+            for (final Map.Entry<String, String> entry : attributes.entrySet()) {
+                writeDictionaryString(entry.getKey(), stringDictionary, out);
+                writeDictionaryString(entry.getValue(), stringDictionary, out);
             }
-        } finally {
-            out.flush();
         }
+    }
 
-        logger.info("Successfully swapped out {} FlowFiles from {} to Swap File {}", new Object[] {toSwap.size(), queue, swapLocation});
+    private static void writeDictionaryString(final String value, final Map<String, Integer> dictionary, final DataOutputStream out) throws IOException {
+        final Integer index = dictionary.get(value);
+        if (index != null) {
+            VarIntUtils.writeVarLong(index + 1L, out);
+            return;
+        }
 
-        return toSwap.size();
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        VarIntUtils.writeVarLong(0L, out);
+        VarIntUtils.writeVarLong(bytes.length, out);
+        out.write(bytes);
+        dictionary.put(value, dictionary.size());
     }
 
-    private static void writeString(final String toWrite, final OutputStream out) throws IOException {
-        final byte[] bytes = toWrite.getBytes(StandardCharsets.UTF_8);
-        final int utflen = bytes.length;
-
-        if (utflen < 65535) {
-            out.write(utflen >>> 8);
-            out.write(utflen);
-            out.write(bytes);
-        } else {
-            out.write(255);
-            out.write(255);
-            out.write(utflen >>> 24);
-            out.write(utflen >>> 16);
-            out.write(utflen >>> 8);
-            out.write(utflen);
-            out.write(bytes);
+    private static String readDictionaryString(final List<String> dictionary, final DataInputStream in) throws IOException {
+        final long reference = VarIntUtils.readVarLong(in);
+        if (reference > 0L) {
+            if (reference > dictionary.size()) {
+                throw new IOException("Swap File references String " + (reference - 1) + " but only " + dictionary.size() + " Strings have been defined");
+            }
+            return dictionary.get((int) reference - 1);
         }
+
+        final byte[] bytes = new byte[(int) VarIntUtils.readVarLong(in)];
+        in.readFully(bytes);
+        final String value = new String(bytes, StandardCharsets.UTF_8);
+        dictionary.add(value);
+        return value;
     }
 
     static SwapContents deserializeFlowFiles(final DataInputStream in, final String swapLocation, final FlowFileQueue queue, final ResourceClaimManager claimManager) throws IOException {
@@ -416,6 +503,10 @@ public class FileSystemSwapManager implements FlowFileSwapManager {
 
     private static SwapContents deserializeFlowFiles(final DataInputStream in, final QueueSize queueSize, final Long maxRecordId,
         final int serializationVersion, final boolean incrementContentClaims, final ResourceClaimManager claimManager, final String location) throws IOException {
+        if (serializationVersion > 8) {
+            return deserializeCompactFlowFiles(in, queueSize, maxRecordId, serializationVersion, incrementContentClaims, claimManager, location);
+        }
+
         final List<FlowFileRecord> flowFiles = new ArrayList<>(queueSize.getObjectCount());
         final List<ResourceClaim> resourceClaims = new ArrayList<>(queueSize.getObjectCount());
         Long maxId = maxRecordId;
@@ -536,6 +627,138 @@ public class FileSystemSwapManager implements FlowFileSwapManager {
         return new StandardSwapContents(swapSummary, flowFiles);
     }
 
+    private static SwapContents deserializeCompactFlowFiles(final DataInputStream in, final QueueSize queueSize, final Long maxRecordId,
+        final int serializationVersion, final boolean incrementContentClaims, final ResourceClaimManager claimManager, final String location) throws IOException {
+
+        final int compression = in.read();
+        if (compression < 0) {
+            final SwapSummary swapSummary = new StandardSwapSummary(queueSize, maxRecordId, Collections.<ResourceClaim> emptyList());
+            throw new IncompleteSwapFileException(location, new StandardSwapContents(swapSummary, Collections.<FlowFileRecord> emptyList()));
+        }
+
+        if (compression == COMPRESSION_NONE) {
+            return deserializeFlowFileRecords(in, queueSize, maxRecordId, serializationVersion, incrementContentClaims, claimManager, location);
+        } else if (compression == COMPRESSION_DEFLATE) {
+            final Inflater inflater = new Inflater();
+            try {
+                final DataInputStream inflatedIn = new DataInputStream(new BufferedInputStream(new InflaterInputStream(in, inflater)));
+                return deserializeFlowFileRecords(inflatedIn, queueSize, maxRecordId, serializationVersion, incrementContentClaims, claimManager, location);
+            } finally {
+                inflater.end();
+            }
+        } else {
+            throw new IOException("Swap File " + location + " uses an unknown compression codec (" + compression + ")");
+        }
+    }
+
+    private static SwapContents deserializeFlowFileRecords(final DataInputStream in, final QueueSize queueSize, final Long maxRecordId,
+        final int serializationVersion, final boolean incrementContentClaims, final ResourceClaimManager claimManager, final String location) throws IOException {
+
+        // version 9 did not support inline content, so its dictionary references began immediately after the reference for a new Resource Claim
+        final long dictionaryOffset = serializationVersion > 9 ? CLAIM_REFERENCE_DICTIONARY_OFFSET : 2L;
+
+        final List<FlowFileRecord> flowFiles = new ArrayList<>(queueSize.getObjectCount());
+        final List<ResourceClaim> resourceClaims = new ArrayList<>(queueSize.getObjectCount());
+        final List<String> stringDictionary = new ArrayList<>();
+        final List<ResourceClaim> claimDictionary = new ArrayList<>();
+        Long maxId = maxRecordId;
+
+        long previousId = 0L;
+        long previousEntryDate = 0L;
+        for (int i = 0; i < queueSize.getObjectCount(); i++) {
+            try {
+                final StandardFlowFileRecord.Builder ffBuilder = new StandardFlowFileRecord.Builder();
+
+                final long recordId = previousId + VarIntUtils.readSignedVarLong(in);
+                previousId = recordId;
+                if (maxId == null || recordId > maxId) {
+                    maxId = recordId;
+                }
+                ffBuilder.id(recordId);
+
+                final long entryDate = previousEntryDate + VarIntUtils.readSignedVarLong(in);
+                previousEntryDate = entryDate;
+                ffBuilder.entryDate(entryDate);
+
+                final int numLineageIdentifiers = (int) VarIntUtils.readVarLong(in);
+                final Set<String> lineageIdentifiers = new HashSet<>(numLineageIdentifiers);
+                for (int lineageIdIdx = 0; lineageIdIdx < numLineageIdentifiers; lineageIdIdx++) {
+                    lineageIdentifiers.add(readDictionaryString(stringDictionary, in));
+                }
+                ffBuilder.lineageIdentifiers(lineageIdentifiers);
+                ffBuilder.lineageStartDate(entryDate + VarIntUtils.readSignedVarLong(in));
+
+                final long lastQueueDate = VarIntUtils.readVarLong(in);
+                if (lastQueueDate > 0L) {
+                    ffBuilder.lastQueueDate(entryDate + VarIntUtils.unZigZag(lastQueueDate - 1L));
+                }
+
+                ffBuilder.size(VarIntUtils.readVarLong(in));
+
+                final long claimReference = VarIntUtils.readVarLong(in);
+                ResourceClaim resourceClaim = null;
+                if (claimReference == CLAIM_REFERENCE_INLINE && serializationVersion > 9) {
+                    final boolean lossTolerant = in.readBoolean();
+                    final byte[] content = new byte[(int) VarIntUtils.readVarLong(in)];
+                    in.readFully(content);
+
+                    ffBuilder.contentClaim(new InlineContentClaim(content, lossTolerant));
+                    ffBuilder.contentClaimOffset(VarIntUtils.readVarLong(in));
+                } else if (claimReference > 0L) {
+                    if (claimReference == 1L) {
+                        final String claimId = readDictionaryString(stringDictionary, in);
+                        final String container = readDictionaryString(stringDictionary, in);
+                        final String section = readDictionaryString(stringDictionary, in);
+                        final boolean lossTolerant = in.readBoolean();
+
+                        resourceClaim = claimManager.newResourceClaim(container, section, claimId, lossTolerant);
+                        claimDictionary.add(resourceClaim);
+                    } else if (claimReference - dictionaryOffset < claimDictionary.size()) {
+                        resourceClaim = claimDictionary.get((int) (claimReference - dictionaryOffset));
+                    } else {
+                        throw new IOException("Swap File references Resource Claim " + (claimReference - dictionaryOffset) + " but only "
+                            + claimDictionary.size() + " Resource Claims have been defined");
+                    }
+
+                    final long resourceOffset = VarIntUtils.readVarLong(in);
+                    final long resourceLength = VarIntUtils.readSignedVarLong(in);
+                    final long claimOffset = VarIntUtils.readVarLong(in);
+
+                    final StandardContentClaim claim = new StandardContentClaim(resourceClaim, resourceOffset);
+                    claim.setLength(resourceLength);
+
+                    if (incrementContentClaims) {
+                        claimManager.incrementClaimantCount(resourceClaim);
+                    }
+
+                    ffBuilder.contentClaim(claim);
+                    ffBuilder.contentClaimOffset(claimOffset);
+                }
+
+                final int numAttributes = (int) VarIntUtils.readVarLong(in);
+                for (int j = 0; j < numAttributes; j++) {
+                    final String key = readDictionaryString(stringDictionary, in);
+                    final String value = readDictionaryString(stringDictionary, in);
+                    ffBuilder.addAttribute(key, value);
+                }
+
+                final FlowFileRecord record = ffBuilder.build();
+                if (resourceClaim != null) {
+                    resourceClaims.add(resourceClaim);
+                }
+
+                flowFiles.add(record);
+            } catch (final EOFException eof) {
+                final SwapSummary swapSummary = new StandardSwapSummary(queueSize, maxId, resourceClaims);
+                final SwapContents partialContents = new StandardSwapContents(swapSummary, flowFiles);
+                throw new IncompleteSwapFileException(location, partialContents);
+            }
+        }
+
+        final SwapSummary swapSummary = new StandardSwapSummary(queueSize, maxId, resourceClaims);
+        return new StandardSwapContents(swapSummary, flowFiles);
+    }
+
     private static String readString(final InputStream in) throws IOException {
         final Integer numBytes = readFieldLength(in);
         if (numBytes == null) {
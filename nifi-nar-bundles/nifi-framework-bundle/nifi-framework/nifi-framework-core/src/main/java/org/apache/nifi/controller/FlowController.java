@@ -71,11 +71,14 @@ import org.apache.nifi.controller.reporting.StandardReportingInitializationConte
 import org.apache.nifi.controller.reporting.StandardReportingTaskNode;
 import org.apache.nifi.controller.repository.ContentRepository;
 import org.apache.nifi.controller.repository.CounterRepository;
+import org.apache.nifi.controller.repository.DeduplicatingContentRepository;
 import org.apache.nifi.controller.repository.FlowFileEvent;
 import org.apache.nifi.controller.repository.FlowFileEventRepository;
 import org.apache.nifi.controller.repository.FlowFileRecord;
 import org.apache.nifi.controller.repository.FlowFileRepository;
 import org.apache.nifi.controller.repository.FlowFileSwapManager;
+import org.apache.nifi.controller.repository.InlineContentRepository;
+import org.apache.nifi.controller.repository.ProvenanceEventFilter;
 import org.apache.nifi.controller.repository.QueueProvider;
 import org.apache.nifi.controller.repository.RepositoryRecord;
 import org.apache.nifi.controller.repository.RepositoryStatusReport;
@@ -141,6 +144,7 @@ import org.apache.nifi.logging.ReportingTaskLogObserver;
 import org.apache.nifi.nar.ExtensionManager;
 import org.apache.nifi.nar.NarCloseable;
 import org.apache.nifi.nar.NarThreadContextClassLoader;
+import org.apache.nifi.processor.DataUnit;
 import org.apache.nifi.processor.GhostProcessor;
 import org.apache.nifi.processor.Processor;
 import org.apache.nifi.processor.ProcessorInitializationContext;
@@ -218,6 +222,7 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -243,6 +248,8 @@ public class FlowController implements EventAccess, ControllerServiceProvider, R
     public static final String GRACEFUL_SHUTDOWN_PERIOD = "nifi.flowcontroller.graceful.shutdown.seconds";
     public static final long DEFAULT_GRACEFUL_SHUTDOWN_SECONDS = 10;
     public static final int METRICS_RESERVOIR_SIZE = 288; // 1 day worth of 5-minute captures
+    private static final long QUEUE_COLD_MILLIS = 10000L; // queues not polled for this long are swapped out first when over the heap budget
+    private static final long MAX_CONTENT_INLINE_THRESHOLD = 1024L * 1024L; // larger content would be better served by the Content Repository
 
     public static final String ROOT_GROUP_ID_ALIAS = "root";
     public static final String DEFAULT_ROOT_GROUP_NAME = "NiFi Flow";
@@ -317,6 +324,8 @@ public class FlowController implements EventAccess, ControllerServiceProvider, R
 
 
     private final ScheduledExecutorService clusterTaskExecutor = new FlowEngine(3, "Clustering Tasks", true);
+    private final ExecutorService swapInExecutor;
+    private final QueueMemoryManager queueMemoryManager;
     private final ResourceClaimManager resourceClaimManager = new StandardResourceClaimManager();
 
     // guarded by rwLock
@@ -428,6 +437,9 @@ public class FlowController implements EventAccess, ControllerServiceProvider, R
         timerDrivenEngineRef = new AtomicReference<>(new FlowEngine(maxTimerDrivenThreads.get(), "Timer-Driven Process"));
         eventDrivenEngineRef = new AtomicReference<>(new FlowEngine(maxEventDrivenThreads.get(), "Event-Driven Process"));
 
+        final int swapInThreads = properties.getSwapInThreads();
+        swapInExecutor = swapInThreads > 0 ? new FlowEngine(swapInThreads, "Swap In", true) : null;
+
         final FlowFileRepository flowFileRepo = createFlowFileRepository(properties, resourceClaimManager);
         flowFileRepository = flowFileRepo;
         flowFileEventRepository = flowFileEventRepo;
@@ -457,7 +469,9 @@ public class FlowController implements EventAccess, ControllerServiceProvider, R
         processScheduler = new StandardProcessScheduler(this, encryptor, stateManagerProvider);
         eventDrivenWorkerQueue = new EventDrivenWorkerQueue(false, false, processScheduler);
 
-        final ProcessContextFactory contextFactory = new ProcessContextFactory(contentRepository, flowFileRepository, flowFileEventRepository, counterRepositoryRef.get(), provenanceEventRepository);
+        final ProvenanceEventFilter provenanceEventFilter = ProvenanceEventFilter.fromProperties(properties);
+        final ProcessContextFactory contextFactory = new ProcessContextFactory(contentRepository, flowFileRepository, flowFileEventRepository, counterRepositoryRef.get(),
+            provenanceEventRepository, provenanceEventFilter);
         processScheduler.setSchedulingAgent(SchedulingStrategy.EVENT_DRIVEN, new EventDrivenSchedulingAgent(
             eventDrivenEngineRef.get(), this, stateManagerProvider, eventDrivenWorkerQueue, contextFactory, maxEventDrivenThreads.get(), encryptor));
 
@@ -554,6 +568,11 @@ public class FlowController implements EventAccess, ControllerServiceProvider, R
             }
         }, snapshotMillis, snapshotMillis, TimeUnit.MILLISECONDS);
 
+        queueMemoryManager = new QueueMemoryManager(getQueueHeapBudget(properties), QUEUE_COLD_MILLIS, () -> getGroup(getRootGroupId()).findAllConnections());
+        if (queueMemoryManager.getBudgetBytes() > 0L) {
+            timerDrivenEngineRef.get().scheduleWithFixedDelay(queueMemoryManager, 1L, 1L, TimeUnit.SECONDS);
+        }
+
         heartbeatBeanRef.set(new HeartbeatBean(rootGroup, false, new NodeConnectionStatus(nodeId, DisconnectionCode.NOT_YET_CONNECTED)));
 
         if (configuredForClustering) {
@@ -567,6 +586,26 @@ public class FlowController implements EventAccess, ControllerServiceProvider, R
         }
     }
 
+    private static long getQueueHeapBudget(final NiFiProperties properties) {
+        final String budget = properties.getQueueHeapBudget();
+        if (StringUtils.isBlank(budget)) {
+            return 0L;
+        }
+
+        try {
+            final String trimmed = budget.trim();
+            if (trimmed.endsWith("%")) {
+                final double percentage = Double.parseDouble(trimmed.substring(0, trimmed.length() - 1).trim());
+                return (long) (Runtime.getRuntime().maxMemory() * percentage / 100D);
+            }
+
+            return DataUnit.parseDataSize(trimmed, DataUnit.B).longValue();
+        } catch (final Exception e) {
+            LOG.warn("Invalid value for property {}: {}; FlowFile Queues will not be limited to a heap budget", NiFiProperties.QUEUE_HEAP_BUDGET, budget);
+            return 0L;
+        }
+    }
+
     @Override
     public Authorizable getParentAuthorizable() {
         return null;
@@ -784,16 +823,37 @@ public class FlowController implements EventAccess, ControllerServiceProvider, R
         }
 
         try {
-            final ContentRepository contentRepo = NarThreadContextClassLoader.createInstance(implementationClassName, ContentRepository.class);
+            ContentRepository contentRepo = NarThreadContextClassLoader.createInstance(implementationClassName, ContentRepository.class);
+            if (properties.isContentRepositoryDedupEnabled()) {
+                contentRepo = new DeduplicatingContentRepository(contentRepo, properties.getContentRepositoryDedupPath());
+            }
+
             synchronized (contentRepo) {
                 contentRepo.initialize(resourceClaimManager);
             }
-            return contentRepo;
+
+            // always wrap the repository so that content that was stored inline previously can still be read if the threshold is lowered
+            return new InlineContentRepository(contentRepo, getContentRepositoryInlineThreshold(properties));
         } catch (final Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    private static int getContentRepositoryInlineThreshold(final NiFiProperties properties) {
+        final String threshold = properties.getContentRepositoryInlineThreshold();
+        if (StringUtils.isBlank(threshold)) {
+            return 0;
+        }
+
+        try {
+            final long bytes = DataUnit.parseDataSize(threshold.trim(), DataUnit.B).longValue();
+            return (int) Math.max(0L, Math.min(bytes, MAX_CONTENT_INLINE_THRESHOLD));
+        } catch (final Exception e) {
+            LOG.warn("Invalid value for property {}: {}; FlowFile content will not be stored inline", NiFiProperties.CONTENT_REPOSITORY_INLINE_THRESHOLD, threshold);
+            return 0;
+        }
+    }
+
     private ProvenanceEventRepository createProvenanceRepository(final NiFiProperties properties) throws InstantiationException, IllegalAccessException, ClassNotFoundException {
         final String implementationClassName = properties.getProperty(NiFiProperties.PROVENANCE_REPO_IMPLEMENTATION_CLASS, DEFAULT_PROVENANCE_REPO_IMPLEMENTATION);
         if (implementationClassName == null) {
@@ -874,6 +934,7 @@ public class FlowController implements EventAccess, ControllerServiceProvider, R
             .source(requireNonNull(source))
             .destination(destination)
             .swapManager(swapManager)
+            .swapInExecutor(swapInExecutor)
             .eventReporter(eventReporter)
             .resourceClaimManager(resourceClaimManager)
             .flowFileRepository(flowFileRepository)
@@ -1251,6 +1312,9 @@ public class FlowController implements EventAccess, ControllerServiceProvider, R
             }
 
             clusterTaskExecutor.shutdownNow();
+            if (swapInExecutor != null) {
+                swapInExecutor.shutdownNow();
+            }
 
             if (zooKeeperStateServer != null) {
                 zooKeeperStateServer.shutdown();
@@ -1455,7 +1519,10 @@ public class FlowController implements EventAccess, ControllerServiceProvider, R
 
     public SystemDiagnostics getSystemDiagnostics() {
         final SystemDiagnosticsFactory factory = new SystemDiagnosticsFactory();
-        return factory.create(flowFileRepository, contentRepository);
+        final SystemDiagnostics systemDiagnostics = factory.create(flowFileRepository, contentRepository);
+        systemDiagnostics.setQueuedFlowFileHeap(queueMemoryManager.getEstimatedHeapBytes());
+        systemDiagnostics.setQueuedFlowFileHeapBudget(queueMemoryManager.getBudgetBytes());
+        return systemDiagnostics;
     }
 
     //
@@ -2218,6 +2285,9 @@ public class FlowController implements EventAccess, ControllerServiceProvider, R
             connStatus.setDestinationName(conn.getDestination().getName());
             connStatus.setBackPressureDataSizeThreshold(conn.getFlowFileQueue().getBackPressureDataSizeThreshold());
             connStatus.setBackPressureObjectThreshold(conn.getFlowFileQueue().getBackPressureObjectThreshold());
+            connStatus.setSwapInCount(conn.getFlowFileQueue().getSwapInCount());
+            connStatus.setSwapInWaitCount(conn.getFlowFileQueue().getSwapInWaitCount());
+            connStatus.setEstimatedHeapBytes(conn.getFlowFileQueue().getEstimatedHeapBytes());
 
             final FlowFileEvent connectionStatusReport = statusReport.getReportEntry(conn.getIdentifier());
             if (connectionStatusReport != null) {
@@ -3509,7 +3579,7 @@ public class FlowController implements EventAccess, ControllerServiceProvider, R
             .setComponentId(getRootGroupId())
             .setDetails("Download of Content requested by " + requestor + " for " + flowFile);
 
-        if (contentClaim != null) {
+        if (resourceClaim != null) {
             sendEventBuilder.setCurrentContentClaim(resourceClaim.getContainer(), resourceClaim.getSection(), resourceClaim.getId(),
                 contentClaim.getOffset() + flowFile.getContentClaimOffset(), flowFile.getSize());
         }
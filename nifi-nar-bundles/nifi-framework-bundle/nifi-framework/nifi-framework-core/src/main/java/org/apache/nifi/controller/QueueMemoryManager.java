@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.apache.nifi.connectable.Connection;
+import org.apache.nifi.controller.queue.FlowFileQueue;
+import org.apache.nifi.controller.repository.FlowFileRecord;
+import org.apache.nifi.controller.repository.claim.ContentClaim;
+import org.apache.nifi.controller.repository.claim.InlineContentClaim;
+import org.apache.nifi.flowfile.FlowFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Keeps the Java heap that is used by FlowFiles waiting in connection queues within a single, global budget.
+ * </p>
+ *
+ * <p>
+ * Each {@link StandardFlowFileQueue} keeps an estimate of how much heap its in-memory FlowFiles occupy. Each time that
+ * this manager runs, it sums those estimates and, if the total exceeds the budget, swaps FlowFiles out of the coldest
+ * queues (those that have not been polled recently) first and, among those, the largest queues first. Queues that
+ * have been asked to swap out hold fewer FlowFiles on their active queue until the total estimate falls comfortably
+ * below the budget again, at which point they are gradually allowed to grow back to the configured swap threshold.
+ * </p>
+ */
+public class QueueMemoryManager implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(QueueMemoryManager.class);
+
+    // StandardFlowFileRecord, its attribute map, and the Content Claim that it references
+    static final long FLOWFILE_HEAP_OVERHEAD = 256L;
+    private static final long MAP_ENTRY_HEAP_OVERHEAD = 32L;
+    private static final long STRING_HEAP_OVERHEAD = 40L;
+
+    // once the budget has been exceeded, queues are not allowed to grow again until the estimate falls below this fraction of the budget
+    private static final double RELAX_FRACTION = 0.9D;
+
+    private final long budgetBytes;
+    private final long coldMillis;
+    private final Supplier<? extends Collection<Connection>> connectionSupplier;
+
+    /**
+     * @param budgetBytes the number of bytes of heap that the FlowFiles held in memory by all queues may use, or 0 if there is no limit
+     * @param coldMillis the number of milliseconds that a queue must go without being polled in order to be considered cold
+     * @param connectionSupplier supplies all of the Connections in the flow
+     */
+    public QueueMemoryManager(final long budgetBytes, final long coldMillis, final Supplier<? extends Collection<Connection>> connectionSupplier) {
+        this.budgetBytes = budgetBytes;
+        this.coldMillis = coldMillis;
+        this.connectionSupplier = connectionSupplier;
+    }
+
+    /**
+     * @return the number of bytes of heap that FlowFiles held in memory by all queues may use, or 0 if there is no limit
+     */
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * @return the estimated number of bytes of heap that are used by the FlowFiles held in memory by all queues
+     */
+    public long getEstimatedHeapBytes() {
+        long total = 0L;
+        for (final Connection connection : connectionSupplier.get()) {
+            total += connection.getFlowFileQueue().getEstimatedHeapBytes();
+        }
+        return total;
+    }
+
+    @Override
+    public void run() {
+        try {
+            enforceBudget();
+        } catch (final Throwable t) {
+            logger.error("Failed to keep FlowFile Queues within the configured heap budget due to {}", t.toString());
+            logger.error("", t);
+        }
+    }
+
+    void enforceBudget() {
+        if (budgetBytes <= 0L) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        final List<QueueUsage> usages = new ArrayList<>();
+        long totalHeapBytes = 0L;
+        for (final Connection connection : connectionSupplier.get()) {
+            final FlowFileQueue queue = connection.getFlowFileQueue();
+            if (!(queue instanceof StandardFlowFileQueue)) {
+                continue;
+            }
+
+            final StandardFlowFileQueue standardQueue = (StandardFlowFileQueue) queue;
+            final QueueUsage usage = new QueueUsage(standardQueue, standardQueue.getEstimatedHeapBytes(), now - standardQueue.getLastPollTimestamp() >= coldMillis);
+            usages.add(usage);
+            totalHeapBytes += usage.heapBytes;
+        }
+
+        if (totalHeapBytes > budgetBytes) {
+            swapOut(usages, totalHeapBytes - budgetBytes);
+        } else {
+            relax(usages, (long) (budgetBytes * RELAX_FRACTION) - totalHeapBytes);
+        }
+    }
+
+    private void swapOut(final List<QueueUsage> usages, final long excessBytes) {
+        // cold queues first, then the largest queues first
+        Collections.sort(usages, new Comparator<QueueUsage>() {
+            @Override
+            public int compare(final QueueUsage a, final QueueUsage b) {
+                if (a.cold != b.cold) {
+                    return a.cold ? -1 : 1;
+                }
+                return Long.compare(b.heapBytes, a.heapBytes);
+            }
+        });
+
+        long remainingBytes = excessBytes;
+        for (final QueueUsage usage : usages) {
+            if (remainingBytes <= 0L) {
+                break;
+            }
+
+            final long averageBytes = usage.queue.getAverageFlowFileHeapBytes();
+            final int flowFileCount = (int) Math.min(Integer.MAX_VALUE, (remainingBytes + averageBytes - 1) / averageBytes);
+            final int swappedOut = usage.queue.swapOutForMemory(flowFileCount);
+            if (swappedOut > 0) {
+                logger.debug("Swapped out {} FlowFiles from {} because the FlowFiles queued in memory are estimated to exceed the heap budget of {} bytes",
+                    swappedOut, usage.queue, budgetBytes);
+            }
+
+            remainingBytes -= swappedOut * averageBytes;
+        }
+
+        if (remainingBytes > 0L) {
+            logger.debug("FlowFile Queues are still estimated to use {} bytes more than the heap budget of {} bytes; "
+                + "the remaining FlowFiles will be swapped out as the queues drain", remainingBytes, budgetBytes);
+        }
+    }
+
+    private void relax(final List<QueueUsage> usages, final long headroomBytes) {
+        // the most recently used queues are the ones most likely to benefit from holding more FlowFiles in memory
+        Collections.sort(usages, new Comparator<QueueUsage>() {
+            @Override
+            public int compare(final QueueUsage a, final QueueUsage b) {
+                return Long.compare(b.queue.getLastPollTimestamp(), a.queue.getLastPollTimestamp());
+            }
+        });
+
+        long remainingBytes = headroomBytes;
+        for (final QueueUsage usage : usages) {
+            if (remainingBytes <= 0L) {
+                break;
+            }
+
+            final long averageBytes = usage.queue.getAverageFlowFileHeapBytes();
+            final int flowFileCount = (int) Math.min(StandardFlowFileQueue.SWAP_RECORD_POLL_SIZE, remainingBytes / averageBytes);
+            if (usage.queue.increaseActiveQueueLimit(flowFileCount)) {
+                remainingBytes -= flowFileCount * averageBytes;
+            }
+        }
+    }
+
+    /**
+     * Estimates the number of bytes of heap that are used by the given FlowFile, including its attributes and any content that is held inline.
+     *
+     * @param flowFile the FlowFile
+     * @return the estimated number of bytes of heap used by the FlowFile
+     */
+    public static long estimateHeapBytes(final FlowFile flowFile) {
+        long heapBytes = FLOWFILE_HEAP_OVERHEAD;
+        if (flowFile instanceof FlowFileRecord) {
+            final ContentClaim claim = ((FlowFileRecord) flowFile).getContentClaim();
+            if (claim instanceof InlineContentClaim && ((InlineContentClaim) claim).isInline()) {
+                heapBytes += ((InlineContentClaim) claim).getContent().length;
+            }
+        }
+
+        for (final Map.Entry<String, String> entry : flowFile.getAttributes().entrySet()) {
+            heapBytes += MAP_ENTRY_HEAP_OVERHEAD + estimateHeapBytes(entry.getKey()) + estimateHeapBytes(entry.getValue());
+        }
+        return heapBytes;
+    }
+
+    private static long estimateHeapBytes(final String value) {
+        return value == null ? 0L : STRING_HEAP_OVERHEAD + 2L * value.length();
+    }
+
+    private static class QueueUsage {
+        private final StandardFlowFileQueue queue;
+        private final long heapBytes;
+        private final boolean cold;
+
+        public QueueUsage(final StandardFlowFileQueue queue, final long heapBytes, final boolean cold) {
+            this.queue = queue;
+            this.heapBytes = heapBytes;
+            this.cold = cold;
+        }
+    }
+}
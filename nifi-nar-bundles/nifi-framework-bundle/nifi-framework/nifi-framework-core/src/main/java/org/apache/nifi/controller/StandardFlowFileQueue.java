@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -30,8 +31,15 @@ import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -63,6 +71,7 @@ import org.apache.nifi.flowfile.attributes.CoreAttributes;
 import org.apache.nifi.processor.DataUnit;
 import org.apache.nifi.processor.FlowFileFilter;
 import org.apache.nifi.processor.FlowFileFilter.FlowFileFilterResult;
+import org.apache.nifi.processor.util.FlowFileFilters;
 import org.apache.nifi.provenance.ProvenanceEventBuilder;
 import org.apache.nifi.provenance.ProvenanceEventRecord;
 import org.apache.nifi.provenance.ProvenanceEventRepository;
@@ -83,10 +92,22 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
 
     public static final int MAX_EXPIRED_RECORDS_PER_ITERATION = 100000;
     public static final int SWAP_RECORD_POLL_SIZE = 10000;
+    private static final int HEAP_ESTIMATE_SAMPLE_SIZE = 16;
 
     private static final Logger logger = LoggerFactory.getLogger(StandardFlowFileQueue.class);
 
-    private PriorityQueue<FlowFileRecord> activeQueue = null;
+    // guarded by lock. If no prioritizers are set, this is a concurrent FIFO queue that put/poll may use while holding
+    // only the read lock, so that producers and consumers do not contend with one another. Otherwise, it is a PriorityQueue
+    // and may be accessed only while holding the write lock.
+    private Queue<FlowFileRecord> activeQueue = null;
+
+    // guarded by lock
+    private boolean fifo = true;
+
+    // FlowFiles that were penalized when they reached the head of the FIFO active queue. They are held here, ordered by when
+    // their penalty expires, so that they do not block the FlowFiles behind them, and are counted as part of the active queue.
+    // Always empty when prioritizers are set, since the Prioritizer already orders penalized FlowFiles after all others.
+    private final ConcurrentSkipListSet<FlowFileRecord> penalizedQueue = new ConcurrentSkipListSet<>(new PenaltyExpirationComparator());
 
     // guarded by lock
     private ArrayList<FlowFileRecord> swapQueue = null;
@@ -105,6 +126,28 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
     private final int swapThreshold;
     private final FlowFileSwapManager swapManager;
     private final List<String> swapLocations = new ArrayList<>();
+    private final Executor swapInExecutor;
+    private final int swapPrefetchThreshold;
+
+    // guarded by lock. The swap file that is currently being read in the background, if any. Its FlowFiles are
+    // still counted as swapped out until they are added to the active queue.
+    //
+    // The background read runs without the lock and, as part of the swap-in, records the FlowFiles in the FlowFile
+    // Repository as belonging to this queue. That is safe even though the queue still counts them as swapped out:
+    // - the repository considers them to be on this queue either way, so a restart recovers each FlowFile exactly once;
+    // - a drop request holds the write lock and waits for the read to finish before dropping what was read (see dropFlowFiles);
+    // - listing only ever shows the active queue, so FlowFiles being read are omitted just like those still in swap files;
+    // - swap files are only purged while the flow is initialized, before any FlowFile can be polled and trigger a read.
+    private PendingSwapIn pendingSwapIn = null;
+
+    private final AtomicLong swapInCount = new AtomicLong(0L);
+    private final AtomicLong swapInWaitCount = new AtomicLong(0L);
+
+    // The number of FlowFiles that may be held on the active queue. This starts out as the swap threshold but may be lowered
+    // by the QueueMemoryManager in order to keep the heap used by all queues within the configured budget.
+    private volatile int activeQueueLimit;
+    private volatile long averageFlowFileHeapBytes = QueueMemoryManager.FLOWFILE_HEAP_OVERHEAD;
+    private volatile long lastPollTimestamp = System.currentTimeMillis();
     private final TimedLock readLock;
     private final TimedLock writeLock;
     private final String identifier;
@@ -120,7 +163,19 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
 
     public StandardFlowFileQueue(final String identifier, final Connection connection, final FlowFileRepository flowFileRepo, final ProvenanceEventRepository provRepo,
         final ResourceClaimManager resourceClaimManager, final ProcessScheduler scheduler, final FlowFileSwapManager swapManager, final EventReporter eventReporter, final int swapThreshold) {
-        activeQueue = new PriorityQueue<>(20, new Prioritizer(new ArrayList<FlowFilePrioritizer>()));
+        this(identifier, connection, flowFileRepo, provRepo, resourceClaimManager, scheduler, swapManager, eventReporter, swapThreshold, null, 0);
+    }
+
+    /**
+     * @param swapInExecutor the Executor to use for reading swap files in the background, or <code>null</code> if swap files
+     *            should be read by the thread that polls the queue when they are needed
+     * @param swapPrefetchThreshold once the number of FlowFiles on the active queue falls to this value, the next swap file
+     *            begins to be read in the background. Ignored if <code>swapInExecutor</code> is <code>null</code>.
+     */
+    public StandardFlowFileQueue(final String identifier, final Connection connection, final FlowFileRepository flowFileRepo, final ProvenanceEventRepository provRepo,
+        final ResourceClaimManager resourceClaimManager, final ProcessScheduler scheduler, final FlowFileSwapManager swapManager, final EventReporter eventReporter, final int swapThreshold,
+        final Executor swapInExecutor, final int swapPrefetchThreshold) {
+        activeQueue = createActiveQueue(Collections.<FlowFilePrioritizer> emptyList(), 20);
         priorities = new ArrayList<>();
         swapQueue = new ArrayList<>();
         this.eventReporter = eventReporter;
@@ -131,6 +186,9 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
 
         this.identifier = identifier;
         this.swapThreshold = swapThreshold;
+        this.activeQueueLimit = swapThreshold;
+        this.swapInExecutor = swapInExecutor;
+        this.swapPrefetchThreshold = swapPrefetchThreshold;
         this.scheduler = scheduler;
         this.connection = connection;
 
@@ -152,9 +210,19 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
     public void setPriorities(final List<FlowFilePrioritizer> newPriorities) {
         writeLock.lock();
         try {
-            final PriorityQueue<FlowFileRecord> newQueue = new PriorityQueue<>(Math.max(20, activeQueue.size()), new Prioritizer(newPriorities));
-            newQueue.addAll(activeQueue);
+            final Queue<FlowFileRecord> newQueue = createActiveQueue(newPriorities, Math.max(20, size.get().activeQueueCount));
+
+            // poll rather than addAll so that the FlowFiles keep their current order when moving from a PriorityQueue to a FIFO queue
+            FlowFileRecord flowFile;
+            while ((flowFile = penalizedQueue.pollFirst()) != null) {
+                newQueue.add(flowFile);
+            }
+            while ((flowFile = activeQueue.poll()) != null) {
+                newQueue.add(flowFile);
+            }
+
             activeQueue = newQueue;
+            fifo = newPriorities.isEmpty();
             priorities.clear();
             priorities.addAll(newPriorities);
         } finally {
@@ -162,6 +230,25 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
         }
     }
 
+    private Queue<FlowFileRecord> createActiveQueue(final List<FlowFilePrioritizer> prioritizers, final int initialCapacity) {
+        if (prioritizers.isEmpty()) {
+            return new ConcurrentLinkedDeque<>();
+        }
+
+        return new PriorityQueue<>(initialCapacity, new Prioritizer(prioritizers));
+    }
+
+    /**
+     * Indicates whether or not the active queue may be accessed while holding only the read lock.
+     * This is the case when the queue is FIFO and there are no FlowFiles swapped out or waiting to be
+     * swapped out, since in that case polling never needs to migrate FlowFiles into the active queue.
+     *
+     * This method MUST be called with the readLock or the writeLock held.
+     */
+    private boolean isFifoFastPathAvailable() {
+        return fifo && size.get().swappedCount == 0;
+    }
+
     @Override
     public void setBackPressureObjectThreshold(final long threshold) {
         boolean updated = false;
@@ -270,9 +357,33 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
 
     @Override
     public void put(final FlowFileRecord file) {
+        updateAverageHeapEstimate(QueueMemoryManager.estimateHeapBytes(file));
+
+        boolean queued = false;
+        readLock.lock();
+        try {
+            if (fifo && !swapMode && size.get().activeQueueCount < activeQueueLimit) {
+                incrementActiveQueueSize(1, file.getSize());
+                activeQueue.add(file);
+                queued = true;
+            }
+        } finally {
+            readLock.unlock("put(FlowFileRecord)");
+        }
+
+        if (!queued) {
+            putWithWriteLock(file);
+        }
+
+        if (connection.getDestination().getSchedulingStrategy() == SchedulingStrategy.EVENT_DRIVEN) {
+            scheduler.registerEvent(connection.getDestination());
+        }
+    }
+
+    private void putWithWriteLock(final FlowFileRecord file) {
         writeLock.lock();
         try {
-            if (swapMode || activeQueue.size() >= swapThreshold) {
+            if (swapMode || size.get().activeQueueCount >= activeQueueLimit) {
                 swapQueue.add(file);
                 incrementSwapQueueSize(1, file.getSize(), 0);
                 swapMode = true;
@@ -284,23 +395,51 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
         } finally {
             writeLock.unlock("put(FlowFileRecord)");
         }
-
-        if (connection.getDestination().getSchedulingStrategy() == SchedulingStrategy.EVENT_DRIVEN) {
-            scheduler.registerEvent(connection.getDestination());
-        }
     }
 
     @Override
     public void putAll(final Collection<FlowFileRecord> files) {
         final int numFiles = files.size();
         long bytes = 0L;
+        long sampledHeapBytes = 0L;
+        int sampled = 0;
         for (final FlowFile flowFile : files) {
             bytes += flowFile.getSize();
+            if (sampled < HEAP_ESTIMATE_SAMPLE_SIZE) {
+                sampledHeapBytes += QueueMemoryManager.estimateHeapBytes(flowFile);
+                sampled++;
+            }
+        }
+
+        if (sampled > 0) {
+            updateAverageHeapEstimate(sampledHeapBytes / sampled);
+        }
+
+        boolean queued = false;
+        readLock.lock();
+        try {
+            if (fifo && !swapMode && size.get().activeQueueCount < activeQueueLimit - numFiles) {
+                incrementActiveQueueSize(numFiles, bytes);
+                activeQueue.addAll(files);
+                queued = true;
+            }
+        } finally {
+            readLock.unlock("putAll");
+        }
+
+        if (!queued) {
+            putAllWithWriteLock(files, numFiles, bytes);
+        }
+
+        if (connection.getDestination().getSchedulingStrategy() == SchedulingStrategy.EVENT_DRIVEN) {
+            scheduler.registerEvent(connection.getDestination());
         }
+    }
 
+    private void putAllWithWriteLock(final Collection<FlowFileRecord> files, final int numFiles, final long bytes) {
         writeLock.lock();
         try {
-            if (swapMode || activeQueue.size() >= swapThreshold - numFiles) {
+            if (swapMode || size.get().activeQueueCount >= activeQueueLimit - numFiles) {
                 swapQueue.addAll(files);
                 incrementSwapQueueSize(numFiles, bytes, 0);
                 swapMode = true;
@@ -312,13 +451,49 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
         } finally {
             writeLock.unlock("putAll");
         }
+    }
+
+
+    @Override
+    public void requeue(final Collection<FlowFileRecord> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+
+        long bytes = 0L;
+        for (final FlowFile flowFile : files) {
+            bytes += flowFile.getSize();
+        }
+
+        boolean requeued = false;
+        writeLock.lock();
+        try {
+            if (fifo) {
+                // the FlowFiles came from the head of the queue, so put them back there, in their original order. This may
+                // briefly take the active queue past its limit, just as polling with a filter does.
+                final Deque<FlowFileRecord> fifoQueue = (Deque<FlowFileRecord>) this.activeQueue;
+                final List<FlowFileRecord> ordered = new ArrayList<>(files);
+                for (int i = ordered.size() - 1; i >= 0; i--) {
+                    fifoQueue.addFirst(ordered.get(i));
+                }
+                incrementActiveQueueSize(ordered.size(), bytes);
+                requeued = true;
+            }
+        } finally {
+            writeLock.unlock("requeue");
+        }
+
+        if (!requeued) {
+            // the prioritizers determine where the FlowFiles belong
+            putAll(files);
+            return;
+        }
 
         if (connection.getDestination().getSchedulingStrategy() == SchedulingStrategy.EVENT_DRIVEN) {
             scheduler.registerEvent(connection.getDestination());
         }
     }
 
-
     private boolean isLaterThan(final Long maxAge) {
         if (maxAge == null) {
             return false;
@@ -345,28 +520,45 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
 
         // First check if we have any records Pre-Fetched.
         final long expirationMillis = expirationPeriod.get().getMillis();
-        writeLock.lock();
+        boolean polled = false;
+        readLock.lock();
         try {
-            flowFile = doPoll(expiredRecords, expirationMillis);
-            return flowFile;
+            if (isFifoFastPathAvailable()) {
+                flowFile = doPoll(expiredRecords, expirationMillis);
+                polled = true;
+            }
         } finally {
-            writeLock.unlock("poll(Set)");
+            readLock.unlock("poll(Set)");
+        }
 
-            if (flowFile != null) {
-                incrementUnacknowledgedQueueSize(1, flowFile.getSize());
+        if (!polled) {
+            writeLock.lock();
+            try {
+                migrateSwapToActive();
+                flowFile = doPoll(expiredRecords, expirationMillis);
+            } finally {
+                writeLock.unlock("poll(Set)");
             }
         }
+
+        if (flowFile != null) {
+            incrementUnacknowledgedQueueSize(1, flowFile.getSize());
+        }
+
+        return flowFile;
     }
 
+    /**
+     * This method MUST be called with the writeLock held or, if {@link #isFifoFastPathAvailable()} returns
+     * <code>true</code>, with the readLock held.
+     */
     private FlowFileRecord doPoll(final Set<FlowFileRecord> expiredRecords, final long expirationMillis) {
         FlowFileRecord flowFile;
         boolean isExpired;
 
-        migrateSwapToActive();
-
         long expiredBytes = 0L;
         do {
-            flowFile = this.activeQueue.poll();
+            flowFile = pollUnpenalized(this.activeQueue);
 
             isExpired = isLaterThan(getExpirationDate(flowFile, expirationMillis));
             if (isExpired) {
@@ -377,10 +569,6 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
                 if (expiredRecords.size() >= MAX_EXPIRED_RECORDS_PER_ITERATION) {
                     break;
                 }
-            } else if (flowFile != null && flowFile.isPenalized()) {
-                this.activeQueue.add(flowFile);
-                flowFile = null;
-                break;
             }
 
             if (flowFile != null) {
@@ -399,19 +587,35 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
     public List<FlowFileRecord> poll(int maxResults, final Set<FlowFileRecord> expiredRecords) {
         final List<FlowFileRecord> records = new ArrayList<>(Math.min(1024, maxResults));
 
-        // First check if we have any records Pre-Fetched.
-        writeLock.lock();
+        boolean polled = false;
+        readLock.lock();
         try {
-            doPoll(records, maxResults, expiredRecords);
+            if (isFifoFastPathAvailable()) {
+                doPoll(records, maxResults, expiredRecords);
+                polled = true;
+            }
         } finally {
-            writeLock.unlock("poll(int, Set)");
+            readLock.unlock("poll(int, Set)");
+        }
+
+        if (!polled) {
+            writeLock.lock();
+            try {
+                migrateSwapToActive();
+                doPoll(records, maxResults, expiredRecords);
+            } finally {
+                writeLock.unlock("poll(int, Set)");
+            }
         }
+
         return records;
     }
 
+    /**
+     * This method MUST be called with the writeLock held or, if {@link #isFifoFastPathAvailable()} returns
+     * <code>true</code>, with the readLock held.
+     */
     private void doPoll(final List<FlowFileRecord> records, int maxResults, final Set<FlowFileRecord> expiredRecords) {
-        migrateSwapToActive();
-
         final long bytesDrained = drainQueue(activeQueue, records, maxResults, expiredRecords);
 
         long expiredBytes = 0L;
@@ -423,6 +627,72 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
         incrementUnacknowledgedQueueSize(records.size(), bytesDrained - expiredBytes);
     }
 
+    /**
+     * Polls the next FlowFile that is not penalized from the given queue.
+     *
+     * When prioritizers are set, penalized FlowFiles are ordered after all others, so finding a penalized FlowFile at the head
+     * means that the rest are penalized as well; it is put back and <code>null</code> is returned. In FIFO order, however, a
+     * penalized FlowFile may be ahead of FlowFiles that are ready to be processed, so penalized FlowFiles are moved aside to the
+     * penalized queue until their penalty expires. A FlowFile whose penalty has expired is returned before the rest of the
+     * active queue, as it was at the head of the queue when it was set aside.
+     *
+     * This method MUST be called with the writeLock held or, if {@link #isFifoFastPathAvailable()} returns
+     * <code>true</code>, with the readLock held.
+     */
+    private FlowFileRecord pollUnpenalized(final Queue<FlowFileRecord> sourceQueue) {
+        if (!fifo || sourceQueue != activeQueue) {
+            final FlowFileRecord flowFile = sourceQueue.poll();
+            if (flowFile != null && flowFile.isPenalized()) {
+                sourceQueue.add(flowFile);
+                return null;
+            }
+
+            return flowFile;
+        }
+
+        if (!penalizedQueue.isEmpty()) {
+            // the iterator is weakly consistent, so this is safe even if other threads are polling the penalized queue
+            final Iterator<FlowFileRecord> penalizedItr = penalizedQueue.iterator();
+            if (penalizedItr.hasNext() && !penalizedItr.next().isPenalized()) {
+                final FlowFileRecord released = penalizedQueue.pollFirst();
+                if (released != null) {
+                    if (!released.isPenalized()) {
+                        return released;
+                    }
+
+                    // another thread took the FlowFile that we looked at
+                    penalizedQueue.add(released);
+                }
+            }
+        }
+
+        FlowFileRecord flowFile;
+        while ((flowFile = sourceQueue.poll()) != null) {
+            if (!flowFile.isPenalized()) {
+                return flowFile;
+            }
+
+            penalizedQueue.add(flowFile);
+        }
+
+        return null;
+    }
+
+    /**
+     * Removes all FlowFiles from the penalized queue, in the order in which their penalties expire. Used before the active
+     * queue is rebuilt, so that penalized FlowFiles are kept with the rest of the active queue.
+     *
+     * This method MUST be called with the writeLock held.
+     */
+    private List<FlowFileRecord> drainPenalizedQueue() {
+        final List<FlowFileRecord> penalized = new ArrayList<>(penalizedQueue.size());
+        FlowFileRecord flowFile;
+        while ((flowFile = penalizedQueue.pollFirst()) != null) {
+            penalized.add(flowFile);
+        }
+        return penalized;
+    }
+
     /**
      * If there are FlowFiles waiting on the swap queue, move them to the active
      * queue until we meet our threshold. This prevents us from having to swap
@@ -444,7 +714,33 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
         // Swap Queue to the Active Queue. However, we don't do this if there are FlowFiles already swapped out
         // to disk, because we want them to be swapped back in in the same order that they were swapped out.
 
-        if (activeQueue.size() > swapThreshold - SWAP_RECORD_POLL_SIZE) {
+        final int activeQueueCount = size.get().activeQueueCount;
+        final int limit = activeQueueLimit;
+        final int swapInThreshold = Math.max(0, limit - SWAP_RECORD_POLL_SIZE);
+
+        // If a swap file is already being read in the background, hand its FlowFiles over once they are ready and there is
+        // room for them. We only wait for it if the active queue has run dry.
+        if (pendingSwapIn != null) {
+            if (activeQueueCount == 0 || (pendingSwapIn.isDone() && activeQueueCount <= swapInThreshold)) {
+                applySwapIn(awaitPendingSwapIn());
+            }
+
+            return;
+        }
+
+        if (swapInExecutor != null && !swapLocations.isEmpty()) {
+            if (activeQueueCount <= Math.max(0, swapPrefetchThreshold - (swapThreshold - limit))) {
+                startSwapInPrefetch(swapLocations.remove(0));
+
+                if (activeQueueCount == 0) {
+                    applySwapIn(awaitPendingSwapIn());
+                }
+            }
+
+            return;
+        }
+
+        if (activeQueueCount > swapInThreshold) {
             return;
         }
 
@@ -454,52 +750,9 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
         // keep up with queue), we will end up always processing the new FlowFiles first instead of the FlowFiles that arrived
         // first.
         if (!swapLocations.isEmpty()) {
-            final String swapLocation = swapLocations.remove(0);
-            boolean partialContents = false;
-            SwapContents swapContents = null;
-            try {
-                swapContents = swapManager.swapIn(swapLocation, this);
-            } catch (final IncompleteSwapFileException isfe) {
-                logger.error("Failed to swap in all FlowFiles from Swap File {}; Swap File ended prematurely. The records that were present will still be swapped in", swapLocation);
-                logger.error("", isfe);
-                swapContents = isfe.getPartialContents();
-                partialContents = true;
-            } catch (final FileNotFoundException fnfe) {
-                logger.error("Failed to swap in FlowFiles from Swap File {} because the Swap File can no longer be found", swapLocation);
-                if (eventReporter != null) {
-                    eventReporter.reportEvent(Severity.ERROR, "Swap File", "Failed to swap in FlowFiles from Swap File " + swapLocation + " because the Swap File can no longer be found");
-                }
-                return;
-            } catch (final IOException ioe) {
-                logger.error("Failed to swap in FlowFiles from Swap File {}; Swap File appears to be corrupt!", swapLocation);
-                logger.error("", ioe);
-                if (eventReporter != null) {
-                    eventReporter.reportEvent(Severity.ERROR, "Swap File", "Failed to swap in FlowFiles from Swap File " +
-                        swapLocation + "; Swap File appears to be corrupt! Some FlowFiles in the queue may not be accessible. See logs for more information.");
-                }
-                return;
-            }
-
-            final QueueSize swapSize = swapContents.getSummary().getQueueSize();
-            final long contentSize = swapSize.getByteCount();
-            final int flowFileCount = swapSize.getObjectCount();
-            incrementSwapQueueSize(-flowFileCount, -contentSize, -1);
-
-            if (partialContents) {
-                // if we have partial results, we need to calculate the content size of the flowfiles
-                // actually swapped back in.
-                long contentSizeSwappedIn = 0L;
-                for (final FlowFileRecord swappedIn : swapContents.getFlowFiles()) {
-                    contentSizeSwappedIn += swappedIn.getSize();
-                }
-
-                incrementActiveQueueSize(swapContents.getFlowFiles().size(), contentSizeSwappedIn);
-            } else {
-                // we swapped in the whole swap file. We can just use the info that we got from the summary.
-                incrementActiveQueueSize(flowFileCount, contentSize);
-            }
-
-            activeQueue.addAll(swapContents.getFlowFiles());
+            swapInCount.incrementAndGet();
+            swapInWaitCount.incrementAndGet();
+            applySwapIn(swapIn(swapLocations.remove(0)));
             return;
         }
 
@@ -515,10 +768,12 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
             return;
         }
 
+        // Moving FlowFiles from the swap queue to the active queue does not change how much heap they use, so we fill the active
+        // queue up to the swap threshold even if the QueueMemoryManager has lowered the active queue limit.
         int recordsMigrated = 0;
         long bytesMigrated = 0L;
         final Iterator<FlowFileRecord> swapItr = swapQueue.iterator();
-        while (activeQueue.size() < swapThreshold && swapItr.hasNext()) {
+        while (activeQueueCount + recordsMigrated < swapThreshold && swapItr.hasNext()) {
             final FlowFileRecord toMigrate = swapItr.next();
             activeQueue.add(toMigrate);
             bytesMigrated += toMigrate.getSize();
@@ -536,6 +791,125 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
         }
     }
 
+    /**
+     * Reads the given swap file, reporting any problems that are encountered.
+     *
+     * @return the result of swapping in the FlowFiles, or <code>null</code> if the swap file could not be read
+     */
+    private SwapInResult swapIn(final String swapLocation) {
+        try {
+            return new SwapInResult(swapManager.swapIn(swapLocation, this), false);
+        } catch (final IncompleteSwapFileException isfe) {
+            logger.error("Failed to swap in all FlowFiles from Swap File {}; Swap File ended prematurely. The records that were present will still be swapped in", swapLocation);
+            logger.error("", isfe);
+            return new SwapInResult(isfe.getPartialContents(), true);
+        } catch (final FileNotFoundException fnfe) {
+            logger.error("Failed to swap in FlowFiles from Swap File {} because the Swap File can no longer be found", swapLocation);
+            if (eventReporter != null) {
+                eventReporter.reportEvent(Severity.ERROR, "Swap File", "Failed to swap in FlowFiles from Swap File " + swapLocation + " because the Swap File can no longer be found");
+            }
+            return null;
+        } catch (final IOException ioe) {
+            logger.error("Failed to swap in FlowFiles from Swap File {}; Swap File appears to be corrupt!", swapLocation);
+            logger.error("", ioe);
+            if (eventReporter != null) {
+                eventReporter.reportEvent(Severity.ERROR, "Swap File", "Failed to swap in FlowFiles from Swap File " +
+                    swapLocation + "; Swap File appears to be corrupt! Some FlowFiles in the queue may not be accessible. See logs for more information.");
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Moves the FlowFiles that were swapped in onto the active queue.
+     *
+     * This method MUST be called with the writeLock held.
+     */
+    private void applySwapIn(final SwapInResult swapInResult) {
+        if (swapInResult == null) {
+            return;
+        }
+
+        final SwapContents swapContents = swapInResult.getContents();
+        final QueueSize swapSize = swapContents.getSummary().getQueueSize();
+        final long contentSize = swapSize.getByteCount();
+        final int flowFileCount = swapSize.getObjectCount();
+        incrementSwapQueueSize(-flowFileCount, -contentSize, -1);
+
+        if (swapInResult.isPartial()) {
+            // if we have partial results, we need to calculate the content size of the flowfiles
+            // actually swapped back in.
+            long contentSizeSwappedIn = 0L;
+            for (final FlowFileRecord swappedIn : swapContents.getFlowFiles()) {
+                contentSizeSwappedIn += swappedIn.getSize();
+            }
+
+            incrementActiveQueueSize(swapContents.getFlowFiles().size(), contentSizeSwappedIn);
+        } else {
+            // we swapped in the whole swap file. We can just use the info that we got from the summary.
+            incrementActiveQueueSize(flowFileCount, contentSize);
+        }
+
+        activeQueue.addAll(swapContents.getFlowFiles());
+    }
+
+    /**
+     * Begins reading the given swap file in the background.
+     *
+     * This method MUST be called with the writeLock held.
+     */
+    private void startSwapInPrefetch(final String swapLocation) {
+        final FutureTask<SwapInResult> future = new FutureTask<>(new Callable<SwapInResult>() {
+            @Override
+            public SwapInResult call() {
+                return swapIn(swapLocation);
+            }
+        });
+
+        pendingSwapIn = new PendingSwapIn(swapLocation, future);
+        swapInCount.incrementAndGet();
+        swapInExecutor.execute(future);
+    }
+
+    /**
+     * Waits for the pending background swap-in to complete, if it has not already, and clears it.
+     *
+     * This method MUST be called with the writeLock held.
+     *
+     * @return the result of the swap-in, or <code>null</code> if the swap file could not be read
+     */
+    private SwapInResult awaitPendingSwapIn() {
+        final PendingSwapIn pending = pendingSwapIn;
+        if (!pending.isDone()) {
+            swapInWaitCount.incrementAndGet();
+        }
+
+        try {
+            final SwapInResult result = pending.getFuture().get();
+            pendingSwapIn = null;
+            return result;
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (final ExecutionException ee) {
+            // put the swap location back so that we will attempt to swap it in again later
+            logger.error("Failed to swap in FlowFiles from Swap File {}", pending.getSwapLocation(), ee.getCause());
+            pendingSwapIn = null;
+            swapLocations.add(0, pending.getSwapLocation());
+            return null;
+        }
+    }
+
+    @Override
+    public long getSwapInCount() {
+        return swapInCount.get();
+    }
+
+    @Override
+    public long getSwapInWaitCount() {
+        return swapInWaitCount.get();
+    }
+
     /**
      * This method MUST be called with the write lock held
      */
@@ -544,7 +918,18 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
             return;
         }
 
-        final int numSwapFiles = swapQueue.size() / SWAP_RECORD_POLL_SIZE;
+        writeSwapFiles(swapQueue.size() / SWAP_RECORD_POLL_SIZE);
+    }
+
+    /**
+     * Writes the given number of swap files, keeping no more than the active queue limit on the active queue.
+     *
+     * This method MUST be called with the write lock held
+     *
+     * @return the number of FlowFiles that were swapped out
+     */
+    private int writeSwapFiles(final int numSwapFiles) {
+        final int limit = activeQueueLimit;
 
         int originalSwapQueueCount = swapQueue.size();
         long originalSwapQueueBytes = 0L;
@@ -552,9 +937,13 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
             originalSwapQueueBytes += flowFile.getSize();
         }
 
+        if (fifo) {
+            return writeFifoSwapFiles(numSwapFiles, limit, originalSwapQueueCount, originalSwapQueueBytes);
+        }
+
         // Create a new Priority queue with the prioritizers that are set, but reverse the
         // prioritizers because we want to pull the lowest-priority FlowFiles to swap out
-        final PriorityQueue<FlowFileRecord> tempQueue = new PriorityQueue<>(activeQueue.size() + swapQueue.size(), Collections.reverseOrder(new Prioritizer(priorities)));
+        final PriorityQueue<FlowFileRecord> tempQueue = new PriorityQueue<>(size.get().activeQueueCount + swapQueue.size(), Collections.reverseOrder(new Prioritizer(priorities)));
         tempQueue.addAll(activeQueue);
         tempQueue.addAll(swapQueue);
 
@@ -577,15 +966,7 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
                 swapLocations.add(swapLocation);
             } catch (final IOException ioe) {
                 tempQueue.addAll(toSwap); // if we failed, we must add the FlowFiles back to the queue.
-                logger.error("FlowFile Queue with identifier {} has {} FlowFiles queued up. Attempted to spill FlowFile information over to disk in order to avoid exhausting "
-                    + "the Java heap space but failed to write information to disk due to {}", getIdentifier(), getQueueSize().getObjectCount(), ioe.toString());
-                logger.error("", ioe);
-                if (eventReporter != null) {
-                    eventReporter.reportEvent(Severity.ERROR, "Failed to Overflow to Disk", "Flowfile Queue with identifier " + getIdentifier() + " has " + getQueueSize().getObjectCount() +
-                        " queued up. Attempted to spill FlowFile information over to disk in order to avoid exhausting the Java heap space but failed to write information to disk. "
-                        + "See logs for more information.");
-                }
-
+                reportSwapOutFailure(ioe);
                 break;
             }
         }
@@ -594,7 +975,7 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
         // swap queue. Then add the records back to the active queue.
         swapQueue.clear();
         long updatedSwapQueueBytes = 0L;
-        while (tempQueue.size() > swapThreshold) {
+        while (tempQueue.size() > limit) {
             final FlowFileRecord record = tempQueue.poll();
             swapQueue.add(record);
             updatedSwapQueueBytes += record.getSize();
@@ -611,22 +992,187 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
             activeQueueBytes += toRequeue.getSize();
         }
 
+        updateSizeAfterSwapOut(activeQueue.size(), activeQueueBytes, swapQueue.size() - originalSwapQueueCount, updatedSwapQueueBytes - originalSwapQueueBytes,
+            flowFilesSwappedOut, bytesSwappedOut, swapLocations.size());
+
+        this.swapLocations.addAll(swapLocations);
+        return flowFilesSwappedOut;
+    }
+
+    /**
+     * Swaps out FlowFiles when the active queue is FIFO. Because the FlowFiles are already in order, there is no need
+     * to sort them into a temporary queue: the oldest FlowFiles stay on the active queue, the next oldest are written
+     * to swap files (which are always swapped back in before the swap queue is migrated), and the newest remain on the
+     * swap queue.
+     *
+     * This method MUST be called with the write lock held
+     */
+    private int writeFifoSwapFiles(final int numSwapFiles, final int limit, final int originalSwapQueueCount, final long originalSwapQueueBytes) {
+        final int originalActiveCount = size.get().activeQueueCount;
+        final List<FlowFileRecord> allFlowFiles = new ArrayList<>(originalActiveCount + swapQueue.size());
+        // penalized FlowFiles were taken from the head of the active queue, so they go back ahead of the rest of it
+        allFlowFiles.addAll(drainPenalizedQueue());
+        allFlowFiles.addAll(activeQueue);
+        allFlowFiles.addAll(swapQueue);
+
+        int activeCount = Math.min(allFlowFiles.size() - numSwapFiles * SWAP_RECORD_POLL_SIZE, limit);
+        if (!swapLocations.isEmpty() || pendingSwapIn != null) {
+            // FlowFiles that are already swapped out are newer than those on the active queue, so we cannot swap out
+            // FlowFiles from the active queue without losing their order.
+            activeCount = Math.max(activeCount, originalActiveCount);
+        }
+
+        int index = activeCount;
+        long bytesSwappedOut = 0L;
+        int flowFilesSwappedOut = 0;
+        final List<String> swapLocations = new ArrayList<>(numSwapFiles);
+        for (int i = 0; i < numSwapFiles; i++) {
+            if (index + SWAP_RECORD_POLL_SIZE > allFlowFiles.size()) {
+                break;
+            }
+
+            final List<FlowFileRecord> toSwap = new ArrayList<>(allFlowFiles.subList(index, index + SWAP_RECORD_POLL_SIZE));
+
+            try {
+                final String swapLocation = swapManager.swapOut(toSwap, this);
+                swapLocations.add(swapLocation);
+            } catch (final IOException ioe) {
+                reportSwapOutFailure(ioe);
+                break;
+            }
+
+            for (final FlowFileRecord flowFile : toSwap) {
+                bytesSwappedOut += flowFile.getSize();
+            }
+            flowFilesSwappedOut += toSwap.size();
+            index += SWAP_RECORD_POLL_SIZE;
+        }
+
+        activeQueue.clear();
+        long activeQueueBytes = 0L;
+        for (final FlowFileRecord flowFile : allFlowFiles.subList(0, activeCount)) {
+            activeQueue.add(flowFile);
+            activeQueueBytes += flowFile.getSize();
+        }
+
+        // anything that we did not swap out, including FlowFiles whose swap file could not be written, goes back onto the swap queue
+        swapQueue.clear();
+        long updatedSwapQueueBytes = 0L;
+        for (final FlowFileRecord flowFile : allFlowFiles.subList(index, allFlowFiles.size())) {
+            swapQueue.add(flowFile);
+            updatedSwapQueueBytes += flowFile.getSize();
+        }
+
+        updateSizeAfterSwapOut(activeCount, activeQueueBytes, swapQueue.size() - originalSwapQueueCount, updatedSwapQueueBytes - originalSwapQueueBytes,
+            flowFilesSwappedOut, bytesSwappedOut, swapLocations.size());
+
+        this.swapLocations.addAll(swapLocations);
+        return flowFilesSwappedOut;
+    }
+
+    /**
+     * Swaps out approximately the given number of FlowFiles in order to reduce the amount of heap used by this queue, and
+     * lowers the active queue limit so that the queue does not immediately grow again. FlowFiles are always swapped out
+     * in groups of {@link #SWAP_RECORD_POLL_SIZE}, so fewer FlowFiles than requested may be swapped out. In FIFO mode,
+     * if FlowFiles are already swapped out, only the lowered limit takes effect, as the active queue drains.
+     *
+     * @param flowFileCount the number of FlowFiles to swap out
+     * @return the number of FlowFiles that were swapped out
+     */
+    int swapOutForMemory(final int flowFileCount) {
+        writeLock.lock();
+        try {
+            final int inMemoryCount = size.get().activeQueueCount + swapQueue.size();
+            activeQueueLimit = Math.max(0, Math.min(activeQueueLimit, inMemoryCount - flowFileCount));
+
+            final boolean canSwapActive = !fifo || (swapLocations.isEmpty() && pendingSwapIn == null);
+            final int swappableCount = canSwapActive ? inMemoryCount : swapQueue.size();
+            final int numSwapFiles = Math.min((flowFileCount + SWAP_RECORD_POLL_SIZE - 1) / SWAP_RECORD_POLL_SIZE, swappableCount / SWAP_RECORD_POLL_SIZE);
+            if (numSwapFiles == 0) {
+                return 0;
+            }
+
+            swapMode = true;
+            return writeSwapFiles(numSwapFiles);
+        } finally {
+            writeLock.unlock("swapOutForMemory");
+        }
+    }
+
+    /**
+     * Allows the active queue to hold more FlowFiles, up to the swap threshold, after its limit was lowered by
+     * {@link #swapOutForMemory(int)}.
+     *
+     * @param flowFileCount the number of additional FlowFiles that the active queue may hold
+     * @return <code>true</code> if the limit was raised, <code>false</code> if the limit was already at the swap threshold
+     */
+    boolean increaseActiveQueueLimit(final int flowFileCount) {
+        writeLock.lock();
+        try {
+            if (activeQueueLimit >= swapThreshold || flowFileCount <= 0) {
+                return false;
+            }
+
+            activeQueueLimit = (int) Math.min(swapThreshold, (long) activeQueueLimit + flowFileCount);
+            return true;
+        } finally {
+            writeLock.unlock("increaseActiveQueueLimit");
+        }
+    }
+
+    int getActiveQueueLimit() {
+        return activeQueueLimit;
+    }
+
+    long getAverageFlowFileHeapBytes() {
+        return averageFlowFileHeapBytes;
+    }
+
+    long getLastPollTimestamp() {
+        return lastPollTimestamp;
+    }
+
+    private void updateAverageHeapEstimate(final long flowFileHeapBytes) {
+        // Weighted toward recent FlowFiles so that the estimate follows changes in what flows through the queue. Concurrent
+        // updates may be lost, which is acceptable for an estimate.
+        final long average = averageFlowFileHeapBytes;
+        averageFlowFileHeapBytes = Math.max(1L, average + (flowFileHeapBytes - average) / 16);
+    }
+
+    @Override
+    public long getEstimatedHeapBytes() {
+        final FlowFileQueueSize queueSize = size.get();
+
+        // FlowFiles in swap files are not held in memory. Each swap file holds SWAP_RECORD_POLL_SIZE FlowFiles, so whatever
+        // is left over is on the swap queue.
+        final int swapQueueCount = Math.max(0, queueSize.swappedCount - queueSize.swapFiles * SWAP_RECORD_POLL_SIZE);
+        return (long) (queueSize.activeQueueCount + swapQueueCount + queueSize.unacknowledgedCount) * averageFlowFileHeapBytes;
+    }
+
+    private void updateSizeAfterSwapOut(final int activeQueueCount, final long activeQueueBytes, final int addedSwapRecords, final long addedSwapBytes,
+        final int flowFilesSwappedOut, final long bytesSwappedOut, final int swapFilesCreated) {
         boolean updated = false;
         while (!updated) {
             final FlowFileQueueSize originalSize = size.get();
 
-            final int addedSwapRecords = swapQueue.size() - originalSwapQueueCount;
-            final long addedSwapBytes = updatedSwapQueueBytes - originalSwapQueueBytes;
-
-            final FlowFileQueueSize newSize = new FlowFileQueueSize(activeQueue.size(), activeQueueBytes,
+            final FlowFileQueueSize newSize = new FlowFileQueueSize(activeQueueCount, activeQueueBytes,
                 originalSize.swappedCount + addedSwapRecords + flowFilesSwappedOut,
                 originalSize.swappedBytes + addedSwapBytes + bytesSwappedOut,
-                originalSize.swapFiles + numSwapFiles,
+                originalSize.swapFiles + swapFilesCreated,
                 originalSize.unacknowledgedCount, originalSize.unacknowledgedBytes);
             updated = size.compareAndSet(originalSize, newSize);
         }
+    }
 
-        this.swapLocations.addAll(swapLocations);
+    private void reportSwapOutFailure(final IOException ioe) {
+        logger.error("FlowFile Queue with identifier {} has {} FlowFiles queued up. Attempted to spill FlowFile information over to disk in order to avoid exhausting "
+            + "the Java heap space but failed to write information to disk due to {}", getIdentifier(), getQueueSize().getObjectCount(), ioe.toString());
+        logger.error("", ioe);
+        if (eventReporter != null) {
+            eventReporter.reportEvent(Severity.ERROR, "Failed to Overflow to Disk", "Flowfile Queue with identifier " + getIdentifier() + " has " + getQueueSize().getObjectCount() +
+                " queued up. Attempted to spill FlowFile information over to disk in order to avoid exhausting the Java heap space but failed to write information to disk. "
+                + "See logs for more information.");
+        }
     }
 
 
@@ -636,17 +1182,13 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
         FlowFileRecord pulled = null;
 
         final long expirationMillis = expirationPeriod.get().getMillis();
-        while (destination.size() < maxResults && (pulled = sourceQueue.poll()) != null) {
+        while (destination.size() < maxResults && (pulled = pollUnpenalized(sourceQueue)) != null) {
             if (isLaterThan(getExpirationDate(pulled, expirationMillis))) {
                 expiredRecords.add(pulled);
                 if (expiredRecords.size() >= MAX_EXPIRED_RECORDS_PER_ITERATION) {
                     break;
                 }
             } else {
-                if (pulled.isPenalized()) {
-                    sourceQueue.add(pulled);
-                    break;
-                }
                 destination.add(pulled);
             }
             drainedSize += pulled.getSize();
@@ -654,6 +1196,15 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
         return drainedSize;
     }
 
+    @Override
+    public List<FlowFileRecord> poll(final int maxResults, final long maxBytes, final String groupingAttribute, final Set<FlowFileRecord> expiredRecords) {
+        if (maxResults <= 0) {
+            return new ArrayList<>();
+        }
+
+        return poll(FlowFileFilters.newSizeBasedFilter(maxBytes, maxResults, groupingAttribute), expiredRecords);
+    }
+
     @Override
     public List<FlowFileRecord> poll(final FlowFileFilter filter, final Set<FlowFileRecord> expiredRecords) {
         long bytesPulled = 0L;
@@ -669,7 +1220,7 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
             final List<FlowFileRecord> unselected = new ArrayList<>();
 
             while (true) {
-                FlowFileRecord flowFile = this.activeQueue.poll();
+                final FlowFileRecord flowFile = pollUnpenalized(this.activeQueue);
                 if (flowFile == null) {
                     break;
                 }
@@ -685,10 +1236,6 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
                     } else {
                         continue;
                     }
-                } else if (flowFile.isPenalized()) {
-                    this.activeQueue.add(flowFile);
-                    flowFile = null;
-                    break; // just stop searching because the rest are all penalized.
                 }
 
                 final FlowFileFilterResult result = filter.filter(flowFile);
@@ -707,7 +1254,15 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
                 }
             }
 
-            this.activeQueue.addAll(unselected);
+            if (fifo) {
+                // put the unselected FlowFiles back at the head of the queue, in their original order
+                final Deque<FlowFileRecord> fifoQueue = (Deque<FlowFileRecord>) this.activeQueue;
+                for (int i = unselected.size() - 1; i >= 0; i--) {
+                    fifoQueue.addFirst(unselected.get(i));
+                }
+            } else {
+                this.activeQueue.addAll(unselected);
+            }
             incrementActiveQueueSize(-flowFilesPulled, -bytesPulled);
 
             return selectedFlowFiles;
@@ -718,6 +1273,20 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
 
 
 
+    /**
+     * Orders penalized FlowFiles by when their penalty expires. FlowFile identifiers break ties, since the penalized queue is a set.
+     */
+    private static final class PenaltyExpirationComparator implements Comparator<FlowFileRecord>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public int compare(final FlowFileRecord f1, final FlowFileRecord f2) {
+            final int comparison = Long.compare(f1.getPenaltyExpirationMillis(), f2.getPenaltyExpirationMillis());
+            return comparison == 0 ? Long.compare(f1.getId(), f2.getId()) : comparison;
+        }
+    }
+
     private static final class Prioritizer implements Comparator<FlowFileRecord>, Serializable {
 
         private static final long serialVersionUID = 1L;
@@ -913,16 +1482,20 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
                 readLock.lock();
                 try {
                     logger.debug("{} Acquired lock to perform listing of FlowFiles", StandardFlowFileQueue.this);
-                    allFlowFiles = new ArrayList<>(activeQueue);
-                    prioritizer = new Prioritizer(StandardFlowFileQueue.this.priorities);
+                    allFlowFiles = new ArrayList<>(penalizedQueue);
+                    allFlowFiles.addAll(activeQueue);
+                    prioritizer = fifo ? null : new Prioritizer(StandardFlowFileQueue.this.priorities);
                 } finally {
                     readLock.unlock("List FlowFiles");
                 }
 
                 listRequest.setState(ListFlowFileState.CALCULATING_LIST);
 
-                // sort the FlowFileRecords so that we have the list in the same order as on the queue.
-                Collections.sort(allFlowFiles, prioritizer);
+                // sort the FlowFileRecords so that we have the list in the same order as on the queue. A FIFO queue
+                // already iterates in queue order.
+                if (prioritizer != null) {
+                    Collections.sort(allFlowFiles, prioritizer);
+                }
 
                 for (final FlowFileRecord flowFile : allFlowFiles) {
                     summaries.add(summarize(flowFile, ++position));
@@ -1025,6 +1598,12 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
                     return flowFile;
                 }
             }
+
+            for (final FlowFileRecord flowFile : penalizedQueue) {
+                if (flowFileUuid.equals(flowFile.getAttribute(CoreAttributes.UUID.key()))) {
+                    return flowFile;
+                }
+            }
         } finally {
             readLock.unlock("getFlowFile");
         }
@@ -1078,7 +1657,8 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
                     logger.debug("For DropFlowFileRequest {}, original size is {}", requestIdentifier, getQueueSize());
 
                     try {
-                        final List<FlowFileRecord> activeQueueRecords = new ArrayList<>(activeQueue);
+                        final List<FlowFileRecord> activeQueueRecords = new ArrayList<>(penalizedQueue);
+                        activeQueueRecords.addAll(activeQueue);
 
                         QueueSize droppedSize;
                         try {
@@ -1098,6 +1678,7 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
                         }
 
                         activeQueue.clear();
+                        penalizedQueue.clear();
                         incrementActiveQueueSize(-droppedSize.getObjectCount(), -droppedSize.getByteCount());
                         dropRequest.setCurrentSize(getQueueSize());
                         dropRequest.setDroppedSize(dropRequest.getDroppedSize().add(droppedSize));
@@ -1127,6 +1708,34 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
                         incrementSwapQueueSize(-droppedSize.getObjectCount(), -droppedSize.getByteCount(), 0);
                         logger.debug("For DropFlowFileRequest {}, dropped {} from Swap Queue", requestIdentifier, droppedSize);
 
+                        if (pendingSwapIn != null) {
+                            // the swap file is being read in the background; wait for it so that its FlowFiles are dropped
+                            // rather than being added to the active queue after the drop completes.
+                            final SwapInResult swapInResult = awaitPendingSwapIn();
+                            if (pendingSwapIn != null) {
+                                dropRequest.setState(DropFlowFileState.FAILURE, "Interrupted while waiting for FlowFiles to be swapped in");
+                                return;
+                            }
+
+                            if (swapInResult != null) {
+                                final QueueSize swapFileSize = swapInResult.getContents().getSummary().getQueueSize();
+                                try {
+                                    droppedSize = drop(swapInResult.getContents().getFlowFiles(), requestor);
+                                } catch (final IOException ioe) {
+                                    logger.error("Failed to drop the FlowFiles from queue {} due to {}", StandardFlowFileQueue.this.getIdentifier(), ioe.toString());
+                                    logger.error("", ioe);
+
+                                    applySwapIn(swapInResult); // ensure that we don't lose the FlowFiles from our queue.
+                                    dropRequest.setState(DropFlowFileState.FAILURE, "Failed to drop FlowFiles due to " + ioe.toString());
+                                    return;
+                                }
+
+                                dropRequest.setDroppedSize(dropRequest.getDroppedSize().add(droppedSize));
+                                incrementSwapQueueSize(-swapFileSize.getObjectCount(), -swapFileSize.getByteCount(), -1);
+                                dropRequest.setCurrentSize(getQueueSize());
+                            }
+                        }
+
                         final int swapFileCount = swapLocations.size();
                         final Iterator<String> swapLocationItr = swapLocations.iterator();
                         while (swapLocationItr.hasNext()) {
@@ -1239,7 +1848,7 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
         builder.setSourceQueueIdentifier(getIdentifier());
 
         final ContentClaim contentClaim = flowFile.getContentClaim();
-        if (contentClaim != null) {
+        if (contentClaim != null && contentClaim.getResourceClaim() != null) {
             final ResourceClaim resourceClaim = contentClaim.getResourceClaim();
             builder.setPreviousContentClaim(resourceClaim.getContainer(), resourceClaim.getSection(), resourceClaim.getId(), contentClaim.getOffset(), flowFile.getSize());
         }
@@ -1379,6 +1988,10 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
                 logIfNegative(original, newSize, "Unacknowledged");
             }
         }
+
+        if (count > 0) {
+            lastPollTimestamp = System.currentTimeMillis();
+        }
     }
 
     private void logIfNegative(final FlowFileQueueSize original, final FlowFileQueueSize newSize, final String counterName) {
@@ -1440,6 +2053,48 @@ public final class StandardFlowFileQueue implements FlowFileQueue {
     }
 
 
+    private static class SwapInResult {
+        private final SwapContents contents;
+        private final boolean partial;
+
+        public SwapInResult(final SwapContents contents, final boolean partial) {
+            this.contents = contents;
+            this.partial = partial;
+        }
+
+        public SwapContents getContents() {
+            return contents;
+        }
+
+        public boolean isPartial() {
+            return partial;
+        }
+    }
+
+
+    private static class PendingSwapIn {
+        private final String swapLocation;
+        private final FutureTask<SwapInResult> future;
+
+        public PendingSwapIn(final String swapLocation, final FutureTask<SwapInResult> future) {
+            this.swapLocation = swapLocation;
+            this.future = future;
+        }
+
+        public String getSwapLocation() {
+            return swapLocation;
+        }
+
+        public FutureTask<SwapInResult> getFuture() {
+            return future;
+        }
+
+        public boolean isDone() {
+            return future.isDone();
+        }
+    }
+
+
     private static class MaxQueueSize {
         private final String maxSize;
         private final long maxBytes;
@@ -0,0 +1,360 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * <p>
+ * A persistent, append-only journal of the files that have been archived in a single container of the {@link FileSystemRepository},
+ * in the order in which they were archived. Because files are archived roughly in the order in which they were created, the head of
+ * the journal holds the oldest archived files, and expiring archived data only requires reading entries from the head of the journal,
+ * rather than walking the archive directories.
+ * </p>
+ *
+ * <p>
+ * The journal begins with a header that holds the offset of the first entry that has not yet been removed, the offset of the end of
+ * the last entry that was synced, and the number of entries in between. Entries are appended after the end offset, and removing
+ * entries only advances the head offset; the header is rewritten whenever the journal is synced. Once the removed entries make up most
+ * of the journal, it is compacted by copying the remaining entries to a new journal that replaces it.
+ * </p>
+ *
+ * <p>
+ * Entries that were appended after the journal was last synced are lost if NiFi is stopped abruptly, so the files that they refer to
+ * are no longer known to the journal. Such files are found only by walking the archive directories.
+ * </p>
+ *
+ * <p>
+ * Thread safe
+ * </p>
+ */
+final class ArchiveIndex implements Closeable {
+
+    static final String FILENAME = "archive.index";
+
+    private static final int ENCODING_VERSION = 1;
+    private static final int HEADER_LENGTH = 4 + 8 + 8 + 8;
+    private static final int READ_CHUNK_SIZE = 1024 * 1024;
+    private static final long MIN_COMPACTION_BYTES = 16L * 1024L * 1024L;
+
+    private final Path file;
+
+    // all guarded by synchronizing on this
+    private FileChannel channel;
+    private long headOffset;
+    private long endOffset;
+    private long entryCount;
+    private long readOffset; // offset of the first entry that has not been read into readAhead
+    private final Deque<Entry> readAhead = new ArrayDeque<>();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream pendingOut = new DataOutputStream(pending);
+    private long pendingCount = 0L;
+
+    /**
+     * Opens the journal at the given path, creating it if it does not exist. Any bytes following the end of the last synced entry
+     * are discarded.
+     *
+     * @param file the journal's path
+     * @throws IOException if unable to open or create the journal, or if the journal is not valid
+     */
+    ArchiveIndex(final Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (channel.size() < HEADER_LENGTH) {
+            headOffset = HEADER_LENGTH;
+            endOffset = HEADER_LENGTH;
+            entryCount = 0L;
+            writeHeader(channel, headOffset, endOffset, entryCount);
+            channel.truncate(HEADER_LENGTH);
+            channel.force(true);
+        } else {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new EOFException("Archive index " + file + " is truncated");
+                }
+            }
+            header.flip();
+
+            final int version = header.getInt();
+            if (version != ENCODING_VERSION) {
+                channel.close();
+                throw new IOException("Archive index " + file + " was written with encoding version " + version + " but only version " + ENCODING_VERSION + " is understood");
+            }
+
+            headOffset = header.getLong();
+            endOffset = header.getLong();
+            entryCount = header.getLong();
+            if (headOffset < HEADER_LENGTH || endOffset < headOffset || endOffset > channel.size()) {
+                channel.close();
+                throw new IOException("Archive index " + file + " has an invalid header");
+            }
+
+            if (channel.size() > endOffset) {
+                channel.truncate(endOffset);
+            }
+        }
+
+        readOffset = headOffset;
+    }
+
+    /**
+     * Adds an entry to the end of the journal. The entry is not written to disk, and cannot be read, until {@link #sync()} is called.
+     *
+     * @param section the section of the container that holds the archived file
+     * @param id the identifier of the Resource Claim whose file was archived
+     * @param size the size of the archived file
+     * @param lastModTime the time at which the archived file was created
+     */
+    synchronized void append(final String section, final String id, final long size, final long lastModTime) throws IOException {
+        pendingOut.writeLong(lastModTime);
+        pendingOut.writeLong(size);
+        pendingOut.writeUTF(section);
+        pendingOut.writeUTF(id);
+        pendingCount++;
+    }
+
+    /**
+     * @return the oldest entry in the journal, or <code>null</code> if the journal holds no synced entries
+     */
+    synchronized Entry peek() throws IOException {
+        if (readAhead.isEmpty()) {
+            fillReadAhead();
+        }
+
+        return readAhead.peekFirst();
+    }
+
+    /**
+     * Removes the oldest entry from the journal. The removal is not persisted until {@link #sync()} is called.
+     *
+     * @return the oldest entry in the journal, or <code>null</code> if the journal holds no synced entries
+     */
+    synchronized Entry poll() throws IOException {
+        final Entry entry = peek();
+        if (entry != null) {
+            readAhead.pollFirst();
+            headOffset = entry.getEndOffset();
+            entryCount--;
+        }
+
+        return entry;
+    }
+
+    /**
+     * @return the number of synced entries in the journal
+     */
+    synchronized long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Writes any appended entries to disk and persists any removals, compacting the journal if most of it holds removed entries
+     */
+    synchronized void sync() throws IOException {
+        if (pendingCount > 0L) {
+            final ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+            long position = endOffset;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+
+            endOffset = position;
+            entryCount += pendingCount;
+            pending.reset();
+            pendingCount = 0L;
+            channel.force(false);
+        }
+
+        writeHeader(channel, headOffset, endOffset, entryCount);
+        channel.force(false);
+
+        final long removedBytes = headOffset - HEADER_LENGTH;
+        if (removedBytes >= MIN_COMPACTION_BYTES && removedBytes > endOffset - headOffset) {
+            compact();
+        }
+    }
+
+    /**
+     * Removes all entries from the journal
+     */
+    synchronized void clear() throws IOException {
+        pending.reset();
+        pendingCount = 0L;
+        readAhead.clear();
+
+        headOffset = HEADER_LENGTH;
+        endOffset = HEADER_LENGTH;
+        readOffset = HEADER_LENGTH;
+        entryCount = 0L;
+
+        channel.truncate(HEADER_LENGTH);
+        writeHeader(channel, headOffset, endOffset, entryCount);
+        channel.force(true);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void compact() throws IOException {
+        final Path partialFile = file.resolveSibling(file.getFileName() + ".partial");
+        final long liveBytes = endOffset - headOffset;
+
+        try (final FileChannel compacted = FileChannel.open(partialFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(compacted, HEADER_LENGTH, HEADER_LENGTH + liveBytes, entryCount);
+
+            long transferred = 0L;
+            while (transferred < liveBytes) {
+                transferred += channel.transferTo(headOffset + transferred, liveBytes - transferred, compacted.position(HEADER_LENGTH + transferred));
+            }
+            compacted.force(true);
+        }
+
+        channel.close();
+        Files.move(partialFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        // shift everything that refers to a position in the journal by the number of bytes that were dropped
+        final long shift = headOffset - HEADER_LENGTH;
+        headOffset -= shift;
+        endOffset -= shift;
+        readOffset -= shift;
+
+        final Deque<Entry> shifted = new ArrayDeque<>(readAhead.size());
+        for (final Entry entry : readAhead) {
+            shifted.add(new Entry(entry.getSection(), entry.getId(), entry.getSize(), entry.getLastModTime(), entry.getEndOffset() - shift));
+        }
+        readAhead.clear();
+        readAhead.addAll(shifted);
+    }
+
+    private void fillReadAhead() throws IOException {
+        if (readOffset >= endOffset) {
+            return;
+        }
+
+        final int chunkSize = (int) Math.min(READ_CHUNK_SIZE, endOffset - readOffset);
+        final ByteBuffer chunk = ByteBuffer.allocate(chunkSize);
+        while (chunk.hasRemaining()) {
+            if (channel.read(chunk, readOffset + chunk.position()) < 0) {
+                throw new EOFException("Archive index " + file + " ends before its last synced entry");
+            }
+        }
+
+        // the chunk may end partway into an entry, which is then read along with the next chunk
+        final ByteArrayInputStream bais = new ByteArrayInputStream(chunk.array());
+        final DataInputStream in = new DataInputStream(bais);
+        while (bais.available() > 0) {
+            final int entryStart = chunkSize - bais.available();
+            try {
+                final long lastModTime = in.readLong();
+                final long size = in.readLong();
+                final String section = in.readUTF();
+                final String id = in.readUTF();
+                final long entryEnd = readOffset + chunkSize - bais.available();
+                readAhead.add(new Entry(section, id, size, lastModTime, entryEnd));
+            } catch (final EOFException eof) {
+                if (entryStart == 0) {
+                    throw new IOException("Archive index " + file + " holds an entry that is larger than " + READ_CHUNK_SIZE + " bytes");
+                }
+
+                readOffset += entryStart;
+                return;
+            }
+        }
+
+        readOffset += chunkSize;
+    }
+
+    private static void writeHeader(final FileChannel channel, final long headOffset, final long endOffset, final long entryCount) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(ENCODING_VERSION);
+        header.putLong(headOffset);
+        header.putLong(endOffset);
+        header.putLong(entryCount);
+        header.flip();
+
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    /**
+     * An archived file
+     */
+    static final class Entry {
+        private final String section;
+        private final String id;
+        private final long size;
+        private final long lastModTime;
+        private final long endOffset;
+
+        private Entry(final String section, final String id, final long size, final long lastModTime, final long endOffset) {
+            this.section = section;
+            this.id = id;
+            this.size = size;
+            this.lastModTime = lastModTime;
+            this.endOffset = endOffset;
+        }
+
+        String getSection() {
+            return section;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getLastModTime() {
+            return lastModTime;
+        }
+
+        private long getEndOffset() {
+            return endOffset;
+        }
+
+        @Override
+        public String toString() {
+            return "ArchiveIndex.Entry[section=" + section + ", id=" + id + ", size=" + size + "]";
+        }
+    }
+}
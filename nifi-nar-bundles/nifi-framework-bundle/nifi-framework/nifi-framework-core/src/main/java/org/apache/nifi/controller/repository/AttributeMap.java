@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * An immutable map of FlowFile attributes that stores its keys in a {@link KeyTable} that is shared with every other
+ * AttributeMap that has the same keys, added in the same order, and stores only an array of values itself.
+ * </p>
+ *
+ * <p>
+ * FlowFiles that are derived from one another (clones, forks, and the new versions of a FlowFile that are created
+ * each time an attribute is updated) nearly always have the same keys, so they share a single key table, and a
+ * FlowFile whose attributes are not changed shares the entire map with the FlowFile that it was created from.
+ * </p>
+ *
+ * <b>Immutable - Thread Safe</b>
+ */
+final class AttributeMap extends AbstractMap<String, String> {
+
+    static final AttributeMap EMPTY = new AttributeMap(KeyTable.ROOT, new String[0]);
+
+    private final KeyTable keyTable;
+    private final String[] values;
+
+    private AttributeMap(final KeyTable keyTable, final String[] values) {
+        this.keyTable = keyTable;
+        this.values = values;
+    }
+
+    @Override
+    public String get(final Object key) {
+        final int index = keyTable.indexOf(key);
+        return index < 0 ? null : values[index];
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return keyTable.indexOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return new Iterator<Map.Entry<String, String>>() {
+                    private int index = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < values.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+
+                        final Map.Entry<String, String> entry = new SimpleImmutableEntry<>(keyTable.keys[index], values[index]);
+                        index++;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return values.length;
+            }
+        };
+    }
+
+    KeyTable getKeyTable() {
+        return keyTable;
+    }
+
+    /**
+     * The keys of an AttributeMap, in the order in which they were added. Key tables are immutable and are obtained
+     * only by adding a key to an existing table, starting from {@link #ROOT}. Each table remembers the tables that
+     * were derived from it, so that adding the same keys in the same order always yields the same table.
+     */
+    static final class KeyTable {
+        // Limits the number of tables that are remembered, so that FlowFiles whose attribute names are unique
+        // (such as names that contain a timestamp or an identifier) cannot cause the tables to grow without bound.
+        // Tables that are created beyond this limit still work but are not shared.
+        static final int MAX_CACHED_TABLES = 10000;
+        private static final AtomicInteger cachedTableCount = new AtomicInteger(0);
+
+        static final KeyTable ROOT = new KeyTable(new String[0]);
+
+        private final String[] keys;
+        private final Map<String, Integer> indices;
+        private final ConcurrentMap<String, KeyTable> transitions = new ConcurrentHashMap<>();
+
+        private KeyTable(final String[] keys) {
+            this.keys = keys;
+
+            final Map<String, Integer> indices = new HashMap<>(keys.length * 2);
+            for (int i = 0; i < keys.length; i++) {
+                indices.put(keys[i], i);
+            }
+            this.indices = Collections.unmodifiableMap(indices);
+        }
+
+        int indexOf(final Object key) {
+            final Integer index = indices.get(key);
+            return index == null ? -1 : index;
+        }
+
+        int size() {
+            return keys.length;
+        }
+
+        String getKey(final int index) {
+            return keys[index];
+        }
+
+        KeyTable withKey(final String key) {
+            final KeyTable existing = transitions.get(key);
+            if (existing != null) {
+                return existing;
+            }
+
+            final String[] newKeys = Arrays.copyOf(keys, keys.length + 1);
+            newKeys[keys.length] = key;
+            final KeyTable table = new KeyTable(newKeys);
+
+            if (cachedTableCount.get() >= MAX_CACHED_TABLES) {
+                return table;
+            }
+
+            final KeyTable raced = transitions.putIfAbsent(key, table);
+            if (raced != null) {
+                return raced;
+            }
+
+            cachedTableCount.incrementAndGet();
+            return table;
+        }
+    }
+
+    /**
+     * Builds an AttributeMap, starting from an existing AttributeMap and copying only what is changed.
+     * Not thread safe.
+     */
+    static final class Builder {
+        private AttributeMap base = EMPTY;
+        private KeyTable keyTable = KeyTable.ROOT;
+        private String[] values = EMPTY.values;
+        private boolean copied = false;
+        private boolean removed = false;
+
+        /**
+         * Adds all of the given attributes whose keys and values are not null. If this builder is empty and the
+         * attributes are an AttributeMap, nothing is copied unless and until the attributes are changed.
+         *
+         * @param attributes the attributes
+         * @return this builder
+         */
+        Builder putAll(final Map<String, String> attributes) {
+            if (attributes instanceof AttributeMap && values.length == 0) {
+                base = (AttributeMap) attributes;
+                keyTable = base.keyTable;
+                values = base.values;
+                copied = false;
+                removed = false;
+                return this;
+            }
+
+            for (final Map.Entry<String, String> entry : attributes.entrySet()) {
+                final String key = entry.getKey();
+                final String value = entry.getValue();
+                if (key != null && value != null) {
+                    put(key, value);
+                }
+            }
+            return this;
+        }
+
+        Builder put(final String key, final String value) {
+            final int index = keyTable.indexOf(key);
+            if (index >= 0) {
+                if (value.equals(values[index])) {
+                    return this;
+                }
+
+                copyOnWrite();
+                values[index] = value;
+                return this;
+            }
+
+            keyTable = keyTable.withKey(key);
+            values = Arrays.copyOf(values, values.length + 1);
+            values[values.length - 1] = value;
+            copied = true;
+            return this;
+        }
+
+        Builder remove(final String key) {
+            final int index = keyTable.indexOf(key);
+            if (index < 0 || values[index] == null) {
+                return this;
+            }
+
+            copyOnWrite();
+            values[index] = null;
+            removed = true;
+            return this;
+        }
+
+        /**
+         * @return the keys that currently have a value, in the order in which they were added
+         */
+        Iterable<String> keys() {
+            return new Iterable<String>() {
+                @Override
+                public Iterator<String> iterator() {
+                    return new Iterator<String>() {
+                        private int index = advance(0);
+
+                        private int advance(final int from) {
+                            int i = from;
+                            while (i < values.length && values[i] == null) {
+                                i++;
+                            }
+                            return i;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < values.length;
+                        }
+
+                        @Override
+                        public String next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+
+                            final String key = keyTable.getKey(index);
+                            index = advance(index + 1);
+                            return key;
+                        }
+                    };
+                }
+            };
+        }
+
+        AttributeMap build() {
+            if (!copied) {
+                return base;
+            }
+
+            if (removed) {
+                // rebuild the key table from the root so that it is shared with other maps that have the same keys
+                KeyTable compactedTable = KeyTable.ROOT;
+                final String[] compactedValues = new String[values.length];
+                int count = 0;
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] != null) {
+                        compactedTable = compactedTable.withKey(keyTable.getKey(i));
+                        compactedValues[count++] = values[i];
+                    }
+                }
+
+                keyTable = compactedTable;
+                values = Arrays.copyOf(compactedValues, count);
+                removed = false;
+            }
+
+            base = new AttributeMap(keyTable, values);
+            copied = false;
+            return base;
+        }
+
+        private void copyOnWrite() {
+            if (!copied) {
+                values = values.clone();
+                copied = true;
+            }
+        }
+    }
+}
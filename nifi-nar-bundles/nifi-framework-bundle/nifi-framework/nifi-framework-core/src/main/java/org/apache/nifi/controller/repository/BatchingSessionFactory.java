@@ -18,6 +18,9 @@ package org.apache.nifi.controller.repository;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.List;
@@ -87,6 +90,11 @@ public class BatchingSessionFactory implements ProcessSessionFactory {
             return session.get(maxResults);
         }
 
+        @Override
+        public List<FlowFile> get(int maxResults, long maxBytes, String groupingAttribute) {
+            return session.get(maxResults, maxBytes, groupingAttribute);
+        }
+
         @Override
         public List<FlowFile> get(FlowFileFilter filter) {
             return session.get(filter);
@@ -227,6 +235,11 @@ public class BatchingSessionFactory implements ProcessSessionFactory {
             return session.importFrom(source, destination);
         }
 
+        @Override
+        public FlowFile importFrom(ReadableByteChannel source, FlowFile destination) {
+            return session.importFrom(source, destination);
+        }
+
         @Override
         public void exportTo(FlowFile flowFile, Path destination, boolean append) {
             session.exportTo(flowFile, destination, append);
@@ -237,6 +250,16 @@ public class BatchingSessionFactory implements ProcessSessionFactory {
             session.exportTo(flowFile, destination);
         }
 
+        @Override
+        public ByteBuffer map(FlowFile flowFile) {
+            return session.map(flowFile);
+        }
+
+        @Override
+        public void exportTo(FlowFile flowFile, WritableByteChannel destination) {
+            session.exportTo(flowFile, destination);
+        }
+
         @Override
         public ProvenanceReporter getProvenanceReporter() {
             return session.getProvenanceReporter();
@@ -0,0 +1,272 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * <p>
+ * Reads content that was written by a {@link BlockCompressedOutputStream}, starting at any offset of the uncompressed content.
+ * The block that holds the starting offset is found by reading only the headers of the blocks before it, and only the blocks
+ * from that one on are decompressed. Skipping over content likewise skips entire blocks without decompressing them.
+ * </p>
+ *
+ * <p>
+ * A block that has been only partially written, as may be the case if NiFi was stopped while writing it, is treated as the end
+ * of the content.
+ * </p>
+ *
+ * <p>
+ * Not thread safe
+ * </p>
+ */
+final class BlockCompressedInputStream extends InputStream {
+
+    private static final byte[] EMPTY_BLOCK = new byte[0];
+
+    private final FileChannel channel;
+    private final ByteBuffer headerBuffer = ByteBuffer.allocate(BlockCompressedOutputStream.HEADER_LENGTH);
+    private final Inflater inflater = new Inflater();
+
+    private long position = 0L; // position in the file of the next block's header
+    private byte[] block = EMPTY_BLOCK;
+    private int blockLength = 0;
+    private int blockIndex = 0;
+    private boolean endOfContent = false;
+    private boolean closed = false;
+
+    /**
+     * Creates a stream that reads the given channel, starting with the byte at the given offset of the uncompressed content.
+     * The stream takes ownership of the channel and closes it when the stream is closed.
+     *
+     * @param channel the channel to read
+     * @param offset the offset of the uncompressed content at which to begin reading
+     * @throws EOFException if the uncompressed content is shorter than the given offset
+     * @throws IOException if unable to read the channel
+     */
+    BlockCompressedInputStream(final FileChannel channel, final long offset) throws IOException {
+        this.channel = channel;
+
+        try {
+            final long skipped = skip(offset);
+            if (skipped < offset) {
+                throw new EOFException("Expected to find at least " + offset + " bytes of content but found only " + skipped);
+            }
+        } catch (final IOException ioe) {
+            close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Determines how many bytes of uncompressed content the given channel holds by reading the headers of its blocks.
+     *
+     * @param channel the channel to read
+     * @return the number of bytes of uncompressed content
+     * @throws IOException if unable to read the channel
+     */
+    static long getUncompressedLength(final FileChannel channel) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(BlockCompressedOutputStream.HEADER_LENGTH);
+        long position = 0L;
+        long length = 0L;
+        while (readHeader(channel, position, header)) {
+            length += header.getInt(1);
+            position += BlockCompressedOutputStream.HEADER_LENGTH + header.getInt(5);
+        }
+
+        return length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureBlock()) {
+            return -1;
+        }
+
+        return block[blockIndex++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureBlock()) {
+            return -1;
+        }
+
+        final int toCopy = Math.min(len, blockLength - blockIndex);
+        System.arraycopy(block, blockIndex, b, off, toCopy);
+        blockIndex += toCopy;
+        return toCopy;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        ensureOpen();
+        if (n <= 0L) {
+            return 0L;
+        }
+
+        // skip whatever is left of the current block, then skip entire blocks by reading only their headers.
+        long skipped = Math.min(n, blockLength - blockIndex);
+        blockIndex += (int) skipped;
+
+        while (skipped < n && !endOfContent) {
+            if (!readHeader(channel, position, headerBuffer)) {
+                endOfContent = true;
+                break;
+            }
+
+            final int uncompressedLength = headerBuffer.getInt(1);
+            if (skipped + uncompressedLength > n) {
+                // the content that we want begins within this block, so we have to decompress it.
+                loadBlock();
+                final int toSkip = (int) (n - skipped);
+                blockIndex = toSkip;
+                skipped += toSkip;
+                break;
+            }
+
+            position += BlockCompressedOutputStream.HEADER_LENGTH + headerBuffer.getInt(5);
+            skipped += uncompressedLength;
+        }
+
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return blockLength - blockIndex;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        inflater.end();
+        channel.close();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+    }
+
+    /**
+     * Ensures that there is at least one byte in the current block, loading the next block if need be
+     *
+     * @return <code>true</code> if there is content to read, <code>false</code> if the end of the content has been reached
+     */
+    private boolean ensureBlock() throws IOException {
+        ensureOpen();
+        while (blockIndex >= blockLength) {
+            if (endOfContent || !readHeader(channel, position, headerBuffer)) {
+                endOfContent = true;
+                return false;
+            }
+
+            loadBlock();
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads and decompresses the block whose header has just been read into the header buffer
+     */
+    private void loadBlock() throws IOException {
+        final byte blockType = headerBuffer.get(0);
+        final int uncompressedLength = headerBuffer.getInt(1);
+        final int dataLength = headerBuffer.getInt(5);
+
+        final ByteBuffer data = ByteBuffer.allocate(dataLength);
+        final long dataPosition = position + BlockCompressedOutputStream.HEADER_LENGTH;
+        while (data.hasRemaining()) {
+            if (channel.read(data, dataPosition + data.position()) < 0) {
+                // the block was only partially written
+                endOfContent = true;
+                blockLength = 0;
+                blockIndex = 0;
+                return;
+            }
+        }
+
+        if (block.length < uncompressedLength) {
+            block = new byte[uncompressedLength];
+        }
+
+        if (blockType == BlockCompressedOutputStream.BLOCK_STORED) {
+            System.arraycopy(data.array(), 0, block, 0, dataLength);
+        } else {
+            inflater.reset();
+            inflater.setInput(data.array(), 0, dataLength);
+            try {
+                int inflated = 0;
+                while (inflated < uncompressedLength) {
+                    final int count = inflater.inflate(block, inflated, uncompressedLength - inflated);
+                    if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new IOException("Compressed block at position " + position + " holds only " + inflated + " of the expected " + uncompressedLength + " bytes");
+                    }
+                    inflated += count;
+                }
+            } catch (final DataFormatException dfe) {
+                throw new IOException("Compressed block at position " + position + " is corrupt", dfe);
+            }
+        }
+
+        position = dataPosition + dataLength;
+        blockLength = uncompressedLength;
+        blockIndex = 0;
+    }
+
+    /**
+     * Reads the header of the block at the given position into the given buffer
+     *
+     * @return <code>true</code> if a complete header was read, <code>false</code> if the end of the file was reached first
+     * @throws IOException if unable to read the header or the header is not valid
+     */
+    private static boolean readHeader(final FileChannel channel, final long position, final ByteBuffer header) throws IOException {
+        header.clear();
+        while (header.hasRemaining()) {
+            if (channel.read(header, position + header.position()) < 0) {
+                return false;
+            }
+        }
+
+        final byte blockType = header.get(0);
+        final int uncompressedLength = header.getInt(1);
+        final int dataLength = header.getInt(5);
+        if ((blockType != BlockCompressedOutputStream.BLOCK_STORED && blockType != BlockCompressedOutputStream.BLOCK_DEFLATED)
+            || uncompressedLength <= 0 || dataLength < 0 || (blockType == BlockCompressedOutputStream.BLOCK_STORED && dataLength != uncompressedLength)) {
+            throw new IOException("Invalid block header at position " + position + "; the content was not written by a block-compressed Content Repository or is corrupt");
+        }
+
+        return true;
+    }
+}
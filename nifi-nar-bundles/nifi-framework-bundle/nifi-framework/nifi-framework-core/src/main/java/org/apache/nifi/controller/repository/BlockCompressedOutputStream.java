@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * <p>
+ * Writes content as a series of independently compressed blocks, so that the content can later be read starting at any offset
+ * by decompressing only the blocks from that offset on. Each block consists of a header followed by the block's data:
+ * </p>
+ *
+ * <ul>
+ * <li>1 byte: {@link #BLOCK_STORED} if the data is stored as-is or {@link #BLOCK_DEFLATED} if it is compressed with Deflate</li>
+ * <li>4 bytes: the number of bytes that the block holds once decompressed</li>
+ * <li>4 bytes: the number of bytes of data that follow the header</li>
+ * </ul>
+ *
+ * <p>
+ * Because every header gives the length of its block both before and after compression, the headers themselves serve as
+ * the index of the blocks: a reader can find the block that holds a given offset by reading only the headers of the blocks
+ * before it. Blocks that would not get any smaller by compressing them are stored as-is.
+ * </p>
+ *
+ * <p>
+ * Closing this stream writes any buffered content as a final block but does not close the underlying stream, so that
+ * other content may be appended to it.
+ * </p>
+ *
+ * <p>
+ * Not thread safe
+ * </p>
+ */
+final class BlockCompressedOutputStream extends OutputStream {
+
+    static final byte BLOCK_STORED = 0;
+    static final byte BLOCK_DEFLATED = 1;
+    static final int HEADER_LENGTH = 9;
+
+    private final OutputStream out;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final byte[] buffer;
+    private final byte[] blockBuffer;
+    private int bufferCount = 0;
+
+    private long uncompressedBytes = 0L;
+    private long storedBytes = 0L;
+    private boolean closed = false;
+
+    /**
+     * @param out the stream to write the blocks to
+     * @param blockSize the number of bytes of content that each block holds before compression
+     */
+    BlockCompressedOutputStream(final OutputStream out, final int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+
+        this.out = out;
+        this.buffer = new byte[blockSize];
+        this.blockBuffer = new byte[HEADER_LENGTH + blockSize];
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        ensureOpen();
+        buffer[bufferCount++] = (byte) b;
+        if (bufferCount == buffer.length) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        ensureOpen();
+
+        int written = 0;
+        while (written < len) {
+            final int toCopy = Math.min(len - written, buffer.length - bufferCount);
+            System.arraycopy(b, off + written, buffer, bufferCount, toCopy);
+            bufferCount += toCopy;
+            written += toCopy;
+
+            if (bufferCount == buffer.length) {
+                writeBlock();
+            }
+        }
+    }
+
+    /**
+     * Writes any buffered content as a block, which may therefore be smaller than the configured block size, and flushes the
+     * underlying stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        writeBlock();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        try {
+            writeBlock();
+            out.flush();
+        } finally {
+            closed = true;
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return the number of bytes of content written to this stream
+     */
+    long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    /**
+     * @return the number of bytes, including block headers, written to the underlying stream
+     */
+    long getStoredBytes() {
+        return storedBytes;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (bufferCount == 0) {
+            return;
+        }
+
+        deflater.reset();
+        deflater.setInput(buffer, 0, bufferCount);
+        deflater.finish();
+
+        // only keep the compressed form if it is smaller than the block itself; otherwise, store the block as-is.
+        int compressedLength = 0;
+        final int maxCompressedLength = bufferCount - 1;
+        while (!deflater.finished() && compressedLength < maxCompressedLength) {
+            compressedLength += deflater.deflate(blockBuffer, HEADER_LENGTH + compressedLength, maxCompressedLength - compressedLength);
+        }
+
+        final byte blockType;
+        final int dataLength;
+        if (deflater.finished()) {
+            blockType = BLOCK_DEFLATED;
+            dataLength = compressedLength;
+        } else {
+            blockType = BLOCK_STORED;
+            dataLength = bufferCount;
+            System.arraycopy(buffer, 0, blockBuffer, HEADER_LENGTH, bufferCount);
+        }
+
+        blockBuffer[0] = blockType;
+        writeInt(bufferCount, blockBuffer, 1);
+        writeInt(dataLength, blockBuffer, 5);
+
+        // write the header and the data together so that a failure does not leave a header without its data.
+        out.write(blockBuffer, 0, HEADER_LENGTH + dataLength);
+
+        uncompressedBytes += bufferCount;
+        storedBytes += HEADER_LENGTH + dataLength;
+        bufferCount = 0;
+    }
+
+    private static void writeInt(final int value, final byte[] destination, final int offset) {
+        destination[offset] = (byte) (value >>> 24);
+        destination[offset + 1] = (byte) (value >>> 16);
+        destination[offset + 2] = (byte) (value >>> 8);
+        destination[offset + 3] = (byte) value;
+    }
+}
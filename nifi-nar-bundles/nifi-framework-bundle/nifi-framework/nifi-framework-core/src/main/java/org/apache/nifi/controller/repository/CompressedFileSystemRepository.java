@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository;
+
+import java.io.IOException;
+
+import org.apache.nifi.processor.DataUnit;
+import org.apache.nifi.util.NiFiProperties;
+
+/**
+ * <p>
+ * A {@link FileSystemRepository} that compresses content as it is written. The content of each Content Claim is stored as a series
+ * of independently compressed blocks (see {@link BlockCompressedOutputStream}), so reading a claim, or a range of a claim, decompresses
+ * only the blocks that hold the content being read. The files are otherwise laid out, archived, and destroyed exactly as they are by
+ * the {@link FileSystemRepository}.
+ * </p>
+ *
+ * <p>
+ * The number of bytes of content that each block holds before compression is configured via the
+ * <code>nifi.content.repository.compression.block.size</code> property, with a default of 64 KB. Larger blocks generally compress
+ * better, while smaller blocks mean less content is decompressed in order to read from the middle of a claim.
+ * </p>
+ *
+ * <p>
+ * Content written by this repository cannot be read by the {@link FileSystemRepository}, and vice versa, so the implementation
+ * may be changed only when the Content Repository is empty.
+ * </p>
+ */
+public class CompressedFileSystemRepository extends FileSystemRepository {
+
+    public static final String BLOCK_SIZE_PROPERTY = "nifi.content.repository.compression.block.size";
+    public static final int DEFAULT_BLOCK_SIZE_KB = 64;
+    public static final int MAX_BLOCK_SIZE_MB = 16;
+
+    public CompressedFileSystemRepository() throws IOException {
+        super(getBlockSize(NiFiProperties.getInstance()));
+    }
+
+    private static int getBlockSize(final NiFiProperties properties) {
+        final String blockSizeVal = properties.getProperty(BLOCK_SIZE_PROPERTY);
+        if (blockSizeVal == null || blockSizeVal.trim().isEmpty()) {
+            return (int) DataUnit.B.convert(DEFAULT_BLOCK_SIZE_KB, DataUnit.KB);
+        }
+
+        final long blockSize = DataUnit.parseDataSize(blockSizeVal.trim(), DataUnit.B).longValue();
+        if (blockSize < 1L || blockSize > DataUnit.B.convert(MAX_BLOCK_SIZE_MB, DataUnit.MB)) {
+            throw new IllegalArgumentException("Invalid value for property " + BLOCK_SIZE_PROPERTY + ": " + blockSizeVal
+                + "; the block size must be at least 1 byte and no more than " + MAX_BLOCK_SIZE_MB + " MB");
+        }
+        return (int) blockSize;
+    }
+
+    /**
+     * @param containerName the name of a container
+     * @return the number of bytes of content that have been written to the given container since the repository was created
+     *         divided by the number of bytes that it took to store that content, or 1 if no content has been written
+     */
+    @Override
+    public double getCompressionRatio(final String containerName) {
+        return super.getCompressionRatio(containerName);
+    }
+}
@@ -0,0 +1,551 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.nifi.controller.repository.claim.ContentClaim;
+import org.apache.nifi.controller.repository.claim.DeduplicatedContentClaim;
+import org.apache.nifi.controller.repository.claim.ResourceClaim;
+import org.apache.nifi.controller.repository.claim.ResourceClaimManager;
+import org.apache.nifi.controller.repository.claim.StandardContentClaim;
+import org.apache.nifi.engine.FlowEngine;
+import org.apache.nifi.stream.io.StreamUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * A {@link ContentRepository} that keeps identical content from being stored more than once by the Content Repository that it wraps.
+ * Content is hashed as it is written. When the content of a claim is closed, its hash is looked up in an index of the content
+ * already stored; if the same content is found, and another FlowFile still references it, the claim is switched to refer to the
+ * existing content (see {@link DeduplicatedContentClaim}) and the newly written copy is released. Otherwise, the claim is added to the
+ * index.
+ * </p>
+ *
+ * <p>
+ * The duplicate bytes are still written before they can be recognized as duplicates, and because a Resource Claim generally holds the
+ * content of many claims, the space that they occupy is reclaimed only when the rest of the Resource Claim is no longer needed.
+ * Content smaller than {@link #MIN_CONTENT_SIZE} bytes is not indexed, as tracking it would cost more than storing it again.
+ * </p>
+ *
+ * <p>
+ * The index is written to disk periodically and on shutdown so that content written before a restart can be matched afterward.
+ * Because the index may refer to content that has since been destroyed, an entry is used only if its Resource Claim is still
+ * referenced, and entries whose content is no longer accessible are dropped when the index is written.
+ * </p>
+ */
+public class DeduplicatingContentRepository implements ContentRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeduplicatingContentRepository.class);
+
+    public static final int MIN_CONTENT_SIZE = 1024;
+    public static final int MAX_INDEX_ENTRIES = 1000000;
+    static final String INDEX_FILENAME = "content.index";
+    private static final int INDEX_ENCODING_VERSION = 1;
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final long CHECKPOINT_SECONDS = 30L;
+    private static final long STATISTICS_MINUTES = 5L;
+
+    private final ContentRepository delegate;
+    private final Path indexDirectory;
+    private final ConcurrentMap<ByteBuffer, ContentClaim> index = new ConcurrentHashMap<>();
+    private final AtomicBoolean indexModified = new AtomicBoolean(false);
+    private final ScheduledExecutorService executor = new FlowEngine(1, "DeduplicatingContentRepository Workers", true);
+
+    private final AtomicLong deduplicatedCount = new AtomicLong(0L);
+    private final AtomicLong bytesSaved = new AtomicLong(0L);
+    private final AtomicLong lastLoggedBytesSaved = new AtomicLong(0L);
+
+    private ResourceClaimManager claimManager; // effectively final
+
+    /**
+     * @param delegate the repository in which content is stored
+     * @param indexDirectory the directory in which to keep the index of the stored content
+     */
+    public DeduplicatingContentRepository(final ContentRepository delegate, final Path indexDirectory) {
+        this.delegate = delegate;
+        this.indexDirectory = indexDirectory;
+    }
+
+    public ContentRepository getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void initialize(final ResourceClaimManager claimManager) throws IOException {
+        this.claimManager = claimManager;
+        delegate.initialize(claimManager);
+
+        Files.createDirectories(indexDirectory);
+        loadIndex();
+
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    checkpoint();
+                } catch (final Throwable t) {
+                    logger.error("Failed to write index of Content Repository to {} due to {}", indexDirectory, t.toString());
+                    if (logger.isDebugEnabled()) {
+                        logger.error("", t);
+                    }
+                }
+            }
+        }, CHECKPOINT_SECONDS, CHECKPOINT_SECONDS, TimeUnit.SECONDS);
+
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                final long saved = bytesSaved.get();
+                final long savedSinceLastLog = saved - lastLoggedBytesSaved.getAndSet(saved);
+                if (savedSinceLastLog > 0L) {
+                    logger.info("Avoided storing {} bytes of duplicate content in the last {} minutes ({} bytes for {} FlowFiles since NiFi was started); {} distinct contents are indexed",
+                        savedSinceLastLog, STATISTICS_MINUTES, saved, deduplicatedCount.get(), index.size());
+                }
+            }
+        }, STATISTICS_MINUTES, STATISTICS_MINUTES, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            checkpoint();
+        } catch (final IOException ioe) {
+            logger.warn("Failed to write index of Content Repository to {} due to {}", indexDirectory, ioe.toString());
+        }
+
+        delegate.shutdown();
+    }
+
+    /**
+     * @return the number of claims whose content was found to be identical to content that was already stored, since NiFi was started
+     */
+    public long getDeduplicatedCount() {
+        return deduplicatedCount.get();
+    }
+
+    /**
+     * @return the number of bytes of content that were found to be identical to content that was already stored, and so are not
+     *         kept twice, since NiFi was started
+     */
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    int getIndexSize() {
+        return index.size();
+    }
+
+    @Override
+    public Set<String> getContainerNames() {
+        return delegate.getContainerNames();
+    }
+
+    @Override
+    public long getContainerCapacity(final String containerName) throws IOException {
+        return delegate.getContainerCapacity(containerName);
+    }
+
+    @Override
+    public long getContainerUsableSpace(final String containerName) throws IOException {
+        return delegate.getContainerUsableSpace(containerName);
+    }
+
+    @Override
+    public ContentClaim create(final boolean lossTolerant) throws IOException {
+        return new DeduplicatedContentClaim(delegate.create(lossTolerant));
+    }
+
+    private static ContentClaim unwrap(final ContentClaim claim) {
+        if (claim instanceof DeduplicatedContentClaim) {
+            return ((DeduplicatedContentClaim) claim).getClaim();
+        }
+
+        return claim;
+    }
+
+    @Override
+    public int incrementClaimaintCount(final ContentClaim claim) {
+        return delegate.incrementClaimaintCount(unwrap(claim));
+    }
+
+    @Override
+    public int getClaimantCount(final ContentClaim claim) {
+        return delegate.getClaimantCount(unwrap(claim));
+    }
+
+    @Override
+    public int decrementClaimantCount(final ContentClaim claim) {
+        return delegate.decrementClaimantCount(unwrap(claim));
+    }
+
+    @Override
+    public boolean remove(final ContentClaim claim) {
+        return delegate.remove(unwrap(claim));
+    }
+
+    @Override
+    public ContentClaim clone(final ContentClaim original, final boolean lossTolerant) throws IOException {
+        if (original == null) {
+            return null;
+        }
+
+        // the copy is written through this repository, so that it is recognized as a duplicate of the original
+        final ContentClaim newClaim = create(lossTolerant);
+        try (final InputStream in = read(original);
+            final OutputStream out = write(newClaim)) {
+            StreamUtils.copy(in, out);
+        } catch (final IOException ioe) {
+            decrementClaimantCount(newClaim);
+            remove(newClaim);
+            throw ioe;
+        }
+        return newClaim;
+    }
+
+    @Override
+    public long merge(final Collection<ContentClaim> claims, final ContentClaim destination, final byte[] header, final byte[] footer, final byte[] demarcator) throws IOException {
+        if (claims.contains(destination)) {
+            throw new IllegalArgumentException("destination cannot be within claims");
+        }
+
+        long bytes = 0L;
+        try (final OutputStream out = write(destination)) {
+            if (header != null) {
+                out.write(header);
+                bytes += header.length;
+            }
+
+            final Iterator<ContentClaim> itr = claims.iterator();
+            while (itr.hasNext()) {
+                final ContentClaim readClaim = itr.next();
+                try (final InputStream in = read(readClaim)) {
+                    bytes += StreamUtils.copy(in, out);
+                }
+
+                if (itr.hasNext() && demarcator != null) {
+                    bytes += demarcator.length;
+                    out.write(demarcator);
+                }
+            }
+
+            if (footer != null) {
+                bytes += footer.length;
+                out.write(footer);
+            }
+
+            return bytes;
+        }
+    }
+
+    @Override
+    public long importFrom(final Path content, final ContentClaim claim) throws IOException {
+        try (final InputStream in = Files.newInputStream(content)) {
+            return importFrom(in, claim);
+        }
+    }
+
+    @Override
+    public long importFrom(final InputStream content, final ContentClaim claim) throws IOException {
+        try (final OutputStream out = write(claim)) {
+            return StreamUtils.copy(content, out);
+        }
+    }
+
+    @Override
+    public long importFrom(final ReadableByteChannel content, final ContentClaim claim) throws IOException {
+        // the content has to pass through the heap to be hashed, so it cannot be transferred directly into the wrapped repository.
+        // The channel must not be closed, so it is not wrapped in an InputStream.
+        long bytes = 0L;
+        final ByteBuffer buffer = ByteBuffer.allocate(8192);
+        try (final OutputStream out = write(claim)) {
+            int len;
+            while ((len = content.read(buffer)) != -1) {
+                out.write(buffer.array(), 0, len);
+                bytes += len;
+                buffer.clear();
+            }
+        }
+
+        return bytes;
+    }
+
+    @Override
+    public long exportTo(final ContentClaim claim, final Path destination, final boolean append) throws IOException {
+        return delegate.exportTo(unwrap(claim), destination, append);
+    }
+
+    @Override
+    public long exportTo(final ContentClaim claim, final Path destination, final boolean append, final long offset, final long length) throws IOException {
+        return delegate.exportTo(unwrap(claim), destination, append, offset, length);
+    }
+
+    @Override
+    public long exportTo(final ContentClaim claim, final OutputStream destination) throws IOException {
+        return delegate.exportTo(unwrap(claim), destination);
+    }
+
+    @Override
+    public long exportTo(final ContentClaim claim, final OutputStream destination, final long offset, final long length) throws IOException {
+        return delegate.exportTo(unwrap(claim), destination, offset, length);
+    }
+
+    @Override
+    public long exportTo(final ContentClaim claim, final WritableByteChannel destination, final long offset, final long length) throws IOException {
+        return delegate.exportTo(unwrap(claim), destination, offset, length);
+    }
+
+    @Override
+    public long size(final ContentClaim claim) throws IOException {
+        return delegate.size(unwrap(claim));
+    }
+
+    @Override
+    public InputStream read(final ContentClaim claim) throws IOException {
+        return delegate.read(unwrap(claim));
+    }
+
+    @Override
+    public ByteBuffer map(final ContentClaim claim, final long offset, final long length) throws IOException {
+        return delegate.map(unwrap(claim), offset, length);
+    }
+
+    @Override
+    public OutputStream write(final ContentClaim claim) throws IOException {
+        if (!(claim instanceof DeduplicatedContentClaim)) {
+            return delegate.write(claim);
+        }
+
+        final DeduplicatedContentClaim dedupClaim = (DeduplicatedContentClaim) claim;
+        final ContentClaim written = dedupClaim.getClaim();
+        final OutputStream out = delegate.write(written);
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (final NoSuchAlgorithmException nsae) {
+            throw new IOException("Cannot hash content because the " + HASH_ALGORITHM + " algorithm is not available", nsae);
+        }
+
+        return new DigestOutputStream(out, digest) {
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+
+                closed = true;
+                super.close();
+                deduplicate(dedupClaim, written, ByteBuffer.wrap(digest.digest()));
+            }
+        };
+    }
+
+    /**
+     * Switches the given claim to refer to previously stored content with the given hash, if there is any, or else adds the
+     * content that was written to the index
+     *
+     * @param claim the claim whose content has been written
+     * @param written the claim in the wrapped repository that the content was written to
+     * @param hash the hash of the content
+     */
+    private void deduplicate(final DeduplicatedContentClaim claim, final ContentClaim written, final ByteBuffer hash) {
+        final long length = written.getLength();
+        if (length < MIN_CONTENT_SIZE || written.getResourceClaim() == null) {
+            return;
+        }
+
+        while (true) {
+            final ContentClaim existing = index.get(hash);
+            if (existing == null) {
+                if (index.size() >= MAX_INDEX_ENTRIES) {
+                    return;
+                }
+
+                final StandardContentClaim entry = new StandardContentClaim(written.getResourceClaim(), written.getOffset());
+                entry.setLength(length);
+                if (index.putIfAbsent(hash, entry) == null) {
+                    indexModified.set(true);
+                    return;
+                }
+
+                continue;
+            }
+
+            if (existing.getLength() != length || existing.equals(written)) {
+                return;
+            }
+
+            // Content whose Resource Claim is no longer referenced may be destroyed at any moment, so it can be shared only if
+            // another FlowFile still references it. If the last reference was released between the check and the increment,
+            // the increment is undone and the Resource Claim is again marked destructable.
+            final int claimantCount = delegate.getClaimantCount(existing) > 0 ? delegate.incrementClaimaintCount(existing) : 0;
+            if (claimantCount <= 1) {
+                if (claimantCount == 1 && delegate.decrementClaimantCount(existing) <= 0) {
+                    claimManager.markDestructable(existing.getResourceClaim());
+                }
+
+                if (index.remove(hash, existing)) {
+                    indexModified.set(true);
+                }
+                continue;
+            }
+
+            claim.deduplicate(existing);
+            if (delegate.decrementClaimantCount(written) <= 0) {
+                delegate.remove(written);
+            }
+
+            deduplicatedCount.incrementAndGet();
+            bytesSaved.addAndGet(length);
+            logger.debug("Content of {} is identical to that of {}; referencing the existing content instead", written, existing);
+            return;
+        }
+    }
+
+    @Override
+    public void purge() {
+        index.clear();
+        indexModified.set(true);
+        delegate.purge();
+    }
+
+    @Override
+    public void cleanup() {
+        delegate.cleanup();
+    }
+
+    @Override
+    public boolean isAccessible(final ContentClaim contentClaim) throws IOException {
+        return delegate.isAccessible(unwrap(contentClaim));
+    }
+
+    private void loadIndex() throws IOException {
+        final Path indexFile = indexDirectory.resolve(INDEX_FILENAME);
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+
+        try (final InputStream fis = Files.newInputStream(indexFile);
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(fis))) {
+            final int encodingVersion = in.readInt();
+            if (encodingVersion > INDEX_ENCODING_VERSION) {
+                logger.warn("Ignoring index of Content Repository at {} because it was written with encoding version {} but only versions up to {} are understood",
+                    indexFile, encodingVersion, INDEX_ENCODING_VERSION);
+                return;
+            }
+
+            final int entryCount = in.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                final byte[] hash = new byte[in.readUnsignedShort()];
+                in.readFully(hash);
+                final String container = in.readUTF();
+                final String section = in.readUTF();
+                final String id = in.readUTF();
+                final boolean lossTolerant = in.readBoolean();
+                final long offset = in.readLong();
+                final long length = in.readLong();
+
+                final ResourceClaim resourceClaim = claimManager.newResourceClaim(container, section, id, lossTolerant);
+                final StandardContentClaim entry = new StandardContentClaim(resourceClaim, offset);
+                entry.setLength(length);
+                index.put(ByteBuffer.wrap(hash), entry);
+            }
+        }
+
+        logger.info("Loaded index of {} distinct contents in the Content Repository from {}", index.size(), indexFile);
+    }
+
+    /**
+     * Drops index entries whose content is no longer accessible and, if the index has changed, writes it to disk
+     */
+    synchronized void checkpoint() throws IOException {
+        final Iterator<Map.Entry<ByteBuffer, ContentClaim>> itr = index.entrySet().iterator();
+        while (itr.hasNext()) {
+            final ContentClaim entry = itr.next().getValue();
+            if (delegate.getClaimantCount(entry) <= 0 && !delegate.isAccessible(entry)) {
+                itr.remove();
+                indexModified.set(true);
+            }
+        }
+
+        if (!indexModified.getAndSet(false)) {
+            return;
+        }
+
+        final Path indexFile = indexDirectory.resolve(INDEX_FILENAME);
+        final Path partialFile = indexDirectory.resolve(INDEX_FILENAME + ".partial");
+        try {
+            try (final OutputStream fos = Files.newOutputStream(partialFile);
+                final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+                // the index may change while it is being written, so a copy of it is written instead
+                final Map<ByteBuffer, ContentClaim> snapshot = new HashMap<>(index);
+                out.writeInt(INDEX_ENCODING_VERSION);
+                out.writeInt(snapshot.size());
+                for (final Map.Entry<ByteBuffer, ContentClaim> entry : snapshot.entrySet()) {
+                    final ByteBuffer hash = entry.getKey().duplicate();
+                    final ContentClaim claim = entry.getValue();
+                    final ResourceClaim resourceClaim = claim.getResourceClaim();
+
+                    out.writeShort(hash.remaining());
+                    out.write(hash.array(), hash.arrayOffset() + hash.position(), hash.remaining());
+                    out.writeUTF(resourceClaim.getContainer());
+                    out.writeUTF(resourceClaim.getSection());
+                    out.writeUTF(resourceClaim.getId());
+                    out.writeBoolean(resourceClaim.isLossTolerant());
+                    out.writeLong(claim.getOffset());
+                    out.writeLong(claim.getLength());
+                }
+            }
+
+            Files.move(partialFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException ioe) {
+            indexModified.set(true);
+            throw ioe;
+        }
+    }
+}
@@ -17,12 +17,18 @@
 package org.apache.nifi.controller.repository;
 
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
@@ -51,6 +57,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
@@ -88,6 +95,15 @@ public class FileSystemRepository implements ContentRepository {
     public static final String ARCHIVE_DIR_NAME = "archive";
     public static final Pattern MAX_ARCHIVE_SIZE_PATTERN = Pattern.compile("\\d{1,2}%");
     private static final Logger LOG = LoggerFactory.getLogger(FileSystemRepository.class);
+    private static final long SYNC_STATISTICS_MINUTES = 5L;
+    private static final long CONTAINER_LOAD_UPDATE_MILLIS = 1000L;
+    // the weight given to the most recent interval when averaging write latency and throughput
+    private static final double CONTAINER_LOAD_SMOOTHING = 0.3D;
+    // a container whose write cost is this many times that of the least costly container no longer has its files reused for new content
+    private static final double SLOW_CONTAINER_FACTOR = 2D;
+
+    public static final String CONTAINER_SELECTION_ROUND_ROBIN = "round-robin";
+    public static final String CONTAINER_SELECTION_LOAD_AWARE = "load-aware";
 
     private final Logger archiveExpirationLog = LoggerFactory.getLogger(FileSystemRepository.class.getName() + ".archive.expiration");
 
@@ -118,6 +134,9 @@ public class FileSystemRepository implements ContentRepository {
     private final long maxArchiveMillis;
     private final Map<String, Long> minUsableContainerBytesForArchive = new HashMap<>();
     private final boolean alwaysSync;
+    private final GroupCommitSyncer groupCommitSyncer; // null unless syncs are to be batched
+    private final int compressionBlockSize; // 0 unless content is stored as compressed blocks
+    private final boolean loadAwareSelection;
     private final ScheduledExecutorService containerCleanupExecutor;
 
     private ResourceClaimManager resourceClaimManager; // effectively final
@@ -125,10 +144,22 @@ public class FileSystemRepository implements ContentRepository {
     // Map of contianer to archived files that should be deleted next.
     private final Map<String, BlockingQueue<ArchiveInfo>> archivedFiles = new HashMap<>();
 
+    // Map of container to the journal of files archived in that container, in the order that they were archived. Empty unless archiving is enabled.
+    private final ConcurrentMap<String, ArchiveIndex> archiveIndexes = new ConcurrentHashMap<>();
+
     // guarded by synchronizing on this
     private final AtomicLong oldestArchiveDate = new AtomicLong(0L);
 
     public FileSystemRepository() throws IOException {
+        this(0);
+    }
+
+    /**
+     * @param compressionBlockSize if positive, the content of every Resource Claim is stored as a series of independently
+     *            compressed blocks, each holding this many bytes of content before compression; if 0, content is stored as-is
+     * @throws IOException if unable to create the repository's directories
+     */
+    protected FileSystemRepository(final int compressionBlockSize) throws IOException {
         final NiFiProperties properties = NiFiProperties.getInstance();
         // determine the file repository paths and ensure they exist
         final Map<String, Path> fileRespositoryPaths = properties.getContentRepositoryPaths();
@@ -209,6 +240,31 @@ public class FileSystemRepository implements ContentRepository {
 
         this.alwaysSync = Boolean.parseBoolean(properties.getProperty("nifi.content.repository.always.sync"));
         LOG.info("Initializing FileSystemRepository with 'Always Sync' set to {}", alwaysSync);
+
+        final String syncWindow = properties.getProperty(NiFiProperties.CONTENT_REPOSITORY_ALWAYS_SYNC_WINDOW);
+        if (alwaysSync && !StringUtils.isBlank(syncWindow)) {
+            final long syncWindowNanos = FormatUtils.getTimeDuration(syncWindow.trim(), TimeUnit.NANOSECONDS);
+            groupCommitSyncer = new GroupCommitSyncer(syncWindowNanos, TimeUnit.NANOSECONDS);
+            LOG.info("Writes to the same Resource Claim that complete within {} of one another will be synced to disk together", syncWindow);
+        } else {
+            groupCommitSyncer = null;
+        }
+
+        final String containerSelection = properties.getProperty(NiFiProperties.CONTENT_REPOSITORY_CONTAINER_SELECTION, CONTAINER_SELECTION_ROUND_ROBIN).trim();
+        if (CONTAINER_SELECTION_LOAD_AWARE.equalsIgnoreCase(containerSelection)) {
+            loadAwareSelection = true;
+            LOG.info("Containers for new content will be chosen based on their recent write latency, bytes being written, and free space");
+        } else if (CONTAINER_SELECTION_ROUND_ROBIN.equalsIgnoreCase(containerSelection) || containerSelection.isEmpty()) {
+            loadAwareSelection = false;
+        } else {
+            throw new RuntimeException("Invalid value specified for the '" + NiFiProperties.CONTENT_REPOSITORY_CONTAINER_SELECTION + "' property. Value must be one of '"
+                + CONTAINER_SELECTION_ROUND_ROBIN + "' or '" + CONTAINER_SELECTION_LOAD_AWARE + "'");
+        }
+
+        this.compressionBlockSize = compressionBlockSize;
+        if (compressionBlockSize > 0) {
+            LOG.info("Content will be stored as compressed blocks of {} bytes", compressionBlockSize);
+        }
         initializeRepository();
 
         containerCleanupExecutor = new FlowEngine(containers.size(), "Cleanup FileSystemRepository Container", true);
@@ -235,6 +291,14 @@ public class FileSystemRepository implements ContentRepository {
             final Runnable cleanup = new DestroyExpiredArchiveClaims(containerName, containerPath);
             containerCleanupExecutor.scheduleWithFixedDelay(cleanup, cleanupMillis, cleanupMillis, TimeUnit.MILLISECONDS);
         }
+
+        executor.scheduleWithFixedDelay(new UpdateContainerLoad(), CONTAINER_LOAD_UPDATE_MILLIS, CONTAINER_LOAD_UPDATE_MILLIS, TimeUnit.MILLISECONDS);
+        if (groupCommitSyncer != null) {
+            executor.scheduleWithFixedDelay(new LogSyncStatistics(), SYNC_STATISTICS_MINUTES, SYNC_STATISTICS_MINUTES, TimeUnit.MINUTES);
+        }
+        if (compressionBlockSize > 0) {
+            executor.scheduleWithFixedDelay(new LogCompressionStatistics(), SYNC_STATISTICS_MINUTES, SYNC_STATISTICS_MINUTES, TimeUnit.MINUTES);
+        }
     }
 
     @Override
@@ -255,6 +319,14 @@ public class FileSystemRepository implements ContentRepository {
             } catch (final IOException ioe) {
             }
         }
+
+        for (final Map.Entry<String, ArchiveIndex> entry : archiveIndexes.entrySet()) {
+            try {
+                entry.getValue().close();
+            } catch (final IOException ioe) {
+                LOG.warn("Failed to close archive index for Container {} due to {}", entry.getKey(), ioe.toString());
+            }
+        }
     }
 
     private static double getRatio(final String value) {
@@ -290,6 +362,32 @@ public class FileSystemRepository implements ContentRepository {
 
             realPathMap.put(containerName, realPath);
 
+            // If archived files have been recorded in the container's archive index, the index tells us how many files are archived
+            // and which is the oldest, so there is no need to scan the archive directories. Otherwise, the index is built from the scan.
+            final ArchiveIndex archiveIndex;
+            if (archiveData) {
+                final Path indexPath = realPath.resolve(ArchiveIndex.FILENAME);
+                final boolean indexExists = Files.exists(indexPath);
+                archiveIndex = new ArchiveIndex(indexPath);
+                archiveIndexes.put(containerName, archiveIndex);
+
+                if (indexExists) {
+                    containerState.addArchiveCount(archiveIndex.getEntryCount());
+                    final ArchiveIndex.Entry oldestEntry = archiveIndex.peek();
+                    final long oldestDate = oldestEntry == null ? System.currentTimeMillis() : oldestEntry.getLastModTime();
+                    if (oldestDate < oldestArchiveDate.get()) {
+                        oldestArchiveDate.set(oldestDate);
+                    }
+
+                    LOG.info("Found {} archived files for Container {} in archive index", archiveIndex.getEntryCount(), containerName);
+                    continue;
+                }
+            } else {
+                // an index left from when archiving was enabled would no longer be accurate if archiving is enabled again
+                Files.deleteIfExists(realPath.resolve(ArchiveIndex.FILENAME));
+                archiveIndex = null;
+            }
+
             // We need to scan the archive directories to find out the oldest timestamp so that know whether or not we
             // will have to delete archived data based on time threshold. Scanning all of the directories can be very
             // expensive because of all of the disk accesses. So we do this in multiple threads. Since containers are
@@ -298,6 +396,7 @@ public class FileSystemRepository implements ContentRepository {
                 @Override
                 public Long call() throws IOException {
                     final LongHolder oldestDateHolder = new LongHolder(0L);
+                    final List<ArchiveInfo> archived = new ArrayList<>();
 
                     // the path already exists, so scan the path to find any files and update maxIndex to the max of
                     // all filenames seen.
@@ -323,12 +422,33 @@ public class FileSystemRepository implements ContentRepository {
                                     oldestDateHolder.set(lastModifiedTime);
                                 }
                                 containerState.incrementArchiveCount();
+
+                                if (archiveIndex != null) {
+                                    archived.add(new ArchiveInfo(realPath, file, attrs.size(), lastModifiedTime));
+                                }
                             }
 
                             return FileVisitResult.CONTINUE;
                         }
                     });
 
+                    if (archiveIndex != null) {
+                        Collections.sort(archived, new Comparator<ArchiveInfo>() {
+                            @Override
+                            public int compare(final ArchiveInfo o1, final ArchiveInfo o2) {
+                                return Long.compare(o1.getLastModTime(), o2.getLastModTime());
+                            }
+                        });
+
+                        for (final ArchiveInfo archiveInfo : archived) {
+                            final Path archivedPath = archiveInfo.toPath();
+                            final String section = archivedPath.getParent().getParent().toFile().getName();
+                            archiveIndex.append(section, archiveInfo.getName(), archiveInfo.getSize(), archiveInfo.getLastModTime());
+                        }
+                        archiveIndex.sync();
+                        LOG.info("Created archive index for Container {} with {} archived files", containerName, archived.size());
+                    }
+
                     return oldestDateHolder.get();
                 }
             };
@@ -429,11 +549,11 @@ public class FileSystemRepository implements ContentRepository {
 
         final ResourceClaim resourceClaim = resourceClaimManager.newResourceClaim(containerName, sectionName, id, false);
         if (resourceClaimManager.getClaimantCount(resourceClaim) == 0) {
-            removeIncompleteContent(fileToRemove);
+            removeIncompleteContent(containerName, fileToRemove);
         }
     }
 
-    private void removeIncompleteContent(final Path fileToRemove) {
+    private void removeIncompleteContent(final String containerName, final Path fileToRemove) {
         String fileDescription = null;
         try {
             fileDescription = fileToRemove.toFile().getAbsolutePath() + " (" + Files.size(fileToRemove) + " bytes)";
@@ -445,7 +565,9 @@ public class FileSystemRepository implements ContentRepository {
 
         try {
             if (archiveData) {
-                archive(fileToRemove);
+                if (archive(fileToRemove)) {
+                    indexArchivedFile(containerName, getArchivePath(fileToRemove));
+                }
             } else {
                 Files.delete(fileToRemove);
             }
@@ -531,6 +653,16 @@ public class FileSystemRepository implements ContentRepository {
 
                 if (waitRequired) {
                     containerState.waitForArchiveExpiration();
+                } else if (loadAwareSelection && containers.size() > 1) {
+                    // Choosing the less costly of two containers steers new content away from slow or full disks without sending every
+                    // writer to whichever container looked best at the last update, and still sends a slow disk enough content to notice
+                    // when it recovers.
+                    final String alternativeName = containerNames.get(ThreadLocalRandom.current().nextInt(containers.size()));
+                    final ContainerState alternativeState = containerStateMap.get(alternativeName);
+                    if (!alternativeName.equals(containerName) && alternativeState.getWriteCost() < containerState.getWriteCost() && !alternativeState.isWaitRequired()) {
+                        containerName = alternativeName;
+                        containerState = alternativeState;
+                    }
                 }
 
                 final long modulatedSectionIndex = currentIndex % SECTIONS_PER_CONTAINER;
@@ -700,6 +832,42 @@ public class FileSystemRepository implements ContentRepository {
         }
     }
 
+    @Override
+    public long importFrom(final ReadableByteChannel content, final ContentClaim claim) throws IOException {
+        try (final OutputStream out = write(claim, false)) {
+            if (!(content instanceof FileChannel) || compressionBlockSize > 0) {
+                return StreamUtils.copy(Channels.newInputStream(content), out);
+            }
+
+            // Transfer the content straight into the Resource Claim's file. The stream returned by write() appends
+            // to the same file, and we update the Content Claim's length before closing it so that it can still
+            // determine whether or not the Resource Claim may be reused.
+            final FileChannel source = (FileChannel) content;
+            final FileChannel claimChannel = ((FileOutputStream) writableClaimStreams.get(claim.getResourceClaim()).getWrappedStream()).getChannel();
+            final long startPosition = claimChannel.size();
+            final long startNanos = loadAwareSelection ? System.nanoTime() : 0L;
+
+            long imported = 0L;
+            long remaining = source.size() - source.position();
+            while (remaining > 0) {
+                final long transferred = claimChannel.transferFrom(source, startPosition + imported, remaining);
+                if (transferred <= 0) {
+                    break;
+                }
+
+                imported += transferred;
+                remaining = source.size() - source.position();
+            }
+
+            ((StandardContentClaim) claim).setLength(imported);
+            if (loadAwareSelection) {
+                // the bytes bypassed the stream, which records only the time taken to close it
+                containerStateMap.get(claim.getResourceClaim().getContainer()).recordTransfer(imported, System.nanoTime() - startNanos);
+            }
+            return imported;
+        }
+    }
+
     @Override
     public long exportTo(final ContentClaim claim, final Path destination, final boolean append) throws IOException {
         if (claim == null) {
@@ -710,9 +878,8 @@ public class FileSystemRepository implements ContentRepository {
             return 0L;
         }
 
-        try (final InputStream in = read(claim);
-            final FileOutputStream fos = new FileOutputStream(destination.toFile(), append)) {
-            final long copied = StreamUtils.copy(in, fos);
+        try (final FileOutputStream fos = new FileOutputStream(destination.toFile(), append)) {
+            final long copied = transferTo(claim, 0L, size(claim), fos.getChannel());
             if (alwaysSync) {
                 fos.getFD().sync();
             }
@@ -739,12 +906,8 @@ public class FileSystemRepository implements ContentRepository {
 
         }
 
-        try (final InputStream in = read(claim);
-            final FileOutputStream fos = new FileOutputStream(destination.toFile(), append)) {
-            if (offset > 0) {
-                StreamUtils.skip(in, offset);
-            }
-            StreamUtils.copy(in, fos, length);
+        try (final FileOutputStream fos = new FileOutputStream(destination.toFile(), append)) {
+            transferTo(claim, offset, length, fos.getChannel());
             if (alwaysSync) {
                 fos.getFD().sync();
             }
@@ -788,6 +951,72 @@ public class FileSystemRepository implements ContentRepository {
         }
     }
 
+    @Override
+    public long exportTo(final ContentClaim claim, final WritableByteChannel destination, final long offset, final long length) throws IOException {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset cannot be negative");
+        }
+        if (claim == null) {
+            if (offset > 0) {
+                throw new IllegalArgumentException("Cannot specify an offset of " + offset + " for a null claim");
+            }
+            return 0L;
+        }
+
+        final long claimSize = size(claim);
+        if (offset > claimSize) {
+            throw new IllegalArgumentException("offset of " + offset + " exceeds claim size of " + claimSize);
+        }
+
+        return transferTo(claim, offset, length, destination);
+    }
+
+    /**
+     * Transfers the given range of the claim's content to the destination using {@link FileChannel#transferTo(long, long, WritableByteChannel)},
+     * so that the operating system can copy the content without bringing it into the Java heap.
+     */
+    private long transferTo(final ContentClaim claim, final long offset, final long length, final WritableByteChannel destination) throws IOException {
+        if (compressionBlockSize > 0) {
+            // the content has to be decompressed, so it cannot be handed to the operating system to copy
+            try (final InputStream in = new LimitedInputStream(readCompressed(claim, offset), length)) {
+                final ByteBuffer buffer = ByteBuffer.allocate(8192);
+                long transferred = 0L;
+                int len;
+                while ((len = in.read(buffer.array())) > 0) {
+                    buffer.clear();
+                    buffer.limit(len);
+                    while (buffer.hasRemaining()) {
+                        destination.write(buffer);
+                    }
+                    transferred += len;
+                }
+
+                if (transferred < length) {
+                    throw new EOFException("Expected to transfer " + length + " bytes from " + claim + " but reached the end of its content after " + transferred + " bytes");
+                }
+                return transferred;
+            }
+        }
+
+        final Path path = getPath(claim, true);
+        try (final FileChannel source = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long startPosition = claim.getOffset() + offset;
+
+            long transferred = 0L;
+            while (transferred < length) {
+                final long count = source.transferTo(startPosition + transferred, length - transferred, destination);
+                if (count <= 0 && startPosition + transferred >= source.size()) {
+                    throw new EOFException("Expected to transfer " + length + " bytes from " + claim + " but reached the end of " + path
+                        + " after " + transferred + " bytes");
+                }
+
+                transferred += count;
+            }
+
+            return transferred;
+        }
+    }
+
     @Override
     public long size(final ContentClaim claim) throws IOException {
         if (claim == null) {
@@ -796,6 +1025,11 @@ public class FileSystemRepository implements ContentRepository {
 
         // see javadocs for claim.getLength() as to why we do this.
         if (claim.getLength() < 0) {
+            if (compressionBlockSize > 0) {
+                try (final FileChannel channel = FileChannel.open(getPath(claim, true), StandardOpenOption.READ)) {
+                    return BlockCompressedInputStream.getUncompressedLength(channel) - claim.getOffset();
+                }
+            }
             return Files.size(getPath(claim, true)) - claim.getOffset();
         }
 
@@ -807,6 +1041,11 @@ public class FileSystemRepository implements ContentRepository {
         if (claim == null) {
             return new ByteArrayInputStream(new byte[0]);
         }
+        if (compressionBlockSize > 0) {
+            final InputStream in = readCompressed(claim, 0L);
+            return claim.getLength() >= 0 ? new LimitedInputStream(in, claim.getLength()) : in;
+        }
+
         final Path path = getPath(claim, true);
         final FileInputStream fis = new FileInputStream(path.toFile());
         if (claim.getOffset() > 0L) {
@@ -827,6 +1066,53 @@ public class FileSystemRepository implements ContentRepository {
         }
     }
 
+    @Override
+    public ByteBuffer map(final ContentClaim claim, final long offset, final long length) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("offset and length cannot be negative");
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot map " + length + " bytes; no more than " + Integer.MAX_VALUE + " bytes can be mapped at once");
+        }
+        if (claim == null || length == 0) {
+            return ByteBuffer.allocate(0).asReadOnlyBuffer();
+        }
+
+        if (compressionBlockSize > 0) {
+            // the file holds compressed content, so the range is decompressed into the heap rather than mapped
+            final byte[] content = new byte[(int) length];
+            try (final InputStream in = readCompressed(claim, offset)) {
+                final int filled = StreamUtils.fillBuffer(in, content, false);
+                if (filled < length) {
+                    throw new EOFException("Cannot map " + length + " bytes of " + claim + " starting at offset " + offset + " because only "
+                        + filled + " bytes are available");
+                }
+            }
+            return ByteBuffer.wrap(content).asReadOnlyBuffer();
+        }
+
+        final Path path = getPath(claim, true);
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long position = claim.getOffset() + offset;
+            if (position + length > channel.size()) {
+                throw new EOFException("Cannot map " + length + " bytes of " + claim + " starting at offset " + offset + " because " + path
+                    + " contains only " + channel.size() + " bytes");
+            }
+
+            // the mapping remains valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        }
+    }
+
+    /**
+     * Opens a stream that reads the block-compressed content of the given claim, starting at the given offset within the claim.
+     * The offsets of claims whose content is compressed refer to the uncompressed content of the Resource Claim.
+     */
+    private InputStream readCompressed(final ContentClaim claim, final long offset) throws IOException {
+        final Path path = getPath(claim, true);
+        return new BlockCompressedInputStream(FileChannel.open(path, StandardOpenOption.READ), claim.getOffset() + offset);
+    }
+
     @Override
     public OutputStream write(final ContentClaim claim) throws IOException {
         return write(claim, false);
@@ -855,10 +1141,17 @@ public class FileSystemRepository implements ContentRepository {
 
         activeResourceClaims.add(resourceClaim);
         final ByteCountingOutputStream bcos = claimStream;
+
+        // each Content Claim is compressed on its own, so that its blocks end where the claim ends and the next claim begins with a new block
+        final BlockCompressedOutputStream compressedOut = compressionBlockSize > 0 ? new BlockCompressedOutputStream(bcos, compressionBlockSize) : null;
+        final OutputStream target = compressedOut == null ? bcos : compressedOut;
+        final ContainerState containerState = containerStateMap.get(resourceClaim.getContainer());
         final OutputStream out = new OutputStream() {
             private long bytesWritten = 0L;
             private boolean recycle = true;
             private boolean closed = false;
+            private boolean completionRecorded = false;
+            private long writeNanos = 0L; // measured only if containers are chosen based on load
 
             @Override
             public String toString() {
@@ -871,13 +1164,18 @@ public class FileSystemRepository implements ContentRepository {
                     throw new IOException("Stream is closed");
                 }
 
+                final long start = loadAwareSelection ? System.nanoTime() : 0L;
                 try {
-                    bcos.write(b);
+                    target.write(b);
                 } catch (final IOException ioe) {
                     recycle = false;
                     throw new IOException("Failed to write to " + this, ioe);
                 }
 
+                if (loadAwareSelection) {
+                    writeNanos += System.nanoTime() - start;
+                    containerState.recordWrite(1L);
+                }
                 bytesWritten++;
                 scc.setLength(bytesWritten + initialLength);
             }
@@ -888,13 +1186,18 @@ public class FileSystemRepository implements ContentRepository {
                     throw new IOException("Stream is closed");
                 }
 
+                final long start = loadAwareSelection ? System.nanoTime() : 0L;
                 try {
-                    bcos.write(b);
+                    target.write(b);
                 } catch (final IOException ioe) {
                     recycle = false;
                     throw new IOException("Failed to write to " + this, ioe);
                 }
 
+                if (loadAwareSelection) {
+                    writeNanos += System.nanoTime() - start;
+                    containerState.recordWrite(b.length);
+                }
                 bytesWritten += b.length;
                 scc.setLength(bytesWritten + initialLength);
             }
@@ -905,13 +1208,18 @@ public class FileSystemRepository implements ContentRepository {
                     throw new IOException("Stream is closed");
                 }
 
+                final long start = loadAwareSelection ? System.nanoTime() : 0L;
                 try {
-                    bcos.write(b, off, len);
+                    target.write(b, off, len);
                 } catch (final IOException ioe) {
                     recycle = false;
                     throw new IOException("Failed to write to " + this, ioe);
                 }
 
+                if (loadAwareSelection) {
+                    writeNanos += System.nanoTime() - start;
+                    containerState.recordWrite(len);
+                }
                 bytesWritten += len;
                 scc.setLength(bytesWritten + initialLength);
             }
@@ -922,15 +1230,47 @@ public class FileSystemRepository implements ContentRepository {
                     throw new IOException("Stream is closed");
                 }
 
-                bcos.flush();
+                target.flush();
             }
 
             @Override
             public synchronized void close() throws IOException {
+                if (!loadAwareSelection) {
+                    closeStream();
+                    return;
+                }
+
+                final long start = System.nanoTime();
+                try {
+                    closeStream();
+                } finally {
+                    // the latency of a write is the time spent writing the claim, including closing it, which includes any
+                    // sync to disk, which is where a slow disk is most likely to show
+                    if (!completionRecorded) {
+                        completionRecorded = true;
+                        containerState.recordWriteCompletion(bytesWritten, writeNanos + System.nanoTime() - start);
+                    }
+                }
+            }
+
+            private void closeStream() throws IOException {
                 closed = true;
                 activeResourceClaims.remove(resourceClaim);
 
-                if (alwaysSync) {
+                IOException compressionFailure = null;
+                if (compressedOut != null) {
+                    try {
+                        compressedOut.close();
+                    } catch (final IOException ioe) {
+                        // the last block may have been only partially written, so nothing more can be appended to the file
+                        recycle = false;
+                        compressionFailure = new IOException("Failed to write to " + this, ioe);
+                    }
+
+                    containerState.recordCompression(compressedOut.getUncompressedBytes(), compressedOut.getStoredBytes());
+                }
+
+                if (alwaysSync && groupCommitSyncer == null) {
                     ((FileOutputStream) bcos.getWrappedStream()).getFD().sync();
                 }
 
@@ -944,20 +1284,31 @@ public class FileSystemRepository implements ContentRepository {
                 // is called. In this case, we don't have to actually close the file stream. Instead, we
                 // can just add it onto the queue and continue to use it for the next content claim.
                 final long resourceClaimLength = scc.getOffset() + scc.getLength();
-                if (recycle && resourceClaimLength < maxAppendClaimLength) {
+                if (recycle && resourceClaimLength < maxAppendClaimLength && !isSlow(containerState)) {
                     // we do not have to synchronize on the writable claim queue here because we
                     // are only adding something to the queue. We must synchronize if we are
                     // using a ResourceClaim from the queue and incrementing the claimant count on that resource
                     // because those need to be done atomically, or if we are destroying a claim that is on
                     // the queue because we need to ensure that the latter operation does not cause problems
                     // with the former.
+                    //
+                    // When syncs are batched, our sync request is registered before the Resource Claim is made available to other
+                    // writers, so that they can append to it while we wait and have their content synced to disk along with ours.
+                    // Because it is registered first, whichever writer eventually closes the file must sync it on our behalf
+                    // before doing so, and we never wait on a channel that has already been closed.
+                    final GroupCommitSyncer.SyncRequest syncRequest = groupCommitSyncer == null ? null : groupCommitSyncer.register(resourceClaim);
                     final ClaimLengthPair pair = new ClaimLengthPair(scc.getResourceClaim(), resourceClaimLength);
                     final boolean enqueued = writableClaimQueue.offer(pair);
 
                     if (enqueued) {
                         LOG.debug("Claim length less than max; Adding {} back to writableClaimStreams", this);
+
+                        if (syncRequest != null) {
+                            syncRequest.await(((FileOutputStream) bcos.getWrappedStream()).getChannel());
+                        }
                     } else {
                         writableClaimStreams.remove(scc.getResourceClaim());
+                        syncBeforeClose();
                         bcos.close();
 
                         LOG.debug("Claim length less than max; Closing {} because could not add back to queue", this);
@@ -966,17 +1317,30 @@ public class FileSystemRepository implements ContentRepository {
                         }
                     }
                 } else {
-                    // we've reached the limit for this claim. Don't add it back to our queue.
+                    // we've reached the limit for this claim, or its container is slow. Don't add it back to our queue.
                     // Instead, just remove it and move on.
 
                     // ensure that the claim is no longer on the queue
                     writableClaimQueue.remove(new ClaimLengthPair(scc.getResourceClaim(), resourceClaimLength));
+                    syncBeforeClose();
                     bcos.close();
                     LOG.debug("Claim lenth >= max; Closing {}", this);
                     if (LOG.isTraceEnabled()) {
                         LOG.trace("Stack trace: ", new RuntimeException("Stack Trace for closing " + this));
                     }
                 }
+
+                if (compressionFailure != null) {
+                    throw compressionFailure;
+                }
+            }
+
+            private void syncBeforeClose() throws IOException {
+                if (groupCommitSyncer != null) {
+                    // join any batch that is pending for this file, as the file cannot be synced once it is closed
+                    groupCommitSyncer.sync(resourceClaim, ((FileOutputStream) bcos.getWrappedStream()).getChannel());
+                    groupCommitSyncer.remove(resourceClaim);
+                }
             }
         };
 
@@ -991,11 +1355,27 @@ public class FileSystemRepository implements ContentRepository {
 
     @Override
     public void purge() {
+        for (final ArchiveIndex archiveIndex : archiveIndexes.values()) {
+            try {
+                archiveIndex.close();
+            } catch (final IOException ioe) {
+                LOG.warn("Failed to close archive index due to {}", ioe.toString());
+            }
+        }
+
         // delete all content from repositories
         for (final Path path : containers.values()) {
             FileUtils.deleteFilesInDir(path.toFile(), null, LOG, true);
         }
 
+        for (final String containerName : archiveIndexes.keySet()) {
+            try {
+                archiveIndexes.put(containerName, new ArchiveIndex(containers.get(containerName).resolve(ArchiveIndex.FILENAME)));
+            } catch (final IOException ioe) {
+                throw new RepositoryPurgeException("Failed to create archive index for Container " + containerName, ioe);
+            }
+        }
+
         for (final Path path : containers.values()) {
             if (!Files.exists(path)) {
                 throw new RepositoryPurgeException("File " + path.toFile().getAbsolutePath() + " does not exist");
@@ -1023,6 +1403,125 @@ public class FileSystemRepository implements ContentRepository {
         resourceClaimManager.purge();
     }
 
+    /**
+     * @param containerName the name of a container
+     * @return the number of bytes of content written to the given container since the repository was created divided by the
+     *         number of bytes that it took to store that content, or 1 if no content has been written or content is not compressed
+     */
+    double getCompressionRatio(final String containerName) {
+        final ContainerState containerState = containerStateMap.get(containerName);
+        if (containerState == null) {
+            throw new IllegalArgumentException("No container exists with name " + containerName);
+        }
+
+        final long storedBytes = containerState.getStoredBytesWritten();
+        if (storedBytes == 0L) {
+            return 1D;
+        }
+        return (double) containerState.getUncompressedBytesWritten() / storedBytes;
+    }
+
+    private class LogSyncStatistics implements Runnable {
+        @Override
+        public void run() {
+            final long requests = groupCommitSyncer.getRequestCount();
+            final long syncs = groupCommitSyncer.getSyncCount();
+            final long syncNanos = groupCommitSyncer.getSyncNanos();
+            final long maxBatchSize = groupCommitSyncer.getMaxBatchSize();
+            groupCommitSyncer.resetStatistics();
+
+            if (syncs > 0L) {
+                LOG.info("Synced {} Content Claims to disk with {} syncs in the last {} minutes (average batch size {}, maximum batch size {}, average sync time {} millis)",
+                    requests, syncs, SYNC_STATISTICS_MINUTES, String.format("%.1f", (double) requests / syncs), maxBatchSize,
+                    String.format("%.2f", syncNanos / 1000000D / syncs));
+            }
+        }
+    }
+
+    /**
+     * @param containerName the name of a container
+     * @return the average time, in nanoseconds, that recent writes of content claims to the given container have taken, from the first byte
+     *         written through closing the claim, 0 if none have been measured, or -1 if write load is not measured because containers
+     *         are not chosen based on load
+     */
+    public long getAverageWriteNanos(final String containerName) {
+        return loadAwareSelection ? getContainerState(containerName).getAverageWriteNanos() : -1L;
+    }
+
+    /**
+     * @param containerName the name of a container
+     * @return the average number of bytes per second that have recently been written to the given container, or -1 if write load is
+     *         not measured because containers are not chosen based on load
+     */
+    public long getWriteThroughput(final String containerName) {
+        return loadAwareSelection ? getContainerState(containerName).getWriteThroughput() : -1L;
+    }
+
+    private ContainerState getContainerState(final String containerName) {
+        final ContainerState containerState = containerStateMap.get(containerName);
+        if (containerState == null) {
+            throw new IllegalArgumentException("No container exists with name " + containerName);
+        }
+        return containerState;
+    }
+
+    /**
+     * @return <code>true</code> if content is chosen based on load and the given container is currently much more costly to write to than the least
+     *         costly container
+     */
+    private boolean isSlow(final ContainerState containerState) {
+        if (!loadAwareSelection || containers.size() < 2) {
+            return false;
+        }
+
+        double minimumCost = Double.MAX_VALUE;
+        for (final ContainerState state : containerStateMap.values()) {
+            minimumCost = Math.min(minimumCost, state.getWriteCost());
+        }
+        return containerState.getWriteCost() > minimumCost * SLOW_CONTAINER_FACTOR;
+    }
+
+    private class UpdateContainerLoad implements Runnable {
+        private long lastUpdateNanos = System.nanoTime();
+
+        @Override
+        public void run() {
+            final long now = System.nanoTime();
+            final long elapsedNanos = now - lastUpdateNanos;
+            lastUpdateNanos = now;
+
+            for (final String containerName : containerNames) {
+                final ContainerState containerState = containerStateMap.get(containerName);
+
+                double freeRatio = 1D;
+                try {
+                    final long capacity = getContainerCapacity(containerName);
+                    if (capacity > 0L) {
+                        freeRatio = (double) getContainerUsableSpace(containerName) / capacity;
+                    }
+                } catch (final Exception e) {
+                    LOG.warn("Unable to determine free space of Container {} due to {}", containerName, e.toString());
+                }
+
+                containerState.updateLoad(elapsedNanos, freeRatio);
+            }
+        }
+    }
+
+    private class LogCompressionStatistics implements Runnable {
+        @Override
+        public void run() {
+            for (final String containerName : containerNames) {
+                final ContainerState containerState = containerStateMap.get(containerName);
+                final long storedBytes = containerState.getStoredBytesWritten();
+                if (storedBytes > 0L) {
+                    LOG.info("Container {} has stored {} bytes of content in {} bytes since NiFi was started, for a compression ratio of {}",
+                        containerName, containerState.getUncompressedBytesWritten(), storedBytes, String.format("%.2f", getCompressionRatio(containerName)));
+                }
+            }
+        }
+    }
+
     private class BinDestructableClaims implements Runnable {
 
         @Override
@@ -1119,16 +1618,59 @@ public class FileSystemRepository implements ContentRepository {
             }
         }
 
+        if (groupCommitSyncer != null) {
+            groupCommitSyncer.remove(claim);
+        }
+
         final Path curPath = getPath(claim);
         if (curPath == null) {
             return false;
         }
 
         final boolean archived = archive(curPath);
+        if (archived) {
+            indexArchivedFile(claim.getContainer(), getArchivePath(curPath));
+        }
         LOG.debug("Successfully moved {} to archive", claim);
         return archived;
     }
 
+    private void indexArchivedFile(final String containerName, final Path archivePath) {
+        final ArchiveIndex archiveIndex = archiveIndexes.get(containerName);
+        if (archiveIndex == null) {
+            return;
+        }
+
+        // If the file cannot be added to the index, it will be found only if the archive directories are scanned because the index
+        // does not hold enough archived data to free up the space that is needed.
+        try {
+            final String section = archivePath.getParent().getParent().toFile().getName();
+            archiveIndex.append(section, archivePath.toFile().getName(), Files.size(archivePath), getLastModTime(archivePath));
+        } catch (final IOException ioe) {
+            LOG.warn("Failed to add archived file {} to archive index for Container {} due to {}", archivePath, containerName, ioe.toString());
+        }
+    }
+
+    private void syncArchiveIndex(final String containerName) {
+        final ArchiveIndex archiveIndex = archiveIndexes.get(containerName);
+        if (archiveIndex == null) {
+            return;
+        }
+
+        try {
+            archiveIndex.sync();
+        } catch (final IOException ioe) {
+            LOG.warn("Failed to sync archive index for Container {} due to {}", containerName, ioe.toString());
+            if (LOG.isDebugEnabled()) {
+                LOG.warn("", ioe);
+            }
+        }
+    }
+
+    GroupCommitSyncer getGroupCommitSyncer() {
+        return groupCommitSyncer;
+    }
+
     protected int getOpenStreamCount() {
         return writableClaimStreams.size();
     }
@@ -1233,9 +1775,57 @@ public class FileSystemRepository implements ContentRepository {
             }
         }
 
-        ArchiveInfo toDelete;
         int deleteCount = 0;
         long freed = 0L;
+
+        // Delete files in the order in which they were archived, for as long as we need to free space or the oldest file has expired.
+        // This touches only the files that are deleted; the archive directories are scanned only if the index does not hold enough
+        // archived data to free up the space that is needed.
+        final ArchiveIndex archiveIndex = archiveIndexes.get(containerName);
+        if (archiveIndex != null) {
+            ArchiveIndex.Entry entry;
+            while ((entry = archiveIndex.peek()) != null) {
+                removalTimeThreshold = System.currentTimeMillis() - maxArchiveMillis;
+                if (freed >= toFree && entry.getLastModTime() >= removalTimeThreshold) {
+                    break;
+                }
+
+                archiveIndex.poll();
+                final Path path = container.resolve(entry.getSection()).resolve(ARCHIVE_DIR_NAME).resolve(entry.getId());
+                try {
+                    if (Files.deleteIfExists(path)) {
+                        containerState.decrementArchiveCount();
+                        freed += entry.getSize();
+                        deleteCount++;
+                        LOG.debug("Deleted archived ContentClaim with ID {} from Container {} because it was the oldest archived ContentClaim", entry.getId(), containerName);
+                    }
+                } catch (final IOException ioe) {
+                    LOG.warn("Failed to delete {} from archive due to {}", path, ioe.toString());
+                    if (LOG.isDebugEnabled()) {
+                        LOG.warn("", ioe);
+                    }
+                }
+            }
+            archiveIndex.sync();
+
+            if (entry != null || (freed >= toFree && fileQueue.isEmpty())) {
+                final long oldestArchiveDate = entry == null ? System.currentTimeMillis() : entry.getLastModTime();
+                final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+                if (deleteCount > 0) {
+                    LOG.info("Deleted {} files from archive for Container {}; oldest Archive Date is now {}; container cleanup took {} millis",
+                        deleteCount, containerName, new Date(oldestArchiveDate), millis);
+                } else {
+                    LOG.debug("Deleted {} files from archive for Container {}; oldest Archive Date is now {}; container cleanup took {} millis",
+                        deleteCount, containerName, new Date(oldestArchiveDate), millis);
+                }
+
+                return oldestArchiveDate;
+            }
+
+            archiveExpirationLog.debug("Archive index for Container {} holds no more archived files; falling back to archived files that are not indexed", containerName);
+        }
+
+        ArchiveInfo toDelete;
         while ((toDelete = fileQueue.peek()) != null) {
             try {
                 final long fileSize = toDelete.getSize();
@@ -1443,6 +2033,10 @@ public class FileSystemRepository implements ContentRepository {
                             }
                         }
 
+                        if (archiveData) {
+                            syncArchiveIndex(container);
+                        }
+
                         final long nanos = System.nanoTime() - start;
                         final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
 
@@ -1578,6 +2172,23 @@ public class FileSystemRepository implements ContentRepository {
         private final Condition condition = lock.newCondition();
 
         private volatile long bytesUsed = 0L;
+        private final AtomicLong uncompressedBytesWritten = new AtomicLong(0L);
+        private final AtomicLong storedBytesWritten = new AtomicLong(0L);
+
+        // write load, as bytes written to streams that are still open and as totals since the repository was created
+        private final AtomicLong outstandingBytes = new AtomicLong(0L);
+        private final AtomicLong totalBytesWritten = new AtomicLong(0L);
+        private final AtomicLong totalWriteNanos = new AtomicLong(0L);
+        private final AtomicLong totalWriteCount = new AtomicLong(0L);
+
+        // guarded by synchronizing on this; updated only by updateLoad
+        private long lastBytesWritten = 0L;
+        private long lastWriteNanos = 0L;
+        private long lastWriteCount = 0L;
+
+        private volatile double averageWriteNanos = 0D;
+        private volatile double writeThroughput = 0D;
+        private volatile double freeRatio = 1D;
 
         public ContainerState(final String containerName, final boolean archiveEnabled, final long backPressureBytes, final long capacity) {
             this.containerName = containerName;
@@ -1609,6 +2220,91 @@ public class FileSystemRepository implements ContentRepository {
             return used >= backPressureBytes && archivedFileCount.get() > 0;
         }
 
+        /**
+         * Records that the given number of bytes were written to a stream that is still open
+         */
+        public void recordWrite(final long bytes) {
+            outstandingBytes.addAndGet(bytes);
+        }
+
+        /**
+         * Records that a stream to which the given number of bytes were written has been closed, and that writing to and closing it
+         * took the given amount of time
+         */
+        public void recordWriteCompletion(final long bytes, final long nanos) {
+            outstandingBytes.addAndGet(-bytes);
+            totalBytesWritten.addAndGet(bytes);
+            totalWriteNanos.addAndGet(nanos);
+            totalWriteCount.incrementAndGet();
+        }
+
+        /**
+         * Records that the given number of bytes were written to a claim without going through its stream, which took the given amount
+         * of time. The write is counted when the stream is closed.
+         */
+        public void recordTransfer(final long bytes, final long nanos) {
+            totalBytesWritten.addAndGet(bytes);
+            totalWriteNanos.addAndGet(nanos);
+        }
+
+        /**
+         * Folds the writes since the last update into the averages of write latency and throughput
+         *
+         * @param elapsedNanos the time since the last update
+         * @param freeRatio the fraction of the container's capacity that is free
+         */
+        public synchronized void updateLoad(final long elapsedNanos, final double freeRatio) {
+            final long bytes = totalBytesWritten.get();
+            final long nanos = totalWriteNanos.get();
+            final long count = totalWriteCount.get();
+
+            final long intervalCount = count - lastWriteCount;
+            if (intervalCount > 0L) {
+                final double intervalLatency = (double) (nanos - lastWriteNanos) / intervalCount;
+                averageWriteNanos = averageWriteNanos == 0D ? intervalLatency : CONTAINER_LOAD_SMOOTHING * intervalLatency + (1D - CONTAINER_LOAD_SMOOTHING) * averageWriteNanos;
+            }
+
+            if (elapsedNanos > 0L) {
+                final double intervalThroughput = (bytes - lastBytesWritten) * 1_000_000_000D / elapsedNanos;
+                writeThroughput = CONTAINER_LOAD_SMOOTHING * intervalThroughput + (1D - CONTAINER_LOAD_SMOOTHING) * writeThroughput;
+            }
+
+            lastBytesWritten = bytes;
+            lastWriteNanos = nanos;
+            lastWriteCount = count;
+            this.freeRatio = freeRatio;
+        }
+
+        /**
+         * @return a relative measure of how costly it is to write to the container: higher as writes take longer, as more bytes are being
+         *         written to it, and as it has less free space
+         */
+        public double getWriteCost() {
+            final double outstandingFactor = 1D + (double) Math.max(0L, outstandingBytes.get()) / maxAppendClaimLength;
+            return (1D + averageWriteNanos) * outstandingFactor / Math.max(freeRatio, 0.01D);
+        }
+
+        public long getAverageWriteNanos() {
+            return (long) averageWriteNanos;
+        }
+
+        public long getWriteThroughput() {
+            return (long) writeThroughput;
+        }
+
+        public void recordCompression(final long uncompressedBytes, final long storedBytes) {
+            uncompressedBytesWritten.addAndGet(uncompressedBytes);
+            storedBytesWritten.addAndGet(storedBytes);
+        }
+
+        public long getUncompressedBytesWritten() {
+            return uncompressedBytesWritten.get();
+        }
+
+        public long getStoredBytesWritten() {
+            return storedBytesWritten.get();
+        }
+
         public void waitForArchiveExpiration() {
             if (!archiveEnabled) {
                 return;
@@ -1656,6 +2352,10 @@ public class FileSystemRepository implements ContentRepository {
         public void decrementArchiveCount() {
             archivedFileCount.decrementAndGet();
         }
+
+        public void addArchiveCount(final long count) {
+            archivedFileCount.addAndGet(count);
+        }
     }
 
 
@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.nifi.controller.repository.claim.ResourceClaim;
+
+/**
+ * <p>
+ * Batches requests to force the contents of a Resource Claim's file to disk, so that all of the requests for the same file
+ * that arrive within a configurable window are satisfied by a single {@link FileChannel#force(boolean)}.
+ * </p>
+ *
+ * <p>
+ * The first thread to request a sync of a file becomes the leader for that file: it waits for the window to elapse, so that
+ * other threads that finish writing to the same file can join the batch, then forces the file and wakes the other threads.
+ * Every thread that calls {@link #sync(ResourceClaim, FileChannel)} returns only after a force that began after its
+ * request was made has completed, so the bytes that it wrote before calling the method are durable.
+ * </p>
+ *
+ * <p>
+ * A request may also be registered with {@link #register(ResourceClaim)} and waited on later. This allows a writer to register
+ * its request before it makes the file available to other writers: whoever closes the file must first sync it, and that sync
+ * then covers the registered request, so the writer is never left waiting on a channel that another writer has closed.
+ * </p>
+ */
+final class GroupCommitSyncer {
+
+    private final long windowNanos;
+    private final ConcurrentMap<ResourceClaim, SyncState> syncStates = new ConcurrentHashMap<>();
+
+    private final AtomicLong requestCount = new AtomicLong(0L);
+    private final AtomicLong syncCount = new AtomicLong(0L);
+    private final AtomicLong syncNanos = new AtomicLong(0L);
+    private final AtomicLong maxBatchSize = new AtomicLong(0L);
+
+    /**
+     * @param window the amount of time that the leader of a batch waits for other requests before forcing the file to disk
+     * @param timeUnit the unit of the window
+     */
+    GroupCommitSyncer(final long window, final TimeUnit timeUnit) {
+        this.windowNanos = timeUnit.toNanos(window);
+    }
+
+    /**
+     * Blocks until everything that was written to the given channel before this method was called has been forced to disk.
+     *
+     * @param resourceClaim the Resource Claim whose file is to be synced
+     * @param channel the channel that is used to write to the Resource Claim's file
+     * @throws IOException if unable to force the file to disk
+     */
+    void sync(final ResourceClaim resourceClaim, final FileChannel channel) throws IOException {
+        register(resourceClaim).await(channel);
+    }
+
+    /**
+     * Registers a request to force everything that was written to the given Resource Claim's file before this method was called
+     * to disk. The request is not complete until {@link SyncRequest#await(FileChannel)} returns. Any later request to sync the
+     * same file, including the one that is made before the file is closed, is not satisfied until this one is.
+     *
+     * @param resourceClaim the Resource Claim whose file is to be synced
+     * @return the registered request
+     */
+    SyncRequest register(final ResourceClaim resourceClaim) {
+        SyncState state = syncStates.get(resourceClaim);
+        if (state == null) {
+            final SyncState newState = new SyncState();
+            final SyncState existing = syncStates.putIfAbsent(resourceClaim, newState);
+            state = existing == null ? newState : existing;
+        }
+
+        requestCount.incrementAndGet();
+        return new SyncRequest(state, state.register());
+    }
+
+    /**
+     * Discards the state that is kept for the given Resource Claim. Must be called only after the last request to sync
+     * the Resource Claim's file has returned, when the file is closed.
+     *
+     * @param resourceClaim the Resource Claim
+     */
+    void remove(final ResourceClaim resourceClaim) {
+        syncStates.remove(resourceClaim);
+    }
+
+    /**
+     * @return the number of sync requests since the statistics were last reset
+     */
+    long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the number of times that a file was forced to disk since the statistics were last reset
+     */
+    long getSyncCount() {
+        return syncCount.get();
+    }
+
+    /**
+     * @return the total number of nanoseconds spent forcing files to disk since the statistics were last reset
+     */
+    long getSyncNanos() {
+        return syncNanos.get();
+    }
+
+    /**
+     * @return the largest number of requests that were satisfied by a single sync since the statistics were last reset
+     */
+    long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    void resetStatistics() {
+        requestCount.set(0L);
+        syncCount.set(0L);
+        syncNanos.set(0L);
+        maxBatchSize.set(0L);
+    }
+
+    private void recordSync(final long batchSize, final long nanos) {
+        syncCount.incrementAndGet();
+        syncNanos.addAndGet(nanos);
+
+        long max = maxBatchSize.get();
+        while (batchSize > max && !maxBatchSize.compareAndSet(max, batchSize)) {
+            max = maxBatchSize.get();
+        }
+    }
+
+    /**
+     * A request to sync a file that has been registered but possibly not yet satisfied.
+     */
+    final class SyncRequest {
+        private final SyncState state;
+        private final long generation;
+
+        private SyncRequest(final SyncState state, final long generation) {
+            this.state = state;
+            this.generation = generation;
+        }
+
+        /**
+         * Blocks until the file has been forced to disk on behalf of this request. If another writer has already synced the file,
+         * this returns without using the channel, so it is safe to call even after the file has been closed by that writer.
+         *
+         * @param channel the channel that is used to write to the Resource Claim's file
+         * @throws IOException if unable to force the file to disk
+         */
+        void await(final FileChannel channel) throws IOException {
+            state.await(generation, channel);
+        }
+    }
+
+    /**
+     * Tracks the requests to sync a single file. Each request is assigned a generation; a request is satisfied once the
+     * synced generation reaches it.
+     */
+    private class SyncState {
+        // all guarded by synchronizing on this
+        private long requestedGeneration = 0L;
+        private long syncedGeneration = 0L;
+        private boolean leaderActive = false;
+        private long failedFromGeneration = 0L;
+        private long failedThroughGeneration = -1L;
+        private IOException failure;
+
+        synchronized long register() {
+            return ++requestedGeneration;
+        }
+
+        void await(final long generation, final FileChannel channel) throws IOException {
+            final long previousSyncedGeneration;
+            final long targetGeneration;
+            boolean interrupted = false;
+
+            synchronized (this) {
+                while (true) {
+                    if (syncedGeneration >= generation) {
+                        if (failure != null && generation >= failedFromGeneration && generation <= failedThroughGeneration) {
+                            throw new IOException("Failed to sync content to disk", failure);
+                        }
+                        return;
+                    }
+
+                    if (!leaderActive) {
+                        leaderActive = true;
+                        break;
+                    }
+
+                    try {
+                        wait();
+                    } catch (final InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for content to be synced to disk");
+                    }
+                }
+
+                // give other threads a chance to join this batch before forcing the file to disk. The leader must not give up
+                // on being interrupted, as the threads that have joined the batch are relying on it to perform the sync.
+                final long deadline = System.nanoTime() + windowNanos;
+                long remaining = windowNanos;
+                while (remaining > 0L) {
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    } catch (final InterruptedException ie) {
+                        interrupted = true;
+                    }
+                    remaining = deadline - System.nanoTime();
+                }
+
+                previousSyncedGeneration = syncedGeneration;
+                targetGeneration = requestedGeneration;
+            }
+
+            // a FileChannel is closed if the thread that is forcing it is interrupted, so the interrupt is deferred until afterward
+            interrupted |= Thread.interrupted();
+
+            IOException syncFailure = null;
+            final long start = System.nanoTime();
+            try {
+                channel.force(false);
+            } catch (final IOException ioe) {
+                syncFailure = ioe;
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            recordSync(targetGeneration - previousSyncedGeneration, System.nanoTime() - start);
+
+            synchronized (this) {
+                syncedGeneration = targetGeneration;
+                if (syncFailure != null) {
+                    failure = syncFailure;
+                    failedFromGeneration = previousSyncedGeneration + 1;
+                    failedThroughGeneration = targetGeneration;
+                }
+
+                leaderActive = false;
+                notifyAll();
+            }
+
+            if (syncFailure != null) {
+                throw syncFailure;
+            }
+        }
+    }
+}
@@ -0,0 +1,481 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.nifi.controller.repository.claim.ContentClaim;
+import org.apache.nifi.controller.repository.claim.InlineContentClaim;
+import org.apache.nifi.controller.repository.claim.ResourceClaimManager;
+import org.apache.nifi.stream.io.ByteArrayInputStream;
+import org.apache.nifi.stream.io.StreamUtils;
+
+/**
+ * <p>
+ * A {@link ContentRepository} that keeps content that is no larger than a configurable threshold inline with the FlowFile that
+ * references it, in an {@link InlineContentClaim}, and stores all other content in the Content Repository that it wraps. Inline content
+ * is written to the FlowFile Repository and to swap files along with the FlowFile, so that small FlowFiles can be created, read, and
+ * destroyed without touching the Content Repository at all. Content that grows beyond the threshold while it is being written is
+ * promoted to a claim in the wrapped repository.
+ * </p>
+ *
+ * <p>
+ * Inline content is never archived, and because it has no Resource Claim, it cannot be replayed or downloaded through Provenance.
+ * </p>
+ *
+ * <p>
+ * Claims that were created by the wrapped repository are passed through to it unchanged, so it is always safe to wrap a repository
+ * even if the threshold is 0, in which case no new inline claims are created but those that were persisted previously can still be read.
+ * </p>
+ */
+public class InlineContentRepository implements ContentRepository {
+
+    private final ContentRepository delegate;
+    private final int threshold;
+
+    /**
+     * @param delegate the repository in which content that is not held inline is stored
+     * @param threshold the maximum number of bytes of content that may be held inline, or 0 to never create inline claims
+     */
+    public InlineContentRepository(final ContentRepository delegate, final int threshold) {
+        this.delegate = delegate;
+        this.threshold = threshold;
+    }
+
+    public ContentRepository getDelegate() {
+        return delegate;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    @Override
+    public void initialize(final ResourceClaimManager claimManager) throws IOException {
+        delegate.initialize(claimManager);
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public Set<String> getContainerNames() {
+        return delegate.getContainerNames();
+    }
+
+    @Override
+    public long getContainerCapacity(final String containerName) throws IOException {
+        return delegate.getContainerCapacity(containerName);
+    }
+
+    @Override
+    public long getContainerUsableSpace(final String containerName) throws IOException {
+        return delegate.getContainerUsableSpace(containerName);
+    }
+
+    @Override
+    public ContentClaim create(final boolean lossTolerant) throws IOException {
+        if (threshold <= 0) {
+            return delegate.create(lossTolerant);
+        }
+
+        return new InlineContentClaim(lossTolerant);
+    }
+
+    /**
+     * @param claim a claim
+     * @return the given claim if it is held inline or was not created by this repository, or the claim in the wrapped repository
+     *         to which the given claim was promoted
+     */
+    private static ContentClaim unwrap(final ContentClaim claim) {
+        if (claim instanceof InlineContentClaim) {
+            final ContentClaim promoted = ((InlineContentClaim) claim).getPromotedClaim();
+            return promoted == null ? claim : promoted;
+        }
+
+        return claim;
+    }
+
+    private static boolean isInline(final ContentClaim claim) {
+        return claim instanceof InlineContentClaim;
+    }
+
+    @Override
+    public int incrementClaimaintCount(final ContentClaim claim) {
+        final ContentClaim unwrapped = unwrap(claim);
+        return isInline(unwrapped) ? 0 : delegate.incrementClaimaintCount(unwrapped);
+    }
+
+    @Override
+    public int getClaimantCount(final ContentClaim claim) {
+        final ContentClaim unwrapped = unwrap(claim);
+        return isInline(unwrapped) ? 0 : delegate.getClaimantCount(unwrapped);
+    }
+
+    @Override
+    public int decrementClaimantCount(final ContentClaim claim) {
+        final ContentClaim unwrapped = unwrap(claim);
+        return isInline(unwrapped) ? 0 : delegate.decrementClaimantCount(unwrapped);
+    }
+
+    @Override
+    public boolean remove(final ContentClaim claim) {
+        final ContentClaim unwrapped = unwrap(claim);
+        return isInline(unwrapped) ? true : delegate.remove(unwrapped);
+    }
+
+    @Override
+    public ContentClaim clone(final ContentClaim original, final boolean lossTolerant) throws IOException {
+        final ContentClaim unwrapped = unwrap(original);
+        if (isInline(unwrapped)) {
+            // inline content is never modified once it has been written, so the clone can share it
+            return new InlineContentClaim(((InlineContentClaim) unwrapped).getContent(), lossTolerant);
+        }
+
+        return delegate.clone(unwrapped, lossTolerant);
+    }
+
+    @Override
+    public long merge(final Collection<ContentClaim> claims, final ContentClaim destination, final byte[] header, final byte[] footer, final byte[] demarcator) throws IOException {
+        final List<ContentClaim> unwrappedClaims = new ArrayList<>(claims.size());
+        boolean anyInline = false;
+        for (final ContentClaim claim : claims) {
+            final ContentClaim unwrapped = unwrap(claim);
+            anyInline |= isInline(unwrapped);
+            unwrappedClaims.add(unwrapped);
+        }
+
+        final ContentClaim unwrappedDestination = unwrap(destination);
+        if (!anyInline && !isInline(unwrappedDestination)) {
+            return delegate.merge(unwrappedClaims, unwrappedDestination, header, footer, demarcator);
+        }
+
+        if (claims.contains(destination)) {
+            throw new IllegalArgumentException("destination cannot be within claims");
+        }
+
+        long bytes = 0L;
+        try (final OutputStream out = write(destination)) {
+            if (header != null) {
+                out.write(header);
+                bytes += header.length;
+            }
+
+            final Iterator<ContentClaim> itr = claims.iterator();
+            while (itr.hasNext()) {
+                final ContentClaim readClaim = itr.next();
+                try (final InputStream in = read(readClaim)) {
+                    bytes += StreamUtils.copy(in, out);
+                }
+
+                if (itr.hasNext() && demarcator != null) {
+                    bytes += demarcator.length;
+                    out.write(demarcator);
+                }
+            }
+
+            if (footer != null) {
+                bytes += footer.length;
+                out.write(footer);
+            }
+
+            return bytes;
+        }
+    }
+
+    @Override
+    public long importFrom(final Path content, final ContentClaim claim) throws IOException {
+        final ContentClaim unwrapped = unwrap(claim);
+        if (!isInline(unwrapped)) {
+            return delegate.importFrom(content, unwrapped);
+        }
+
+        if (Files.size(content) > threshold) {
+            return delegate.importFrom(content, promote((InlineContentClaim) unwrapped));
+        }
+
+        try (final InputStream in = Files.newInputStream(content)) {
+            return importFrom(in, claim);
+        }
+    }
+
+    @Override
+    public long importFrom(final InputStream content, final ContentClaim claim) throws IOException {
+        final ContentClaim unwrapped = unwrap(claim);
+        if (!isInline(unwrapped)) {
+            return delegate.importFrom(content, unwrapped);
+        }
+
+        try (final OutputStream out = write(claim)) {
+            return StreamUtils.copy(content, out);
+        }
+    }
+
+    @Override
+    public long importFrom(final ReadableByteChannel content, final ContentClaim claim) throws IOException {
+        final ContentClaim unwrapped = unwrap(claim);
+        if (!isInline(unwrapped)) {
+            return delegate.importFrom(content, unwrapped);
+        }
+
+        if (content instanceof FileChannel) {
+            final FileChannel fileChannel = (FileChannel) content;
+            if (fileChannel.size() - fileChannel.position() > threshold) {
+                return delegate.importFrom(content, promote((InlineContentClaim) unwrapped));
+            }
+        }
+
+        // the channel must not be closed, so it is not wrapped in an InputStream
+        long bytes = 0L;
+        final ByteBuffer buffer = ByteBuffer.allocate(8192);
+        try (final OutputStream out = write(claim)) {
+            int len;
+            while ((len = content.read(buffer)) != -1) {
+                out.write(buffer.array(), 0, len);
+                bytes += len;
+                buffer.clear();
+            }
+        }
+
+        return bytes;
+    }
+
+    @Override
+    public long exportTo(final ContentClaim claim, final Path destination, final boolean append) throws IOException {
+        final ContentClaim unwrapped = unwrap(claim);
+        if (!isInline(unwrapped)) {
+            return delegate.exportTo(unwrapped, destination, append);
+        }
+
+        final byte[] content = ((InlineContentClaim) unwrapped).getContent();
+        return exportTo(unwrapped, destination, append, 0L, content.length);
+    }
+
+    @Override
+    public long exportTo(final ContentClaim claim, final Path destination, final boolean append, final long offset, final long length) throws IOException {
+        final ContentClaim unwrapped = unwrap(claim);
+        if (!isInline(unwrapped)) {
+            return delegate.exportTo(unwrapped, destination, append, offset, length);
+        }
+
+        final ByteBuffer buffer = slice((InlineContentClaim) unwrapped, offset, length);
+        final StandardOpenOption openOption = append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+        try (final OutputStream out = Files.newOutputStream(destination, StandardOpenOption.CREATE, StandardOpenOption.WRITE, openOption)) {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        return length;
+    }
+
+    @Override
+    public long exportTo(final ContentClaim claim, final OutputStream destination) throws IOException {
+        final ContentClaim unwrapped = unwrap(claim);
+        if (!isInline(unwrapped)) {
+            return delegate.exportTo(unwrapped, destination);
+        }
+
+        final byte[] content = ((InlineContentClaim) unwrapped).getContent();
+        destination.write(content);
+        return content.length;
+    }
+
+    @Override
+    public long exportTo(final ContentClaim claim, final OutputStream destination, final long offset, final long length) throws IOException {
+        final ContentClaim unwrapped = unwrap(claim);
+        if (!isInline(unwrapped)) {
+            return delegate.exportTo(unwrapped, destination, offset, length);
+        }
+
+        final ByteBuffer buffer = slice((InlineContentClaim) unwrapped, offset, length);
+        destination.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        return length;
+    }
+
+    @Override
+    public long exportTo(final ContentClaim claim, final WritableByteChannel destination, final long offset, final long length) throws IOException {
+        final ContentClaim unwrapped = unwrap(claim);
+        if (!isInline(unwrapped)) {
+            return delegate.exportTo(unwrapped, destination, offset, length);
+        }
+
+        final ByteBuffer buffer = slice((InlineContentClaim) unwrapped, offset, length);
+        while (buffer.hasRemaining()) {
+            destination.write(buffer);
+        }
+        return length;
+    }
+
+    @Override
+    public long size(final ContentClaim claim) throws IOException {
+        final ContentClaim unwrapped = unwrap(claim);
+        return isInline(unwrapped) ? ((InlineContentClaim) unwrapped).getContent().length : delegate.size(unwrapped);
+    }
+
+    @Override
+    public InputStream read(final ContentClaim claim) throws IOException {
+        final ContentClaim unwrapped = unwrap(claim);
+        return isInline(unwrapped) ? new ByteArrayInputStream(((InlineContentClaim) unwrapped).getContent()) : delegate.read(unwrapped);
+    }
+
+    @Override
+    public ByteBuffer map(final ContentClaim claim, final long offset, final long length) throws IOException {
+        final ContentClaim unwrapped = unwrap(claim);
+        if (!isInline(unwrapped)) {
+            return delegate.map(unwrapped, offset, length);
+        }
+
+        return slice((InlineContentClaim) unwrapped, offset, length).slice().asReadOnlyBuffer();
+    }
+
+    private static ByteBuffer slice(final InlineContentClaim claim, final long offset, final long length) throws EOFException {
+        final byte[] content = claim.getContent();
+        if (offset < 0L || length < 0L || offset + length > content.length) {
+            throw new EOFException("Cannot access " + length + " bytes of " + claim + " starting at offset " + offset + " because the claim contains only "
+                + content.length + " bytes");
+        }
+
+        return ByteBuffer.wrap(content, (int) offset, (int) length);
+    }
+
+    @Override
+    public OutputStream write(final ContentClaim claim) throws IOException {
+        final ContentClaim unwrapped = unwrap(claim);
+        if (!isInline(unwrapped)) {
+            return delegate.write(unwrapped);
+        }
+
+        return new InlineOutputStream((InlineContentClaim) unwrapped);
+    }
+
+    private ContentClaim promote(final InlineContentClaim claim) throws IOException {
+        final ContentClaim promoted = delegate.create(claim.isLossTolerant());
+        claim.promote(promoted);
+        return promoted;
+    }
+
+    @Override
+    public void purge() {
+        delegate.purge();
+    }
+
+    @Override
+    public void cleanup() {
+        delegate.cleanup();
+    }
+
+    @Override
+    public boolean isAccessible(final ContentClaim contentClaim) throws IOException {
+        final ContentClaim unwrapped = unwrap(contentClaim);
+        return isInline(unwrapped) ? true : delegate.isAccessible(unwrapped);
+    }
+
+    /**
+     * Buffers the content of an inline claim until it is closed, at which point the content is set on the claim, or until the
+     * content exceeds the threshold, at which point the claim is promoted and the buffered content and everything written
+     * thereafter goes to the wrapped repository.
+     */
+    private class InlineOutputStream extends OutputStream {
+        private final InlineContentClaim claim;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private OutputStream promotedOut;
+        private boolean closed = false;
+
+        public InlineOutputStream(final InlineContentClaim claim) {
+            this.claim = claim;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            ensureCapacity(1);
+            if (promotedOut == null) {
+                buffer.write(b);
+            } else {
+                promotedOut.write(b);
+            }
+        }
+
+        @Override
+        public void write(final byte[] b) throws IOException {
+            write(b, 0, b.length);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            ensureCapacity(len);
+            if (promotedOut == null) {
+                buffer.write(b, off, len);
+            } else {
+                promotedOut.write(b, off, len);
+            }
+        }
+
+        private void ensureCapacity(final int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream is closed");
+            }
+
+            if (promotedOut != null || (long) buffer.size() + len <= threshold) {
+                return;
+            }
+
+            final ContentClaim promoted = delegate.create(claim.isLossTolerant());
+            promotedOut = delegate.write(promoted);
+            buffer.writeTo(promotedOut);
+            buffer = null;
+            claim.promote(promoted);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (promotedOut != null) {
+                promotedOut.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            if (promotedOut == null) {
+                claim.setContent(buffer.toByteArray());
+                buffer = null;
+            } else {
+                promotedOut.close();
+            }
+        }
+    }
+}
@@ -43,17 +43,26 @@ public class ProcessContext {
     private final FlowFileEventRepository flowFileEventRepo;
     private final CounterRepository counterRepo;
     private final ProvenanceEventRepository provenanceRepo;
+    private final ProvenanceEventFilter provenanceEventFilter;
     private final AtomicLong connectionIndex;
 
     public ProcessContext(final Connectable connectable, final AtomicLong connectionIndex, final ContentRepository contentRepository,
             final FlowFileRepository flowFileRepository, final FlowFileEventRepository flowFileEventRepository,
             final CounterRepository counterRepository, final ProvenanceEventRepository provenanceRepository) {
+        this(connectable, connectionIndex, contentRepository, flowFileRepository, flowFileEventRepository, counterRepository, provenanceRepository, null);
+    }
+
+    public ProcessContext(final Connectable connectable, final AtomicLong connectionIndex, final ContentRepository contentRepository,
+            final FlowFileRepository flowFileRepository, final FlowFileEventRepository flowFileEventRepository,
+            final CounterRepository counterRepository, final ProvenanceEventRepository provenanceRepository,
+            final ProvenanceEventFilter provenanceEventFilter) {
         this.connectable = connectable;
         contentRepo = contentRepository;
         flowFileRepo = flowFileRepository;
         flowFileEventRepo = flowFileEventRepository;
         counterRepo = counterRepository;
         provenanceRepo = provenanceRepository;
+        this.provenanceEventFilter = provenanceEventFilter;
 
         this.connectionIndex = connectionIndex;
     }
@@ -147,6 +156,14 @@ public class ProcessContext {
         return provenanceRepo;
     }
 
+    /**
+     * @return the filter to apply to Provenance Events before they are registered with the Provenance Repository,
+     *         or <code>null</code> if all events are to be registered
+     */
+    ProvenanceEventFilter getProvenanceEventFilter() {
+        return provenanceEventFilter;
+    }
+
     long getNextFlowFileSequence() {
         return flowFileRepo.getNextFlowFileSequence();
     }
@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.nifi.provenance.ProvenanceEventRecord;
+import org.apache.nifi.provenance.ProvenanceEventType;
+import org.apache.nifi.util.NiFiProperties;
+
+/**
+ * <p>
+ * Applies the configured Provenance Event policies to the events that are generated by components, before the events are
+ * registered with the Provenance Repository. This allows high-rate components whose events are never queried to avoid the
+ * cost of writing and indexing those events.
+ * </p>
+ *
+ * <p>
+ * A policy is configured either for a component, by its identifier or its type (for example, <code>RouteOnAttribute</code>),
+ * or for an event type. The policy of a component takes precedence over the policy of an event type, and a policy configured
+ * for a component's identifier takes precedence over a policy configured for its type. Each policy is one of:
+ * </p>
+ * <ul>
+ * <li><code>drop</code> - none of the events are registered</li>
+ * <li><code>sample &lt;N&gt;</code> - one of every N events is registered</li>
+ * <li><code>lineage only</code> - only events that create, split, merge, transfer or end a FlowFile are registered</li>
+ * </ul>
+ *
+ * <p>
+ * Note that dropping or sampling events that create, split or merge FlowFiles results in incomplete lineage for those FlowFiles.
+ * </p>
+ */
+public class ProvenanceEventFilter {
+
+    public static final String DROP = "drop";
+    public static final String SAMPLE = "sample";
+    public static final String LINEAGE_ONLY = "lineage only";
+
+    /**
+     * The event types that are registered when a component's policy is {@link #LINEAGE_ONLY}
+     */
+    public static final Set<ProvenanceEventType> LINEAGE_EVENT_TYPES = Collections.unmodifiableSet(EnumSet.of(
+        ProvenanceEventType.CREATE, ProvenanceEventType.RECEIVE, ProvenanceEventType.FETCH, ProvenanceEventType.SEND,
+        ProvenanceEventType.DROP, ProvenanceEventType.EXPIRE, ProvenanceEventType.FORK, ProvenanceEventType.JOIN, ProvenanceEventType.CLONE));
+
+    private final Map<String, Policy> componentPolicies;
+    private final Map<ProvenanceEventType, Policy> eventTypePolicies;
+    private final Map<ProvenanceEventType, AtomicLong> suppressedCounts = new EnumMap<>(ProvenanceEventType.class);
+
+    public ProvenanceEventFilter(final Map<String, String> componentPolicies, final Map<ProvenanceEventType, String> eventTypePolicies) {
+        this.componentPolicies = new HashMap<>();
+        for (final Map.Entry<String, String> entry : componentPolicies.entrySet()) {
+            this.componentPolicies.put(entry.getKey(), Policy.parse(entry.getValue()));
+        }
+
+        this.eventTypePolicies = new EnumMap<>(ProvenanceEventType.class);
+        for (final Map.Entry<ProvenanceEventType, String> entry : eventTypePolicies.entrySet()) {
+            this.eventTypePolicies.put(entry.getKey(), Policy.parse(entry.getValue()));
+        }
+
+        for (final ProvenanceEventType eventType : ProvenanceEventType.values()) {
+            suppressedCounts.put(eventType, new AtomicLong(0L));
+        }
+    }
+
+    /**
+     * Creates a filter from the policies that are configured in the given properties
+     *
+     * @param properties the properties to read policies from
+     * @return a filter that applies the configured policies, or <code>null</code> if no policies are configured
+     * @throws IllegalArgumentException if a policy or an event type is not valid
+     */
+    public static ProvenanceEventFilter fromProperties(final NiFiProperties properties) {
+        final Map<String, String> componentPolicies = new HashMap<>();
+        final Map<ProvenanceEventType, String> eventTypePolicies = new HashMap<>();
+
+        for (final String propertyName : properties.stringPropertyNames()) {
+            if (StringUtils.startsWith(propertyName, NiFiProperties.PROVENANCE_COMPONENT_POLICY_PREFIX)) {
+                final String component = StringUtils.substringAfter(propertyName, NiFiProperties.PROVENANCE_COMPONENT_POLICY_PREFIX);
+                componentPolicies.put(component, properties.getProperty(propertyName));
+            } else if (StringUtils.startsWith(propertyName, NiFiProperties.PROVENANCE_EVENT_TYPE_POLICY_PREFIX)) {
+                final String eventTypeName = StringUtils.substringAfter(propertyName, NiFiProperties.PROVENANCE_EVENT_TYPE_POLICY_PREFIX);
+                final ProvenanceEventType eventType;
+                try {
+                    eventType = ProvenanceEventType.valueOf(eventTypeName.toUpperCase());
+                } catch (final IllegalArgumentException iae) {
+                    throw new IllegalArgumentException("Property " + propertyName + " does not reference a valid Provenance Event Type");
+                }
+                eventTypePolicies.put(eventType, properties.getProperty(propertyName));
+            }
+        }
+
+        if (componentPolicies.isEmpty() && eventTypePolicies.isEmpty()) {
+            return null;
+        }
+
+        return new ProvenanceEventFilter(componentPolicies, eventTypePolicies);
+    }
+
+    /**
+     * @param event the event to check
+     * @return <code>true</code> if the event should be registered with the Provenance Repository, <code>false</code> if it is to be suppressed
+     */
+    public boolean accept(final ProvenanceEventRecord event) {
+        Policy policy = componentPolicies.get(event.getComponentId());
+        if (policy == null) {
+            policy = componentPolicies.get(event.getComponentType());
+        }
+        if (policy == null) {
+            policy = eventTypePolicies.get(event.getEventType());
+        }
+
+        if (policy == null || policy.accept(event)) {
+            return true;
+        }
+
+        suppressedCounts.get(event.getEventType()).incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Returns a view of the given events that contains only the events that are accepted by this filter. The given
+     * events are iterated lazily, as the view is iterated.
+     *
+     * @param events the events to filter
+     * @return the accepted events
+     */
+    public FilteredEvents filter(final Iterable<ProvenanceEventRecord> events) {
+        return new FilteredEvents(events);
+    }
+
+    /**
+     * @param eventType the type of event
+     * @return the number of events of the given type that have been suppressed since this filter was created
+     */
+    public long getSuppressedCount(final ProvenanceEventType eventType) {
+        return suppressedCounts.get(eventType).get();
+    }
+
+    /**
+     * @return the number of events that have been suppressed since this filter was created
+     */
+    public long getSuppressedCount() {
+        long total = 0L;
+        for (final AtomicLong count : suppressedCounts.values()) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    public class FilteredEvents implements Iterable<ProvenanceEventRecord> {
+
+        private final Iterable<ProvenanceEventRecord> events;
+        private long suppressedCount = 0L;
+
+        private FilteredEvents(final Iterable<ProvenanceEventRecord> events) {
+            this.events = events;
+        }
+
+        /**
+         * @return the number of events that have been suppressed while iterating over these events
+         */
+        public long getSuppressedCount() {
+            return suppressedCount;
+        }
+
+        @Override
+        public Iterator<ProvenanceEventRecord> iterator() {
+            final Iterator<ProvenanceEventRecord> itr = events.iterator();
+
+            return new Iterator<ProvenanceEventRecord>() {
+                private ProvenanceEventRecord nextEvent = null;
+
+                @Override
+                public boolean hasNext() {
+                    while (nextEvent == null && itr.hasNext()) {
+                        final ProvenanceEventRecord event = itr.next();
+                        if (accept(event)) {
+                            nextEvent = event;
+                        } else {
+                            suppressedCount++;
+                        }
+                    }
+
+                    return nextEvent != null;
+                }
+
+                @Override
+                public ProvenanceEventRecord next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+
+                    final ProvenanceEventRecord event = nextEvent;
+                    nextEvent = null;
+                    return event;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+
+    private static class Policy {
+
+        private final boolean lineageOnly;
+        private final long sampleInterval;
+        private final AtomicLong sampleCounter = new AtomicLong(0L);
+
+        private Policy(final boolean lineageOnly, final long sampleInterval) {
+            this.lineageOnly = lineageOnly;
+            this.sampleInterval = sampleInterval;
+        }
+
+        static Policy parse(final String value) {
+            final String policy = value == null ? "" : value.trim().toLowerCase().replaceAll("\\s+", " ");
+            if (DROP.equals(policy)) {
+                return new Policy(false, 0L);
+            }
+            if (LINEAGE_ONLY.equals(policy)) {
+                return new Policy(true, 1L);
+            }
+            if (policy.startsWith(SAMPLE + " ")) {
+                final String interval = policy.substring(SAMPLE.length() + 1);
+                try {
+                    final long sampleInterval = Long.parseLong(interval);
+                    if (sampleInterval > 0) {
+                        return new Policy(false, sampleInterval);
+                    }
+                } catch (final NumberFormatException nfe) {
+                    // fall through to the exception below
+                }
+            }
+
+            throw new IllegalArgumentException("Invalid Provenance Event policy '" + value + "'; the policy must be one of '" + DROP + "', '"
+                + LINEAGE_ONLY + "', or '" + SAMPLE + " <N>', where N is a positive number");
+        }
+
+        boolean accept(final ProvenanceEventRecord event) {
+            if (lineageOnly) {
+                return LINEAGE_EVENT_TYPES.contains(event.getEventType());
+            }
+            if (sampleInterval <= 0L) {
+                return false;
+            }
+
+            return sampleCounter.getAndIncrement() % sampleInterval == 0;
+        }
+    }
+}
@@ -18,9 +18,7 @@ package org.apache.nifi.controller.repository;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
@@ -51,14 +49,14 @@ public final class StandardFlowFileRecord implements FlowFile, FlowFileRecord {
     private final Set<String> lineageIdentifiers;
     private final long size;
     private final long penaltyExpirationMs;
-    private final Map<String, String> attributes;
+    private final AttributeMap attributes;
     private final ContentClaim claim;
     private final long claimOffset;
     private final long lastQueueDate;
 
     private StandardFlowFileRecord(final Builder builder) {
         this.id = builder.bId;
-        this.attributes = builder.bAttributes;
+        this.attributes = builder.bAttributes.build();
         this.entryDate = builder.bEntryDate;
         this.lineageStartDate = builder.bLineageStartDate;
         this.lineageIdentifiers = builder.bLineageIdentifiers;
@@ -111,7 +109,7 @@ public final class StandardFlowFileRecord implements FlowFile, FlowFileRecord {
 
     @Override
     public Map<String, String> getAttributes() {
-        return Collections.unmodifiableMap(this.attributes);
+        return this.attributes;
     }
 
     @Override
@@ -170,7 +168,7 @@ public final class StandardFlowFileRecord implements FlowFile, FlowFileRecord {
         private final Set<String> bLineageIdentifiers = new HashSet<>();
         private long bPenaltyExpirationMs = -1L;
         private long bSize = 0L;
-        private final Map<String, String> bAttributes = new HashMap<>();
+        private final AttributeMap.Builder bAttributes = new AttributeMap.Builder();
         private ContentClaim bClaim = null;
         private long bClaimOffset = 0L;
         private long bLastQueueDate = System.currentTimeMillis();
@@ -233,13 +231,7 @@ public final class StandardFlowFileRecord implements FlowFile, FlowFileRecord {
                 for (final String key : attributes.keySet()) {
                     FlowFile.KeyValidator.validateKey(key);
                 }
-                for (final Map.Entry<String, String> entry : attributes.entrySet()) {
-                    final String key = entry.getKey();
-                    final String value = entry.getValue();
-                    if (key != null && value != null) {
-                        bAttributes.put(key, value);
-                    }
-                }
+                bAttributes.putAll(attributes);
             }
             return this;
         }
@@ -272,16 +264,13 @@ public final class StandardFlowFileRecord implements FlowFile, FlowFileRecord {
 
         public Builder removeAttributes(final Pattern keyPattern) {
             if (keyPattern != null) {
-                final Iterator<String> iterator = bAttributes.keySet().iterator();
-                while (iterator.hasNext()) {
-                    final String key = iterator.next();
-
+                for (final String key : bAttributes.keys()) {
                     if (CoreAttributes.UUID.key().equals(key)) {
                         continue;
                     }
 
                     if (keyPattern.matcher(key).matches()) {
-                        iterator.remove();
+                        bAttributes.remove(key);
                     }
                 }
             }
@@ -21,6 +21,9 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -29,6 +32,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -55,6 +59,7 @@ import org.apache.nifi.controller.repository.io.FlowFileAccessInputStream;
 import org.apache.nifi.controller.repository.io.FlowFileAccessOutputStream;
 import org.apache.nifi.controller.repository.io.LimitedInputStream;
 import org.apache.nifi.controller.repository.io.LongHolder;
+import org.apache.nifi.controller.repository.io.MappedBufferReleaser;
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.flowfile.attributes.CoreAttributes;
 import org.apache.nifi.processor.FlowFileFilter;
@@ -69,7 +74,6 @@ import org.apache.nifi.processor.io.OutputStreamCallback;
 import org.apache.nifi.processor.io.StreamCallback;
 import org.apache.nifi.provenance.ProvenanceEventBuilder;
 import org.apache.nifi.provenance.ProvenanceEventRecord;
-import org.apache.nifi.provenance.ProvenanceEventRepository;
 import org.apache.nifi.provenance.ProvenanceEventType;
 import org.apache.nifi.provenance.ProvenanceReporter;
 import org.apache.nifi.provenance.StandardProvenanceEventRecord;
@@ -96,12 +100,14 @@ public final class StandardProcessSession implements ProcessSession, ProvenanceE
     // determines how many things must be transferred, removed, modified in order to avoid logging the FlowFile ID's on commit/rollback
     public static final int VERBOSE_LOG_THRESHOLD = 10;
     public static final String DEFAULT_FLOWFILE_PATH = "./";
+    public static final String PROVENANCE_EVENTS_SUPPRESSED_COUNTER = "Provenance Events Suppressed";
 
     private static final Logger LOG = LoggerFactory.getLogger(StandardProcessSession.class);
     private static final Logger claimLog = LoggerFactory.getLogger(StandardProcessSession.class.getSimpleName() + ".claims");
     private static final int MAX_ROLLBACK_FLOWFILES_TO_LOG = 5;
 
-    private final Map<FlowFileRecord, StandardRepositoryRecord> records = new HashMap<>();
+    // ordered by when the FlowFiles were first seen by the session, so that rolled back FlowFiles can be requeued in order
+    private final Map<FlowFileRecord, StandardRepositoryRecord> records = new LinkedHashMap<>();
     private final Map<Connection, StandardFlowFileEvent> connectionCounts = new HashMap<>();
     private final Map<Connection, Set<FlowFileRecord>> unacknowledgedFlowFiles = new HashMap<>();
     private final Map<String, Long> counters = new HashMap<>();
@@ -126,6 +132,7 @@ public final class StandardProcessSession implements ProcessSession, ProvenanceE
 
     private ContentClaim currentReadClaim = null;
     private ByteCountingInputStream currentReadClaimStream = null;
+    private final List<ByteBuffer> mappedBuffers = new ArrayList<>();
     private long processingStartTime;
 
     // maps a FlowFile to all Provenance Events that were generated for that FlowFile.
@@ -510,8 +517,6 @@ public final class StandardProcessSession implements ProcessSession, ProvenanceE
 
     private void updateProvenanceRepo(final Checkpoint checkpoint) {
         // Update Provenance Repository
-        final ProvenanceEventRepository provenanceRepo = context.getProvenanceRepository();
-
         // We need to de-dupe the events that we've created and those reported to the provenance reporter,
         // in case the Processor developer submitted the same events to the reporter. So we use a LinkedHashSet
         // for this, so that we are able to ensure that the events are submitted in the proper order.
@@ -695,7 +700,24 @@ public final class StandardProcessSession implements ProcessSession, ProvenanceE
             }
         };
 
-        provenanceRepo.registerEvents(iterable);
+        registerProvenanceEvents(iterable);
+    }
+
+    private void registerProvenanceEvents(final Iterable<ProvenanceEventRecord> events) {
+        final ProvenanceEventFilter eventFilter = context.getProvenanceEventFilter();
+        if (eventFilter == null) {
+            context.getProvenanceRepository().registerEvents(events);
+            return;
+        }
+
+        // events are filtered as the repository iterates over them, so the suppressed count is known only once they have been registered
+        final ProvenanceEventFilter.FilteredEvents filteredEvents = eventFilter.filter(events);
+        context.getProvenanceRepository().registerEvents(filteredEvents);
+
+        final long suppressedCount = filteredEvents.getSuppressedCount();
+        if (suppressedCount > 0) {
+            context.adjustCounter(PROVENANCE_EVENTS_SUPPRESSED_COUNTER, suppressedCount);
+        }
     }
 
     private void updateEventContentClaims(final ProvenanceEventBuilder builder, final FlowFile flowFile, final StandardRepositoryRecord repoRecord) {
@@ -703,13 +725,28 @@ public final class StandardProcessSession implements ProcessSession, ProvenanceE
         if (originalClaim == null) {
             builder.setCurrentContentClaim(null, null, null, null, 0L);
         } else {
-            final ResourceClaim resourceClaim = originalClaim.getResourceClaim();
-            builder.setCurrentContentClaim(
-                resourceClaim.getContainer(), resourceClaim.getSection(), resourceClaim.getId(),
-                repoRecord.getOriginal().getContentClaimOffset() + originalClaim.getOffset(), repoRecord.getOriginal().getSize());
-            builder.setPreviousContentClaim(
-                resourceClaim.getContainer(), resourceClaim.getSection(), resourceClaim.getId(),
-                repoRecord.getOriginal().getContentClaimOffset() + originalClaim.getOffset(), repoRecord.getOriginal().getSize());
+            final long offset = repoRecord.getOriginal().getContentClaimOffset() + originalClaim.getOffset();
+            setCurrentContentClaim(builder, originalClaim, offset, repoRecord.getOriginal().getSize());
+            setPreviousContentClaim(builder, originalClaim, offset, repoRecord.getOriginal().getSize());
+        }
+    }
+
+    // content that is held inline with the FlowFile has no Resource Claim, so only its size can be recorded
+    private static void setCurrentContentClaim(final ProvenanceEventBuilder builder, final ContentClaim claim, final long offset, final long size) {
+        final ResourceClaim resourceClaim = claim.getResourceClaim();
+        if (resourceClaim == null) {
+            builder.setCurrentContentClaim(null, null, null, null, size);
+        } else {
+            builder.setCurrentContentClaim(resourceClaim.getContainer(), resourceClaim.getSection(), resourceClaim.getId(), offset, size);
+        }
+    }
+
+    private static void setPreviousContentClaim(final ProvenanceEventBuilder builder, final ContentClaim claim, final long offset, final long size) {
+        final ResourceClaim resourceClaim = claim.getResourceClaim();
+        if (resourceClaim == null) {
+            builder.setPreviousContentClaim(null, null, null, null, size);
+        } else {
+            builder.setPreviousContentClaim(resourceClaim.getContainer(), resourceClaim.getSection(), resourceClaim.getId(), offset, size);
         }
     }
 
@@ -726,8 +763,7 @@ public final class StandardProcessSession implements ProcessSession, ProvenanceE
             final long currentOffset = repoRecord.getCurrentClaimOffset();
             final long size = flowFile.getSize();
 
-            final ResourceClaim resourceClaim = currentClaim.getResourceClaim();
-            recordBuilder.setCurrentContentClaim(resourceClaim.getContainer(), resourceClaim.getSection(), resourceClaim.getId(), currentOffset + currentClaim.getOffset(), size);
+            setCurrentContentClaim(recordBuilder, currentClaim, currentOffset + currentClaim.getOffset(), size);
         }
 
         if (repoRecord.getOriginal() != null && repoRecord.getOriginalClaim() != null) {
@@ -735,8 +771,7 @@ public final class StandardProcessSession implements ProcessSession, ProvenanceE
             final long originalOffset = repoRecord.getOriginal().getContentClaimOffset();
             final long originalSize = repoRecord.getOriginal().getSize();
 
-            final ResourceClaim resourceClaim = originalClaim.getResourceClaim();
-            recordBuilder.setPreviousContentClaim(resourceClaim.getContainer(), resourceClaim.getSection(), resourceClaim.getId(), originalOffset + originalClaim.getOffset(), originalSize);
+            setPreviousContentClaim(recordBuilder, originalClaim, originalOffset + originalClaim.getOffset(), originalSize);
         }
 
         final FlowFileQueue originalQueue = repoRecord.getOriginalQueue();
@@ -760,8 +795,7 @@ public final class StandardProcessSession implements ProcessSession, ProvenanceE
                 final long currentOffset = repoRecord.getCurrentClaimOffset();
                 final long size = eventFlowFile.getSize();
 
-                final ResourceClaim resourceClaim = currentClaim.getResourceClaim();
-                recordBuilder.setCurrentContentClaim(resourceClaim.getContainer(), resourceClaim.getSection(), resourceClaim.getId(), currentOffset + currentClaim.getOffset(), size);
+                setCurrentContentClaim(recordBuilder, currentClaim, currentOffset + currentClaim.getOffset(), size);
             }
 
             if (repoRecord.getOriginal() != null && repoRecord.getOriginalClaim() != null) {
@@ -769,8 +803,7 @@ public final class StandardProcessSession implements ProcessSession, ProvenanceE
                 final long originalOffset = repoRecord.getOriginal().getContentClaimOffset();
                 final long originalSize = repoRecord.getOriginal().getSize();
 
-                final ResourceClaim resourceClaim = originalClaim.getResourceClaim();
-                recordBuilder.setPreviousContentClaim(resourceClaim.getContainer(), resourceClaim.getSection(), resourceClaim.getId(), originalOffset + originalClaim.getOffset(), originalSize);
+                setPreviousContentClaim(recordBuilder, originalClaim, originalOffset + originalClaim.getOffset(), originalSize);
             }
 
             final FlowFileQueue originalQueue = repoRecord.getOriginalQueue();
@@ -869,8 +902,9 @@ public final class StandardProcessSession implements ProcessSession, ProvenanceE
 
         deleteOnCommit.clear();
 
-        final Set<StandardRepositoryRecord> recordsToHandle = new HashSet<>();
-        recordsToHandle.addAll(records.values());
+        // the records of the checkpoint were polled before those of the session, and the order is kept so that FlowFiles
+        // are requeued in the order in which they were polled
+        final Set<StandardRepositoryRecord> recordsToHandle = new LinkedHashSet<>();
         if (rollbackCheckpoint) {
             final Checkpoint existingCheckpoint = this.checkpoint;
             this.checkpoint = null;
@@ -878,6 +912,7 @@ public final class StandardProcessSession implements ProcessSession, ProvenanceE
                 recordsToHandle.addAll(existingCheckpoint.records.values());
             }
         }
+        recordsToHandle.addAll(records.values());
 
         if (recordsToHandle.isEmpty()) {
             LOG.trace("{} was rolled back, but no events were performed by this ProcessSession", this);
@@ -894,7 +929,7 @@ public final class StandardProcessSession implements ProcessSession, ProvenanceE
         }
 
         final Set<RepositoryRecord> abortedRecords = new HashSet<>();
-        final Set<StandardRepositoryRecord> transferRecords = new HashSet<>();
+        final List<StandardRepositoryRecord> transferRecords = new ArrayList<>();
         for (final StandardRepositoryRecord record : recordsToHandle) {
             if (record.isMarkedForAbort()) {
                 removeContent(record.getWorkingClaim());
@@ -910,22 +945,33 @@ public final class StandardProcessSession implements ProcessSession, ProvenanceE
             }
         }
 
-        // Put the FlowFiles that are not marked for abort back to their original queues
+        // Put the FlowFiles that are not marked for abort back to their original queues, in the order in which they were polled
+        final Map<FlowFileQueue, List<FlowFileRecord>> requeueMap = new LinkedHashMap<>();
         for (final StandardRepositoryRecord record : transferRecords) {
             if (record.getOriginal() != null) {
                 final FlowFileQueue originalQueue = record.getOriginalQueue();
                 if (originalQueue != null) {
+                    List<FlowFileRecord> requeued = requeueMap.get(originalQueue);
+                    if (requeued == null) {
+                        requeued = new ArrayList<>();
+                        requeueMap.put(originalQueue, requeued);
+                    }
+
                     if (penalize) {
                         final long expirationEpochMillis = System.currentTimeMillis() + context.getConnectable().getPenalizationPeriod(TimeUnit.MILLISECONDS);
                         final FlowFileRecord newFile = new StandardFlowFileRecord.Builder().fromFlowFile(record.getOriginal()).penaltyExpirationTime(expirationEpochMillis).build();
-                        originalQueue.put(newFile);
+                        requeued.add(newFile);
                     } else {
-                        originalQueue.put(record.getOriginal());
+                        requeued.add(record.getOriginal());
                     }
                 }
             }
         }
 
+        for (final Map.Entry<FlowFileQueue, List<FlowFileRecord>> entry : requeueMap.entrySet()) {
+            entry.getKey().requeue(entry.getValue());
+        }
+
         if (!abortedRecords.isEmpty()) {
             try {
                 context.getFlowFileRepository().updateRepository(abortedRecords);
@@ -1266,6 +1312,23 @@ public final class StandardProcessSession implements ProcessSession, ProvenanceE
         }, false);
     }
 
+    @Override
+    public List<FlowFile> get(final int maxResults, final long maxBytes, final String groupingAttribute) {
+        if (maxResults < 0 || maxBytes < 0) {
+            throw new IllegalArgumentException();
+        }
+        if (maxResults == 0) {
+            return Collections.emptyList();
+        }
+
+        return get(new QueuePoller() {
+            @Override
+            public List<FlowFileRecord> poll(final FlowFileQueue queue, final Set<FlowFileRecord> expiredRecords) {
+                return queue.poll(maxResults, maxBytes, groupingAttribute, expiredRecords);
+            }
+        }, false);
+    }
+
     @Override
     public List<FlowFile> get(final FlowFileFilter filter) {
         return get(new QueuePoller() {
@@ -1721,11 +1784,8 @@ public final class StandardProcessSession implements ProcessSession, ProvenanceE
 
                             final ContentClaim claim = record.getContentClaim();
                             if (claim != null) {
-                                final ResourceClaim resourceClaim = claim.getResourceClaim();
-                                enriched.setCurrentContentClaim(resourceClaim.getContainer(), resourceClaim.getSection(), resourceClaim.getId(),
-                                    record.getContentClaimOffset() + claim.getOffset(), record.getSize());
-                                enriched.setPreviousContentClaim(resourceClaim.getContainer(), resourceClaim.getSection(), resourceClaim.getId(),
-                                    record.getContentClaimOffset() + claim.getOffset(), record.getSize());
+                                setCurrentContentClaim(enriched, claim, record.getContentClaimOffset() + claim.getOffset(), record.getSize());
+                                setPreviousContentClaim(enriched, claim, record.getContentClaimOffset() + claim.getOffset(), record.getSize());
                             }
 
                             enriched.setAttributes(record.getAttributes(), Collections.<String, String> emptyMap());
@@ -1742,7 +1802,7 @@ public final class StandardProcessSession implements ProcessSession, ProvenanceE
                 }
             };
 
-            context.getProvenanceRepository().registerEvents(iterable);
+            registerProvenanceEvents(iterable);
             context.getFlowFileRepository().updateRepository(expiredRecords);
         } catch (final IOException e) {
             LOG.error("Failed to update FlowFile Repository to record expired records due to {}", e);
@@ -2165,6 +2225,11 @@ public final class StandardProcessSession implements ProcessSession, ProvenanceE
         }
         currentReadClaimStream = null;
         currentReadClaim = null;
+
+        for (final ByteBuffer buffer : mappedBuffers) {
+            MappedBufferReleaser.release(buffer);
+        }
+        mappedBuffers.clear();
     }
 
 
@@ -2319,6 +2384,38 @@ public final class StandardProcessSession implements ProcessSession, ProvenanceE
         return newFile;
     }
 
+    @Override
+    public FlowFile importFrom(final ReadableByteChannel source, final FlowFile destination) {
+        validateRecordState(destination);
+        final StandardRepositoryRecord record = records.get(destination);
+        ContentClaim newClaim = null;
+        final long claimOffset = 0L;
+
+        final long newSize;
+        try {
+            try {
+                newClaim = context.getContentRepository().create(context.getConnectable().isLossTolerant());
+                claimLog.debug("Creating ContentClaim {} for 'importFrom' for {}", newClaim, destination);
+
+                newSize = context.getContentRepository().importFrom(source, newClaim);
+                bytesWritten.increment(newSize);
+            } catch (final IOException e) {
+                throw new FlowFileAccessException("Unable to create ContentClaim due to " + e.toString(), e);
+            }
+        } catch (final Throwable t) {
+            if (newClaim != null) {
+                destroyContent(newClaim);
+            }
+
+            throw new FlowFileAccessException("Failed to import data from " + source + " for " + destination + " due to " + t.toString(), t);
+        }
+
+        removeTemporaryClaim(record);
+        final FlowFileRecord newFile = new StandardFlowFileRecord.Builder().fromFlowFile(record.getCurrent()).contentClaim(newClaim).contentClaimOffset(claimOffset).size(newSize).build();
+        record.setWorking(newFile);
+        return newFile;
+    }
+
     @Override
     public void exportTo(final FlowFile source, final Path destination, final boolean append) {
         validateRecordState(source);
@@ -2386,6 +2483,56 @@ public final class StandardProcessSession implements ProcessSession, ProvenanceE
         }
     }
 
+    @Override
+    public ByteBuffer map(final FlowFile source) {
+        validateRecordState(source);
+        final StandardRepositoryRecord record = records.get(source);
+
+        if (source.getSize() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot map the content of " + source + " because its size of " + source.getSize()
+                + " bytes exceeds the maximum of " + Integer.MAX_VALUE + " bytes");
+        }
+
+        if (record.getCurrentClaim() == null) {
+            return ByteBuffer.allocate(0).asReadOnlyBuffer();
+        }
+
+        try {
+            ensureNotAppending(record.getCurrentClaim());
+
+            final ByteBuffer buffer = context.getContentRepository().map(record.getCurrentClaim(), record.getCurrentClaimOffset(), source.getSize());
+            mappedBuffers.add(buffer);
+            bytesRead.increment(source.getSize());
+            return buffer;
+        } catch (final ContentNotFoundException nfe) {
+            handleContentNotFound(nfe, record);
+            throw new MissingFlowFileException("Unable to find content for FlowFile", nfe);
+        } catch (final IOException e) {
+            throw new FlowFileAccessException("Failed to map content of " + source + " due to " + e.toString(), e);
+        }
+    }
+
+    @Override
+    public void exportTo(final FlowFile source, final WritableByteChannel destination) {
+        validateRecordState(source);
+        final StandardRepositoryRecord record = records.get(source);
+
+        if (record.getCurrentClaim() == null) {
+            return;
+        }
+
+        try {
+            ensureNotAppending(record.getCurrentClaim());
+
+            final long copyCount = context.getContentRepository().exportTo(record.getCurrentClaim(), destination, record.getCurrentClaimOffset(), source.getSize());
+            bytesRead.increment(copyCount);
+        } catch (final ContentNotFoundException nfe) {
+            handleContentNotFound(nfe, record);
+        } catch (final Throwable t) {
+            throw new FlowFileAccessException("Failed to export " + source + " to " + destination + " due to " + t.toString(), t);
+        }
+    }
+
     private void handleContentNotFound(final ContentNotFoundException nfe, final Collection<StandardRepositoryRecord> suspectRecords) {
         for (final StandardRepositoryRecord record : suspectRecords) {
             handleContentNotFound(nfe, record);
@@ -2608,7 +2755,7 @@ public final class StandardProcessSession implements ProcessSession, ProvenanceE
         private final List<ProvenanceEventRecord> autoTerminatedEvents = new ArrayList<>();
         private final Set<ProvenanceEventRecord> reportedEvents = new LinkedHashSet<>();
 
-        private final Map<FlowFileRecord, StandardRepositoryRecord> records = new HashMap<>();
+        private final Map<FlowFileRecord, StandardRepositoryRecord> records = new LinkedHashMap<>();
         private final Map<Connection, StandardFlowFileEvent> connectionCounts = new HashMap<>();
         private final Map<Connection, Set<FlowFileRecord>> unacknowledgedFlowFiles = new HashMap<>();
         private final Map<String, Long> counters = new HashMap<>();
@@ -0,0 +1,1294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.apache.nifi.controller.repository.claim.ContentClaim;
+import org.apache.nifi.controller.repository.claim.ResourceClaim;
+import org.apache.nifi.controller.repository.claim.ResourceClaimManager;
+import org.apache.nifi.controller.repository.claim.StandardContentClaim;
+import org.apache.nifi.controller.repository.io.DirectMemoryManager;
+import org.apache.nifi.engine.FlowEngine;
+import org.apache.nifi.processor.DataUnit;
+import org.apache.nifi.stream.io.ByteArrayInputStream;
+import org.apache.nifi.stream.io.StreamUtils;
+import org.apache.nifi.util.FormatUtils;
+import org.apache.nifi.util.NiFiProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * A {@link ContentRepository} that keeps newly written content in a bounded tier of memory outside of the Java heap and writes it
+ * through to the Content Repository that it wraps only if the content outlives a configurable age, or if the memory in use passes a
+ * configurable high-water mark, in which case the oldest content is written out first. Content that is written, read, and destroyed
+ * within that age therefore never touches the disk. Content that does not fit in the memory that remains while it is being written
+ * is written through immediately.
+ * </p>
+ *
+ * <p>
+ * Content held in memory is given a Resource Claim in the {@link #MEMORY_CONTAINER_NAME} container, and the claim keeps that identity
+ * after its content has been written through, so that the FlowFile Repository and Provenance Repository never need to learn about
+ * the move. Instead, each move is recorded in a journal that maps the claim to where its content was written, which is replayed on
+ * restart. The content still held in memory is written through when NiFi is shut down, but if NiFi stops abruptly, it is lost. For
+ * that reason, the {@link #DURABILITY_PROPERTY} determines which content may be held in memory: with <code>strict</code> durability,
+ * only content that is created as loss-tolerant; with <code>relaxed</code> durability, all content.
+ * </p>
+ *
+ * <p>
+ * The ratio of reads served from memory and the ratio of content that had to be written through are logged periodically.
+ * </p>
+ */
+public class TieredContentRepository implements ContentRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(TieredContentRepository.class);
+
+    public static final String MEMORY_CONTAINER_NAME = "memory-tier";
+    private static final String MEMORY_SECTION = "memory";
+
+    public static final String MAX_SIZE_PROPERTY = "nifi.content.repository.tiered.memory.max.size";
+    public static final String BLOCK_SIZE_PROPERTY = "nifi.content.repository.tiered.memory.block.size";
+    public static final String HIGH_WATER_MARK_PROPERTY = "nifi.content.repository.tiered.memory.high.water.mark";
+    public static final String MAX_AGE_PROPERTY = "nifi.content.repository.tiered.memory.max.age";
+    public static final String DURABILITY_PROPERTY = "nifi.content.repository.tiered.durability";
+    public static final String JOURNAL_DIRECTORY_PROPERTY = "nifi.content.repository.tiered.journal.directory";
+
+    public static final String DEFAULT_MAX_SIZE = "256 MB";
+    public static final String DEFAULT_BLOCK_SIZE = "32 KB";
+    public static final String DEFAULT_HIGH_WATER_MARK = "80%";
+    public static final String DEFAULT_MAX_AGE = "5 secs";
+    public static final String DURABILITY_STRICT = "strict";
+    public static final String DURABILITY_RELAXED = "relaxed";
+    public static final String DEFAULT_JOURNAL_DIRECTORY = "./content_tiered_repository";
+
+    static final String JOURNAL_FILENAME = "tiered.journal";
+    private static final Pattern PERCENTAGE_PATTERN = Pattern.compile("\\d{1,2}%");
+    private static final int JOURNAL_ENCODING_VERSION = 1;
+    private static final byte JOURNAL_WRITTEN_THROUGH = 1;
+    private static final byte JOURNAL_REMOVED = 2;
+    private static final long SPILL_CHECK_MILLIS = 250L;
+    private static final long STATISTICS_MINUTES = 5L;
+
+    private final ContentRepository delegate;
+    private final DirectMemoryManager memoryManager;
+    private final long highWaterBytes;
+    private final long maxAgeNanos;
+    private final boolean relaxedDurability;
+    private final Path journalDirectory;
+
+    private final ConcurrentMap<ResourceClaim, MemoryContent> memoryContent = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<MemoryContent> contentByAge = new ConcurrentLinkedQueue<>();
+    private final ConcurrentMap<ResourceClaim, ContentClaim> writtenThrough = new ConcurrentHashMap<>();
+    private final AtomicLong idGenerator = new AtomicLong(0L);
+    private final AtomicBoolean reconciled = new AtomicBoolean(false);
+    private final ScheduledExecutorService executor = new FlowEngine(1, "TieredContentRepository Workers", true);
+
+    private final Object journalLock = new Object();
+    private FileChannel journalChannel; // guarded by journalLock
+    private DataOutputStream journalOut; // guarded by journalLock
+
+    private final AtomicLong memoryReads = new AtomicLong(0L);
+    private final AtomicLong diskReads = new AtomicLong(0L);
+    private final AtomicLong destroyedInMemory = new AtomicLong(0L);
+    private final AtomicLong spilledByAge = new AtomicLong(0L);
+    private final AtomicLong spilledByPressure = new AtomicLong(0L);
+    private final AtomicLong spilledWhileWriting = new AtomicLong(0L);
+
+    private ResourceClaimManager claimManager; // effectively final
+
+    public TieredContentRepository() throws IOException {
+        this(new FileSystemRepository(), NiFiProperties.getInstance());
+    }
+
+    /**
+     * @param delegate the repository to which content is written through
+     * @param properties the properties from which to read the configuration of the memory tier
+     */
+    public TieredContentRepository(final ContentRepository delegate, final NiFiProperties properties) {
+        this.delegate = delegate;
+
+        final long maxBytes = DataUnit.parseDataSize(properties.getProperty(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE), DataUnit.B).longValue();
+        final int blockSize = DataUnit.parseDataSize(properties.getProperty(BLOCK_SIZE_PROPERTY, DEFAULT_BLOCK_SIZE), DataUnit.B).intValue();
+        memoryManager = new DirectMemoryManager(maxBytes, blockSize);
+
+        final String highWaterMark = properties.getProperty(HIGH_WATER_MARK_PROPERTY, DEFAULT_HIGH_WATER_MARK).trim();
+        if (!PERCENTAGE_PATTERN.matcher(highWaterMark).matches()) {
+            throw new RuntimeException("Invalid value specified for the '" + HIGH_WATER_MARK_PROPERTY + "' property. Value must be in format: <XX>%");
+        }
+        final int highWaterPercentage = Integer.parseInt(highWaterMark.substring(0, highWaterMark.length() - 1));
+        highWaterBytes = memoryManager.getCapacity() * highWaterPercentage / 100L;
+
+        maxAgeNanos = FormatUtils.getTimeDuration(properties.getProperty(MAX_AGE_PROPERTY, DEFAULT_MAX_AGE).trim(), TimeUnit.NANOSECONDS);
+
+        final String durability = properties.getProperty(DURABILITY_PROPERTY, DURABILITY_STRICT).trim();
+        if (DURABILITY_RELAXED.equalsIgnoreCase(durability)) {
+            relaxedDurability = true;
+        } else if (DURABILITY_STRICT.equalsIgnoreCase(durability)) {
+            relaxedDurability = false;
+        } else {
+            throw new RuntimeException("Invalid value specified for the '" + DURABILITY_PROPERTY + "' property. Value must be one of '"
+                + DURABILITY_STRICT + "' or '" + DURABILITY_RELAXED + "'");
+        }
+
+        journalDirectory = Paths.get(properties.getProperty(JOURNAL_DIRECTORY_PROPERTY, DEFAULT_JOURNAL_DIRECTORY));
+
+        logger.info("Content will be held in {} bytes of memory for up to {} before it is written through, with {} durability",
+            memoryManager.getCapacity(), properties.getProperty(MAX_AGE_PROPERTY, DEFAULT_MAX_AGE), relaxedDurability ? DURABILITY_RELAXED : DURABILITY_STRICT);
+    }
+
+    public ContentRepository getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void initialize(final ResourceClaimManager claimManager) throws IOException {
+        this.claimManager = claimManager;
+        delegate.initialize(new MemoryTierClaimManager(claimManager));
+
+        Files.createDirectories(journalDirectory);
+        loadJournal();
+
+        executor.scheduleWithFixedDelay(new SpillContent(), SPILL_CHECK_MILLIS, SPILL_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                logger.info("{} of reads of content held in memory were served from memory; {} of content was written through to disk "
+                    + "({} because of age, {} because of memory pressure, {} because memory was exhausted while writing) and {} was destroyed in memory; {} bytes of memory in use",
+                    getMemoryHitRatio(), getSpillRatio(), spilledByAge.get(), spilledByPressure.get(), spilledWhileWriting.get(), destroyedInMemory.get(),
+                    memoryManager.getBytesUsed());
+            }
+        }, STATISTICS_MINUTES, STATISTICS_MINUTES, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            // wait for any content that is being written through in the background, so that we do not write it through twice
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Timed out waiting for content held in memory to be written through to disk in the background");
+            }
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+
+        // content held in memory would otherwise be lost on restart
+        int spilled = 0;
+        for (final MemoryContent content : new ArrayList<>(contentByAge)) {
+            try {
+                if (content.isComplete() && spill(content)) {
+                    spilled++;
+                }
+            } catch (final IOException ioe) {
+                logger.warn("Failed to write {} through to disk on shutdown due to {}", content.getResourceClaim(), ioe.toString());
+            }
+        }
+        logger.info("Wrote {} claims held in memory through to disk on shutdown", spilled);
+
+        synchronized (journalLock) {
+            if (journalOut != null) {
+                try {
+                    journalOut.close();
+                } catch (final IOException ioe) {
+                    logger.warn("Failed to close journal of Tiered Content Repository due to {}", ioe.toString());
+                }
+                journalOut = null;
+                journalChannel = null;
+            }
+        }
+
+        delegate.shutdown();
+    }
+
+    /**
+     * @return the number of reads of content held in memory that were served from memory divided by the number of reads of content
+     *         held in memory, or 1 if no such content has been read
+     */
+    public double getMemoryHitRatio() {
+        final long hits = memoryReads.get();
+        final long total = hits + diskReads.get();
+        return total == 0L ? 1D : (double) hits / total;
+    }
+
+    /**
+     * @return the number of claims whose content was written through to disk divided by the number of claims whose content was either
+     *         written through or destroyed while it was held in memory, or 0 if neither has happened
+     */
+    public double getSpillRatio() {
+        final long spilled = getSpilledCount();
+        final long total = spilled + destroyedInMemory.get();
+        return total == 0L ? 0D : (double) spilled / total;
+    }
+
+    public long getSpilledCount() {
+        return spilledByAge.get() + spilledByPressure.get() + spilledWhileWriting.get();
+    }
+
+    public long getDestroyedInMemoryCount() {
+        return destroyedInMemory.get();
+    }
+
+    @Override
+    public Set<String> getContainerNames() {
+        final Set<String> containerNames = new HashSet<>(delegate.getContainerNames());
+        containerNames.add(MEMORY_CONTAINER_NAME);
+        return containerNames;
+    }
+
+    @Override
+    public long getContainerCapacity(final String containerName) throws IOException {
+        return MEMORY_CONTAINER_NAME.equals(containerName) ? memoryManager.getCapacity() : delegate.getContainerCapacity(containerName);
+    }
+
+    @Override
+    public long getContainerUsableSpace(final String containerName) throws IOException {
+        return MEMORY_CONTAINER_NAME.equals(containerName) ? memoryManager.getCapacity() - memoryManager.getBytesUsed() : delegate.getContainerUsableSpace(containerName);
+    }
+
+    @Override
+    public ContentClaim create(final boolean lossTolerant) throws IOException {
+        if (!lossTolerant && !relaxedDurability) {
+            return delegate.create(lossTolerant);
+        }
+
+        final String id = System.currentTimeMillis() + "-" + idGenerator.incrementAndGet();
+        final ResourceClaim resourceClaim = claimManager.newResourceClaim(MEMORY_CONTAINER_NAME, MEMORY_SECTION, id, lossTolerant);
+        claimManager.incrementClaimantCount(resourceClaim, true);
+
+        final MemoryContent content = new MemoryContent(resourceClaim);
+        memoryContent.put(resourceClaim, content);
+        contentByAge.add(content);
+        return new StandardContentClaim(resourceClaim, 0L);
+    }
+
+    private static boolean isMemoryTier(final ContentClaim claim) {
+        if (claim == null) {
+            return false;
+        }
+
+        final ResourceClaim resourceClaim = claim.getResourceClaim();
+        return resourceClaim != null && MEMORY_CONTAINER_NAME.equals(resourceClaim.getContainer());
+    }
+
+    /**
+     * @param claim a claim in the memory tier
+     * @return a claim that covers the same content of the claim in the wrapped repository to which the given claim's Resource Claim
+     *         was written through, or <code>null</code> if it has not been written through
+     */
+    private ContentClaim getWrittenThroughClaim(final ContentClaim claim) {
+        final ContentClaim target = writtenThrough.get(claim.getResourceClaim());
+        if (target == null) {
+            return null;
+        }
+
+        final StandardContentClaim resolved = new StandardContentClaim(target.getResourceClaim(), target.getOffset() + claim.getOffset());
+        resolved.setLength(claim.getLength() < 0L ? target.getLength() - claim.getOffset() : claim.getLength());
+        return resolved;
+    }
+
+    @Override
+    public int incrementClaimaintCount(final ContentClaim claim) {
+        if (claim == null) {
+            return 0;
+        }
+
+        return isMemoryTier(claim) ? claimManager.incrementClaimantCount(claim.getResourceClaim()) : delegate.incrementClaimaintCount(claim);
+    }
+
+    @Override
+    public int getClaimantCount(final ContentClaim claim) {
+        if (claim == null) {
+            return 0;
+        }
+
+        return isMemoryTier(claim) ? claimManager.getClaimantCount(claim.getResourceClaim()) : delegate.getClaimantCount(claim);
+    }
+
+    @Override
+    public int decrementClaimantCount(final ContentClaim claim) {
+        if (claim == null) {
+            return 0;
+        }
+
+        return isMemoryTier(claim) ? claimManager.decrementClaimantCount(claim.getResourceClaim()) : delegate.decrementClaimantCount(claim);
+    }
+
+    @Override
+    public boolean remove(final ContentClaim claim) {
+        if (claim == null) {
+            return false;
+        }
+
+        if (!isMemoryTier(claim)) {
+            return delegate.remove(claim);
+        }
+
+        if (claimManager.getClaimantCount(claim.getResourceClaim()) > 0) {
+            return true;
+        }
+
+        destroy(claim.getResourceClaim());
+        return true;
+    }
+
+    private void destroy(final ResourceClaim resourceClaim) {
+        final MemoryContent content = memoryContent.remove(resourceClaim);
+        if (content != null) {
+            content.release();
+            destroyedInMemory.incrementAndGet();
+        }
+
+        final ContentClaim target = writtenThrough.remove(resourceClaim);
+        if (target != null) {
+            releaseWrittenThrough(resourceClaim, target);
+        }
+    }
+
+    private void releaseWrittenThrough(final ResourceClaim resourceClaim, final ContentClaim target) {
+        if (delegate.decrementClaimantCount(target) <= 0) {
+            claimManager.markDestructable(target.getResourceClaim());
+        }
+
+        try {
+            synchronized (journalLock) {
+                if (journalOut != null) {
+                    journalOut.writeByte(JOURNAL_REMOVED);
+                    journalOut.writeUTF(resourceClaim.getId());
+                }
+            }
+        } catch (final IOException ioe) {
+            // the entry will be dropped on restart, once it is seen that no FlowFile references the claim
+            logger.warn("Failed to record removal of {} in journal of Tiered Content Repository due to {}", resourceClaim, ioe.toString());
+        }
+    }
+
+    private void recordWrittenThrough(final ResourceClaim resourceClaim, final ContentClaim target) throws IOException {
+        synchronized (journalLock) {
+            if (journalOut == null) {
+                throw new IOException("Tiered Content Repository has been shut down");
+            }
+
+            // FlowFiles will reference the content by the claim in the memory tier, so the mapping must be durable before it is used
+            writeWrittenThrough(journalOut, resourceClaim.getId(), target);
+            journalOut.flush();
+            journalChannel.force(false);
+            writtenThrough.put(resourceClaim, target);
+        }
+    }
+
+    private static void writeWrittenThrough(final DataOutputStream out, final String id, final ContentClaim target) throws IOException {
+        final ResourceClaim targetResourceClaim = target.getResourceClaim();
+        out.writeByte(JOURNAL_WRITTEN_THROUGH);
+        out.writeUTF(id);
+        out.writeUTF(targetResourceClaim.getContainer());
+        out.writeUTF(targetResourceClaim.getSection());
+        out.writeUTF(targetResourceClaim.getId());
+        out.writeBoolean(targetResourceClaim.isLossTolerant());
+        out.writeLong(target.getOffset());
+        out.writeLong(target.getLength());
+    }
+
+    /**
+     * Writes the given content through to the wrapped repository and releases the memory that it occupied
+     *
+     * @param content the content to write through
+     * @return <code>true</code> if the content was written through, <code>false</code> if it had already been written through or destroyed
+     * @throws IOException if unable to write the content
+     */
+    private boolean spill(final MemoryContent content) throws IOException {
+        // the content may be written through on shutdown while the background task is doing the same; only one may do so
+        if (!content.startSpilling()) {
+            return false;
+        }
+
+        if (!content.acquire()) {
+            return false;
+        }
+
+        final ResourceClaim resourceClaim = content.getResourceClaim();
+        final ContentClaim target = delegate.create(resourceClaim.isLossTolerant());
+        try {
+            try (final InputStream in = new MemoryInputStream(content, 0L, content.getLength());
+                final OutputStream out = delegate.write(target)) {
+                StreamUtils.copy(in, out);
+            }
+
+            recordWrittenThrough(resourceClaim, target);
+        } catch (final IOException ioe) {
+            delegate.decrementClaimantCount(target);
+            delegate.remove(target);
+            content.stopSpilling();
+            throw ioe;
+        }
+
+        if (!memoryContent.remove(resourceClaim, content)) {
+            // destroyed while it was being written through
+            if (writtenThrough.remove(resourceClaim, target)) {
+                releaseWrittenThrough(resourceClaim, target);
+            }
+            return false;
+        }
+
+        content.release();
+        return true;
+    }
+
+    @Override
+    public ContentClaim clone(final ContentClaim original, final boolean lossTolerant) throws IOException {
+        if (original == null) {
+            return null;
+        }
+
+        if (!isMemoryTier(original)) {
+            return delegate.clone(original, lossTolerant);
+        }
+
+        final ContentClaim newClaim = create(lossTolerant);
+        try (final InputStream in = read(original);
+            final OutputStream out = write(newClaim)) {
+            StreamUtils.copy(in, out);
+        } catch (final IOException ioe) {
+            decrementClaimantCount(newClaim);
+            remove(newClaim);
+            throw ioe;
+        }
+
+        return newClaim;
+    }
+
+    @Override
+    public long merge(final Collection<ContentClaim> claims, final ContentClaim destination, final byte[] header, final byte[] footer, final byte[] demarcator) throws IOException {
+        boolean anyInMemory = isMemoryTier(destination);
+        for (final ContentClaim claim : claims) {
+            anyInMemory |= isMemoryTier(claim);
+        }
+
+        if (!anyInMemory) {
+            return delegate.merge(claims, destination, header, footer, demarcator);
+        }
+
+        if (claims.contains(destination)) {
+            throw new IllegalArgumentException("destination cannot be within claims");
+        }
+
+        long bytes = 0L;
+        try (final OutputStream out = write(destination)) {
+            if (header != null) {
+                out.write(header);
+                bytes += header.length;
+            }
+
+            final Iterator<ContentClaim> itr = claims.iterator();
+            while (itr.hasNext()) {
+                final ContentClaim readClaim = itr.next();
+                try (final InputStream in = read(readClaim)) {
+                    bytes += StreamUtils.copy(in, out);
+                }
+
+                if (itr.hasNext() && demarcator != null) {
+                    bytes += demarcator.length;
+                    out.write(demarcator);
+                }
+            }
+
+            if (footer != null) {
+                bytes += footer.length;
+                out.write(footer);
+            }
+
+            return bytes;
+        }
+    }
+
+    @Override
+    public long importFrom(final Path content, final ContentClaim claim) throws IOException {
+        if (!isMemoryTier(claim)) {
+            return delegate.importFrom(content, claim);
+        }
+
+        try (final InputStream in = Files.newInputStream(content)) {
+            return importFrom(in, claim);
+        }
+    }
+
+    @Override
+    public long importFrom(final InputStream content, final ContentClaim claim) throws IOException {
+        if (!isMemoryTier(claim)) {
+            return delegate.importFrom(content, claim);
+        }
+
+        try (final OutputStream out = write(claim)) {
+            return StreamUtils.copy(content, out);
+        }
+    }
+
+    @Override
+    public long importFrom(final ReadableByteChannel content, final ContentClaim claim) throws IOException {
+        if (!isMemoryTier(claim)) {
+            return delegate.importFrom(content, claim);
+        }
+
+        // the channel must not be closed, so it is not wrapped in an InputStream
+        long bytes = 0L;
+        final ByteBuffer buffer = ByteBuffer.allocate(8192);
+        try (final OutputStream out = write(claim)) {
+            int len;
+            while ((len = content.read(buffer)) != -1) {
+                out.write(buffer.array(), 0, len);
+                bytes += len;
+                buffer.clear();
+            }
+        }
+
+        return bytes;
+    }
+
+    @Override
+    public long exportTo(final ContentClaim claim, final Path destination, final boolean append) throws IOException {
+        if (!isMemoryTier(claim)) {
+            return delegate.exportTo(claim, destination, append);
+        }
+
+        return exportTo(claim, destination, append, 0L, size(claim));
+    }
+
+    @Override
+    public long exportTo(final ContentClaim claim, final Path destination, final boolean append, final long offset, final long length) throws IOException {
+        if (!isMemoryTier(claim)) {
+            return delegate.exportTo(claim, destination, append, offset, length);
+        }
+
+        final StandardOpenOption openOption = append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+        try (final OutputStream out = Files.newOutputStream(destination, StandardOpenOption.CREATE, StandardOpenOption.WRITE, openOption)) {
+            return exportTo(claim, out, offset, length);
+        }
+    }
+
+    @Override
+    public long exportTo(final ContentClaim claim, final OutputStream destination) throws IOException {
+        if (!isMemoryTier(claim)) {
+            return delegate.exportTo(claim, destination);
+        }
+
+        try (final InputStream in = read(claim)) {
+            return StreamUtils.copy(in, destination);
+        }
+    }
+
+    @Override
+    public long exportTo(final ContentClaim claim, final OutputStream destination, final long offset, final long length) throws IOException {
+        if (!isMemoryTier(claim)) {
+            return delegate.exportTo(claim, destination, offset, length);
+        }
+
+        try (final InputStream in = read(claim)) {
+            StreamUtils.skip(in, offset);
+            StreamUtils.copy(in, destination, length);
+        }
+        return length;
+    }
+
+    @Override
+    public long exportTo(final ContentClaim claim, final WritableByteChannel destination, final long offset, final long length) throws IOException {
+        if (!isMemoryTier(claim)) {
+            return delegate.exportTo(claim, destination, offset, length);
+        }
+
+        final ContentClaim target = getWrittenThroughClaim(claim);
+        if (target != null && !memoryContent.containsKey(claim.getResourceClaim())) {
+            diskReads.incrementAndGet();
+            return delegate.exportTo(target, destination, offset, length);
+        }
+
+        // the channel must not be closed, so the stream that wraps it is not closed either
+        return exportTo(claim, Channels.newOutputStream(destination), offset, length);
+    }
+
+    @Override
+    public long size(final ContentClaim claim) throws IOException {
+        if (claim == null) {
+            return 0L;
+        }
+
+        if (!isMemoryTier(claim)) {
+            return delegate.size(claim);
+        }
+
+        if (claim.getLength() >= 0L) {
+            return claim.getLength();
+        }
+
+        final MemoryContent content = memoryContent.get(claim.getResourceClaim());
+        if (content != null) {
+            return content.getLength() - claim.getOffset();
+        }
+
+        final ContentClaim target = getWrittenThroughClaim(claim);
+        if (target == null) {
+            throw new ContentNotFoundException(claim);
+        }
+        return target.getLength();
+    }
+
+    @Override
+    public InputStream read(final ContentClaim claim) throws IOException {
+        if (claim == null) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+        if (!isMemoryTier(claim)) {
+            return delegate.read(claim);
+        }
+
+        final MemoryContent content = memoryContent.get(claim.getResourceClaim());
+        if (content != null && content.acquire()) {
+            memoryReads.incrementAndGet();
+            final long end = claim.getLength() < 0L ? content.getLength() : claim.getOffset() + claim.getLength();
+            return new MemoryInputStream(content, claim.getOffset(), end);
+        }
+
+        // the content is recorded as written through before its memory is released, so it is found in one place or the other
+        final ContentClaim target = getWrittenThroughClaim(claim);
+        if (target == null) {
+            throw new ContentNotFoundException(claim);
+        }
+
+        diskReads.incrementAndGet();
+        return delegate.read(target);
+    }
+
+    @Override
+    public ByteBuffer map(final ContentClaim claim, final long offset, final long length) throws IOException {
+        if (!isMemoryTier(claim)) {
+            return delegate.map(claim, offset, length);
+        }
+
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot map " + length + " bytes; no more than " + Integer.MAX_VALUE + " bytes can be mapped at once");
+        }
+
+        final ContentClaim target = getWrittenThroughClaim(claim);
+        if (target != null && !memoryContent.containsKey(claim.getResourceClaim())) {
+            diskReads.incrementAndGet();
+            return delegate.map(target, offset, length);
+        }
+
+        // the memory holding the content may be reused once the content is written through, so it must be copied
+        final byte[] content = new byte[(int) length];
+        try (final InputStream in = read(claim)) {
+            StreamUtils.skip(in, offset);
+            StreamUtils.fillBuffer(in, content);
+        }
+        return ByteBuffer.wrap(content).asReadOnlyBuffer();
+    }
+
+    @Override
+    public OutputStream write(final ContentClaim claim) throws IOException {
+        if (!isMemoryTier(claim)) {
+            return delegate.write(claim);
+        }
+
+        final MemoryContent content = memoryContent.get(claim.getResourceClaim());
+        if (content == null || !(claim instanceof StandardContentClaim) || !content.startWriting()) {
+            throw new IllegalArgumentException("Cannot write to " + claim + " because it has already been written to.");
+        }
+
+        return new MemoryOutputStream(content, (StandardContentClaim) claim);
+    }
+
+    @Override
+    public void purge() {
+        for (final MemoryContent content : memoryContent.values()) {
+            content.release();
+        }
+        memoryContent.clear();
+        contentByAge.clear();
+        writtenThrough.clear();
+
+        synchronized (journalLock) {
+            try {
+                writeJournal();
+            } catch (final IOException ioe) {
+                throw new RepositoryPurgeException("Failed to purge journal of Tiered Content Repository", ioe);
+            }
+        }
+
+        delegate.purge();
+    }
+
+    @Override
+    public void cleanup() {
+        // Content that was written through is referenced only by claims in the memory tier, so the wrapped repository must be told
+        // about the references that the FlowFile Repository restored before it cleans up content that it believes is unreferenced.
+        if (reconciled.compareAndSet(false, true)) {
+            int dropped = 0;
+            for (final Map.Entry<ResourceClaim, ContentClaim> entry : writtenThrough.entrySet()) {
+                if (claimManager.getClaimantCount(entry.getKey()) > 0) {
+                    delegate.incrementClaimaintCount(entry.getValue());
+                } else if (writtenThrough.remove(entry.getKey(), entry.getValue())) {
+                    releaseWrittenThrough(entry.getKey(), entry.getValue());
+                    dropped++;
+                }
+            }
+
+            logger.info("{} claims held by the Tiered Content Repository were written through to disk before restart; {} of them are no longer referenced",
+                writtenThrough.size() + dropped, dropped);
+        }
+
+        delegate.cleanup();
+    }
+
+    @Override
+    public boolean isAccessible(final ContentClaim contentClaim) throws IOException {
+        if (contentClaim == null) {
+            return false;
+        }
+
+        if (!isMemoryTier(contentClaim)) {
+            return delegate.isAccessible(contentClaim);
+        }
+
+        if (memoryContent.containsKey(contentClaim.getResourceClaim())) {
+            return true;
+        }
+
+        final ContentClaim target = getWrittenThroughClaim(contentClaim);
+        return target != null && delegate.isAccessible(target);
+    }
+
+    private void loadJournal() throws IOException {
+        final Path journalFile = journalDirectory.resolve(JOURNAL_FILENAME);
+        if (Files.exists(journalFile)) {
+            try (final InputStream fis = Files.newInputStream(journalFile);
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(fis))) {
+                final int encodingVersion = in.readInt();
+                if (encodingVersion > JOURNAL_ENCODING_VERSION) {
+                    throw new IOException("Journal of Tiered Content Repository at " + journalFile + " was written with encoding version " + encodingVersion
+                        + " but only versions up to " + JOURNAL_ENCODING_VERSION + " are understood");
+                }
+
+                final Map<String, ContentClaim> targets = new HashMap<>();
+                try {
+                    while (true) {
+                        final int recordType = in.read();
+                        if (recordType == -1) {
+                            break;
+                        }
+
+                        final String id = in.readUTF();
+                        if (recordType == JOURNAL_REMOVED) {
+                            targets.remove(id);
+                            continue;
+                        }
+                        if (recordType != JOURNAL_WRITTEN_THROUGH) {
+                            throw new IOException("Journal of Tiered Content Repository at " + journalFile + " is corrupt: unknown record type " + recordType);
+                        }
+
+                        final String container = in.readUTF();
+                        final String section = in.readUTF();
+                        final String targetId = in.readUTF();
+                        final boolean lossTolerant = in.readBoolean();
+                        final long offset = in.readLong();
+                        final long length = in.readLong();
+
+                        final StandardContentClaim target = new StandardContentClaim(claimManager.newResourceClaim(container, section, targetId, lossTolerant), offset);
+                        target.setLength(length);
+                        targets.put(id, target);
+                    }
+                } catch (final EOFException eof) {
+                    logger.warn("Journal of Tiered Content Repository at {} ends with an incomplete record, which will be ignored", journalFile);
+                }
+
+                for (final Map.Entry<String, ContentClaim> entry : targets.entrySet()) {
+                    final ResourceClaim resourceClaim = claimManager.newResourceClaim(MEMORY_CONTAINER_NAME, MEMORY_SECTION, entry.getKey(), entry.getValue().getResourceClaim().isLossTolerant());
+                    writtenThrough.put(resourceClaim, entry.getValue());
+                }
+            }
+
+            logger.info("Recovered {} claims that were written through to disk from journal at {}", writtenThrough.size(), journalFile);
+        }
+
+        synchronized (journalLock) {
+            writeJournal();
+        }
+    }
+
+    /**
+     * Replaces the journal with one that records only the claims that are currently written through, and opens it for appending.
+     * Must be called while holding the journal lock.
+     */
+    private void writeJournal() throws IOException {
+        if (journalOut != null) {
+            journalOut.close();
+            journalOut = null;
+            journalChannel = null;
+        }
+
+        final Path journalFile = journalDirectory.resolve(JOURNAL_FILENAME);
+        final Path partialFile = journalDirectory.resolve(JOURNAL_FILENAME + ".partial");
+        try (final FileChannel channel = FileChannel.open(partialFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            out.writeInt(JOURNAL_ENCODING_VERSION);
+            for (final Map.Entry<ResourceClaim, ContentClaim> entry : writtenThrough.entrySet()) {
+                writeWrittenThrough(out, entry.getKey().getId(), entry.getValue());
+            }
+            out.flush();
+            channel.force(false);
+        }
+
+        Files.move(partialFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journalChannel = FileChannel.open(journalFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        journalOut = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(journalChannel)));
+    }
+
+    /**
+     * The content of a claim in the memory tier, held in blocks obtained from the memory manager. The blocks are returned to the
+     * memory manager once the content has been released and is no longer being read.
+     */
+    private class MemoryContent {
+        private final ResourceClaim resourceClaim;
+        private final long createdNanos = System.nanoTime();
+        private final List<ByteBuffer> blocks = new ArrayList<>();
+        private long length = 0L;
+        private boolean writing = false;
+        private boolean complete = false;
+        private boolean released = false;
+        private int readers = 0;
+        private final AtomicBoolean spilling = new AtomicBoolean(false);
+
+        public MemoryContent(final ResourceClaim resourceClaim) {
+            this.resourceClaim = resourceClaim;
+        }
+
+        public ResourceClaim getResourceClaim() {
+            return resourceClaim;
+        }
+
+        public long getCreatedNanos() {
+            return createdNanos;
+        }
+
+        public synchronized long getLength() {
+            return length;
+        }
+
+        public synchronized boolean isComplete() {
+            return complete;
+        }
+
+        public synchronized boolean isReleased() {
+            return released;
+        }
+
+        public synchronized boolean startWriting() {
+            if (writing || released) {
+                return false;
+            }
+            writing = true;
+            return true;
+        }
+
+        public synchronized void complete() {
+            complete = true;
+        }
+
+        public boolean startSpilling() {
+            return spilling.compareAndSet(false, true);
+        }
+
+        public void stopSpilling() {
+            spilling.set(false);
+        }
+
+        /**
+         * Appends to the content as much of the given bytes as fits in the memory that is available
+         *
+         * @return the number of bytes appended
+         */
+        public synchronized int append(final byte[] b, final int off, final int len) {
+            int appended = 0;
+            while (appended < len) {
+                ByteBuffer block = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+                if (block == null || !block.hasRemaining()) {
+                    block = memoryManager.checkOut();
+                    if (block == null) {
+                        break;
+                    }
+                    blocks.add(block);
+                }
+
+                final int toCopy = Math.min(len - appended, block.remaining());
+                block.put(b, off + appended, toCopy);
+                appended += toCopy;
+            }
+
+            length += appended;
+            return appended;
+        }
+
+        /**
+         * Copies content into the given array
+         *
+         * @return the number of bytes copied, or -1 if the given position is at or beyond the end of the content
+         */
+        public synchronized int read(final long position, final byte[] b, final int off, final int len) {
+            if (position >= length) {
+                return -1;
+            }
+
+            final int blockSize = memoryManager.getBlockSize();
+            final ByteBuffer block = blocks.get((int) (position / blockSize)).duplicate();
+            final int blockOffset = (int) (position % blockSize);
+            final int toCopy = (int) Math.min(Math.min(len, blockSize - blockOffset), length - position);
+            block.position(blockOffset);
+            block.get(b, off, toCopy);
+            return toCopy;
+        }
+
+        public synchronized boolean acquire() {
+            if (released) {
+                return false;
+            }
+            readers++;
+            return true;
+        }
+
+        public synchronized void releaseReader() {
+            readers--;
+            if (released && readers == 0) {
+                freeBlocks();
+            }
+        }
+
+        public synchronized void release() {
+            if (released) {
+                return;
+            }
+
+            released = true;
+            if (readers == 0) {
+                freeBlocks();
+            }
+        }
+
+        private void freeBlocks() {
+            memoryManager.checkIn(blocks);
+            blocks.clear();
+        }
+    }
+
+    private class MemoryInputStream extends InputStream {
+        private final MemoryContent content;
+        private final long end;
+        private long position;
+        private boolean closed = false;
+
+        /**
+         * Must be created only after acquiring the content, which the stream releases when it is closed
+         */
+        public MemoryInputStream(final MemoryContent content, final long start, final long end) {
+            this.content = content;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            final int len = read(b, 0, 1);
+            return len < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream is closed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+
+            final int read = content.read(position, b, off, (int) Math.min(len, end - position));
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = Math.max(0L, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0L, end - position));
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                content.releaseReader();
+            }
+        }
+    }
+
+    /**
+     * Writes content to memory until memory is exhausted, at which point the content written so far and everything written thereafter
+     * goes to the wrapped repository instead
+     */
+    private class MemoryOutputStream extends OutputStream {
+        private final MemoryContent content;
+        private final StandardContentClaim claim;
+        private ContentClaim target;
+        private OutputStream targetOut;
+        private long bytesWritten = 0L;
+        private boolean closed = false;
+
+        public MemoryOutputStream(final MemoryContent content, final StandardContentClaim claim) {
+            this.content = content;
+            this.claim = claim;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b) throws IOException {
+            write(b, 0, b.length);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream is closed");
+            }
+
+            int written = 0;
+            if (targetOut == null) {
+                written = content.append(b, off, len);
+                if (written < len) {
+                    redirect();
+                }
+            }
+
+            if (written < len) {
+                targetOut.write(b, off + written, len - written);
+            }
+
+            bytesWritten += len;
+            claim.setLength(bytesWritten);
+        }
+
+        private void redirect() throws IOException {
+            logger.debug("Memory is exhausted; writing {} through to disk", claim);
+            target = delegate.create(claim.getResourceClaim().isLossTolerant());
+            targetOut = delegate.write(target);
+
+            content.acquire();
+            try (final InputStream in = new MemoryInputStream(content, 0L, content.getLength())) {
+                StreamUtils.copy(in, targetOut);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (targetOut != null) {
+                targetOut.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+            claim.setLength(bytesWritten);
+            if (targetOut == null) {
+                content.complete();
+                return;
+            }
+
+            targetOut.close();
+            recordWrittenThrough(content.getResourceClaim(), target);
+            spilledWhileWriting.incrementAndGet();
+            if (memoryContent.remove(content.getResourceClaim(), content)) {
+                content.release();
+            }
+        }
+    }
+
+    /**
+     * Writes through content that has been held in memory for longer than the maximum age, and then, for as long as the memory in use
+     * exceeds the high-water mark, the oldest content
+     */
+    private class SpillContent implements Runnable {
+        @Override
+        public void run() {
+            try {
+                final Iterator<MemoryContent> itr = contentByAge.iterator();
+                while (itr.hasNext()) {
+                    final MemoryContent content = itr.next();
+                    if (content.isReleased()) {
+                        itr.remove();
+                        continue;
+                    }
+
+                    final boolean aged = System.nanoTime() - content.getCreatedNanos() > maxAgeNanos;
+                    final boolean pressure = memoryManager.getBytesUsed() > highWaterBytes;
+                    if (!aged && !pressure) {
+                        // content is queued in the order it was created, so everything that follows is younger
+                        return;
+                    }
+
+                    if (!content.isComplete()) {
+                        continue;
+                    }
+
+                    if (spill(content)) {
+                        if (aged) {
+                            spilledByAge.incrementAndGet();
+                        } else {
+                            spilledByPressure.incrementAndGet();
+                        }
+                    }
+                    itr.remove();
+                }
+            } catch (final Throwable t) {
+                logger.error("Failed to write content held in memory through to disk due to {}", t.toString());
+                if (logger.isDebugEnabled()) {
+                    logger.error("", t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes every call through to the Resource Claim Manager that it wraps, except that Resource Claims in the memory tier are
+     * destroyed as they are drained, rather than handed to the wrapped repository, which would not know what to do with them
+     */
+    private class MemoryTierClaimManager implements ResourceClaimManager {
+        private final ResourceClaimManager wrapped;
+
+        public MemoryTierClaimManager(final ResourceClaimManager wrapped) {
+            this.wrapped = wrapped;
+        }
+
+        @Override
+        public ResourceClaim newResourceClaim(final String container, final String section, final String id, final boolean lossTolerant) {
+            return wrapped.newResourceClaim(container, section, id, lossTolerant);
+        }
+
+        @Override
+        public int getClaimantCount(final ResourceClaim claim) {
+            return wrapped.getClaimantCount(claim);
+        }
+
+        @Override
+        public int decrementClaimantCount(final ResourceClaim claim) {
+            return wrapped.decrementClaimantCount(claim);
+        }
+
+        @Override
+        public int incrementClaimantCount(final ResourceClaim claim) {
+            return wrapped.incrementClaimantCount(claim);
+        }
+
+        @Override
+        public int incrementClaimantCount(final ResourceClaim claim, final boolean newClaim) {
+            return wrapped.incrementClaimantCount(claim, newClaim);
+        }
+
+        @Override
+        public void markDestructable(final ResourceClaim claim) {
+            wrapped.markDestructable(claim);
+        }
+
+        @Override
+        public void drainDestructableClaims(final Collection<ResourceClaim> destination, final int maxElements) {
+            final List<ResourceClaim> drained = new ArrayList<>();
+            wrapped.drainDestructableClaims(drained, maxElements);
+            divert(drained, destination);
+        }
+
+        @Override
+        public void drainDestructableClaims(final Collection<ResourceClaim> destination, final int maxElements, final long timeout, final TimeUnit unit) {
+            final List<ResourceClaim> drained = new ArrayList<>();
+            wrapped.drainDestructableClaims(drained, maxElements, timeout, unit);
+            divert(drained, destination);
+        }
+
+        private void divert(final List<ResourceClaim> drained, final Collection<ResourceClaim> destination) {
+            for (final ResourceClaim claim : drained) {
+                if (!MEMORY_CONTAINER_NAME.equals(claim.getContainer())) {
+                    destination.add(claim);
+                } else if (wrapped.getClaimantCount(claim) <= 0) {
+                    destroy(claim);
+                }
+            }
+        }
+
+        @Override
+        public void purge() {
+            wrapped.purge();
+        }
+    }
+}
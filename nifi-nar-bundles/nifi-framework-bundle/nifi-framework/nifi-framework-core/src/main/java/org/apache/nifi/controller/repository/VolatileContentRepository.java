@@ -21,6 +21,10 @@ import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -371,6 +375,16 @@ public class VolatileContentRepository implements ContentRepository {
         }
     }
 
+    @Override
+    public long importFrom(final ReadableByteChannel content, final ContentClaim claim) throws IOException {
+        final ContentClaim backupClaim = getBackupClaim(claim);
+        if (backupClaim == null) {
+            return importFrom(Channels.newInputStream(content), claim);
+        } else {
+            return getBackupRepository().importFrom(content, backupClaim);
+        }
+    }
+
     @Override
     public long exportTo(final ContentClaim claim, final Path destination, final boolean append) throws IOException {
         return exportTo(claim, destination, append, 0L, size(claim));
@@ -421,6 +435,17 @@ public class VolatileContentRepository implements ContentRepository {
         return length;
     }
 
+    @Override
+    public long exportTo(final ContentClaim claim, final WritableByteChannel destination, final long offset, final long length) throws IOException {
+        final ContentClaim backupClaim = getBackupClaim(claim);
+        if (backupClaim == null) {
+            // content is held in memory, so there is nothing to gain from a channel transfer
+            return exportTo(claim, Channels.newOutputStream(destination), offset, length);
+        } else {
+            return getBackupRepository().exportTo(backupClaim, destination, offset, length);
+        }
+    }
+
     private ContentBlock getContent(final ContentClaim claim) throws ContentNotFoundException {
         final ContentBlock content = claimMap.get(claim);
         if (content == null) {
@@ -450,6 +475,26 @@ public class VolatileContentRepository implements ContentRepository {
         return backupClaim == null ? getContent(claim).read() : getBackupRepository().read(backupClaim);
     }
 
+    @Override
+    public ByteBuffer map(final ContentClaim claim, final long offset, final long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot map " + length + " bytes; no more than " + Integer.MAX_VALUE + " bytes can be mapped at once");
+        }
+
+        final ContentClaim backupClaim = getBackupClaim(claim);
+        if (backupClaim != null) {
+            return getBackupRepository().map(backupClaim, offset, length);
+        }
+
+        // content is already held in memory, but not in a single array, so it must be copied
+        final byte[] content = new byte[(int) length];
+        try (final InputStream in = read(claim)) {
+            StreamUtils.skip(in, offset);
+            StreamUtils.fillBuffer(in, content);
+        }
+        return ByteBuffer.wrap(content).asReadOnlyBuffer();
+    }
+
     @Override
     public OutputStream write(final ContentClaim claim) throws IOException {
         final ContentClaim backupClaim = getBackupClaim(claim);
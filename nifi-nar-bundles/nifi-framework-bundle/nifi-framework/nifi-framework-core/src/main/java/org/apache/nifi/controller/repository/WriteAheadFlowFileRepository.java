@@ -22,6 +22,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -43,10 +44,12 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.nifi.controller.queue.FlowFileQueue;
 import org.apache.nifi.controller.repository.claim.ContentClaim;
+import org.apache.nifi.controller.repository.claim.InlineContentClaim;
 import org.apache.nifi.controller.repository.claim.ResourceClaim;
 import org.apache.nifi.controller.repository.claim.ResourceClaimManager;
 import org.apache.nifi.controller.repository.claim.StandardContentClaim;
 import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.stream.io.VarIntUtils;
 import org.apache.nifi.util.FormatUtils;
 import org.apache.nifi.util.NiFiProperties;
 import org.slf4j.Logger;
@@ -75,6 +78,8 @@ public class WriteAheadFlowFileRepository implements FlowFileRepository, SyncLis
 
     private final AtomicLong flowFileSequenceGenerator = new AtomicLong(0L);
     private final boolean alwaysSync;
+    private final boolean fuzzyCheckpoint;
+    private final long groupCommitMaxDelayNanos;
 
     private static final Logger logger = LoggerFactory.getLogger(WriteAheadFlowFileRepository.class);
     private volatile ScheduledFuture<?> checkpointFuture;
@@ -116,6 +121,13 @@ public class WriteAheadFlowFileRepository implements FlowFileRepository, SyncLis
         final NiFiProperties properties = NiFiProperties.getInstance();
 
         alwaysSync = Boolean.parseBoolean(properties.getProperty(NiFiProperties.FLOWFILE_REPOSITORY_ALWAYS_SYNC, "false"));
+        fuzzyCheckpoint = Boolean.parseBoolean(properties.getProperty(NiFiProperties.FLOWFILE_REPOSITORY_FUZZY_CHECKPOINT, "true"));
+        if (Boolean.parseBoolean(properties.getProperty(NiFiProperties.FLOWFILE_REPOSITORY_GROUP_COMMIT, "true"))) {
+            groupCommitMaxDelayNanos = FormatUtils.getTimeDuration(properties.getProperty(NiFiProperties.FLOWFILE_REPOSITORY_GROUP_COMMIT_MAX_DELAY, "1 millis"),
+                TimeUnit.NANOSECONDS);
+        } else {
+            groupCommitMaxDelayNanos = -1L;
+        }
 
         // determine the database file path and ensure it exists
         flowFileRepositoryPath = properties.getFlowFileRepositoryPath();
@@ -136,7 +148,7 @@ public class WriteAheadFlowFileRepository implements FlowFileRepository, SyncLis
         // backup and then the data deleted from the normal location; then can move backup to normal location and
         // delete backup. On restore, if no files exist in partition's directory, would have to check backup directory
         serde = new WriteAheadRecordSerde(claimManager);
-        wal = new MinimalLockingWriteAheadLog<>(flowFileRepositoryPath, numPartitions, serde, this);
+        wal = new MinimalLockingWriteAheadLog<>(flowFileRepositoryPath, numPartitions, serde, this, fuzzyCheckpoint, groupCommitMaxDelayNanos);
     }
 
     @Override
@@ -190,6 +202,14 @@ public class WriteAheadFlowFileRepository implements FlowFileRepository, SyncLis
         return claimManager.getClaimantCount(resourceClaim);
     }
 
+    private void addResourceClaim(final Set<ResourceClaim> claims, final ContentClaim claim) {
+        // inline content has no Resource Claim, so there is nothing in the Content Repository to destroy
+        final ResourceClaim resourceClaim = claim.getResourceClaim();
+        if (resourceClaim != null) {
+            claims.add(resourceClaim);
+        }
+    }
+
     private void updateRepository(final Collection<RepositoryRecord> records, final boolean sync) throws IOException {
         for (final RepositoryRecord record : records) {
             if (record.getType() != RepositoryRecordType.DELETE && record.getType() != RepositoryRecordType.CONTENTMISSING && record.getDestination() == null) {
@@ -213,17 +233,17 @@ public class WriteAheadFlowFileRepository implements FlowFileRepository, SyncLis
             if (record.getType() == RepositoryRecordType.DELETE) {
                 // For any DELETE record that we have, if current claim's claimant count <= 0, mark it as destructable
                 if (record.getCurrentClaim() != null && getClaimantCount(record.getCurrentClaim()) <= 0) {
-                    claimsToAdd.add(record.getCurrentClaim().getResourceClaim());
+                    addResourceClaim(claimsToAdd, record.getCurrentClaim());
                 }
 
                 // If the original claim is different than the current claim and the original claim has a claimant count <= 0, mark it as destructable.
                 if (record.getOriginalClaim() != null && !record.getOriginalClaim().equals(record.getCurrentClaim()) && getClaimantCount(record.getOriginalClaim()) <= 0) {
-                    claimsToAdd.add(record.getOriginalClaim().getResourceClaim());
+                    addResourceClaim(claimsToAdd, record.getOriginalClaim());
                 }
             } else if (record.getType() == RepositoryRecordType.UPDATE) {
                 // if we have an update, and the original is no longer needed, mark original as destructable
                 if (record.getOriginalClaim() != null && record.getCurrentClaim() != record.getOriginalClaim() && getClaimantCount(record.getOriginalClaim()) <= 0) {
-                    claimsToAdd.add(record.getOriginalClaim().getResourceClaim());
+                    addResourceClaim(claimsToAdd, record.getOriginalClaim());
                 }
             }
         }
@@ -325,7 +345,7 @@ public class WriteAheadFlowFileRepository implements FlowFileRepository, SyncLis
 
         for (final RepositoryRecord record : recordList) {
             final ContentClaim claim = record.getCurrentClaim();
-            if (claim != null) {
+            if (claim != null && claim.getResourceClaim() != null) {
                 claimManager.incrementClaimantCount(claim.getResourceClaim());
             }
         }
@@ -395,14 +415,35 @@ public class WriteAheadFlowFileRepository implements FlowFileRepository, SyncLis
         public static final byte ACTION_SWAPPED_OUT = 3;
         public static final byte ACTION_SWAPPED_IN = 4;
 
+        private static final int ATTRIBUTES_UNCHANGED = 0;
+        private static final int ATTRIBUTES_FULL = 1;
+        private static final int ATTRIBUTES_DELTA = 2;
+
+        // the first serialization version that writes only changed attributes, variable-length integers, and dictionary-encoded strings
+        private static final int COMPACT_VERSION = 9;
+        private static final int MAX_DICTIONARY_SIZE = 65536;
+
         private Map<String, FlowFileQueue> flowFileQueueMap = null;
         private long recordsRestored = 0L;
         private final ResourceClaimManager claimManager;
 
+        // Queue identifiers, attribute names, and claim containers and sections are each written in full only the first time
+        // that they appear in a journal or snapshot, and as an index into these dictionaries afterward. Each stream is written
+        // and read in order by its own instance, so the dictionaries are built the same way on both sides.
+        private final Map<String, Integer> writeDictionary = new HashMap<>();
+        private final List<String> readDictionary = new ArrayList<>();
+
         public WriteAheadRecordSerde(final ResourceClaimManager claimManager) {
             this.claimManager = claimManager;
         }
 
+        @Override
+        public WriteAheadRecordSerde createStreamSerDe() {
+            final WriteAheadRecordSerde streamSerde = new WriteAheadRecordSerde(claimManager);
+            streamSerde.setQueueMap(flowFileQueueMap);
+            return streamSerde;
+        }
+
         private void setQueueMap(final Map<String, FlowFileQueue> queueMap) {
             this.flowFileQueueMap = queueMap;
         }
@@ -416,7 +457,7 @@ public class WriteAheadFlowFileRepository implements FlowFileRepository, SyncLis
             if (record.isMarkedForAbort()) {
                 logger.warn("Repository Record {} is marked to be aborted; it will be persisted in the FlowFileRepository as a DELETE record", record);
                 out.write(ACTION_DELETE);
-                out.writeLong(getRecordIdentifier(record));
+                VarIntUtils.writeSignedVarLong(getRecordIdentifier(record), out);
                 serializeContentClaim(record.getCurrentClaim(), record.getCurrentClaimOffset(), out);
                 return;
             }
@@ -425,7 +466,7 @@ public class WriteAheadFlowFileRepository implements FlowFileRepository, SyncLis
 
             if (updateType.equals(UpdateType.DELETE)) {
                 out.write(ACTION_DELETE);
-                out.writeLong(getRecordIdentifier(record));
+                VarIntUtils.writeSignedVarLong(getRecordIdentifier(record), out);
                 serializeContentClaim(record.getCurrentClaim(), record.getCurrentClaimOffset(), out);
                 return;
             }
@@ -441,9 +482,9 @@ public class WriteAheadFlowFileRepository implements FlowFileRepository, SyncLis
 
             if (updateType.equals(UpdateType.SWAP_OUT)) {
                 out.write(ACTION_SWAPPED_OUT);
-                out.writeLong(getRecordIdentifier(record));
-                out.writeUTF(associatedQueue.getIdentifier());
-                out.writeUTF(getLocation(record));
+                VarIntUtils.writeSignedVarLong(getRecordIdentifier(record), out);
+                writeDictionaryString(associatedQueue.getIdentifier(), out);
+                writeVarString(getLocation(record), out);
                 return;
             }
 
@@ -464,50 +505,93 @@ public class WriteAheadFlowFileRepository implements FlowFileRepository, SyncLis
                     throw new AssertionError();
             }
 
-            out.writeLong(getRecordIdentifier(record));
+            VarIntUtils.writeSignedVarLong(getRecordIdentifier(record), out);
             out.writeLong(flowFile.getEntryDate());
 
             final Set<String> lineageIdentifiers = flowFile.getLineageIdentifiers();
-            out.writeInt(lineageIdentifiers.size());
+            VarIntUtils.writeVarInt(lineageIdentifiers.size(), out);
             for (final String lineageId : lineageIdentifiers) {
-                out.writeUTF(lineageId);
+                writeVarString(lineageId, out);
             }
 
             out.writeLong(flowFile.getLineageStartDate());
 
             final Long queueDate = flowFile.getLastQueueDate();
             out.writeLong(queueDate == null ? System.currentTimeMillis() : queueDate);
-            out.writeLong(flowFile.getSize());
+            VarIntUtils.writeSignedVarLong(flowFile.getSize(), out);
 
             if (associatedQueue == null) {
                 logger.warn("{} Repository Record {} has no Connection associated with it; it will be destroyed on restart",
                         new Object[]{this, record});
-                writeString("", out);
+                writeDictionaryString("", out);
             } else {
-                writeString(associatedQueue.getIdentifier(), out);
+                writeDictionaryString(associatedQueue.getIdentifier(), out);
             }
 
             serializeContentClaim(claim, record.getCurrentClaimOffset(), out);
 
-            if (forceAttributesWritten || record.isAttributesChanged() || updateType == UpdateType.CREATE || updateType == UpdateType.SWAP_IN) {
-                out.write(1);   // indicate attributes changed
+            if (forceAttributesWritten || updateType == UpdateType.CREATE || updateType == UpdateType.SWAP_IN
+                    || (record.isAttributesChanged() && (previousRecordState == null || previousRecordState == record))) {
+                // the record being replaced is not known, or is this same object and so already reflects the change
+                out.write(ATTRIBUTES_FULL);
                 final Map<String, String> attributes = flowFile.getAttributes();
-                out.writeInt(attributes.size());
+                VarIntUtils.writeVarInt(attributes.size(), out);
                 for (final Map.Entry<String, String> entry : attributes.entrySet()) {
-                    writeString(entry.getKey(), out);
-                    writeString(entry.getValue(), out);
+                    writeDictionaryString(entry.getKey(), out);
+                    writeVarString(entry.getValue(), out);
                 }
+            } else if (record.isAttributesChanged()) {
+                // write only the attributes that differ from the version of the FlowFile that this edit will be applied to on recovery
+                out.write(ATTRIBUTES_DELTA);
+                serializeAttributeDelta(previousRecordState.getCurrent().getAttributes(), flowFile.getAttributes(), out);
             } else {
-                out.write(0);   // indicate attributes did not change
+                out.write(ATTRIBUTES_UNCHANGED);
             }
 
             if (updateType == UpdateType.SWAP_IN) {
-                out.writeUTF(record.getSwapLocation());
+                writeVarString(record.getSwapLocation(), out);
+            }
+        }
+
+        private void serializeAttributeDelta(final Map<String, String> previousAttributes, final Map<String, String> attributes, final DataOutputStream out)
+                throws IOException {
+            final List<Map.Entry<String, String>> updated = new ArrayList<>();
+            for (final Map.Entry<String, String> entry : attributes.entrySet()) {
+                final String previousValue = previousAttributes.get(entry.getKey());
+                if (previousValue == null || !previousValue.equals(entry.getValue())) {
+                    updated.add(entry);
+                }
+            }
+
+            final List<String> removed = new ArrayList<>();
+            for (final String key : previousAttributes.keySet()) {
+                if (!attributes.containsKey(key)) {
+                    removed.add(key);
+                }
+            }
+
+            VarIntUtils.writeVarInt(updated.size(), out);
+            for (final Map.Entry<String, String> entry : updated) {
+                writeDictionaryString(entry.getKey(), out);
+                writeVarString(entry.getValue(), out);
+            }
+
+            VarIntUtils.writeVarInt(removed.size(), out);
+            for (final String key : removed) {
+                writeDictionaryString(key, out);
             }
         }
 
         @Override
         public RepositoryRecord deserializeEdit(final DataInputStream in, final Map<Object, RepositoryRecord> currentRecordStates, final int version) throws IOException {
+            if (version >= COMPACT_VERSION) {
+                final int action = in.read();
+                if (action == -1) {
+                    throw new EOFException();
+                }
+                return deserializeCompact(in, action, currentRecordStates);
+            }
+
             final int action = in.read();
             final long recordId = in.readLong();
             if (action == ACTION_DELETE) {
@@ -622,6 +706,10 @@ public class WriteAheadFlowFileRepository implements FlowFileRepository, SyncLis
                 return null;
             }
 
+            if (version >= COMPACT_VERSION) {
+                return deserializeCompact(in, action, null);
+            }
+
             final long recordId = in.readLong();
             if (action == ACTION_DELETE) {
                 final StandardFlowFileRecord.Builder ffBuilder = new StandardFlowFileRecord.Builder().id(recordId);
@@ -722,21 +810,181 @@ public class WriteAheadFlowFileRepository implements FlowFileRepository, SyncLis
         private void serializeContentClaim(final ContentClaim claim, final long offset, final DataOutputStream out) throws IOException {
             if (claim == null) {
                 out.write(0);
+            } else if (claim instanceof InlineContentClaim && ((InlineContentClaim) claim).isInline()) {
+                final InlineContentClaim inlineClaim = (InlineContentClaim) claim;
+                out.write(2);
+
+                final byte[] content = inlineClaim.getContent();
+                VarIntUtils.writeVarInt(content.length, out);
+                out.write(content);
+
+                VarIntUtils.writeSignedVarLong(offset, out);
+                out.writeBoolean(inlineClaim.isLossTolerant());
             } else {
                 out.write(1);
 
                 final ResourceClaim resourceClaim = claim.getResourceClaim();
-                writeString(resourceClaim.getId(), out);
-                writeString(resourceClaim.getContainer(), out);
-                writeString(resourceClaim.getSection(), out);
-                out.writeLong(claim.getOffset());
-                out.writeLong(claim.getLength());
+                writeVarString(resourceClaim.getId(), out);
+                writeDictionaryString(resourceClaim.getContainer(), out);
+                writeDictionaryString(resourceClaim.getSection(), out);
+                VarIntUtils.writeSignedVarLong(claim.getOffset(), out);
+                VarIntUtils.writeSignedVarLong(claim.getLength(), out);
 
-                out.writeLong(offset);
+                VarIntUtils.writeSignedVarLong(offset, out);
                 out.writeBoolean(resourceClaim.isLossTolerant());
             }
         }
 
+        /**
+         * Reads a record written using the compact serialization, whose action has already been read
+         *
+         * @param in the stream to read from
+         * @param action the action of the record
+         * @param currentRecordStates the current version of each record, or <code>null</code> if reading a snapshot
+         * @return the record
+         * @throws IOException if unable to read the record
+         */
+        private StandardRepositoryRecord deserializeCompact(final DataInputStream in, final int action, final Map<Object, RepositoryRecord> currentRecordStates)
+                throws IOException {
+            final long recordId = VarIntUtils.readSignedVarLong(in);
+            if (action == ACTION_DELETE) {
+                final StandardFlowFileRecord.Builder ffBuilder = new StandardFlowFileRecord.Builder().id(recordId);
+                deserializeCompactClaim(in, ffBuilder);
+
+                final StandardRepositoryRecord record = new StandardRepositoryRecord((FlowFileQueue) null, ffBuilder.build());
+                record.markForDelete();
+                return record;
+            }
+
+            if (action == ACTION_SWAPPED_OUT) {
+                final String queueId = readDictionaryString(in);
+                final String location = readVarString(in);
+                final FlowFileQueue queue = flowFileQueueMap.get(queueId);
+
+                final FlowFileRecord flowFileRecord = new StandardFlowFileRecord.Builder()
+                        .id(recordId)
+                        .build();
+
+                return new StandardRepositoryRecord(queue, flowFileRecord, location);
+            }
+
+            if (action != ACTION_CREATE && action != ACTION_UPDATE && action != ACTION_SWAPPED_IN) {
+                throw new IOException("Found unknown action " + action + " after successfully restoring " + recordsRestored
+                        + " records. The FlowFile Repository appears to be corrupt!");
+            }
+
+            final StandardFlowFileRecord.Builder ffBuilder = new StandardFlowFileRecord.Builder();
+            final RepositoryRecord currentRecord = currentRecordStates == null ? null : currentRecordStates.get(recordId);
+            ffBuilder.id(recordId);
+            if (currentRecord != null) {
+                ffBuilder.fromFlowFile(currentRecord.getCurrent());
+            }
+            ffBuilder.entryDate(in.readLong());
+
+            final int numLineageIds = VarIntUtils.readVarInt(in);
+            final Set<String> lineageIdentifiers = new HashSet<>(numLineageIds);
+            for (int i = 0; i < numLineageIds; i++) {
+                lineageIdentifiers.add(readVarString(in));
+            }
+            ffBuilder.lineageIdentifiers(lineageIdentifiers);
+            ffBuilder.lineageStartDate(in.readLong());
+            ffBuilder.lastQueueDate(in.readLong());
+
+            ffBuilder.size(VarIntUtils.readSignedVarLong(in));
+            final String connectionId = readDictionaryString(in);
+
+            logger.debug("{} -> {}", new Object[]{recordId, connectionId});
+
+            deserializeCompactClaim(in, ffBuilder);
+
+            final int attributesChanged = in.read();
+            if (attributesChanged == ATTRIBUTES_FULL || attributesChanged == ATTRIBUTES_DELTA) {
+                final int numAttributes = VarIntUtils.readVarInt(in);
+                final Map<String, String> attributes = new HashMap<>(numAttributes);
+                for (int i = 0; i < numAttributes; i++) {
+                    final String key = readDictionaryString(in);
+                    attributes.put(key, readVarString(in));
+                }
+                ffBuilder.addAttributes(attributes);
+
+                if (attributesChanged == ATTRIBUTES_DELTA) {
+                    final int numRemoved = VarIntUtils.readVarInt(in);
+                    final Set<String> removed = new HashSet<>(numRemoved);
+                    for (int i = 0; i < numRemoved; i++) {
+                        removed.add(readDictionaryString(in));
+                    }
+                    ffBuilder.removeAttributes(removed);
+                }
+            } else if (attributesChanged == -1) {
+                throw new EOFException();
+            } else if (attributesChanged != ATTRIBUTES_UNCHANGED) {
+                throw new IOException("Attribute Change Qualifier not found in stream; found value: "
+                        + attributesChanged + " after successfully restoring " + recordsRestored + " records. The FlowFile Repository appears to be corrupt!");
+            }
+
+            final FlowFileRecord flowFile = ffBuilder.build();
+            String swapLocation = null;
+            if (action == ACTION_SWAPPED_IN) {
+                swapLocation = readVarString(in);
+            }
+
+            final StandardRepositoryRecord record;
+            if (flowFileQueueMap == null) {
+                record = new StandardRepositoryRecord(null, flowFile);
+            } else {
+                final FlowFileQueue queue = flowFileQueueMap.get(connectionId);
+                record = new StandardRepositoryRecord(queue, flowFile);
+                if (swapLocation != null) {
+                    record.setSwapLocation(swapLocation);
+                }
+
+                if (connectionId.isEmpty()) {
+                    logger.warn("{} does not have a Queue associated with it; this record will be discarded", flowFile);
+                    record.markForAbort();
+                } else if (queue == null) {
+                    logger.warn("{} maps to unknown Queue {}; this record will be discarded", flowFile, connectionId);
+                    record.markForAbort();
+                }
+            }
+
+            recordsRestored++;
+            return record;
+        }
+
+        private void deserializeCompactClaim(final DataInputStream in, final StandardFlowFileRecord.Builder ffBuilder) throws IOException {
+            final int claimExists = in.read();
+            if (claimExists == 1) {
+                final String claimId = readVarString(in);
+                final String container = readDictionaryString(in);
+                final String section = readDictionaryString(in);
+                final long resourceOffset = VarIntUtils.readSignedVarLong(in);
+                final long resourceLength = VarIntUtils.readSignedVarLong(in);
+                final long claimOffset = VarIntUtils.readSignedVarLong(in);
+                final boolean lossTolerant = in.readBoolean();
+
+                final ResourceClaim resourceClaim = claimManager.newResourceClaim(container, section, claimId, lossTolerant);
+                final StandardContentClaim contentClaim = new StandardContentClaim(resourceClaim, resourceOffset);
+                contentClaim.setLength(resourceLength);
+
+                ffBuilder.contentClaim(contentClaim);
+                ffBuilder.contentClaimOffset(claimOffset);
+            } else if (claimExists == 2) {
+                final byte[] content = new byte[VarIntUtils.readVarInt(in)];
+                in.readFully(content);
+
+                final long claimOffset = VarIntUtils.readSignedVarLong(in);
+                final boolean lossTolerant = in.readBoolean();
+
+                ffBuilder.contentClaim(new InlineContentClaim(content, lossTolerant));
+                ffBuilder.contentClaimOffset(claimOffset);
+            } else if (claimExists == -1) {
+                throw new EOFException();
+            } else if (claimExists != 0) {
+                throw new IOException("Claim Existence Qualifier not found in stream; found value: "
+                        + claimExists + " after successfully restoring " + recordsRestored + " records");
+            }
+        }
+
         private void deserializeClaim(final DataInputStream in, final int serializationVersion, final StandardFlowFileRecord.Builder ffBuilder) throws IOException {
             // determine current Content Claim.
             final int claimExists = in.read();
@@ -776,6 +1024,15 @@ public class WriteAheadFlowFileRepository implements FlowFileRepository, SyncLis
 
                 ffBuilder.contentClaim(contentClaim);
                 ffBuilder.contentClaimOffset(claimOffset);
+            } else if (claimExists == 2 && serializationVersion >= 8) {
+                final byte[] content = new byte[in.readInt()];
+                in.readFully(content);
+
+                final long claimOffset = in.readLong();
+                final boolean lossTolerant = in.readBoolean();
+
+                ffBuilder.contentClaim(new InlineContentClaim(content, lossTolerant));
+                ffBuilder.contentClaimOffset(claimOffset);
             } else if (claimExists == -1) {
                 throw new EOFException();
             } else if (claimExists != 0) {
@@ -784,23 +1041,48 @@ public class WriteAheadFlowFileRepository implements FlowFileRepository, SyncLis
             }
         }
 
-        private void writeString(final String toWrite, final OutputStream out) throws IOException {
-            final byte[] bytes = toWrite.getBytes("UTF-8");
-            final int utflen = bytes.length;
+        private void writeDictionaryString(final String value, final OutputStream out) throws IOException {
+            final Integer index = writeDictionary.get(value);
+            if (index != null) {
+                VarIntUtils.writeVarInt(index + 1, out);
+                return;
+            }
 
-            if (utflen < 65535) {
-                out.write(utflen >>> 8);
-                out.write(utflen);
-                out.write(bytes);
-            } else {
-                out.write(255);
-                out.write(255);
-                out.write(utflen >>> 24);
-                out.write(utflen >>> 16);
-                out.write(utflen >>> 8);
-                out.write(utflen);
-                out.write(bytes);
+            VarIntUtils.writeVarInt(0, out);
+            writeVarString(value, out);
+            if (writeDictionary.size() < MAX_DICTIONARY_SIZE) {
+                writeDictionary.put(value, writeDictionary.size());
+            }
+        }
+
+        private String readDictionaryString(final InputStream in) throws IOException {
+            final int index = VarIntUtils.readVarInt(in);
+            if (index > 0) {
+                if (index > readDictionary.size()) {
+                    throw new IOException("Found reference to unknown dictionary entry " + index + " after successfully restoring " + recordsRestored
+                            + " records. The FlowFile Repository appears to be corrupt!");
+                }
+                return readDictionary.get(index - 1);
             }
+
+            final String value = readVarString(in);
+            if (readDictionary.size() < MAX_DICTIONARY_SIZE) {
+                readDictionary.add(value);
+            }
+            return value;
+        }
+
+        private void writeVarString(final String value, final OutputStream out) throws IOException {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            VarIntUtils.writeVarInt(bytes.length, out);
+            out.write(bytes);
+        }
+
+        private String readVarString(final InputStream in) throws IOException {
+            final int numBytes = VarIntUtils.readVarInt(in);
+            final byte[] bytes = new byte[numBytes];
+            fillBuffer(in, bytes, numBytes);
+            return new String(bytes, StandardCharsets.UTF_8);
         }
 
         private String readString(final InputStream in) throws IOException {
@@ -872,7 +1154,7 @@ public class WriteAheadFlowFileRepository implements FlowFileRepository, SyncLis
 
         @Override
         public int getVersion() {
-            return 7;
+            return COMPACT_VERSION;
         }
 
         @Override
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository.claim;
+
+/**
+ * <p>
+ * A ContentClaim whose content is compared, once it has been written, against the content that is already stored in the Content
+ * Repository. Until then, and if no identical content is found, the claim refers to the ContentClaim that its content was written to.
+ * If identical content is found, the claim is switched to refer to the ContentClaim that holds that content instead, and
+ * {@link #getResourceClaim()}, {@link #getOffset()}, and {@link #getLength()} are those of that claim.
+ * </p>
+ *
+ * <p>
+ * Like a {@link StandardContentClaim}, a DeduplicatedContentClaim is equal to any ContentClaim with the same Resource Claim and offset.
+ * Because switching the claim changes both, a DeduplicatedContentClaim must not be held in a hash-based collection while its
+ * content is being written.
+ * </p>
+ *
+ * <p>
+ * Must be thread safe
+ * </p>
+ */
+public final class DeduplicatedContentClaim implements ContentClaim {
+
+    private volatile ContentClaim claim;
+    private volatile boolean deduplicated = false;
+
+    public DeduplicatedContentClaim(final ContentClaim claim) {
+        this.claim = claim;
+    }
+
+    /**
+     * @return the ContentClaim that this claim currently refers to
+     */
+    public ContentClaim getClaim() {
+        return claim;
+    }
+
+    /**
+     * @return <code>true</code> if this claim has been switched to refer to previously stored content
+     */
+    public boolean isDeduplicated() {
+        return deduplicated;
+    }
+
+    /**
+     * Switches this claim to refer to the given claim, which holds content identical to the content that was written to this claim
+     *
+     * @param existing the claim that holds the identical content
+     */
+    public void deduplicate(final ContentClaim existing) {
+        this.claim = existing;
+        this.deduplicated = true;
+    }
+
+    @Override
+    public ResourceClaim getResourceClaim() {
+        return claim.getResourceClaim();
+    }
+
+    @Override
+    public long getOffset() {
+        return claim.getOffset();
+    }
+
+    @Override
+    public long getLength() {
+        return claim.getLength();
+    }
+
+    @Override
+    public int compareTo(final ContentClaim o) {
+        final ResourceClaim resourceClaim = getResourceClaim();
+        final ResourceClaim otherResourceClaim = o.getResourceClaim();
+        if (resourceClaim == null || otherResourceClaim == null) {
+            if (resourceClaim != null) {
+                return 1;
+            }
+            if (otherResourceClaim != null) {
+                return -1;
+            }
+            return Integer.compare(System.identityHashCode(this), System.identityHashCode(o));
+        }
+
+        final int resourceComp = resourceClaim.compareTo(otherResourceClaim);
+        if (resourceComp != 0) {
+            return resourceComp;
+        }
+
+        return Long.compare(getOffset(), o.getOffset());
+    }
+
+    @Override
+    public int hashCode() {
+        final ContentClaim current = claim;
+        final ResourceClaim resourceClaim = current.getResourceClaim();
+        if (resourceClaim == null) {
+            return current.hashCode();
+        }
+
+        final long offset = current.getOffset();
+        final int prime = 31;
+        int result = 1;
+        result = prime * result;
+        result = prime * result + (int) (offset ^ offset >>> 32);
+        result = prime * result + resourceClaim.hashCode();
+        return result;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (obj == null) {
+            return false;
+        }
+
+        if (!(obj instanceof ContentClaim)) {
+            return false;
+        }
+
+        final ContentClaim current = claim;
+        final ContentClaim other = obj instanceof DeduplicatedContentClaim ? ((DeduplicatedContentClaim) obj).getClaim() : (ContentClaim) obj;
+        final ResourceClaim resourceClaim = current.getResourceClaim();
+        if (resourceClaim == null) {
+            // content that is held inline has no Resource Claim, so defer to the claim that holds it
+            return current.equals(other);
+        }
+
+        if (current.getOffset() != other.getOffset()) {
+            return false;
+        }
+
+        return resourceClaim.equals(other.getResourceClaim());
+    }
+
+    @Override
+    public String toString() {
+        return "DeduplicatedContentClaim [claim=" + claim + ", deduplicated=" + deduplicated + "]";
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository.claim;
+
+/**
+ * <p>
+ * A ContentClaim whose content is small enough to be held in memory alongside the FlowFile that references it, and
+ * to be written inline with the FlowFile to the FlowFile Repository and to swap files, rather than to the Content Repository.
+ * While the content is held inline, the claim has no {@link ResourceClaim}. If the content grows beyond the inline threshold
+ * while it is being written, the claim is promoted: from then on it refers to a ContentClaim in the Content Repository, and
+ * {@link #getResourceClaim()}, {@link #getOffset()}, and {@link #getLength()} are those of that claim.
+ * </p>
+ *
+ * <p>
+ * Because a claim may be promoted, InlineContentClaims are equal only to themselves.
+ * </p>
+ *
+ * <p>
+ * Must be thread safe
+ * </p>
+ */
+public final class InlineContentClaim implements ContentClaim {
+
+    private static final byte[] EMPTY_CONTENT = new byte[0];
+
+    private final boolean lossTolerant;
+    private volatile byte[] content = EMPTY_CONTENT;
+    private volatile ContentClaim promotedClaim;
+
+    public InlineContentClaim(final boolean lossTolerant) {
+        this.lossTolerant = lossTolerant;
+    }
+
+    public InlineContentClaim(final byte[] content, final boolean lossTolerant) {
+        this.content = content;
+        this.lossTolerant = lossTolerant;
+    }
+
+    /**
+     * @return <code>true</code> if the content of this claim is held inline, <code>false</code> if the claim has been promoted
+     */
+    public boolean isInline() {
+        return promotedClaim == null;
+    }
+
+    /**
+     * @return the content of this claim, if it is held inline; the returned array must not be modified
+     */
+    public byte[] getContent() {
+        return content;
+    }
+
+    public void setContent(final byte[] content) {
+        this.content = content;
+    }
+
+    /**
+     * @return the ContentClaim in the Content Repository to which this claim has been promoted, or <code>null</code> if the
+     *         content of this claim is held inline
+     */
+    public ContentClaim getPromotedClaim() {
+        return promotedClaim;
+    }
+
+    public void promote(final ContentClaim claim) {
+        this.promotedClaim = claim;
+        this.content = EMPTY_CONTENT;
+    }
+
+    public boolean isLossTolerant() {
+        return lossTolerant;
+    }
+
+    @Override
+    public ResourceClaim getResourceClaim() {
+        final ContentClaim promoted = promotedClaim;
+        return promoted == null ? null : promoted.getResourceClaim();
+    }
+
+    @Override
+    public long getOffset() {
+        final ContentClaim promoted = promotedClaim;
+        return promoted == null ? 0L : promoted.getOffset();
+    }
+
+    @Override
+    public long getLength() {
+        final ContentClaim promoted = promotedClaim;
+        return promoted == null ? content.length : promoted.getLength();
+    }
+
+    @Override
+    public int compareTo(final ContentClaim o) {
+        final ResourceClaim resourceClaim = getResourceClaim();
+        final ResourceClaim otherResourceClaim = o.getResourceClaim();
+        if (resourceClaim == null || otherResourceClaim == null) {
+            if (resourceClaim != null) {
+                return 1;
+            }
+            if (otherResourceClaim != null) {
+                return -1;
+            }
+            return Integer.compare(System.identityHashCode(this), System.identityHashCode(o));
+        }
+
+        final int resourceComp = resourceClaim.compareTo(otherResourceClaim);
+        if (resourceComp != 0) {
+            return resourceComp;
+        }
+
+        return Long.compare(getOffset(), o.getOffset());
+    }
+
+    @Override
+    public String toString() {
+        final ContentClaim promoted = promotedClaim;
+        if (promoted == null) {
+            return "InlineContentClaim [length=" + content.length + "]";
+        }
+        return "InlineContentClaim [promotedClaim=" + promoted + "]";
+    }
+}
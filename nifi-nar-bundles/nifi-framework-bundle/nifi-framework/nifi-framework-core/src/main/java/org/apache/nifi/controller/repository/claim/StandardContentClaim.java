@@ -75,7 +75,13 @@ public final class StandardContentClaim implements ContentClaim, Comparable<Cont
 
     @Override
     public int compareTo(final ContentClaim o) {
-        final int resourceComp = resourceClaim.compareTo(o.getResourceClaim());
+        final ResourceClaim otherResourceClaim = o.getResourceClaim();
+        if (otherResourceClaim == null) {
+            // content that is held inline has no Resource Claim and sorts first
+            return 1;
+        }
+
+        final int resourceComp = resourceClaim.compareTo(otherResourceClaim);
         if (resourceComp != 0) {
             return resourceComp;
         }
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository.io;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Hands out fixed-size blocks of memory that live outside of the Java heap. All of the memory is allocated up front, in slabs that are
+ * each divided into blocks, so that the amount of memory used never exceeds the configured total and blocks that are checked back in
+ * are reused rather than reclaimed by the garbage collector.
+ */
+public class DirectMemoryManager {
+
+    private static final int MAX_SLAB_SIZE = 64 * 1024 * 1024;
+
+    private final int blockSize;
+    private final int blockCount;
+    private final BlockingQueue<ByteBuffer> queue;
+
+    public DirectMemoryManager(final long totalSize, final int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+
+        this.blockSize = blockSize;
+        this.blockCount = (int) Math.min(Integer.MAX_VALUE, totalSize / blockSize);
+        queue = new LinkedBlockingQueue<>(Math.max(1, blockCount));
+
+        final int blocksPerSlab = Math.max(1, MAX_SLAB_SIZE / blockSize);
+        int remaining = blockCount;
+        while (remaining > 0) {
+            final int slabBlocks = Math.min(remaining, blocksPerSlab);
+            final ByteBuffer slab = ByteBuffer.allocateDirect(slabBlocks * blockSize);
+            for (int i = 0; i < slabBlocks; i++) {
+                slab.limit((i + 1) * blockSize).position(i * blockSize);
+                queue.offer(slab.slice());
+            }
+            remaining -= slabBlocks;
+        }
+    }
+
+    /**
+     * @return an empty block, or <code>null</code> if all blocks are checked out
+     */
+    public ByteBuffer checkOut() {
+        final ByteBuffer block = queue.poll();
+        if (block != null) {
+            block.clear();
+        }
+        return block;
+    }
+
+    public void checkIn(final ByteBuffer block) {
+        queue.offer(block);
+    }
+
+    public void checkIn(final Collection<ByteBuffer> blocks) {
+        queue.addAll(blocks);
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return the total number of bytes managed
+     */
+    public long getCapacity() {
+        return (long) blockCount * blockSize;
+    }
+
+    /**
+     * @return the number of bytes in blocks that are currently checked out
+     */
+    public long getBytesUsed() {
+        return (long) (blockCount - queue.size()) * blockSize;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository.io;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Releases memory-mapped ByteBuffers eagerly, rather than waiting for them to be garbage collected. The JDK provides no
+ * public API to do this, so the buffer's cleaner is invoked reflectively; if that is not possible on the running JVM, the
+ * mapping is simply left to be released when the buffer is garbage collected.
+ */
+public class MappedBufferReleaser {
+    private static final Logger logger = LoggerFactory.getLogger(MappedBufferReleaser.class);
+
+    private static volatile boolean releaseSupported = true;
+
+    private MappedBufferReleaser() {
+    }
+
+    /**
+     * Releases the mapping that backs the given buffer. The buffer, and any view of it, must not be accessed afterward.
+     *
+     * @param buffer the buffer to release
+     */
+    public static void release(final ByteBuffer buffer) {
+        if (!releaseSupported || !(buffer instanceof MappedByteBuffer)) {
+            return;
+        }
+
+        try {
+            final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            final Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner == null) {
+                return;
+            }
+
+            final Method cleanMethod = cleaner.getClass().getMethod("clean");
+            cleanMethod.setAccessible(true);
+            cleanMethod.invoke(cleaner);
+        } catch (final Exception e) {
+            releaseSupported = false;
+            logger.info("Unable to release memory-mapped buffers eagerly due to {}; they will be released when garbage collected", e.toString());
+        }
+    }
+}
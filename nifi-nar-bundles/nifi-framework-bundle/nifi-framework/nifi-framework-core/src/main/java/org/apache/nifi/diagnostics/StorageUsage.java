@@ -26,6 +26,8 @@ public class StorageUsage implements Cloneable {
 
     private long freeSpace;
     private long totalSpace;
+    private long writeLatencyNanos = -1L;
+    private long writeThroughput = -1L;
 
     public String getIdentifier() {
         return identifier;
@@ -55,6 +57,28 @@ public class StorageUsage implements Cloneable {
         return totalSpace - freeSpace;
     }
 
+    /**
+     * @return the average latency of recent writes, in nanoseconds, or -1 if not measured
+     */
+    public long getWriteLatencyNanos() {
+        return writeLatencyNanos;
+    }
+
+    public void setWriteLatencyNanos(final long writeLatencyNanos) {
+        this.writeLatencyNanos = writeLatencyNanos;
+    }
+
+    /**
+     * @return the number of bytes recently written per second, or -1 if not measured
+     */
+    public long getWriteThroughput() {
+        return writeThroughput;
+    }
+
+    public void setWriteThroughput(final long writeThroughput) {
+        this.writeThroughput = writeThroughput;
+    }
+
     public int getDiskUtilization() {
         return DiagnosticUtils.getUtilization(getUsedSpace(), totalSpace);
     }
@@ -65,6 +89,8 @@ public class StorageUsage implements Cloneable {
         clonedObj.identifier = identifier;
         clonedObj.freeSpace = freeSpace;
         clonedObj.totalSpace = totalSpace;
+        clonedObj.writeLatencyNanos = writeLatencyNanos;
+        clonedObj.writeThroughput = writeThroughput;
         return clonedObj;
     }
 
@@ -39,6 +39,9 @@ public class SystemDiagnostics implements Cloneable {
     private int totalThreads;
     private int daemonThreads;
 
+    private long queuedFlowFileHeap;
+    private long queuedFlowFileHeapBudget;
+
     private StorageUsage flowFileRepositoryStorageUsage;
     private Map<String, StorageUsage> contentRepositoryStorageUsage;
     private Map<String, GarbageCollection> garbageCollection;
@@ -85,6 +88,14 @@ public class SystemDiagnostics implements Cloneable {
         this.daemonThreads = daemonThreads;
     }
 
+    public void setQueuedFlowFileHeap(final long queuedFlowFileHeap) {
+        this.queuedFlowFileHeap = queuedFlowFileHeap;
+    }
+
+    public void setQueuedFlowFileHeapBudget(final long queuedFlowFileHeapBudget) {
+        this.queuedFlowFileHeapBudget = queuedFlowFileHeapBudget;
+    }
+
     public void setFlowFileRepositoryStorageUsage(final StorageUsage flowFileRepositoryStorageUsage) {
         this.flowFileRepositoryStorageUsage = flowFileRepositoryStorageUsage;
     }
@@ -133,6 +144,20 @@ public class SystemDiagnostics implements Cloneable {
         return daemonThreads;
     }
 
+    /**
+     * @return the estimated number of bytes of heap used by FlowFiles that are held in memory by connection queues
+     */
+    public long getQueuedFlowFileHeap() {
+        return queuedFlowFileHeap;
+    }
+
+    /**
+     * @return the number of bytes of heap that FlowFiles held in memory by connection queues may use, or 0 if there is no limit
+     */
+    public long getQueuedFlowFileHeapBudget() {
+        return queuedFlowFileHeapBudget;
+    }
+
     public StorageUsage getFlowFileRepositoryStorageUsage() {
         return flowFileRepositoryStorageUsage;
     }
@@ -211,6 +236,8 @@ public class SystemDiagnostics implements Cloneable {
         clonedObj.totalThreads = totalThreads;
         clonedObj.usedHeap = usedHeap;
         clonedObj.usedNonHeap = usedNonHeap;
+        clonedObj.queuedFlowFileHeap = queuedFlowFileHeap;
+        clonedObj.queuedFlowFileHeapBudget = queuedFlowFileHeapBudget;
         clonedObj.creationTimestamp = creationTimestamp;
 
         return clonedObj;
@@ -30,7 +30,11 @@ import java.util.Map;
 import java.util.Set;
 
 import org.apache.nifi.controller.repository.ContentRepository;
+import org.apache.nifi.controller.repository.DeduplicatingContentRepository;
+import org.apache.nifi.controller.repository.FileSystemRepository;
 import org.apache.nifi.controller.repository.FlowFileRepository;
+import org.apache.nifi.controller.repository.InlineContentRepository;
+import org.apache.nifi.controller.repository.TieredContentRepository;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -90,6 +94,7 @@ public class SystemDiagnosticsFactory {
 
         // get the file repository disk usage
         final Set<String> containerNames = contentRepo.getContainerNames();
+        final FileSystemRepository fileSystemRepo = getFileSystemRepository(contentRepo);
         final Map<String, StorageUsage> fileRepositoryUsage = new LinkedHashMap<>(containerNames.size());
         for (final String containerName : containerNames) {
             long containerCapacity = -1L;
@@ -109,6 +114,10 @@ public class SystemDiagnosticsFactory {
             storageUsage.setIdentifier(containerName);
             storageUsage.setFreeSpace(containerFree);
             storageUsage.setTotalSpace(containerCapacity);
+            if (fileSystemRepo != null && fileSystemRepo.getContainerNames().contains(containerName)) {
+                storageUsage.setWriteLatencyNanos(fileSystemRepo.getAverageWriteNanos(containerName));
+                storageUsage.setWriteThroughput(fileSystemRepo.getWriteThroughput(containerName));
+            }
             fileRepositoryUsage.put(containerName, storageUsage);
         }
         systemDiagnostics.setContentRepositoryStorageUsage(fileRepositoryUsage);
@@ -129,4 +138,21 @@ public class SystemDiagnosticsFactory {
         return systemDiagnostics;
     }
 
+    /**
+     * @return the File System Repository that holds the content of the given repository, which may wrap it, or <code>null</code> if content is
+     *         not held in a File System Repository
+     */
+    private static FileSystemRepository getFileSystemRepository(final ContentRepository contentRepo) {
+        if (contentRepo instanceof FileSystemRepository) {
+            return (FileSystemRepository) contentRepo;
+        } else if (contentRepo instanceof InlineContentRepository) {
+            return getFileSystemRepository(((InlineContentRepository) contentRepo).getDelegate());
+        } else if (contentRepo instanceof DeduplicatingContentRepository) {
+            return getFileSystemRepository(((DeduplicatingContentRepository) contentRepo).getDelegate());
+        } else if (contentRepo instanceof TieredContentRepository) {
+            return getFileSystemRepository(((TieredContentRepository) contentRepo).getDelegate());
+        }
+        return null;
+    }
+
 }
@@ -17,32 +17,44 @@
 package org.apache.nifi.controller;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.nifi.controller.queue.FlowFileQueue;
 import org.apache.nifi.controller.repository.FlowFileRecord;
+import org.apache.nifi.controller.repository.IncompleteSwapFileException;
+import org.apache.nifi.controller.repository.StandardFlowFileRecord;
 import org.apache.nifi.controller.repository.SwapContents;
 import org.apache.nifi.controller.repository.claim.ContentClaim;
+import org.apache.nifi.controller.repository.claim.InlineContentClaim;
 import org.apache.nifi.controller.repository.claim.ResourceClaim;
 import org.apache.nifi.controller.repository.claim.ResourceClaimManager;
+import org.apache.nifi.controller.repository.claim.StandardContentClaim;
+import org.apache.nifi.controller.repository.claim.StandardResourceClaimManager;
 import org.apache.nifi.flowfile.FlowFile;
+import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
 
@@ -116,6 +128,149 @@ public class TestFileSystemSwapManager {
         }
     }
 
+    @Test
+    public void testRoundTripCompressedWithContentClaims() throws IOException {
+        final ResourceClaimManager claimManager = new StandardResourceClaimManager();
+        final List<FlowFileRecord> toSwap = createFlowFilesWithClaims(claimManager, 10000);
+
+        final FlowFileQueue flowFileQueue = Mockito.mock(FlowFileQueue.class);
+        Mockito.when(flowFileQueue.getIdentifier()).thenReturn("87bb99fe-412c-49f6-a441-d1b0af4e20b4");
+
+        final ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+        FileSystemSwapManager.serializeFlowFiles(toSwap, flowFileQueue, "uncompressed", uncompressed, false);
+
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        FileSystemSwapManager.serializeFlowFiles(toSwap, flowFileQueue, "compressed", compressed, true);
+        assertTrue(compressed.size() < uncompressed.size());
+
+        for (final byte[] serialized : new byte[][] {uncompressed.toByteArray(), compressed.toByteArray()}) {
+            final SwapContents swappedIn;
+            try (final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(serialized))) {
+                swappedIn = FileSystemSwapManager.deserializeFlowFiles(dis, "swap", flowFileQueue, claimManager);
+            }
+
+            assertEquals(toSwap.size(), swappedIn.getFlowFiles().size());
+            assertEquals(toSwap.size(), swappedIn.getSummary().getResourceClaims().size());
+            for (int i = 0; i < toSwap.size(); i++) {
+                final FlowFileRecord pre = toSwap.get(i);
+                final FlowFileRecord post = swappedIn.getFlowFiles().get(i);
+
+                assertEquals(pre.getId(), post.getId());
+                assertEquals(pre.getSize(), post.getSize());
+                assertEquals(pre.getAttributes(), post.getAttributes());
+                assertEquals(pre.getContentClaim(), post.getContentClaim());
+                assertEquals(pre.getContentClaim().getLength(), post.getContentClaim().getLength());
+                assertEquals(pre.getContentClaim().getResourceClaim().isLossTolerant(), post.getContentClaim().getResourceClaim().isLossTolerant());
+                assertEquals(pre.getContentClaimOffset(), post.getContentClaimOffset());
+                assertEquals(pre.getEntryDate(), post.getEntryDate());
+                assertEquals(pre.getLastQueueDate(), post.getLastQueueDate());
+                assertEquals(pre.getLineageStartDate(), post.getLineageStartDate());
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTripWithInlineContent() throws IOException {
+        final ResourceClaimManager claimManager = new StandardResourceClaimManager();
+        final List<FlowFileRecord> withClaims = createFlowFilesWithClaims(claimManager, 300);
+
+        // interleave FlowFiles whose content is held inline with those whose content is in a Resource Claim
+        final List<FlowFileRecord> toSwap = new ArrayList<>();
+        for (int i = 0; i < withClaims.size(); i++) {
+            if (i % 2 == 0) {
+                toSwap.add(withClaims.get(i));
+            } else {
+                final byte[] content = ("Hello " + i).getBytes(StandardCharsets.UTF_8);
+                toSwap.add(new StandardFlowFileRecord.Builder()
+                    .fromFlowFile(withClaims.get(i))
+                    .size(content.length - 1L)
+                    .contentClaim(new InlineContentClaim(content, i % 3 == 0))
+                    .contentClaimOffset(1L)
+                    .build());
+            }
+        }
+
+        final FlowFileQueue flowFileQueue = Mockito.mock(FlowFileQueue.class);
+        Mockito.when(flowFileQueue.getIdentifier()).thenReturn("87bb99fe-412c-49f6-a441-d1b0af4e20b4");
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        FileSystemSwapManager.serializeFlowFiles(toSwap, flowFileQueue, "swap", baos, true);
+
+        final SwapContents swappedIn;
+        try (final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
+            swappedIn = FileSystemSwapManager.deserializeFlowFiles(dis, "swap", flowFileQueue, claimManager);
+        }
+
+        assertEquals(toSwap.size(), swappedIn.getFlowFiles().size());
+        assertEquals(toSwap.size() / 2, swappedIn.getSummary().getResourceClaims().size());
+        for (int i = 0; i < toSwap.size(); i++) {
+            final FlowFileRecord pre = toSwap.get(i);
+            final FlowFileRecord post = swappedIn.getFlowFiles().get(i);
+
+            assertEquals(pre.getId(), post.getId());
+            assertEquals(pre.getSize(), post.getSize());
+            assertEquals(pre.getContentClaimOffset(), post.getContentClaimOffset());
+            if (pre.getContentClaim() instanceof InlineContentClaim) {
+                final InlineContentClaim preClaim = (InlineContentClaim) pre.getContentClaim();
+                final InlineContentClaim postClaim = (InlineContentClaim) post.getContentClaim();
+                assertTrue(Arrays.equals(preClaim.getContent(), postClaim.getContent()));
+                assertEquals(preClaim.isLossTolerant(), postClaim.isLossTolerant());
+            } else {
+                assertEquals(pre.getContentClaim(), post.getContentClaim());
+                assertEquals(pre.getContentClaim().getLength(), post.getContentClaim().getLength());
+            }
+        }
+    }
+
+    @Test
+    public void testIncompleteCompressedSwapFile() throws IOException {
+        final ResourceClaimManager claimManager = new StandardResourceClaimManager();
+        final List<FlowFileRecord> toSwap = createFlowFilesWithClaims(claimManager, 10000);
+
+        final FlowFileQueue flowFileQueue = Mockito.mock(FlowFileQueue.class);
+        Mockito.when(flowFileQueue.getIdentifier()).thenReturn("87bb99fe-412c-49f6-a441-d1b0af4e20b4");
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        FileSystemSwapManager.serializeFlowFiles(toSwap, flowFileQueue, "compressed", baos, true);
+        final byte[] truncated = Arrays.copyOf(baos.toByteArray(), baos.size() / 2);
+
+        try (final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(truncated))) {
+            FileSystemSwapManager.deserializeFlowFiles(dis, "swap", flowFileQueue, claimManager);
+            Assert.fail("Expected IncompleteSwapFileException");
+        } catch (final IncompleteSwapFileException isfe) {
+            final SwapContents partialContents = isfe.getPartialContents();
+            assertTrue(partialContents.getFlowFiles().size() > 0);
+            assertTrue(partialContents.getFlowFiles().size() < toSwap.size());
+            assertEquals(toSwap.size(), partialContents.getSummary().getQueueSize().getObjectCount());
+        }
+    }
+
+    private List<FlowFileRecord> createFlowFilesWithClaims(final ResourceClaimManager claimManager, final int count) {
+        final long now = System.currentTimeMillis();
+        final List<FlowFileRecord> flowFiles = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final ResourceClaim resourceClaim = claimManager.newResourceClaim("container-" + (i % 3), "section-" + (i % 7), String.valueOf(i / 100), (i / 100) % 2 == 0);
+            final StandardContentClaim contentClaim = new StandardContentClaim(resourceClaim, (i % 100) * 10L);
+            contentClaim.setLength(10L);
+
+            flowFiles.add(new StandardFlowFileRecord.Builder()
+                .id(1000L + i)
+                .entryDate(now + i)
+                .lineageStartDate(now - i)
+                .lastQueueDate(now + 2 * i)
+                .size(10L)
+                .contentClaim(contentClaim)
+                .contentClaimOffset(i % 5)
+                .addAttribute("filename", "file-" + i + ".txt")
+                .addAttribute("path", "./")
+                .addAttribute("mime.type", "text/plain")
+                .addAttribute("uuid", UUID.randomUUID().toString())
+                .build());
+        }
+
+        return flowFiles;
+    }
+
 
     public class NopResourceClaimManager implements ResourceClaimManager {
 
@@ -19,8 +19,10 @@ package org.apache.nifi.controller;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
@@ -32,6 +34,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.nifi.connectable.Connectable;
@@ -74,6 +77,11 @@ public class TestStandardFlowFileQueue {
     private StandardFlowFileQueue queue = null;
 
     private List<ProvenanceEventRecord> provRecords = new ArrayList<>();
+    private Connection connection = null;
+    private ProcessScheduler scheduler = null;
+    private FlowFileRepository flowFileRepo = null;
+    private ProvenanceEventRepository provRepo = null;
+    private ResourceClaimManager claimManager = null;
 
     @BeforeClass
     public static void setupLogging() {
@@ -85,16 +93,16 @@ public class TestStandardFlowFileQueue {
     public void setup() {
         provRecords.clear();
 
-        final Connection connection = Mockito.mock(Connection.class);
+        connection = Mockito.mock(Connection.class);
         Mockito.when(connection.getSource()).thenReturn(Mockito.mock(Connectable.class));
         Mockito.when(connection.getDestination()).thenReturn(Mockito.mock(Connectable.class));
 
-        final ProcessScheduler scheduler = Mockito.mock(ProcessScheduler.class);
+        scheduler = Mockito.mock(ProcessScheduler.class);
         swapManager = new TestSwapManager();
 
-        final FlowFileRepository flowFileRepo = Mockito.mock(FlowFileRepository.class);
-        final ProvenanceEventRepository provRepo = Mockito.mock(ProvenanceEventRepository.class);
-        final ResourceClaimManager claimManager = Mockito.mock(ResourceClaimManager.class);
+        flowFileRepo = Mockito.mock(FlowFileRepository.class);
+        provRepo = Mockito.mock(ProvenanceEventRepository.class);
+        claimManager = Mockito.mock(ResourceClaimManager.class);
 
         Mockito.when(provRepo.eventBuilder()).thenReturn(new StandardProvenanceEventRecord.Builder());
         Mockito.doAnswer(new Answer<Object>() {
@@ -341,6 +349,153 @@ public class TestStandardFlowFileQueue {
         }
     }
 
+    @Test
+    public void testFifoOrderWithoutPrioritizers() {
+        for (int i = 0; i < 100; i++) {
+            queue.put(new TestFlowFile(100 - i));
+        }
+
+        final List<FlowFileRecord> flowFiles = queue.poll(Integer.MAX_VALUE, new HashSet<FlowFileRecord>());
+        assertEquals(100, flowFiles.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, flowFiles.get(i).getId());
+        }
+
+        assertEquals(0, queue.getActiveQueueSize().getObjectCount());
+    }
+
+    @Test
+    public void testSwitchBetweenFifoAndPrioritized() {
+        for (int i = 0; i < 100; i++) {
+            queue.put(new TestFlowFile(100 - i));
+        }
+
+        final List<FlowFilePrioritizer> prioritizers = new ArrayList<>();
+        prioritizers.add(new FlowFileSizePrioritizer());
+        queue.setPriorities(prioritizers);
+
+        final Set<FlowFileRecord> expired = new HashSet<>();
+        assertEquals(1L, queue.poll(expired).getSize());
+        assertEquals(2L, queue.poll(expired).getSize());
+
+        queue.setPriorities(Collections.<FlowFilePrioritizer> emptyList());
+        queue.put(new TestFlowFile(1000L));
+
+        // the FlowFiles keep the order they had when prioritized, followed by the newly added FlowFile
+        final List<FlowFileRecord> flowFiles = queue.poll(Integer.MAX_VALUE, expired);
+        assertEquals(99, flowFiles.size());
+        for (int i = 0; i < 98; i++) {
+            assertEquals(i + 3, flowFiles.get(i).getSize());
+        }
+        assertEquals(1000L, flowFiles.get(98).getSize());
+        assertEquals(101, queue.getUnacknowledgedQueueSize().getObjectCount());
+    }
+
+    @Test
+    public void testFifoPollFilterRetainsOrder() {
+        for (int i = 0; i < 10; i++) {
+            queue.put(new TestFlowFile());
+        }
+
+        final FlowFileFilter evenFilter = new FlowFileFilter() {
+            @Override
+            public FlowFileFilterResult filter(final FlowFile flowFile) {
+                return flowFile.getId() % 2 == 0 ? FlowFileFilterResult.ACCEPT_AND_CONTINUE : FlowFileFilterResult.REJECT_AND_CONTINUE;
+            }
+        };
+
+        final Set<FlowFileRecord> expired = new HashSet<>();
+        assertEquals(5, queue.poll(evenFilter, expired).size());
+
+        final List<FlowFileRecord> remaining = queue.poll(Integer.MAX_VALUE, expired);
+        assertEquals(5, remaining.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i * 2 + 1, remaining.get(i).getId());
+        }
+    }
+
+    @Test
+    public void testPollBySizeAndGroup() {
+        final List<FlowFileRecord> flowFiles = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final Map<String, String> attributes = new HashMap<>();
+            attributes.put("group", i % 2 == 0 ? "even" : "odd");
+            final FlowFileRecord flowFile = new TestFlowFile(attributes, 10L);
+            flowFiles.add(flowFile);
+            queue.put(flowFile);
+        }
+
+        final Set<FlowFileRecord> expired = new HashSet<>();
+
+        // only FlowFiles in the same group as the first are polled, and no more than 30 bytes' worth
+        final List<FlowFileRecord> evens = queue.poll(10, 30L, "group", expired);
+        assertEquals(3, evens.size());
+        for (int i = 0; i < 3; i++) {
+            assertSame(flowFiles.get(i * 2), evens.get(i));
+        }
+
+        final List<FlowFileRecord> odds = queue.poll(2, Long.MAX_VALUE, "group", expired);
+        assertEquals(2, odds.size());
+        assertSame(flowFiles.get(1), odds.get(0));
+        assertSame(flowFiles.get(3), odds.get(1));
+
+        // the first FlowFile is always polled, even if it is larger than the maximum size
+        final List<FlowFileRecord> oversized = queue.poll(10, 0L, null, expired);
+        assertEquals(1, oversized.size());
+        assertSame(flowFiles.get(5), oversized.get(0));
+
+        final List<FlowFileRecord> remaining = queue.poll(Integer.MAX_VALUE, expired);
+        assertEquals(4, remaining.size());
+        for (int i = 0; i < 4; i++) {
+            assertSame(flowFiles.get(i + 6), remaining.get(i));
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testConcurrentFifoPutAndPoll() throws InterruptedException {
+        final int threadCount = 4;
+        final int flowFilesPerThread = 25000;
+        final AtomicLong polledCount = new AtomicLong(0L);
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < flowFilesPerThread; j++) {
+                        queue.put(new TestFlowFile());
+                    }
+                }
+            }));
+
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final Set<FlowFileRecord> expired = new HashSet<>();
+                    while (polledCount.get() < threadCount * flowFilesPerThread) {
+                        final FlowFileRecord flowFile = queue.poll(expired);
+                        if (flowFile != null) {
+                            queue.acknowledge(flowFile);
+                            polledCount.incrementAndGet();
+                        }
+                    }
+                }
+            }));
+        }
+
+        for (final Thread t : threads) {
+            t.start();
+        }
+        for (final Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(threadCount * flowFilesPerThread, polledCount.get());
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size().getObjectCount());
+        assertEquals(0L, queue.size().getByteCount());
+    }
+
     @Test
     public void testSwapIn() {
         for (int i = 1; i <= 20000; i++) {
@@ -464,6 +619,281 @@ public class TestStandardFlowFileQueue {
     }
 
 
+    @Test
+    public void testSwapInPrefetchedBeforeActiveQueueDrained() {
+        final List<Runnable> swapInTasks = new ArrayList<>();
+        queue = new StandardFlowFileQueue("id", connection, flowFileRepo, provRepo, claimManager, scheduler, swapManager, null, 10000,
+            swapInTasks::add, 5000);
+
+        for (int i = 1; i <= 20000; i++) {
+            queue.put(new TestFlowFile());
+        }
+        assertEquals(1, swapManager.swappedOut.size());
+
+        final Set<FlowFileRecord> expired = Collections.emptySet();
+        for (int i = 0; i < 5000; i++) {
+            assertNotNull(queue.poll(expired));
+        }
+        assertTrue(swapInTasks.isEmpty());
+
+        // active queue is now at the prefetch threshold, so the next poll should begin reading the swap file
+        assertNotNull(queue.poll(expired));
+        assertEquals(1, swapInTasks.size());
+        assertEquals(0, swapManager.swapInCalledCount);
+
+        swapInTasks.get(0).run();
+        assertEquals(1, swapManager.swapInCalledCount);
+
+        long lastId = 5000L;
+        for (int i = 0; i < 14999; i++) {
+            final FlowFileRecord flowFile = queue.poll(expired);
+            assertNotNull(flowFile);
+            assertTrue(flowFile.getId() > lastId);
+            lastId = flowFile.getId();
+        }
+
+        assertEquals(0, queue.getActiveQueueSize().getObjectCount());
+        assertTrue(swapManager.swappedOut.isEmpty());
+        assertEquals(1, queue.getSwapInCount());
+        assertEquals(0, queue.getSwapInWaitCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testSwapInWaitCountedWhenPrefetchIncomplete() {
+        final Executor delayedExecutor = command -> new Thread(() -> {
+            try {
+                Thread.sleep(250L);
+            } catch (final InterruptedException ie) {
+            }
+            command.run();
+        }).start();
+
+        queue = new StandardFlowFileQueue("id", connection, flowFileRepo, provRepo, claimManager, scheduler, swapManager, null, 10000,
+            delayedExecutor, 0);
+
+        for (int i = 1; i <= 20000; i++) {
+            queue.put(new TestFlowFile());
+        }
+
+        final Set<FlowFileRecord> expired = Collections.emptySet();
+        for (int i = 0; i < 20000; i++) {
+            assertNotNull(queue.poll(expired));
+        }
+
+        assertNull(queue.poll(expired));
+        assertEquals(1, swapManager.swapInCalledCount);
+        assertEquals(1, queue.getSwapInCount());
+        assertEquals(1, queue.getSwapInWaitCount());
+    }
+
+    @Test(timeout = 120000)
+    public void testDropSwappedFlowFilesWithPendingSwapIn() {
+        final List<Runnable> swapInTasks = new ArrayList<>();
+        queue = new StandardFlowFileQueue("id", connection, flowFileRepo, provRepo, claimManager, scheduler, swapManager, null, 10000,
+            swapInTasks::add, 5000);
+
+        for (int i = 1; i <= 30000; i++) {
+            queue.put(new TestFlowFile());
+        }
+        assertEquals(2, swapManager.swappedOut.size());
+
+        final Set<FlowFileRecord> expired = Collections.emptySet();
+        for (int i = 0; i < 5001; i++) {
+            queue.acknowledge(queue.poll(expired));
+        }
+        assertEquals(1, swapInTasks.size());
+        swapInTasks.get(0).run();
+
+        final DropFlowFileStatus status = queue.dropFlowFiles("1", "Unit Test");
+        while (status.getState() != DropFlowFileState.COMPLETE) {
+            try {
+                Thread.sleep(100L);
+            } catch (final Exception e) {
+            }
+        }
+
+        assertEquals(0, queue.size().getObjectCount());
+        assertEquals(0, queue.size().getByteCount());
+        assertEquals(0, swapManager.swappedOut.size());
+        assertEquals(2, swapManager.swapInCalledCount);
+    }
+
+    @Test(timeout = 120000)
+    public void testDropFlowFilesWhileSwapInInProgress() throws InterruptedException {
+        final List<Runnable> swapInTasks = new ArrayList<>();
+        queue = new StandardFlowFileQueue("id", connection, flowFileRepo, provRepo, claimManager, scheduler, swapManager, null, 10000,
+            swapInTasks::add, 5000);
+
+        for (int i = 1; i <= 30000; i++) {
+            queue.put(new TestFlowFile());
+        }
+        assertEquals(2, swapManager.swappedOut.size());
+
+        final Set<FlowFileRecord> expired = Collections.emptySet();
+        for (int i = 0; i < 5001; i++) {
+            queue.acknowledge(queue.poll(expired));
+        }
+        assertEquals(1, swapInTasks.size());
+        assertEquals(0, swapManager.swapInCalledCount);
+
+        // the swap file has not been read yet, so the drop must wait for it rather than completing without its FlowFiles
+        final DropFlowFileStatus status = queue.dropFlowFiles("1", "Unit Test");
+        Thread.sleep(250L);
+        assertNotEquals(DropFlowFileState.COMPLETE, status.getState());
+
+        // finish reading the swap file while the drop request holds the queue's lock
+        swapInTasks.get(0).run();
+        while (status.getState() != DropFlowFileState.COMPLETE) {
+            assertNotEquals(DropFlowFileState.FAILURE, status.getState());
+            Thread.sleep(100L);
+        }
+
+        assertEquals(24999, status.getDroppedSize().getObjectCount());
+        assertEquals(0, queue.size().getObjectCount());
+        assertEquals(0, queue.size().getByteCount());
+        assertEquals(0, swapManager.swappedOut.size());
+        assertEquals(2, swapManager.swapInCalledCount);
+
+        assertNull(queue.poll(expired));
+        assertEquals(1, swapInTasks.size());
+    }
+
+    @Test
+    public void testFifoPollSkipsPenalizedHead() throws InterruptedException {
+        final TestFlowFile penalized = new TestFlowFile().penalize(60000L);
+        queue.put(penalized);
+        for (int i = 0; i < 5; i++) {
+            queue.put(new TestFlowFile());
+        }
+
+        final Set<FlowFileRecord> expired = new HashSet<>();
+        final FlowFileRecord first = queue.poll(expired);
+        assertNotNull(first);
+        assertEquals(1L, first.getId());
+
+        final List<FlowFileRecord> batch = queue.poll(2, expired);
+        assertEquals(2, batch.size());
+        assertEquals(2L, batch.get(0).getId());
+        assertEquals(3L, batch.get(1).getId());
+
+        final List<FlowFileRecord> filtered = queue.poll(new FlowFileFilter() {
+            @Override
+            public FlowFileFilterResult filter(final FlowFile flowFile) {
+                return FlowFileFilterResult.ACCEPT_AND_CONTINUE;
+            }
+        }, expired);
+        assertEquals(2, filtered.size());
+        assertEquals(4L, filtered.get(0).getId());
+        assertEquals(5L, filtered.get(1).getId());
+
+        // only the penalized FlowFile is left, and it still counts as queued
+        assertNull(queue.poll(expired));
+        assertTrue(queue.poll(10, expired).isEmpty());
+        assertEquals(1, queue.getActiveQueueSize().getObjectCount());
+        assertTrue(expired.isEmpty());
+
+        // once its penalty expires, it comes ahead of FlowFiles that were queued after it was set aside
+        final TestFlowFile shortPenalty = new TestFlowFile().penalize(50L);
+        queue.put(shortPenalty);
+        queue.put(new TestFlowFile());
+        assertEquals(7L, queue.poll(expired).getId());
+        Thread.sleep(100L);
+        assertEquals(6L, queue.poll(expired).getId());
+        assertNull(queue.poll(expired));
+        assertEquals(1, queue.getActiveQueueSize().getObjectCount());
+    }
+
+    @Test
+    public void testSwapOutForMemory() {
+        for (int i = 0; i < 15000; i++) {
+            queue.put(new TestFlowFile());
+        }
+
+        // 10,000 on the active queue and 5,000 on the swap queue, nothing written to disk yet
+        assertEquals(0, swapManager.swappedOut.size());
+        assertEquals(10000, queue.getActiveQueueSize().getObjectCount());
+
+        assertEquals(10000, queue.swapOutForMemory(10000));
+        assertEquals(1, swapManager.swappedOut.size());
+        assertEquals(5000, queue.getActiveQueueSize().getObjectCount());
+        assertEquals(5000, queue.getActiveQueueLimit());
+        assertEquals(15000, queue.size().getObjectCount());
+
+        // new FlowFiles must not go onto the active queue ahead of those that were swapped out
+        queue.put(new TestFlowFile());
+        assertEquals(5000, queue.getActiveQueueSize().getObjectCount());
+
+        final Set<FlowFileRecord> expired = Collections.emptySet();
+        for (long i = 0; i < 15001; i++) {
+            final FlowFileRecord flowFile = queue.poll(expired);
+            assertNotNull(flowFile);
+            assertEquals(i, flowFile.getId());
+        }
+        assertNull(queue.poll(expired));
+
+        assertTrue(queue.increaseActiveQueueLimit(10000));
+        assertEquals(10000, queue.getActiveQueueLimit());
+        assertFalse(queue.increaseActiveQueueLimit(10000));
+    }
+
+    @Test
+    public void testEstimatedHeapBytes() {
+        assertEquals(0L, queue.getEstimatedHeapBytes());
+
+        for (int i = 0; i < 10; i++) {
+            final Map<String, String> attributes = new HashMap<>();
+            attributes.put("filename", "file-" + i + ".txt");
+            queue.put(new TestFlowFile(attributes, 1L));
+        }
+
+        final long perFlowFile = queue.getAverageFlowFileHeapBytes();
+        assertTrue(perFlowFile > QueueMemoryManager.FLOWFILE_HEAP_OVERHEAD);
+        assertEquals(10 * perFlowFile, queue.getEstimatedHeapBytes());
+
+        // polled FlowFiles are still held in memory until they are acknowledged
+        final List<FlowFileRecord> polled = queue.poll(5, new HashSet<FlowFileRecord>());
+        assertEquals(10 * perFlowFile, queue.getEstimatedHeapBytes());
+
+        queue.acknowledge(polled);
+        assertEquals(5 * perFlowFile, queue.getEstimatedHeapBytes());
+    }
+
+    @Test
+    public void testQueueMemoryManagerSwapsOutLargestQueueFirst() {
+        final StandardFlowFileQueue smallQueue = new StandardFlowFileQueue("small", connection, flowFileRepo, provRepo, claimManager, scheduler, swapManager, null, 20000);
+        final StandardFlowFileQueue largeQueue = new StandardFlowFileQueue("large", connection, flowFileRepo, provRepo, claimManager, scheduler, swapManager, null, 20000);
+        for (int i = 0; i < 12000; i++) {
+            smallQueue.put(new TestFlowFile());
+        }
+        for (int i = 0; i < 20000; i++) {
+            largeQueue.put(new TestFlowFile());
+        }
+
+        final Connection smallConnection = Mockito.mock(Connection.class);
+        Mockito.when(smallConnection.getFlowFileQueue()).thenReturn(smallQueue);
+        final Connection largeConnection = Mockito.mock(Connection.class);
+        Mockito.when(largeConnection.getFlowFileQueue()).thenReturn(largeQueue);
+        final List<Connection> connections = new ArrayList<>();
+        connections.add(smallConnection);
+        connections.add(largeConnection);
+
+        // allow room for roughly 25,000 FlowFiles; neither queue has been polled, so neither is cold
+        final long budget = 25000 * largeQueue.getAverageFlowFileHeapBytes();
+        final QueueMemoryManager manager = new QueueMemoryManager(budget, 60000L, () -> connections);
+        assertEquals(smallQueue.getEstimatedHeapBytes() + largeQueue.getEstimatedHeapBytes(), manager.getEstimatedHeapBytes());
+
+        manager.enforceBudget();
+        assertEquals(12000, smallQueue.getActiveQueueSize().getObjectCount());
+        assertEquals(10000, largeQueue.getActiveQueueSize().getObjectCount());
+        assertEquals(1, swapManager.swappedOut.size());
+        assertTrue(manager.getEstimatedHeapBytes() <= budget);
+
+        // now within the budget, so nothing more is swapped out and the limit is raised only gradually
+        manager.enforceBudget();
+        assertEquals(1, swapManager.swappedOut.size());
+        assertTrue(largeQueue.getActiveQueueLimit() < 20000);
+    }
+
     @Test(timeout = 5000)
     public void testListFlowFilesOnlyActiveQueue() throws InterruptedException {
         for (int i = 0; i < 9999; i++) {
@@ -604,6 +1034,7 @@ public class TestStandardFlowFileQueue {
         private final long entryDate = System.currentTimeMillis();
         private final Map<String, String> attributes;
         private final long size;
+        private volatile long penaltyExpiration = 0L;
 
         public TestFlowFile() {
             this(1L);
@@ -652,9 +1083,14 @@ public class TestStandardFlowFileQueue {
             return Collections.emptySet();
         }
 
+        public TestFlowFile penalize(final long millis) {
+            penaltyExpiration = System.currentTimeMillis() + millis;
+            return this;
+        }
+
         @Override
         public boolean isPenalized() {
-            return false;
+            return penaltyExpiration > System.currentTimeMillis();
         }
 
         @Override
@@ -680,7 +1116,7 @@ public class TestStandardFlowFileQueue {
 
         @Override
         public long getPenaltyExpirationMillis() {
-            return 0;
+            return penaltyExpiration;
         }
 
         @Override
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestArchiveIndex {
+
+    private final File indexFile = new File("target/" + TestArchiveIndex.class.getSimpleName() + "/" + ArchiveIndex.FILENAME);
+
+    @Before
+    public void setup() throws IOException {
+        Files.createDirectories(indexFile.getParentFile().toPath());
+        Files.deleteIfExists(indexFile.toPath());
+    }
+
+    @Test
+    public void testEntriesAreReturnedInOrderAppended() throws IOException {
+        try (final ArchiveIndex index = new ArchiveIndex(indexFile.toPath())) {
+            index.append("1", "1000-1", 10L, 1000L);
+            index.append("2", "1001-2", 20L, 1001L);
+
+            // appended entries cannot be read until synced
+            assertNull(index.peek());
+            assertEquals(0L, index.getEntryCount());
+
+            index.sync();
+            assertEquals(2L, index.getEntryCount());
+
+            final ArchiveIndex.Entry first = index.poll();
+            assertEquals("1", first.getSection());
+            assertEquals("1000-1", first.getId());
+            assertEquals(10L, first.getSize());
+            assertEquals(1000L, first.getLastModTime());
+
+            assertEquals("1001-2", index.peek().getId());
+            assertEquals("1001-2", index.poll().getId());
+            assertNull(index.poll());
+            assertEquals(0L, index.getEntryCount());
+        }
+    }
+
+    @Test
+    public void testRemovalsAreRestoredOnlyIfSynced() throws IOException {
+        final ArchiveIndex killed = new ArchiveIndex(indexFile.toPath());
+        try {
+            for (int i = 0; i < 5; i++) {
+                killed.append("1", "100" + i + "-" + i, 10L, 1000L + i);
+            }
+            killed.sync();
+
+            killed.poll();
+            killed.sync();
+            killed.poll();
+
+            // appended but not synced when NiFi is killed
+            killed.append("1", "1005-5", 10L, 1005L);
+
+            try (final ArchiveIndex index = new ArchiveIndex(indexFile.toPath())) {
+                assertEquals(4L, index.getEntryCount());
+                assertEquals("1001-1", index.peek().getId());
+            }
+        } finally {
+            killed.close();
+        }
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        final int entryCount = 500000;
+        try (final ArchiveIndex index = new ArchiveIndex(indexFile.toPath())) {
+            for (int i = 0; i < entryCount; i++) {
+                index.append(String.valueOf(i % 1024), "1460000000000-" + i, i, 1460000000000L + i);
+            }
+            index.sync();
+            final long fullLength = indexFile.length();
+
+            for (int i = 0; i < entryCount - 10; i++) {
+                index.poll();
+            }
+            index.sync();
+
+            assertTrue(indexFile.length() < fullLength / 100);
+            assertEquals(10L, index.getEntryCount());
+            assertEquals("1460000000000-" + (entryCount - 10), index.peek().getId());
+        }
+
+        try (final ArchiveIndex index = new ArchiveIndex(indexFile.toPath())) {
+            assertEquals(10L, index.getEntryCount());
+            for (int i = entryCount - 10; i < entryCount; i++) {
+                assertEquals(i, index.poll().getSize());
+            }
+            assertNull(index.poll());
+        }
+    }
+}
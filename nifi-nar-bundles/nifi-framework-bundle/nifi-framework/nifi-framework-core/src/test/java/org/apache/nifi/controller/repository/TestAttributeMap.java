@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.junit.Test;
+
+public class TestAttributeMap {
+
+    @Test
+    public void testDerivedFlowFilesShareStorage() {
+        final FlowFileRecord original = new StandardFlowFileRecord.Builder()
+            .id(1L)
+            .addAttribute("uuid", "11111111-1111-1111-1111-111111111111")
+            .addAttribute("filename", "original.txt")
+            .addAttribute("path", "./")
+            .build();
+
+        // a FlowFile whose attributes are not changed shares the parent's map
+        final FlowFileRecord penalized = new StandardFlowFileRecord.Builder().fromFlowFile(original).penaltyExpirationTime(100L).build();
+        assertSame(original.getAttributes(), penalized.getAttributes());
+
+        // updating an attribute shares the key table
+        final FlowFileRecord renamed = new StandardFlowFileRecord.Builder().fromFlowFile(original).addAttribute("filename", "renamed.txt").build();
+        assertSame(keyTable(original), keyTable(renamed));
+        assertEquals("renamed.txt", renamed.getAttribute("filename"));
+        assertEquals("original.txt", original.getAttribute("filename"));
+
+        // adding the same keys in the same order yields the same key table
+        final FlowFileRecord first = new StandardFlowFileRecord.Builder().fromFlowFile(original).addAttribute("mime.type", "text/plain").build();
+        final FlowFileRecord second = new StandardFlowFileRecord.Builder().fromFlowFile(renamed).addAttribute("mime.type", "application/json").build();
+        assertSame(keyTable(first), keyTable(second));
+        assertEquals(4, second.getAttributes().size());
+    }
+
+    @Test
+    public void testRemoveAttributes() {
+        final FlowFileRecord original = new StandardFlowFileRecord.Builder()
+            .id(1L)
+            .addAttribute("uuid", "11111111-1111-1111-1111-111111111111")
+            .addAttribute("a.1", "1")
+            .addAttribute("b", "2")
+            .addAttribute("a.2", "3")
+            .build();
+
+        final FlowFileRecord removed = new StandardFlowFileRecord.Builder().fromFlowFile(original).removeAttributes(Pattern.compile("a\\..*")).build();
+        assertNull(removed.getAttribute("a.1"));
+        assertNull(removed.getAttribute("a.2"));
+        assertFalse(removed.getAttributes().containsKey("a.1"));
+        assertEquals("2", removed.getAttribute("b"));
+        assertEquals(2, removed.getAttributes().size());
+
+        final List<String> keys = new ArrayList<>(removed.getAttributes().keySet());
+        assertEquals(Arrays.asList("uuid", "b"), keys);
+
+        // the key table is the same as that of a FlowFile that was created with only the remaining keys
+        final FlowFileRecord created = new StandardFlowFileRecord.Builder()
+            .id(2L)
+            .addAttribute("uuid", "22222222-2222-2222-2222-222222222222")
+            .addAttribute("b", "4")
+            .build();
+        assertSame(keyTable(created), keyTable(removed));
+
+        final FlowFileRecord readded = new StandardFlowFileRecord.Builder().fromFlowFile(removed).addAttribute("a.1", "5").build();
+        assertEquals("5", readded.getAttribute("a.1"));
+        assertEquals(3, readded.getAttributes().size());
+    }
+
+    @Test
+    public void testEqualToHashMap() {
+        final Map<String, String> expected = new HashMap<>();
+        expected.put("uuid", "11111111-1111-1111-1111-111111111111");
+        expected.put("filename", "file.txt");
+        expected.put("empty", "");
+
+        final FlowFile flowFile = new StandardFlowFileRecord.Builder().id(1L).addAttributes(expected).build();
+        assertEquals(expected, flowFile.getAttributes());
+        assertEquals(expected.hashCode(), flowFile.getAttributes().hashCode());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        final FlowFile flowFile = new StandardFlowFileRecord.Builder().id(1L).addAttribute("filename", "file.txt").build();
+        flowFile.getAttributes().put("filename", "other.txt");
+    }
+
+    private AttributeMap.KeyTable keyTable(final FlowFile flowFile) {
+        return ((AttributeMap) flowFile.getAttributes()).getKeyTable();
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.nifi.controller.repository.claim.ContentClaim;
+import org.apache.nifi.controller.repository.claim.StandardContentClaim;
+import org.apache.nifi.controller.repository.claim.StandardResourceClaimManager;
+import org.apache.nifi.controller.repository.util.DiskUtils;
+import org.apache.nifi.stream.io.StreamUtils;
+import org.apache.nifi.util.NiFiProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestCompressedFileSystemRepository {
+
+    private final File rootFile = new File("target/content_repository");
+    private CompressedFileSystemRepository repository;
+
+    @Before
+    public void setup() throws IOException {
+        System.setProperty(NiFiProperties.PROPERTIES_FILE_PATH, "src/test/resources/nifi.properties");
+        if (rootFile.exists()) {
+            DiskUtils.deleteRecursively(rootFile);
+        }
+
+        NiFiProperties.getInstance().setProperty(CompressedFileSystemRepository.BLOCK_SIZE_PROPERTY, "100 B");
+        try {
+            repository = new CompressedFileSystemRepository();
+        } finally {
+            NiFiProperties.getInstance().remove(CompressedFileSystemRepository.BLOCK_SIZE_PROPERTY);
+        }
+        repository.initialize(new StandardResourceClaimManager());
+        repository.purge();
+    }
+
+    @After
+    public void shutdown() {
+        repository.shutdown();
+    }
+
+    private static byte[] createContent(final String prefix, final int lines) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append(prefix).append(",").append(i).append("\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private ContentClaim write(final byte[] content) throws IOException {
+        final ContentClaim claim = repository.create(true);
+        try (final OutputStream out = repository.write(claim)) {
+            out.write(content);
+        }
+        return claim;
+    }
+
+    private byte[] read(final ContentClaim claim) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final InputStream in = repository.read(claim)) {
+            StreamUtils.copy(in, baos);
+        }
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void testClaimsShareCompressedResourceClaim() throws IOException {
+        final byte[] first = createContent("first", 100);
+        final byte[] second = createContent("second", 50);
+        final ContentClaim firstClaim = write(first);
+        final ContentClaim secondClaim = write(second);
+
+        // offsets and lengths refer to the uncompressed content
+        assertEquals(firstClaim.getResourceClaim(), secondClaim.getResourceClaim());
+        assertEquals(0L, firstClaim.getOffset());
+        assertEquals(first.length, firstClaim.getLength());
+        assertEquals(first.length, secondClaim.getOffset());
+        assertEquals(second.length, repository.size(secondClaim));
+
+        assertArrayEquals(first, read(firstClaim));
+        assertArrayEquals(second, read(secondClaim));
+
+        final Path path = rootFile.toPath().resolve(firstClaim.getResourceClaim().getSection()).resolve(firstClaim.getResourceClaim().getId());
+        assertTrue(Files.size(path) < first.length + second.length);
+        assertTrue(repository.getCompressionRatio(firstClaim.getResourceClaim().getContainer()) > 1D);
+    }
+
+    @Test
+    public void testReadFromMiddleOfClaim() throws IOException {
+        final byte[] first = createContent("first", 100);
+        final byte[] second = createContent("second", 100);
+        final ContentClaim firstClaim = write(first);
+        final ContentClaim secondClaim = write(second);
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertEquals(300L, repository.exportTo(secondClaim, baos, 250L, 300L));
+        assertArrayEquals(Arrays.copyOfRange(second, 250, 550), baos.toByteArray());
+
+        final ByteBuffer buffer = repository.map(secondClaim, 333L, 10L);
+        final byte[] mapped = new byte[10];
+        buffer.get(mapped);
+        assertArrayEquals(Arrays.copyOfRange(second, 333, 343), mapped);
+
+        // a claim of unknown length that starts partway into the Resource Claim, as is created when replaying a Provenance Event
+        final StandardContentClaim replayClaim = new StandardContentClaim(firstClaim.getResourceClaim(), 700L);
+        assertEquals(first.length + second.length - 700L, repository.size(replayClaim));
+        try (final InputStream in = repository.read(replayClaim)) {
+            final byte[] content = new byte[50];
+            StreamUtils.fillBuffer(in, content);
+            assertArrayEquals(Arrays.copyOfRange(first, 700, 750), content);
+
+            StreamUtils.skip(in, first.length - 750L + 10L);
+            StreamUtils.fillBuffer(in, content);
+            assertArrayEquals(Arrays.copyOfRange(second, 10, 60), content);
+        }
+
+        final File exported = new File("target/" + getClass().getSimpleName() + ".out");
+        try {
+            assertEquals(100L, repository.exportTo(secondClaim, exported.toPath(), false, 50L, 100L));
+            assertArrayEquals(Arrays.copyOfRange(second, 50, 150), Files.readAllBytes(exported.toPath()));
+        } finally {
+            exported.delete();
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void testMapBeyondEndOfContent() throws IOException {
+        final ContentClaim claim = write(createContent("content", 10));
+        repository.map(claim, 50L, claim.getLength());
+    }
+
+    @Test
+    public void testImportIncompressibleContentFromChannel() throws IOException {
+        final byte[] content = new byte[1000];
+        new Random(1L).nextBytes(content);
+
+        final File source = new File("target/" + getClass().getSimpleName() + ".in");
+        Files.write(source.toPath(), content);
+        try {
+            final ContentClaim claim = repository.create(true);
+            try (final FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+                assertEquals(1000L, repository.importFrom(channel, claim));
+            }
+
+            assertArrayEquals(content, read(claim));
+
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            repository.exportTo(claim, Channels.newChannel(baos), 995L, 5L);
+            assertArrayEquals(Arrays.copyOfRange(content, 995, 1000), baos.toByteArray());
+        } finally {
+            source.delete();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.apache.nifi.controller.repository.claim.ContentClaim;
+import org.apache.nifi.controller.repository.claim.DeduplicatedContentClaim;
+import org.apache.nifi.controller.repository.claim.StandardContentClaim;
+import org.apache.nifi.controller.repository.claim.StandardResourceClaimManager;
+import org.apache.nifi.controller.repository.util.DiskUtils;
+import org.apache.nifi.stream.io.StreamUtils;
+import org.apache.nifi.util.NiFiProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestDeduplicatingContentRepository {
+
+    private final File rootFile = new File("target/content_repository");
+    private final File indexDirectory = new File("target/content_dedup_repository");
+    private StandardResourceClaimManager claimManager;
+    private DeduplicatingContentRepository repository;
+
+    @Before
+    public void setup() throws IOException {
+        System.setProperty(NiFiProperties.PROPERTIES_FILE_PATH, "src/test/resources/nifi.properties");
+        if (rootFile.exists()) {
+            DiskUtils.deleteRecursively(rootFile);
+        }
+        if (indexDirectory.exists()) {
+            DiskUtils.deleteRecursively(indexDirectory);
+        }
+
+        claimManager = new StandardResourceClaimManager();
+        repository = new DeduplicatingContentRepository(new FileSystemRepository(), indexDirectory.toPath());
+        repository.initialize(claimManager);
+        repository.purge();
+    }
+
+    @After
+    public void shutdown() {
+        repository.shutdown();
+    }
+
+    private static byte[] createContent(final char c, final int length) {
+        final byte[] content = new byte[length];
+        Arrays.fill(content, (byte) c);
+        return content;
+    }
+
+    private ContentClaim write(final byte[] content) throws IOException {
+        final ContentClaim claim = repository.create(true);
+        try (final OutputStream out = repository.write(claim)) {
+            out.write(content);
+        }
+        return claim;
+    }
+
+    private byte[] read(final ContentClaim claim) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final InputStream in = repository.read(claim)) {
+            StreamUtils.copy(in, baos);
+        }
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void testIdenticalContentReferencesExistingClaim() throws IOException {
+        final byte[] content = createContent('a', 4096);
+        final ContentClaim original = write(content);
+        final ContentClaim other = write(createContent('b', 4096));
+        final ContentClaim duplicate = write(content);
+
+        assertFalse(((DeduplicatedContentClaim) original).isDeduplicated());
+        assertFalse(((DeduplicatedContentClaim) other).isDeduplicated());
+        assertTrue(((DeduplicatedContentClaim) duplicate).isDeduplicated());
+
+        assertEquals(original.getResourceClaim(), duplicate.getResourceClaim());
+        assertEquals(original.getOffset(), duplicate.getOffset());
+        assertEquals(content.length, duplicate.getLength());
+        assertArrayEquals(content, read(duplicate));
+
+        // the original and the duplicate each hold a reference to the content, along with the other claim that shares the Resource Claim
+        assertEquals(3, repository.getClaimantCount(original));
+        assertEquals(1L, repository.getDeduplicatedCount());
+        assertEquals(4096L, repository.getBytesSaved());
+
+        final ContentClaim clone = repository.clone(original, true);
+        assertTrue(((DeduplicatedContentClaim) clone).isDeduplicated());
+        assertEquals(8192L, repository.getBytesSaved());
+    }
+
+    @Test
+    public void testEqualityMatchesStandardContentClaim() throws IOException {
+        final byte[] content = createContent('a', 4096);
+        final ContentClaim original = write(content);
+        final ContentClaim other = write(createContent('b', 4096));
+        final ContentClaim duplicate = write(content);
+
+        final StandardContentClaim standard = new StandardContentClaim(original.getResourceClaim(), original.getOffset());
+        assertEquals(standard, original);
+        assertEquals(original, standard);
+        assertEquals(standard.hashCode(), original.hashCode());
+
+        // once deduplicated, a claim is equal to the claim whose content it references
+        assertEquals(original, duplicate);
+        assertEquals(original.hashCode(), duplicate.hashCode());
+        assertNotEquals(original, other);
+    }
+
+    @Test
+    public void testSmallContentIsNotDeduplicated() throws IOException {
+        final byte[] content = createContent('a', DeduplicatingContentRepository.MIN_CONTENT_SIZE - 1);
+        write(content);
+        final ContentClaim duplicate = write(content);
+
+        assertFalse(((DeduplicatedContentClaim) duplicate).isDeduplicated());
+        assertEquals(0, repository.getIndexSize());
+    }
+
+    @Test
+    public void testContentNoLongerReferencedIsNotShared() throws IOException {
+        // large enough that each claim is written to its own Resource Claim
+        final byte[] content = createContent('a', 1024 * 1024);
+        final ContentClaim original = write(content);
+        assertEquals(0, repository.decrementClaimantCount(original));
+
+        final ContentClaim rewritten = write(content);
+        assertFalse(((DeduplicatedContentClaim) rewritten).isDeduplicated());
+        assertEquals(0, repository.getClaimantCount(original));
+
+        // the index now refers to the content that was just written
+        final ContentClaim duplicate = write(content);
+        assertTrue(((DeduplicatedContentClaim) duplicate).isDeduplicated());
+        assertEquals(rewritten.getOffset(), duplicate.getOffset());
+    }
+
+    @Test
+    public void testIndexIsRestoredAfterRestart() throws IOException {
+        final byte[] content = createContent('a', 4096);
+        final ContentClaim original = write(content);
+        repository.shutdown();
+        assertTrue(new File(indexDirectory, DeduplicatingContentRepository.INDEX_FILENAME).exists());
+
+        claimManager.purge();
+        repository = new DeduplicatingContentRepository(new FileSystemRepository(), indexDirectory.toPath());
+        repository.initialize(claimManager);
+        assertEquals(1, repository.getIndexSize());
+
+        // the FlowFile Repository restores the reference to the content when it is loaded
+        claimManager.incrementClaimantCount(original.getResourceClaim());
+        final ContentClaim duplicate = write(content);
+        assertTrue(((DeduplicatedContentClaim) duplicate).isDeduplicated());
+        assertArrayEquals(content, read(duplicate));
+    }
+}
@@ -24,11 +24,15 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
@@ -189,6 +193,118 @@ public class TestFileSystemRepository {
         assertEquals(claim1.getResourceClaim(), claim3.getResourceClaim());
     }
 
+    @Test(timeout = 20000)
+    public void testLoadAwareContainerSelection() throws IOException, InterruptedException {
+        shutdown();
+
+        final File secondContainer = new File("target/content_repository_second");
+        if (secondContainer.exists()) {
+            DiskUtils.deleteRecursively(secondContainer);
+        }
+
+        final NiFiProperties properties = NiFiProperties.getInstance();
+        properties.setProperty(NiFiProperties.CONTENT_REPOSITORY_CONTAINER_SELECTION, FileSystemRepository.CONTAINER_SELECTION_LOAD_AWARE);
+        properties.setProperty(NiFiProperties.REPOSITORY_CONTENT_PREFIX + "second", secondContainer.getPath());
+        try {
+            repository = new FileSystemRepository();
+            repository.initialize(new StandardResourceClaimManager());
+            repository.purge();
+        } finally {
+            properties.remove(NiFiProperties.CONTENT_REPOSITORY_CONTAINER_SELECTION);
+            properties.remove(NiFiProperties.REPOSITORY_CONTENT_PREFIX + "second");
+        }
+        assertEquals(2, repository.getContainerNames().size());
+
+        final byte[] content = new byte[64 * 1024];
+        Arrays.fill(content, (byte) 'A');
+        final List<ContentClaim> claims = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final ContentClaim claim = repository.create(false);
+            try (final OutputStream out = repository.write(claim)) {
+                out.write(content);
+            }
+            claims.add(claim);
+        }
+
+        for (final ContentClaim claim : claims) {
+            try (final InputStream in = repository.read(claim)) {
+                assertEquals(content.length, StreamUtils.copy(in, new ByteArrayOutputStream()));
+            }
+        }
+
+        // write latency and throughput are averaged once per second
+        long throughput = 0L;
+        while (throughput == 0L) {
+            Thread.sleep(100L);
+            throughput = repository.getWriteThroughput("default") + repository.getWriteThroughput("second");
+        }
+        assertTrue(repository.getAverageWriteNanos("default") > 0L || repository.getAverageWriteNanos("second") > 0L);
+    }
+
+    @Test
+    public void testGroupCommitSync() throws IOException, InterruptedException {
+        shutdown();
+
+        final NiFiProperties properties = NiFiProperties.getInstance();
+        properties.setProperty("nifi.content.repository.always.sync", "true");
+        properties.setProperty(NiFiProperties.CONTENT_REPOSITORY_ALWAYS_SYNC_WINDOW, "20 millis");
+        try {
+            repository = new FileSystemRepository();
+            repository.initialize(new StandardResourceClaimManager());
+            repository.purge();
+        } finally {
+            properties.remove("nifi.content.repository.always.sync");
+            properties.remove(NiFiProperties.CONTENT_REPOSITORY_ALWAYS_SYNC_WINDOW);
+        }
+
+        final GroupCommitSyncer syncer = repository.getGroupCommitSyncer();
+        assertNotNull(syncer);
+
+        final int threadCount = 4;
+        final int writesPerThread = 10;
+        final List<ContentClaim> claims = Collections.synchronizedList(new ArrayList<ContentClaim>());
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < writesPerThread; j++) {
+                            final ContentClaim claim = repository.create(false);
+                            try (final OutputStream out = repository.write(claim)) {
+                                out.write("Hello, World".getBytes());
+                            }
+                            claims.add(claim);
+                        }
+                    } catch (final Throwable t) {
+                        failures.add(t);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertEquals(threadCount * writesPerThread, claims.size());
+        for (final ContentClaim claim : claims) {
+            try (final InputStream in = repository.read(claim)) {
+                final byte[] buffer = new byte[12];
+                StreamUtils.fillBuffer(in, buffer);
+                assertEquals("Hello, World", new String(buffer));
+            }
+        }
+
+        assertEquals(threadCount * writesPerThread, syncer.getRequestCount());
+        assertTrue(syncer.getSyncCount() > 0);
+        assertTrue(syncer.getSyncCount() <= syncer.getRequestCount());
+    }
+
     @Test
     public void testResourceClaimNotReusedAfterRestart() throws IOException, InterruptedException {
         final ContentClaim claim1 = repository.create(false);
@@ -326,6 +442,80 @@ public class TestFileSystemRepository {
         assertTrue(Arrays.equals(data, Files.readAllBytes(claimPath)));
     }
 
+    @Test
+    public void testImportFromAndExportToChannel() throws IOException {
+        // write a first claim so that the imported claim starts part of the way into the resource claim
+        final ContentClaim firstClaim = repository.create(false);
+        try (final OutputStream out = repository.write(firstClaim)) {
+            out.write("first".getBytes());
+        }
+
+        final ContentClaim claim = repository.create(false);
+        assertEquals(firstClaim.getResourceClaim(), claim.getResourceClaim());
+
+        final byte[] expected = Files.readAllBytes(helloWorldFile.toPath());
+        try (final FileChannel source = FileChannel.open(helloWorldFile.toPath(), StandardOpenOption.READ)) {
+            assertEquals(expected.length, repository.importFrom(source, claim));
+        }
+
+        assertEquals(5L, claim.getOffset());
+        assertEquals(expected.length, claim.getLength());
+
+        // the resource claim can still be appended to after the import
+        final ContentClaim lastClaim = repository.create(false);
+        try (final OutputStream out = repository.write(lastClaim)) {
+            out.write("last".getBytes());
+        }
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final InputStream in = repository.read(claim)) {
+            StreamUtils.copy(in, baos);
+        }
+        assertTrue(Arrays.equals(expected, baos.toByteArray()));
+
+        final ByteArrayOutputStream channelOut = new ByteArrayOutputStream();
+        assertEquals(expected.length - 2, repository.exportTo(claim, Channels.newChannel(channelOut), 2L, expected.length - 2));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(expected, 2, expected.length), channelOut.toByteArray()));
+
+        final ByteArrayOutputStream lastOut = new ByteArrayOutputStream();
+        repository.exportTo(lastClaim, Channels.newChannel(lastOut), 0L, 4L);
+        assertEquals("last", new String(lastOut.toByteArray()));
+    }
+
+    @Test
+    public void testMap() throws IOException {
+        final ContentClaim firstClaim = repository.create(false);
+        try (final OutputStream out = repository.write(firstClaim)) {
+            out.write("first".getBytes());
+        }
+
+        final ContentClaim claim = repository.create(false);
+        try (final OutputStream out = repository.write(claim)) {
+            out.write("Hello, World".getBytes());
+        }
+
+        final ByteBuffer buffer = repository.map(claim, 7L, 5L);
+        assertTrue(buffer.isReadOnly());
+        assertEquals(0, buffer.position());
+        assertEquals(5, buffer.limit());
+
+        final byte[] bytes = new byte[5];
+        buffer.get(bytes);
+        assertEquals("World", new String(bytes));
+
+        assertEquals(0, repository.map(claim, 0L, 0L).remaining());
+    }
+
+    @Test(expected = EOFException.class)
+    public void testMapBeyondEndOfClaim() throws IOException {
+        final ContentClaim claim = repository.create(false);
+        try (final OutputStream out = repository.write(claim)) {
+            out.write("Hello".getBytes());
+        }
+
+        repository.map(claim, 2L, 10L);
+    }
+
     @Test
     public void testExportToOutputStream() throws IOException {
         final ContentClaim claim = repository.create(true);
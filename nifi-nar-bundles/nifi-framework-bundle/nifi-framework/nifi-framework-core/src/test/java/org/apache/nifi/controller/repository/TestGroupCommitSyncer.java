@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.nifi.controller.repository.claim.ResourceClaim;
+import org.apache.nifi.controller.repository.claim.StandardResourceClaimManager;
+import org.junit.Test;
+
+public class TestGroupCommitSyncer {
+
+    @Test
+    public void testConcurrentRequestsShareOneSync() throws IOException, InterruptedException {
+        final File file = new File("target/" + getClass().getSimpleName() + ".bin");
+        final ResourceClaim resourceClaim = new StandardResourceClaimManager().newResourceClaim("container", "section", "1", false);
+        final GroupCommitSyncer syncer = new GroupCommitSyncer(500L, TimeUnit.MILLISECONDS);
+
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final int threadCount = 5;
+            final CountDownLatch startLatch = new CountDownLatch(1);
+            final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+            final List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                final Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            startLatch.await();
+                            channel.write(ByteBuffer.wrap("Hello".getBytes()));
+                            syncer.sync(resourceClaim, channel);
+                        } catch (final Throwable t) {
+                            failures.add(t);
+                        }
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+
+            startLatch.countDown();
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+
+            assertTrue(failures.toString(), failures.isEmpty());
+            assertEquals(threadCount, syncer.getRequestCount());
+            assertEquals(1L, syncer.getSyncCount());
+            assertEquals(threadCount, syncer.getMaxBatchSize());
+
+            // a request made after the batch has been synced requires a sync of its own
+            syncer.sync(resourceClaim, channel);
+            assertEquals(2L, syncer.getSyncCount());
+
+            syncer.resetStatistics();
+            assertEquals(0L, syncer.getRequestCount());
+            assertEquals(0L, syncer.getSyncCount());
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    @Test
+    public void testRegisteredRequestIsSatisfiedByWriterThatClosesFile() throws IOException {
+        final File file = new File("target/" + getClass().getSimpleName() + "-registered.bin");
+        final ResourceClaim resourceClaim = new StandardResourceClaimManager().newResourceClaim("container", "section", "3", false);
+        final GroupCommitSyncer syncer = new GroupCommitSyncer(1L, TimeUnit.MILLISECONDS);
+
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            // the first writer registers its request and hands the file to a second writer, which syncs and closes it
+            channel.write(ByteBuffer.wrap("Hello".getBytes()));
+            final GroupCommitSyncer.SyncRequest request = syncer.register(resourceClaim);
+
+            channel.write(ByteBuffer.wrap("World".getBytes()));
+            syncer.sync(resourceClaim, channel);
+            syncer.remove(resourceClaim);
+            channel.close();
+
+            // the first writer's data was synced before the file was closed, so it must not fail on the closed channel
+            request.await(channel);
+            assertEquals(1L, syncer.getSyncCount());
+        } finally {
+            channel.close();
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    @Test
+    public void testSyncFailureIsReportedToRequester() throws IOException {
+        final File file = new File("target/" + getClass().getSimpleName() + "-closed.bin");
+        final ResourceClaim resourceClaim = new StandardResourceClaimManager().newResourceClaim("container", "section", "2", false);
+        final GroupCommitSyncer syncer = new GroupCommitSyncer(1L, TimeUnit.MILLISECONDS);
+
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.close();
+        try {
+            syncer.sync(resourceClaim, channel);
+            fail("Expected sync of closed channel to fail");
+        } catch (final IOException expected) {
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.nifi.controller.repository.claim.ContentClaim;
+import org.apache.nifi.controller.repository.claim.InlineContentClaim;
+import org.apache.nifi.controller.repository.claim.StandardResourceClaimManager;
+import org.apache.nifi.controller.repository.util.DiskUtils;
+import org.apache.nifi.stream.io.StreamUtils;
+import org.apache.nifi.util.NiFiProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestInlineContentRepository {
+
+    private final File rootFile = new File("target/content_repository");
+    private FileSystemRepository delegate;
+    private InlineContentRepository repository;
+
+    @Before
+    public void setup() throws IOException {
+        System.setProperty(NiFiProperties.PROPERTIES_FILE_PATH, "src/test/resources/nifi.properties");
+        if (rootFile.exists()) {
+            DiskUtils.deleteRecursively(rootFile);
+        }
+        delegate = new FileSystemRepository();
+        repository = new InlineContentRepository(delegate, 16);
+        repository.initialize(new StandardResourceClaimManager());
+        repository.purge();
+    }
+
+    @After
+    public void shutdown() {
+        repository.shutdown();
+    }
+
+    private byte[] read(final ContentClaim claim) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final InputStream in = repository.read(claim)) {
+            StreamUtils.copy(in, baos);
+        }
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void testSmallContentIsHeldInline() throws IOException {
+        final ContentClaim claim = repository.create(true);
+        try (final OutputStream out = repository.write(claim)) {
+            out.write("Hello".getBytes(StandardCharsets.UTF_8));
+            out.write(", World".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertTrue(claim instanceof InlineContentClaim);
+        assertTrue(((InlineContentClaim) claim).isInline());
+        assertNull(claim.getResourceClaim());
+        assertEquals(12L, claim.getLength());
+        assertEquals(12L, repository.size(claim));
+        assertEquals("Hello, World", new String(read(claim), StandardCharsets.UTF_8));
+
+        final ByteBuffer buffer = repository.map(claim, 7L, 5L);
+        assertTrue(buffer.isReadOnly());
+        assertEquals(5, buffer.remaining());
+        assertEquals('W', buffer.get(0));
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertEquals(5L, repository.exportTo(claim, baos, 0L, 5L));
+        assertEquals("Hello", new String(baos.toByteArray(), StandardCharsets.UTF_8));
+
+        assertEquals(0, repository.incrementClaimaintCount(claim));
+        assertEquals(0, repository.decrementClaimantCount(claim));
+        assertTrue(repository.remove(claim));
+        assertTrue(repository.isAccessible(claim));
+    }
+
+    @Test
+    public void testContentIsPromotedWhenThresholdExceeded() throws IOException {
+        final ContentClaim claim = repository.create(true);
+        try (final OutputStream out = repository.write(claim)) {
+            out.write("0123456789".getBytes(StandardCharsets.UTF_8));
+            assertTrue(((InlineContentClaim) claim).isInline());
+
+            out.write("0123456789".getBytes(StandardCharsets.UTF_8));
+            assertFalse(((InlineContentClaim) claim).isInline());
+        }
+
+        final ContentClaim promoted = ((InlineContentClaim) claim).getPromotedClaim();
+        assertNotNull(promoted);
+        assertNotNull(claim.getResourceClaim());
+        assertEquals(promoted.getResourceClaim(), claim.getResourceClaim());
+        assertEquals(20L, repository.size(claim));
+        assertEquals(20L, delegate.size(promoted));
+        assertEquals("01234567890123456789", new String(read(claim), StandardCharsets.UTF_8));
+        assertEquals(1, repository.getClaimantCount(claim));
+    }
+
+    @Test
+    public void testCloneAndMerge() throws IOException {
+        final ContentClaim small = repository.create(true);
+        try (final OutputStream out = repository.write(small)) {
+            out.write("abc".getBytes(StandardCharsets.UTF_8));
+        }
+
+        final ContentClaim large = repository.create(true);
+        try (final OutputStream out = repository.write(large)) {
+            out.write("defghijklmnopqrstuvwxyz".getBytes(StandardCharsets.UTF_8));
+        }
+
+        final ContentClaim clone = repository.clone(small, true);
+        assertTrue(((InlineContentClaim) clone).isInline());
+        assertEquals("abc", new String(read(clone), StandardCharsets.UTF_8));
+
+        final ContentClaim merged = repository.create(true);
+        final long mergedBytes = repository.merge(Arrays.asList(small, large), merged, "[".getBytes(StandardCharsets.UTF_8), "]".getBytes(StandardCharsets.UTF_8),
+            "-".getBytes(StandardCharsets.UTF_8));
+        assertEquals(29L, mergedBytes);
+        assertEquals("[abc-defghijklmnopqrstuvwxyz]", new String(read(merged), StandardCharsets.UTF_8));
+        assertFalse(((InlineContentClaim) merged).isInline());
+    }
+
+    @Test(expected = EOFException.class)
+    public void testMapBeyondEndOfInlineContent() throws IOException {
+        final ContentClaim claim = repository.create(true);
+        try (final OutputStream out = repository.write(claim)) {
+            out.write("Hello".getBytes(StandardCharsets.UTF_8));
+        }
+
+        repository.map(claim, 2L, 10L);
+    }
+
+    @Test
+    public void testZeroThresholdDelegatesButReadsInlineClaims() throws IOException {
+        final InlineContentRepository disabled = new InlineContentRepository(delegate, 0);
+        final ContentClaim claim = disabled.create(true);
+        assertFalse(claim instanceof InlineContentClaim);
+
+        final InlineContentClaim persisted = new InlineContentClaim("Hello".getBytes(StandardCharsets.UTF_8), false);
+        try (final InputStream in = disabled.read(persisted)) {
+            final byte[] content = new byte[5];
+            StreamUtils.fillBuffer(in, content);
+            assertArrayEquals("Hello".getBytes(StandardCharsets.UTF_8), content);
+        }
+    }
+}
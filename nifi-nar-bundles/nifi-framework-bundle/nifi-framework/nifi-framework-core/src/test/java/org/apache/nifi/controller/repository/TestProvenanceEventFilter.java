@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.nifi.provenance.ProvenanceEventRecord;
+import org.apache.nifi.provenance.ProvenanceEventType;
+import org.apache.nifi.provenance.StandardProvenanceEventRecord;
+import org.apache.nifi.util.NiFiProperties;
+import org.junit.Test;
+
+public class TestProvenanceEventFilter {
+
+    private static ProvenanceEventRecord createEvent(final String componentId, final String componentType, final ProvenanceEventType eventType) {
+        final StandardProvenanceEventRecord.Builder builder = new StandardProvenanceEventRecord.Builder()
+            .setEventType(eventType)
+            .setComponentId(componentId)
+            .setComponentType(componentType)
+            .setFlowFileUUID(UUID.randomUUID().toString())
+            .setCurrentContentClaim(null, null, null, null, 0L);
+
+        switch (eventType) {
+            case ROUTE:
+                builder.setRelationship("success");
+                break;
+            case SEND:
+                builder.setTransitUri("nifi://unit-test");
+                break;
+            case FORK:
+                builder.addChildUuid(UUID.randomUUID().toString());
+                break;
+            default:
+                break;
+        }
+
+        return builder.build();
+    }
+
+    @Test
+    public void testComponentPolicies() {
+        final Map<String, String> componentPolicies = new HashMap<>();
+        componentPolicies.put("RouteOnAttribute", "lineage only");
+        componentPolicies.put("update-1", "drop");
+        final ProvenanceEventFilter filter = new ProvenanceEventFilter(componentPolicies, Collections.<ProvenanceEventType, String> emptyMap());
+
+        assertFalse(filter.accept(createEvent("route-1", "RouteOnAttribute", ProvenanceEventType.ROUTE)));
+        assertTrue(filter.accept(createEvent("route-1", "RouteOnAttribute", ProvenanceEventType.FORK)));
+        assertTrue(filter.accept(createEvent("route-1", "RouteOnAttribute", ProvenanceEventType.SEND)));
+
+        assertFalse(filter.accept(createEvent("update-1", "UpdateAttribute", ProvenanceEventType.ATTRIBUTES_MODIFIED)));
+        assertFalse(filter.accept(createEvent("update-1", "UpdateAttribute", ProvenanceEventType.DROP)));
+        assertTrue(filter.accept(createEvent("update-2", "UpdateAttribute", ProvenanceEventType.ATTRIBUTES_MODIFIED)));
+
+        assertEquals(1L, filter.getSuppressedCount(ProvenanceEventType.ROUTE));
+        assertEquals(1L, filter.getSuppressedCount(ProvenanceEventType.ATTRIBUTES_MODIFIED));
+        assertEquals(3L, filter.getSuppressedCount());
+    }
+
+    @Test
+    public void testComponentPolicyTakesPrecedenceOverEventTypePolicy() {
+        final Map<String, String> componentPolicies = Collections.singletonMap("route-1", "lineage only");
+        final Map<ProvenanceEventType, String> eventTypePolicies = Collections.singletonMap(ProvenanceEventType.DROP, "drop");
+        final ProvenanceEventFilter filter = new ProvenanceEventFilter(componentPolicies, eventTypePolicies);
+
+        assertTrue(filter.accept(createEvent("route-1", "RouteOnAttribute", ProvenanceEventType.DROP)));
+        assertFalse(filter.accept(createEvent("route-2", "RouteOnAttribute", ProvenanceEventType.DROP)));
+    }
+
+    @Test
+    public void testSampledEventsAreFilteredLazily() {
+        final Map<ProvenanceEventType, String> eventTypePolicies = Collections.singletonMap(ProvenanceEventType.ATTRIBUTES_MODIFIED, "sample 10");
+        final ProvenanceEventFilter filter = new ProvenanceEventFilter(Collections.<String, String> emptyMap(), eventTypePolicies);
+
+        final List<ProvenanceEventRecord> events = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            events.add(createEvent("update-1", "UpdateAttribute", ProvenanceEventType.ATTRIBUTES_MODIFIED));
+            events.add(createEvent("update-1", "UpdateAttribute", ProvenanceEventType.DROP));
+        }
+
+        final ProvenanceEventFilter.FilteredEvents filtered = filter.filter(events);
+        assertEquals(0L, filtered.getSuppressedCount());
+
+        int accepted = 0;
+        for (final ProvenanceEventRecord event : filtered) {
+            assertTrue(event.getEventType() == ProvenanceEventType.DROP || event.getEventType() == ProvenanceEventType.ATTRIBUTES_MODIFIED);
+            accepted++;
+        }
+
+        assertEquals(110, accepted);
+        assertEquals(90L, filtered.getSuppressedCount());
+        assertEquals(90L, filter.getSuppressedCount(ProvenanceEventType.ATTRIBUTES_MODIFIED));
+    }
+
+    @Test
+    public void testFromProperties() {
+        System.setProperty(NiFiProperties.PROPERTIES_FILE_PATH, "src/test/resources/nifi.properties");
+        final NiFiProperties properties = NiFiProperties.getInstance();
+        assertNull(ProvenanceEventFilter.fromProperties(properties));
+
+        final String componentProperty = NiFiProperties.PROVENANCE_COMPONENT_POLICY_PREFIX + "UpdateAttribute";
+        final String eventTypeProperty = NiFiProperties.PROVENANCE_EVENT_TYPE_POLICY_PREFIX + "attributes_modified";
+        properties.setProperty(componentProperty, "Sample  5");
+        properties.setProperty(eventTypeProperty, "drop");
+        try {
+            final ProvenanceEventFilter filter = ProvenanceEventFilter.fromProperties(properties);
+
+            assertTrue(filter.accept(createEvent("update-1", "UpdateAttribute", ProvenanceEventType.ATTRIBUTES_MODIFIED)));
+            assertFalse(filter.accept(createEvent("update-1", "UpdateAttribute", ProvenanceEventType.ATTRIBUTES_MODIFIED)));
+            assertFalse(filter.accept(createEvent("route-1", "RouteOnAttribute", ProvenanceEventType.ATTRIBUTES_MODIFIED)));
+        } finally {
+            properties.remove(componentProperty);
+            properties.remove(eventTypeProperty);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPolicy() {
+        new ProvenanceEventFilter(Collections.singletonMap("update-1", "sample 0"), Collections.<ProvenanceEventType, String> emptyMap());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidEventType() {
+        System.setProperty(NiFiProperties.PROPERTIES_FILE_PATH, "src/test/resources/nifi.properties");
+        final NiFiProperties properties = NiFiProperties.getInstance();
+        final String eventTypeProperty = NiFiProperties.PROVENANCE_EVENT_TYPE_POLICY_PREFIX + "NOT_AN_EVENT";
+        properties.setProperty(eventTypeProperty, "drop");
+        try {
+            ProvenanceEventFilter.fromProperties(properties);
+        } finally {
+            properties.remove(eventTypeProperty);
+        }
+    }
+}
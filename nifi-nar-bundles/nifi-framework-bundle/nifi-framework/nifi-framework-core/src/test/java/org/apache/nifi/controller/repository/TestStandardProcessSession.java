@@ -35,9 +35,15 @@ import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -460,6 +466,61 @@ public class TestStandardProcessSession {
         assertEquals(4, contentRepo.getClaimsRemoved());
     }
 
+    @Test
+    public void testRollbackKeepsFifoOrder() {
+        for (int i = 0; i < 6; i++) {
+            final FlowFileRecord flowFileRecord = new StandardFlowFileRecord.Builder()
+                .id(i)
+                .addAttribute("uuid", "12345678-1234-1234-1234-12345678901" + i)
+                .entryDate(System.currentTimeMillis())
+                .size(100L)
+                .build();
+            flowFileQueue.put(flowFileRecord);
+        }
+
+        final List<FlowFile> polled = session.get(3);
+        assertEquals(3, polled.size());
+        session.rollback();
+
+        // the rolled back FlowFiles are back at the head of the queue, in their original order
+        final List<FlowFile> repolled = session.get(6);
+        assertEquals(6, repolled.size());
+        for (int i = 0; i < 6; i++) {
+            assertEquals("12345678-1234-1234-1234-12345678901" + i, repolled.get(i).getAttribute("uuid"));
+        }
+
+        session.rollback();
+        assertEquals(6, flowFileQueue.size().getObjectCount());
+        assertEquals(0, flowFileQueue.getUnacknowledgedQueueSize().getObjectCount());
+    }
+
+    @Test
+    public void testGetBySizeAndGroup() {
+        for (int i = 0; i < 6; i++) {
+            final FlowFileRecord flowFileRecord = new StandardFlowFileRecord.Builder()
+                .id(i)
+                .addAttribute("uuid", "12345678-1234-1234-1234-12345678901" + i)
+                .addAttribute("group", i < 4 ? "A" : "B")
+                .entryDate(System.currentTimeMillis())
+                .size(100L)
+                .build();
+            flowFileQueue.put(flowFileRecord);
+        }
+
+        final List<FlowFile> flowFiles = session.get(10, 300L, "group");
+        assertEquals(3, flowFiles.size());
+        for (final FlowFile flowFile : flowFiles) {
+            assertEquals("A", flowFile.getAttribute("group"));
+        }
+
+        assertEquals(3, flowFileQueue.getUnacknowledgedQueueSize().getObjectCount());
+        assertTrue(session.get(0, 300L, "group").isEmpty());
+
+        session.rollback();
+        assertEquals(0, flowFileQueue.getUnacknowledgedQueueSize().getObjectCount());
+        assertEquals(6, flowFileQueue.size().getObjectCount());
+    }
+
     @Test
     public void testForksNotEmittedIfFilesDeleted() throws IOException {
         final FlowFileRecord flowFileRecord = new StandardFlowFileRecord.Builder()
@@ -802,6 +863,35 @@ public class TestStandardProcessSession {
         assertEquals("Hello, World", new String(buff));
     }
 
+    @Test
+    public void testMapContent() throws IOException {
+        FlowFile ff = session.create();
+        ff = session.append(ff, new OutputStreamCallback() {
+            @Override
+            public void process(OutputStream out) throws IOException {
+                out.write("Hello".getBytes());
+            }
+        });
+        ff = session.append(ff, new OutputStreamCallback() {
+            @Override
+            public void process(OutputStream out) throws IOException {
+                out.write(", World".getBytes());
+            }
+        });
+
+        final ByteBuffer buffer = session.map(ff);
+        assertTrue(buffer.isReadOnly());
+        assertEquals("Hello, World".length(), buffer.remaining());
+        assertEquals((byte) 'W', buffer.get(7));
+
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        assertEquals("Hello, World", new String(bytes));
+
+        session.transfer(ff, new Relationship.Builder().name("A").build());
+        session.commit();
+    }
+
     @Test
     public void testManyFilesOpened() throws IOException {
 
@@ -1378,11 +1468,21 @@ public class TestStandardProcessSession {
             return size;
         }
 
+        @Override
+        public long importFrom(ReadableByteChannel content, ContentClaim claim) throws IOException {
+            return importFrom(Channels.newInputStream(content), claim);
+        }
+
         @Override
         public long exportTo(ContentClaim claim, Path destination, boolean append) throws IOException {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public long exportTo(ContentClaim claim, WritableByteChannel destination, long offset, long length) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
         @Override
         public long exportTo(ContentClaim claim, Path destination, boolean append, long offset, long length) throws IOException {
             throw new UnsupportedOperationException();
@@ -1403,6 +1503,13 @@ public class TestStandardProcessSession {
             return Files.size(getPath(claim));
         }
 
+        @Override
+        public ByteBuffer map(ContentClaim claim, long offset, long length) throws IOException {
+            try (final FileChannel channel = FileChannel.open(getPath(claim), StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, claim.getOffset() + offset, length);
+            }
+        }
+
         @Override
         public InputStream read(ContentClaim claim) throws IOException {
             if (disableRead) {
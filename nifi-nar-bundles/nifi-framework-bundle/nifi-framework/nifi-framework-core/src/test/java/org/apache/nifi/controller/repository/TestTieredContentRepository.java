@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.controller.repository;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.nifi.controller.repository.claim.ContentClaim;
+import org.apache.nifi.controller.repository.claim.StandardResourceClaimManager;
+import org.apache.nifi.controller.repository.util.DiskUtils;
+import org.apache.nifi.stream.io.StreamUtils;
+import org.apache.nifi.util.NiFiProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestTieredContentRepository {
+
+    private final File rootFile = new File("target/content_repository");
+    private final File journalDirectory = new File("target/content_tiered_repository");
+    private StandardResourceClaimManager claimManager;
+    private TieredContentRepository repository;
+
+    @Before
+    public void setup() throws IOException {
+        System.setProperty(NiFiProperties.PROPERTIES_FILE_PATH, "src/test/resources/nifi.properties");
+        if (rootFile.exists()) {
+            DiskUtils.deleteRecursively(rootFile);
+        }
+        if (journalDirectory.exists()) {
+            DiskUtils.deleteRecursively(journalDirectory);
+        }
+
+        final NiFiProperties properties = NiFiProperties.getInstance();
+        properties.setProperty(TieredContentRepository.JOURNAL_DIRECTORY_PROPERTY, journalDirectory.getPath());
+        properties.setProperty(TieredContentRepository.MAX_SIZE_PROPERTY, "1 MB");
+        properties.setProperty(TieredContentRepository.BLOCK_SIZE_PROPERTY, "16 KB");
+        properties.setProperty(TieredContentRepository.MAX_AGE_PROPERTY, "1 hour");
+
+        claimManager = new StandardResourceClaimManager();
+    }
+
+    @After
+    public void shutdown() {
+        if (repository != null) {
+            repository.shutdown();
+        }
+
+        final NiFiProperties properties = NiFiProperties.getInstance();
+        properties.remove(TieredContentRepository.JOURNAL_DIRECTORY_PROPERTY);
+        properties.remove(TieredContentRepository.MAX_SIZE_PROPERTY);
+        properties.remove(TieredContentRepository.BLOCK_SIZE_PROPERTY);
+        properties.remove(TieredContentRepository.MAX_AGE_PROPERTY);
+        properties.remove(TieredContentRepository.DURABILITY_PROPERTY);
+    }
+
+    private TieredContentRepository createRepository() throws IOException {
+        final TieredContentRepository repo = new TieredContentRepository(new FileSystemRepository(), NiFiProperties.getInstance());
+        repo.initialize(claimManager);
+        return repo;
+    }
+
+    private static byte[] createContent(final int length) {
+        final byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) i;
+        }
+        return content;
+    }
+
+    private ContentClaim write(final byte[] content, final boolean lossTolerant) throws IOException {
+        final ContentClaim claim = repository.create(lossTolerant);
+        try (final OutputStream out = repository.write(claim)) {
+            out.write(content);
+        }
+        return claim;
+    }
+
+    private byte[] read(final ContentClaim claim) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final InputStream in = repository.read(claim)) {
+            StreamUtils.copy(in, baos);
+        }
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void testShortLivedContentNeverWrittenThrough() throws IOException {
+        repository = createRepository();
+
+        final byte[] content = createContent(40000);
+        final ContentClaim claim = write(content, true);
+        assertEquals(TieredContentRepository.MEMORY_CONTAINER_NAME, claim.getResourceClaim().getContainer());
+        assertArrayEquals(content, read(claim));
+        assertEquals(content.length, repository.size(claim));
+
+        assertEquals(0, repository.decrementClaimantCount(claim));
+        assertTrue(repository.remove(claim));
+        assertFalse(repository.isAccessible(claim));
+
+        assertEquals(0L, repository.getSpilledCount());
+        assertEquals(1L, repository.getDestroyedInMemoryCount());
+        assertEquals(1D, repository.getMemoryHitRatio(), 0.0001D);
+        assertEquals(0D, repository.getSpillRatio(), 0.0001D);
+    }
+
+    @Test
+    public void testStrictDurabilityWritesThroughContentThatIsNotLossTolerant() throws IOException {
+        repository = createRepository();
+
+        final ContentClaim claim = write(createContent(100), false);
+        assertNotEquals(TieredContentRepository.MEMORY_CONTAINER_NAME, claim.getResourceClaim().getContainer());
+    }
+
+    @Test(timeout = 10000)
+    public void testAgedContentIsWrittenThrough() throws IOException, InterruptedException {
+        NiFiProperties.getInstance().setProperty(TieredContentRepository.MAX_AGE_PROPERTY, "10 millis");
+        repository = createRepository();
+
+        final byte[] content = createContent(50000);
+        final ContentClaim claim = write(content, true);
+        while (repository.getSpilledCount() == 0L) {
+            Thread.sleep(50L);
+        }
+
+        assertArrayEquals(content, read(claim));
+        final ByteBuffer mapped = repository.map(claim, 100L, 100L);
+        final byte[] mappedBytes = new byte[mapped.remaining()];
+        mapped.get(mappedBytes);
+        assertArrayEquals(Arrays.copyOfRange(content, 100, 200), mappedBytes);
+
+        assertEquals(0D, repository.getMemoryHitRatio(), 0.0001D);
+        assertEquals(1D, repository.getSpillRatio(), 0.0001D);
+    }
+
+    @Test
+    public void testContentLargerThanMemoryIsWrittenThroughWhileWriting() throws IOException {
+        repository = createRepository();
+
+        final byte[] content = createContent(3 * 1024 * 1024);
+        final ContentClaim claim = write(content, true);
+        assertEquals(content.length, claim.getLength());
+        assertEquals(1L, repository.getSpilledCount());
+        assertArrayEquals(content, read(claim));
+
+        // the memory that the content occupied before it was written through is available again
+        assertEquals(repository.getContainerCapacity(TieredContentRepository.MEMORY_CONTAINER_NAME),
+            repository.getContainerUsableSpace(TieredContentRepository.MEMORY_CONTAINER_NAME));
+    }
+
+    @Test
+    public void testContentIsRestoredAfterRestart() throws IOException {
+        NiFiProperties.getInstance().setProperty(TieredContentRepository.DURABILITY_PROPERTY, TieredContentRepository.DURABILITY_RELAXED);
+        repository = createRepository();
+
+        final byte[] content = createContent(20000);
+        final ContentClaim kept = write(content, false);
+        final ContentClaim dropped = write(content, false);
+        assertEquals(TieredContentRepository.MEMORY_CONTAINER_NAME, kept.getResourceClaim().getContainer());
+
+        // content still held in memory is written through on shutdown
+        repository.shutdown();
+        assertTrue(new File(journalDirectory, TieredContentRepository.JOURNAL_FILENAME).exists());
+
+        claimManager.purge();
+        repository = createRepository();
+
+        // the FlowFile Repository restores the reference to the content when it is loaded
+        claimManager.incrementClaimantCount(kept.getResourceClaim());
+        repository.cleanup();
+
+        assertTrue(repository.isAccessible(kept));
+        assertFalse(repository.isAccessible(dropped));
+        assertArrayEquals(content, read(kept));
+    }
+}
@@ -18,16 +18,20 @@ package org.apache.nifi.controller.repository;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -41,6 +45,7 @@ import org.apache.nifi.controller.StandardFlowFileQueue;
 import org.apache.nifi.controller.queue.FlowFileQueue;
 import org.apache.nifi.controller.queue.QueueSize;
 import org.apache.nifi.controller.repository.claim.ContentClaim;
+import org.apache.nifi.controller.repository.claim.InlineContentClaim;
 import org.apache.nifi.controller.repository.claim.ResourceClaim;
 import org.apache.nifi.controller.repository.claim.ResourceClaimManager;
 import org.apache.nifi.controller.repository.claim.StandardContentClaim;
@@ -232,6 +237,253 @@ public class TestWriteAheadFlowFileRepository {
         repo2.close();
     }
 
+    @Test
+    public void testRestartWithChangedAttributes() throws IOException {
+        final Path path = Paths.get("target/test-repo");
+        if (Files.exists(path)) {
+            FileUtils.deleteFile(path.toFile(), true);
+        }
+
+        final WriteAheadFlowFileRepository repo = new WriteAheadFlowFileRepository();
+        repo.initialize(new StandardResourceClaimManager());
+
+        final TestQueueProvider queueProvider = new TestQueueProvider();
+        repo.loadFlowFiles(queueProvider, 0L);
+
+        final List<FlowFileRecord> flowFileCollection = new ArrayList<>();
+
+        final Connection connection = Mockito.mock(Connection.class);
+        when(connection.getIdentifier()).thenReturn("1234");
+
+        final FlowFileQueue queue = Mockito.mock(FlowFileQueue.class);
+        when(queue.getIdentifier()).thenReturn("1234");
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                flowFileCollection.add((FlowFileRecord) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(queue).put(any(FlowFileRecord.class));
+
+        when(connection.getFlowFileQueue()).thenReturn(queue);
+        queueProvider.addConnection(connection);
+
+        final FlowFileRecord created = new StandardFlowFileRecord.Builder()
+            .id(1L)
+            .addAttribute("abc", "xyz")
+            .addAttribute("unchanged", "value")
+            .addAttribute("removed", "value")
+            .size(0L)
+            .build();
+
+        final StandardRepositoryRecord createRecord = new StandardRepositoryRecord(null);
+        createRecord.setWorking(created);
+        createRecord.setDestination(queue);
+        repo.updateRepository(Collections.<RepositoryRecord> singletonList(createRecord));
+
+        // only the attributes that changed are written to the journal
+        final FlowFileRecord updated = new StandardFlowFileRecord.Builder()
+            .fromFlowFile(created)
+            .addAttribute("abc", "123")
+            .addAttribute("hello", "world")
+            .removeAttributes("removed")
+            .build();
+
+        final Map<String, String> updatedAttributes = new HashMap<>();
+        updatedAttributes.put("abc", "123");
+        updatedAttributes.put("hello", "world");
+        updatedAttributes.put("removed", null);
+
+        final StandardRepositoryRecord updateRecord = new StandardRepositoryRecord(queue, created);
+        updateRecord.setWorking(updated, updatedAttributes);
+        updateRecord.setDestination(queue);
+        repo.updateRepository(Collections.<RepositoryRecord> singletonList(updateRecord));
+        repo.close();
+
+        // restore
+        final WriteAheadFlowFileRepository repo2 = new WriteAheadFlowFileRepository();
+        repo2.initialize(new StandardResourceClaimManager());
+        repo2.loadFlowFiles(queueProvider, 0L);
+
+        assertEquals(1, flowFileCollection.size());
+        final FlowFileRecord flowFile = flowFileCollection.get(0);
+        assertEquals(1L, flowFile.getId());
+        assertEquals("123", flowFile.getAttribute("abc"));
+        assertEquals("world", flowFile.getAttribute("hello"));
+        assertEquals("value", flowFile.getAttribute("unchanged"));
+        assertNull(flowFile.getAttribute("removed"));
+
+        repo2.close();
+    }
+
+    @Test
+    public void testRestartWithInlineContent() throws IOException {
+        final Path path = Paths.get("target/test-repo");
+        if (Files.exists(path)) {
+            FileUtils.deleteFile(path.toFile(), true);
+        }
+
+        final WriteAheadFlowFileRepository repo = new WriteAheadFlowFileRepository();
+        repo.initialize(new StandardResourceClaimManager());
+
+        final TestQueueProvider queueProvider = new TestQueueProvider();
+        repo.loadFlowFiles(queueProvider, 0L);
+
+        final List<FlowFileRecord> flowFileCollection = new ArrayList<>();
+
+        final Connection connection = Mockito.mock(Connection.class);
+        when(connection.getIdentifier()).thenReturn("1234");
+
+        final FlowFileQueue queue = Mockito.mock(FlowFileQueue.class);
+        when(queue.getIdentifier()).thenReturn("1234");
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                flowFileCollection.add((FlowFileRecord) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(queue).put(any(FlowFileRecord.class));
+
+        when(connection.getFlowFileQueue()).thenReturn(queue);
+        queueProvider.addConnection(connection);
+
+        final byte[] content = "Hello, World".getBytes(StandardCharsets.UTF_8);
+        final FlowFileRecord flowFileRecord = new StandardFlowFileRecord.Builder()
+            .id(1L)
+            .addAttribute("abc", "xyz")
+            .size(5L)
+            .contentClaim(new InlineContentClaim(content, false))
+            .contentClaimOffset(7L)
+            .build();
+
+        final StandardRepositoryRecord record = new StandardRepositoryRecord(null);
+        record.setWorking(flowFileRecord);
+        record.setDestination(connection.getFlowFileQueue());
+        repo.updateRepository(Collections.<RepositoryRecord> singletonList(record));
+        repo.close();
+
+        // restore
+        final WriteAheadFlowFileRepository repo2 = new WriteAheadFlowFileRepository();
+        repo2.initialize(new StandardResourceClaimManager());
+        repo2.loadFlowFiles(queueProvider, 0L);
+
+        assertEquals(1, flowFileCollection.size());
+        final FlowFileRecord flowFile = flowFileCollection.get(0);
+        assertEquals(1L, flowFile.getId());
+        assertEquals(5L, flowFile.getSize());
+        assertEquals(7L, flowFile.getContentClaimOffset());
+        assertTrue(flowFile.getContentClaim() instanceof InlineContentClaim);
+        assertTrue(Arrays.equals(content, ((InlineContentClaim) flowFile.getContentClaim()).getContent()));
+
+        repo2.close();
+    }
+
+    @Test
+    public void testDeleteInlineContent() throws IOException {
+        final ResourceClaimManager claimManager = new StandardResourceClaimManager();
+        final FlowFileQueue queue = Mockito.mock(FlowFileQueue.class);
+        when(queue.getIdentifier()).thenReturn("1234");
+
+        final Connection connection = Mockito.mock(Connection.class);
+        when(connection.getIdentifier()).thenReturn("1234");
+        when(connection.getFlowFileQueue()).thenReturn(queue);
+
+        final TestQueueProvider queueProvider = new TestQueueProvider();
+        queueProvider.addConnection(connection);
+
+        try (final WriteAheadFlowFileRepository repo = new WriteAheadFlowFileRepository()) {
+            repo.initialize(claimManager);
+            repo.loadFlowFiles(queueProvider, 0L);
+
+            final byte[] content = "Hello, World".getBytes(StandardCharsets.UTF_8);
+            final FlowFileRecord flowFile = new StandardFlowFileRecord.Builder()
+                .id(1L)
+                .addAttribute("uuid", "11111111-1111-1111-1111-111111111111")
+                .size(content.length)
+                .contentClaim(new InlineContentClaim(content, false))
+                .build();
+
+            final StandardRepositoryRecord createRecord = new StandardRepositoryRecord(null);
+            createRecord.setWorking(flowFile);
+            createRecord.setDestination(queue);
+            repo.updateRepository(Collections.<RepositoryRecord> singletonList(createRecord));
+
+            // an inline claim has no Resource Claim, so dropping the FlowFile must not queue anything for destruction
+            final StandardRepositoryRecord deleteRecord = new StandardRepositoryRecord(queue, flowFile);
+            deleteRecord.markForDelete();
+            repo.updateRepository(Collections.<RepositoryRecord> singletonList(deleteRecord));
+
+            repo.onGlobalSync();
+        }
+    }
+
+    @Test
+    public void testUpdateInlineContent() throws IOException {
+        final ResourceClaimManager claimManager = new StandardResourceClaimManager();
+        final FlowFileQueue queue = Mockito.mock(FlowFileQueue.class);
+        when(queue.getIdentifier()).thenReturn("1234");
+
+        final List<FlowFileRecord> flowFileCollection = new ArrayList<>();
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(final InvocationOnMock invocation) throws Throwable {
+                flowFileCollection.add((FlowFileRecord) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(queue).put(any(FlowFileRecord.class));
+
+        final Connection connection = Mockito.mock(Connection.class);
+        when(connection.getIdentifier()).thenReturn("1234");
+        when(connection.getFlowFileQueue()).thenReturn(queue);
+
+        final TestQueueProvider queueProvider = new TestQueueProvider();
+        queueProvider.addConnection(connection);
+
+        final ResourceClaim resourceClaim = new StandardResourceClaim("container", "section", "1", false);
+        final ContentClaim updatedClaim = new StandardContentClaim(resourceClaim, 0L);
+
+        try (final WriteAheadFlowFileRepository repo = new WriteAheadFlowFileRepository()) {
+            repo.initialize(claimManager);
+            repo.loadFlowFiles(queueProvider, 0L);
+
+            final byte[] content = "Hello, World".getBytes(StandardCharsets.UTF_8);
+            final FlowFileRecord flowFile = new StandardFlowFileRecord.Builder()
+                .id(1L)
+                .addAttribute("uuid", "11111111-1111-1111-1111-111111111111")
+                .size(content.length)
+                .contentClaim(new InlineContentClaim(content, false))
+                .build();
+
+            final StandardRepositoryRecord createRecord = new StandardRepositoryRecord(null);
+            createRecord.setWorking(flowFile);
+            createRecord.setDestination(queue);
+            repo.updateRepository(Collections.<RepositoryRecord> singletonList(createRecord));
+
+            // replacing the inline claim must not queue its (absent) Resource Claim for destruction
+            final FlowFileRecord updated = new StandardFlowFileRecord.Builder()
+                .fromFlowFile(flowFile)
+                .contentClaim(updatedClaim)
+                .size(100L)
+                .build();
+
+            final StandardRepositoryRecord updateRecord = new StandardRepositoryRecord(queue, flowFile);
+            updateRecord.setWorking(updated);
+            updateRecord.setDestination(queue);
+            repo.updateRepository(Collections.<RepositoryRecord> singletonList(updateRecord));
+
+            repo.onGlobalSync();
+        }
+
+        try (final WriteAheadFlowFileRepository repo = new WriteAheadFlowFileRepository()) {
+            repo.initialize(new StandardResourceClaimManager());
+            repo.loadFlowFiles(queueProvider, 0L);
+        }
+
+        assertEquals(1, flowFileCollection.size());
+        assertEquals(updatedClaim, flowFileCollection.get(0).getContentClaim());
+        assertEquals(100L, flowFileCollection.get(0).getSize());
+    }
+
     private static class TestQueueProvider implements QueueProvider {
         private List<Connection> connectionList = new ArrayList<>();
 
@@ -547,10 +547,13 @@ public final class DtoFactory {
 
         final ContentClaim contentClaim = record.getContentClaim();
         if (contentClaim != null) {
+            // content that is held inline has no Resource Claim
             final ResourceClaim resourceClaim = contentClaim.getResourceClaim();
-            dto.setContentClaimSection(resourceClaim.getSection());
-            dto.setContentClaimContainer(resourceClaim.getContainer());
-            dto.setContentClaimIdentifier(resourceClaim.getId());
+            if (resourceClaim != null) {
+                dto.setContentClaimSection(resourceClaim.getSection());
+                dto.setContentClaimContainer(resourceClaim.getContainer());
+                dto.setContentClaimIdentifier(resourceClaim.getId());
+            }
             dto.setContentClaimOffset(contentClaim.getOffset() + record.getContentClaimOffset());
             dto.setContentClaimFileSizeBytes(record.getSize());
             dto.setContentClaimFileSize(FormatUtils.formatDataSize(record.getSize()));
@@ -2162,6 +2165,11 @@ public final class DtoFactory {
             snapshot.setHeapUtilization(FormatUtils.formatUtilization(sysDiagnostics.getHeapUtilization()));
         }
 
+        // queued flowfile heap
+        snapshot.setQueuedFlowFileHeap(FormatUtils.formatDataSize(sysDiagnostics.getQueuedFlowFileHeap()));
+        snapshot.setQueuedFlowFileHeapBytes(sysDiagnostics.getQueuedFlowFileHeap());
+        snapshot.setQueuedFlowFileHeapBudgetBytes(sysDiagnostics.getQueuedFlowFileHeapBudget());
+
         // non heap
         snapshot.setMaxNonHeap(FormatUtils.formatDataSize(sysDiagnostics.getMaxNonHeap()));
         snapshot.setMaxNonHeapBytes(sysDiagnostics.getMaxNonHeap());
@@ -2213,6 +2221,14 @@ public final class DtoFactory {
         dto.setTotalSpaceBytes(storageUsage.getTotalSpace());
         dto.setUsedSpaceBytes(storageUsage.getUsedSpace());
         dto.setUtilization(FormatUtils.formatUtilization(storageUsage.getDiskUtilization()));
+        if (storageUsage.getWriteLatencyNanos() >= 0L) {
+            dto.setWriteLatencyNanos(storageUsage.getWriteLatencyNanos());
+            dto.setWriteLatency(String.format("%.2f millis", storageUsage.getWriteLatencyNanos() / 1_000_000D));
+        }
+        if (storageUsage.getWriteThroughput() >= 0L) {
+            dto.setWriteThroughputBytes(storageUsage.getWriteThroughput());
+            dto.setWriteThroughput(FormatUtils.formatDataSize(storageUsage.getWriteThroughput()) + "/sec");
+        }
         return dto;
     }
 
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.nifi.stream.io.StreamUtils;
+import org.apache.nifi.stream.io.VarIntUtils;
+
+/**
+ * Constants and primitive encodings shared by the {@link StandardRecordWriter} and {@link StandardRecordReader} for
+ * serialization version 9 and later.
+ *
+ * <p>
+ * In this version, strings that repeat across events (event types, component identifiers and types, attribute names,
+ * relationships, queue identifiers and content claim containers and sections) are written in full the first time that
+ * they appear in a block and as an index into a dictionary afterward. UUIDs are written as 16 bytes, numbers as
+ * variable-length integers, and the previous attributes of an event are written as the changes from the attributes
+ * that the same FlowFile had after the last event for it in the block.
+ * </p>
+ *
+ * <p>
+ * All of this state belongs to a single block and is discarded when a new block is started, so a reader that skips
+ * directly to a block that is listed in the Table of Contents can rebuild it from that block alone.
+ * </p>
+ */
+final class CompactRecordFormat {
+
+    // the first serialization version that is written in this format
+    static final int COMPACT_VERSION = 9;
+
+    static final int MAX_DICTIONARY_SIZE = 65536;
+
+    // the number of FlowFiles whose attributes are remembered in order to write the next event for them as a delta
+    static final int MAX_ATTRIBUTE_STATES = 512;
+
+    static final int UUID_BINARY = 1;
+    static final int UUID_STRING = 2;
+
+    static final int ATTRIBUTES_FULL = 0;
+    static final int ATTRIBUTES_DELTA = 1;
+
+    static final int NO_CLAIM = 0;
+    static final int CLAIM = 1;
+    static final int SAME_AS_CURRENT_CLAIM = 2;
+    // no claim, as for content held inline with the FlowFile, but a size, which follows
+    static final int NO_CLAIM_WITH_SIZE = 3;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private CompactRecordFormat() {
+    }
+
+    /**
+     * @return a map that remembers the attributes of the FlowFiles most recently written or read, keyed by FlowFile
+     *         UUID. Entries are evicted in the order in which they were last put, so writers and readers that remove
+     *         and then put an entry for each event evict the same entries.
+     */
+    static Map<String, Map<String, String>> createAttributeStates() {
+        return new LinkedHashMap<String, Map<String, String>>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Map<String, String>> eldest) {
+                return size() > MAX_ATTRIBUTE_STATES;
+            }
+        };
+    }
+
+    /**
+     * Returns the 16 bytes of the given UUID if it is in the canonical, lower-case form that {@link #formatUUID}
+     * produces, so that writing the bytes loses nothing.
+     *
+     * @param uuid the UUID to parse
+     * @return the 16 bytes of the UUID, or <code>null</code> if it cannot be written as bytes
+     */
+    static byte[] parseUUID(final String uuid) {
+        if (uuid.length() != 36) {
+            return null;
+        }
+
+        final byte[] bytes = new byte[16];
+        int byteIndex = 0;
+        for (int i = 0; i < 36; i++) {
+            final char c = uuid.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return null;
+                }
+                continue;
+            }
+
+            final int high = hexValue(c);
+            final int low = hexValue(uuid.charAt(++i));
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[byteIndex++] = (byte) (high << 4 | low);
+        }
+
+        return bytes;
+    }
+
+    private static int hexValue(final char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+
+    static String formatUUID(final byte[] bytes) {
+        final char[] chars = new char[36];
+        int charIndex = 0;
+        for (int i = 0; i < 16; i++) {
+            if (i == 4 || i == 6 || i == 8 || i == 10) {
+                chars[charIndex++] = '-';
+            }
+            chars[charIndex++] = HEX_DIGITS[(bytes[i] >> 4) & 0x0F];
+            chars[charIndex++] = HEX_DIGITS[bytes[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+
+    static void writeVarString(final String value, final OutputStream out) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        VarIntUtils.writeVarInt(bytes.length, out);
+        out.write(bytes);
+    }
+
+    static String readVarString(final InputStream in) throws IOException {
+        final int numBytes = VarIntUtils.readVarInt(in);
+        final byte[] bytes = new byte[numBytes];
+        StreamUtils.fillBuffer(in, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -29,6 +29,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Matcher;
@@ -142,7 +143,10 @@ public class IndexConfiguration {
 
             final File lastDir = indexDirectories.get(indexDirectories.size() - 1);
             final long size = getSize(lastDir);
-            if (size > repoConfig.getDesiredIndexSize()) {
+            final long indexStartTime = getIndexStartTime(lastDir);
+            final boolean windowElapsed = indexStartTime >= 0L
+                && newIndexTimestamp - indexStartTime > repoConfig.getDesiredIndexDuration(TimeUnit.MILLISECONDS);
+            if (size > repoConfig.getDesiredIndexSize() || windowElapsed) {
                 final File newDir = addNewIndex(storageDirectory, provenanceLogFile, newIndexTimestamp);
                 indexDirectories.add(newDir);
                 return newDir;
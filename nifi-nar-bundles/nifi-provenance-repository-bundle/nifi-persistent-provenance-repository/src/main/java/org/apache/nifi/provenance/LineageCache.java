@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.nifi.provenance.lineage.LineageComputationType;
+
+/**
+ * Caches the events that make up lineage computations that have already completed, so that
+ * expanding the same parents or children again (as the UI does when a user navigates a graph)
+ * does not require searching the indices again. The cache is bounded by the total number of
+ * events that it holds and is cleared whenever events are indexed or purged, so a cached
+ * result is never stale.
+ */
+class LineageCache {
+
+    private final int maxCachedEvents;
+    private final LinkedHashMap<String, Set<ProvenanceEventRecord>> cache = new LinkedHashMap<>(16, 0.75F, true);
+    private int cachedEvents = 0;
+    private long generation = 0L;
+
+    LineageCache(final int maxCachedEvents) {
+        this.maxCachedEvents = maxCachedEvents;
+    }
+
+    static String createKey(final LineageComputationType computationType, final Long eventId, final Collection<String> flowFileUuids) {
+        final List<String> sortedUuids = new ArrayList<>(flowFileUuids);
+        Collections.sort(sortedUuids);
+        return computationType.name() + "/" + eventId + "/" + sortedUuids;
+    }
+
+    synchronized Set<ProvenanceEventRecord> get(final String key) {
+        return cache.get(key);
+    }
+
+    /**
+     * Discards all cached lineage, as the events that make it up have changed
+     */
+    synchronized void invalidate() {
+        generation++;
+        cache.clear();
+        cachedEvents = 0;
+    }
+
+    /**
+     * Begins collecting the results of a lineage computation that is made up of the given number of steps.
+     * Once all steps have completed successfully, the collected events are added to the cache, unless
+     * the cache has been invalidated in the meantime.
+     *
+     * @param key the key of the computation, as created by {@link #createKey(LineageComputationType, Long, Collection)}
+     * @param numSteps the number of steps that make up the computation
+     * @return a collector for the results of each step
+     */
+    synchronized Collector newCollector(final String key, final int numSteps) {
+        return new Collector(key, generation, numSteps);
+    }
+
+    private synchronized void put(final String key, final long collectorGeneration, final Set<ProvenanceEventRecord> events) {
+        if (collectorGeneration != generation || events.size() > maxCachedEvents) {
+            return;
+        }
+
+        final Set<ProvenanceEventRecord> previous = cache.put(key, Collections.unmodifiableSet(events));
+        if (previous != null) {
+            cachedEvents -= previous.size();
+        }
+        cachedEvents += events.size();
+
+        final Iterator<Map.Entry<String, Set<ProvenanceEventRecord>>> itr = cache.entrySet().iterator();
+        while (cachedEvents > maxCachedEvents && itr.hasNext()) {
+            final Map.Entry<String, Set<ProvenanceEventRecord>> eldest = itr.next();
+            cachedEvents -= eldest.getValue().size();
+            itr.remove();
+        }
+    }
+
+    class Collector {
+
+        private final String key;
+        private final long collectorGeneration;
+        private final AtomicInteger remainingSteps;
+        private final Set<ProvenanceEventRecord> events = new HashSet<>();
+        private volatile boolean failed = false;
+
+        private Collector(final String key, final long collectorGeneration, final int numSteps) {
+            this.key = key;
+            this.collectorGeneration = collectorGeneration;
+            this.remainingSteps = new AtomicInteger(numSteps);
+        }
+
+        void stepComplete(final Collection<ProvenanceEventRecord> stepEvents) {
+            synchronized (events) {
+                events.addAll(stepEvents);
+            }
+            if (remainingSteps.decrementAndGet() == 0 && !failed) {
+                synchronized (events) {
+                    put(key, collectorGeneration, events);
+                }
+            }
+        }
+
+        void stepFailed() {
+            failed = true;
+            remainingSteps.decrementAndGet();
+        }
+    }
+}
@@ -39,6 +39,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
@@ -82,6 +83,7 @@ import org.apache.nifi.provenance.lucene.IndexSearch;
 import org.apache.nifi.provenance.lucene.IndexingAction;
 import org.apache.nifi.provenance.lucene.LineageQuery;
 import org.apache.nifi.provenance.lucene.LuceneUtil;
+import org.apache.nifi.provenance.lucene.NewestEventsTracker;
 import org.apache.nifi.provenance.search.Query;
 import org.apache.nifi.provenance.search.QueryResult;
 import org.apache.nifi.provenance.search.QuerySubmission;
@@ -109,11 +111,12 @@ public class PersistentProvenanceRepository implements ProvenanceEventRepository
     private static final String FILE_EXTENSION = ".prov";
     private static final String TEMP_FILE_SUFFIX = ".prov.part";
     private static final long PURGE_EVENT_MILLISECONDS = 2500L; //Determines the frequency over which the task to delete old events will occur
-    public static final int SERIALIZATION_VERSION = 8;
+    public static final int SERIALIZATION_VERSION = 9;
     public static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+");
     public static final Pattern INDEX_PATTERN = Pattern.compile("index-\\d+");
     public static final Pattern LOG_FILENAME_PATTERN = Pattern.compile("(\\d+).*\\.prov");
     public static final int MAX_UNDELETED_QUERY_RESULTS = 10;
+    public static final int MAX_CACHED_LINEAGE_EVENTS = 50000;
 
     private static final Logger logger = LoggerFactory.getLogger(PersistentProvenanceRepository.class);
 
@@ -150,6 +153,7 @@ public class PersistentProvenanceRepository implements ProvenanceEventRepository
 
     private final ConcurrentMap<String, AsyncQuerySubmission> querySubmissionMap = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, AsyncLineageSubmission> lineageSubmissionMap = new ConcurrentHashMap<>();
+    private final LineageCache lineageCache = new LineageCache(MAX_CACHED_LINEAGE_EVENTS);
 
     private final AtomicLong writerIndex = new AtomicLong(0L);
     private final AtomicLong storageDirectoryIndex = new AtomicLong(0L);
@@ -160,6 +164,17 @@ public class PersistentProvenanceRepository implements ProvenanceEventRepository
 
     private final AtomicInteger dirtyWriterCount = new AtomicInteger(0);
 
+    // when events are buffered rather than written by the threads that register them, there is one buffer, and one thread
+    // draining it, for each journal. Otherwise, this is null.
+    private volatile List<BlockingQueue<ProvenanceEventRecord>> ingestQueues;
+    private final List<Thread> ingestThreads = new ArrayList<>();
+    private final AtomicLong ingestQueueIndex = new AtomicLong(0L);
+    private volatile boolean ingestStopped = false;
+
+    // held for reading while events are being handed to the ingest buffers, and for writing when the buffers are
+    // retired, so that no event can be added to a buffer after the threads draining it have stopped.
+    private final ReadWriteLock ingestLock = new ReentrantReadWriteLock();
+
     // we keep the last 1000 records on hand so that when the UI is opened and it asks for the last 1000 records we don't need to
     // read them. Since this is a very cheap operation to keep them, it's worth the tiny expense for the improved user experience.
     private final RingBuffer<ProvenanceEventRecord> latestRecords = new RingBuffer<>(1000);
@@ -220,6 +235,10 @@ public class PersistentProvenanceRepository implements ProvenanceEventRepository
 
             if (configuration.isAllowRollover()) {
                 writers = createWriters(configuration, idGenerator.get());
+
+                if (configuration.getIngestBufferSize() > 0 && !alwaysSync) {
+                    startIngestThreads();
+                }
             }
 
             if (configuration.isAllowRollover()) {
@@ -287,9 +306,11 @@ public class PersistentProvenanceRepository implements ProvenanceEventRepository
         final String rolloverTime = properties.getProperty(NiFiProperties.PROVENANCE_ROLLOVER_TIME, "5 mins");
         final String rolloverSize = properties.getProperty(NiFiProperties.PROVENANCE_ROLLOVER_SIZE, "100 MB");
         final String shardSize = properties.getProperty(NiFiProperties.PROVENANCE_INDEX_SHARD_SIZE, "500 MB");
+        final String shardDuration = properties.getProperty(NiFiProperties.PROVENANCE_INDEX_SHARD_DURATION, "6 hours");
         final int queryThreads = properties.getIntegerProperty(NiFiProperties.PROVENANCE_QUERY_THREAD_POOL_SIZE, 2);
         final int indexThreads = properties.getIntegerProperty(NiFiProperties.PROVENANCE_INDEX_THREAD_POOL_SIZE, 1);
         final int journalCount = properties.getIntegerProperty(NiFiProperties.PROVENANCE_JOURNAL_COUNT, 16);
+        final int ingestBufferSize = properties.getIntegerProperty(NiFiProperties.PROVENANCE_INGEST_BUFFER_SIZE, 0);
 
         final long storageMillis = FormatUtils.getTimeDuration(storageTime, TimeUnit.MILLISECONDS);
         final long maxStorageBytes = DataUnit.parseDataSize(storageSize, DataUnit.B).longValue();
@@ -339,11 +360,15 @@ public class PersistentProvenanceRepository implements ProvenanceEventRepository
         config.setQueryThreadPoolSize(queryThreads);
         config.setIndexThreadPoolSize(indexThreads);
         config.setJournalCount(journalCount);
+        config.setIngestBufferSize(Math.max(0, ingestBufferSize));
         config.setMaxAttributeChars(maxAttrChars);
 
         if (shardSize != null) {
             config.setDesiredIndexSize(DataUnit.parseDataSize(shardSize, DataUnit.B).longValue());
         }
+        if (shardDuration != null) {
+            config.setDesiredIndexDuration(FormatUtils.getTimeDuration(shardDuration, TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+        }
 
         config.setAlwaysSync(alwaysSync);
 
@@ -383,12 +408,116 @@ public class PersistentProvenanceRepository implements ProvenanceEventRepository
 
     @Override
     public void registerEvent(final ProvenanceEventRecord event) {
-        persistRecord(Collections.singleton(event));
+        registerEvents(Collections.singleton(event));
     }
 
     @Override
     public void registerEvents(final Iterable<ProvenanceEventRecord> events) {
-        persistRecord(events);
+        final Lock ingestReadLock = ingestLock.readLock();
+        ingestReadLock.lock();
+        try {
+            final List<BlockingQueue<ProvenanceEventRecord>> queues = this.ingestQueues;
+            if (queues == null) {
+                persistRecord(events);
+                return;
+            }
+
+            // Keep the events of a single call together so that they are written to the same journal in order. We wait only if
+            // the buffer is full, which happens only when the writer threads cannot keep up, typically because rollover is
+            // applying back pressure. While waiting, we check whether the repository is shutting down, because in that case
+            // the writer threads may already be gone and no room will ever be made.
+            final BlockingQueue<ProvenanceEventRecord> queue = queues.get((int) (ingestQueueIndex.getAndIncrement() % queues.size()));
+            final Iterator<ProvenanceEventRecord> itr = events.iterator();
+            while (itr.hasNext()) {
+                final ProvenanceEventRecord event = itr.next();
+                try {
+                    while (!queue.offer(event, 100L, TimeUnit.MILLISECONDS)) {
+                        if (ingestStopped) {
+                            persistRemaining(event, itr);
+                            return;
+                        }
+                    }
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+
+                    // we cannot wait for room in the buffer, so write the rest of the events ourselves rather than lose them.
+                    persistRemaining(event, itr);
+                    return;
+                }
+            }
+        } finally {
+            ingestReadLock.unlock();
+        }
+    }
+
+    private void persistRemaining(final ProvenanceEventRecord event, final Iterator<ProvenanceEventRecord> itr) {
+        final List<ProvenanceEventRecord> remaining = new ArrayList<>();
+        remaining.add(event);
+        while (itr.hasNext()) {
+            remaining.add(itr.next());
+        }
+        persistRecord(remaining);
+    }
+
+    private void startIngestThreads() {
+        final int bufferSize = configuration.getIngestBufferSize();
+        final List<BlockingQueue<ProvenanceEventRecord>> queues = new ArrayList<>(configuration.getJournalCount());
+        final ThreadFactory threadFactory = new NamedThreadFactory("Provenance Repository Ingest Thread");
+
+        for (int i = 0; i < configuration.getJournalCount(); i++) {
+            final BlockingQueue<ProvenanceEventRecord> queue = new ArrayBlockingQueue<>(bufferSize);
+            queues.add(queue);
+
+            final Thread ingestThread = threadFactory.newThread(new IngestRunnable(queue, bufferSize));
+            ingestThread.setDaemon(true);
+            ingestThreads.add(ingestThread);
+            ingestThread.start();
+        }
+
+        ingestQueues = queues;
+        logger.info("Provenance Events will be buffered and written to {} journals by dedicated threads, with up to {} events buffered per journal",
+            queues.size(), bufferSize);
+    }
+
+    /**
+     * Stops accepting events into the ingest buffers and waits for the events that are already buffered to be written.
+     */
+    private void stopIngestThreads() {
+        final List<BlockingQueue<ProvenanceEventRecord>> queues = this.ingestQueues;
+        if (queues == null) {
+            return;
+        }
+
+        // Once the write lock is obtained, no thread is in the middle of handing events to the buffers, and any thread
+        // that registers events from now on writes them itself. Threads that are waiting for room in a full buffer give
+        // up waiting once they see that ingest has stopped, so they cannot keep us from obtaining the lock.
+        ingestStopped = true;
+        final Lock ingestWriteLock = ingestLock.writeLock();
+        ingestWriteLock.lock();
+        try {
+            ingestQueues = null;
+        } finally {
+            ingestWriteLock.unlock();
+        }
+
+        for (final Thread ingestThread : ingestThreads) {
+            try {
+                ingestThread.join();
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        // any events that were added after the threads finished, or that the threads did not get to because we were
+        // interrupted, are written by this thread.
+        for (final BlockingQueue<ProvenanceEventRecord> queue : queues) {
+            final List<ProvenanceEventRecord> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            if (!remaining.isEmpty()) {
+                persistRecord(remaining);
+            }
+        }
     }
 
     @Override
@@ -632,6 +761,11 @@ public class PersistentProvenanceRepository implements ProvenanceEventRepository
     @Override
     public synchronized void close() throws IOException {
         this.closed.set(true);
+
+        // write out any buffered events before closing the writers. This must be done before obtaining the
+        // write lock because the ingest threads need the read lock in order to write.
+        stopIngestThreads();
+
         writeLock.lock();
         try {
             logger.debug("Obtained write lock for close");
@@ -925,6 +1059,10 @@ public class PersistentProvenanceRepository implements ProvenanceEventRepository
             }
         }
 
+        if (!removed.isEmpty()) {
+            lineageCache.invalidate();
+        }
+
         // Update the Map ID to Path map to not include the removed file
         // We cannot obtain the write lock here because there may be a need for the lock in the rollover method,
         // if we have 'backpressure applied'. This would result in a deadlock because the rollover method would be
@@ -1248,6 +1386,7 @@ public class PersistentProvenanceRepository implements ProvenanceEventRepository
                             }
 
                             logger.info("Successfully Rolled over Provenance Event file containing {} records", recordsWritten);
+                            lineageCache.invalidate();
                             rolloverCompletions.getAndIncrement();
 
                             // We have finished successfully. Cancel the future so that we don't run anymore
@@ -1870,7 +2009,7 @@ public class PersistentProvenanceRepository implements ProvenanceEventRepository
             return result;
         }
 
-        final AtomicInteger retrievalCount = new AtomicInteger(0);
+        final NewestEventsTracker newestEvents = new NewestEventsTracker(query.getMaxResults());
         final List<File> indexDirectories = indexConfig.getIndexDirectories(
                 query.getStartDate() == null ? null : query.getStartDate().getTime(),
                         query.getEndDate() == null ? null : query.getEndDate().getTime());
@@ -1880,8 +2019,21 @@ public class PersistentProvenanceRepository implements ProvenanceEventRepository
         if (indexDirectories.isEmpty()) {
             result.getResult().update(Collections.<ProvenanceEventRecord>emptyList(), 0L);
         } else {
+            // Search the most recently written shards first. Once they have supplied enough events, the older shards
+            // only need to count their hits rather than reading their events.
+            final Map<File, Long> lastModifiedTimes = new HashMap<>(indexDirectories.size());
+            for (final File indexDir : indexDirectories) {
+                lastModifiedTimes.put(indexDir, indexDir.lastModified());
+            }
+            Collections.sort(indexDirectories, new Comparator<File>() {
+                @Override
+                public int compare(final File o1, final File o2) {
+                    return Long.compare(lastModifiedTimes.get(o2), lastModifiedTimes.get(o1));
+                }
+            });
+
             for (final File indexDir : indexDirectories) {
-                queryExecService.submit(new QueryRunnable(query, result, indexDir, retrievalCount));
+                queryExecService.submit(new QueryRunnable(query, result, indexDir, newestEvents));
             }
         }
 
@@ -2083,12 +2235,23 @@ public class PersistentProvenanceRepository implements ProvenanceEventRepository
 
     private AsyncLineageSubmission submitLineageComputation(final Collection<String> flowFileUuids, final LineageComputationType computationType,
             final Long eventId, final long startTimestamp, final long endTimestamp) {
+        final String cacheKey = LineageCache.createKey(computationType, eventId, flowFileUuids);
+        final Set<ProvenanceEventRecord> cachedEvents = lineageCache.get(cacheKey);
+        if (cachedEvents != null) {
+            final AsyncLineageSubmission result = new AsyncLineageSubmission(computationType, eventId, flowFileUuids, 1);
+            lineageSubmissionMap.put(result.getLineageIdentifier(), result);
+            result.getResult().update(cachedEvents);
+            logger.debug("Lineage for FlowFiles with UUIDs {} was served from cache", flowFileUuids);
+            return result;
+        }
+
         final List<File> indexDirs = indexConfig.getIndexDirectories(startTimestamp, endTimestamp);
         final AsyncLineageSubmission result = new AsyncLineageSubmission(computationType, eventId, flowFileUuids, indexDirs.size());
         lineageSubmissionMap.put(result.getLineageIdentifier(), result);
 
+        final LineageCache.Collector collector = lineageCache.newCollector(cacheKey, indexDirs.size());
         for (final File indexDir : indexDirs) {
-            queryExecService.submit(new ComputeLineageRunnable(flowFileUuids, result, indexDir));
+            queryExecService.submit(new ComputeLineageRunnable(flowFileUuids, result, indexDir, collector));
         }
 
         return result;
@@ -2315,20 +2478,20 @@ public class PersistentProvenanceRepository implements ProvenanceEventRepository
         private final Query query;
         private final AsyncQuerySubmission submission;
         private final File indexDir;
-        private final AtomicInteger retrievalCount;
+        private final NewestEventsTracker newestEvents;
 
-        public QueryRunnable(final Query query, final AsyncQuerySubmission submission, final File indexDir, final AtomicInteger retrievalCount) {
+        public QueryRunnable(final Query query, final AsyncQuerySubmission submission, final File indexDir, final NewestEventsTracker newestEvents) {
             this.query = query;
             this.submission = submission;
             this.indexDir = indexDir;
-            this.retrievalCount = retrievalCount;
+            this.newestEvents = newestEvents;
         }
 
         @Override
         public void run() {
             try {
                 final IndexSearch search = new IndexSearch(PersistentProvenanceRepository.this, indexDir, indexManager, maxAttributeChars);
-                final StandardQueryResult queryResult = search.search(query, retrievalCount, firstEventTimestamp);
+                final StandardQueryResult queryResult = search.search(query, newestEvents, firstEventTimestamp);
                 submission.getResult().update(queryResult.getMatchingEvents(), queryResult.getTotalHitCount());
                 if (queryResult.isFinished()) {
                     logger.info("Successfully executed Query[{}] against Index {}; Search took {} milliseconds; Total Hits = {}",
@@ -2349,21 +2512,74 @@ public class PersistentProvenanceRepository implements ProvenanceEventRepository
         }
     }
 
+    /**
+     * Drains the ingest buffer for a journal, writing the buffered events in batches until the repository is closed
+     * and the buffer is empty.
+     */
+    private class IngestRunnable implements Runnable {
+
+        private final BlockingQueue<ProvenanceEventRecord> queue;
+        private final int maxBatchSize;
+
+        public IngestRunnable(final BlockingQueue<ProvenanceEventRecord> queue, final int maxBatchSize) {
+            this.queue = queue;
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        @Override
+        public void run() {
+            final List<ProvenanceEventRecord> batch = new ArrayList<>(maxBatchSize);
+
+            while (true) {
+                try {
+                    final ProvenanceEventRecord firstEvent = queue.poll(100L, TimeUnit.MILLISECONDS);
+                    if (firstEvent == null) {
+                        if (ingestStopped) {
+                            return;
+                        }
+                        continue;
+                    }
+
+                    batch.add(firstEvent);
+                    queue.drainTo(batch, maxBatchSize - 1);
+                    persistRecord(batch);
+                } catch (final InterruptedException ie) {
+                    if (ingestStopped) {
+                        return;
+                    }
+                } catch (final Throwable t) {
+                    // The threads that registered these events have already moved on, so the best that we can do is to report the failure.
+                    logger.error("Failed to persist {} Provenance Events due to {}", batch.size(), t.toString());
+                    logger.error("", t);
+                    if (eventReporter != null) {
+                        eventReporter.reportEvent(Severity.ERROR, EVENT_CATEGORY, "Failed to persist " + batch.size() + " Provenance Events due to " + t.toString());
+                    }
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+    }
+
     private class ComputeLineageRunnable implements Runnable {
 
         private final Collection<String> flowFileUuids;
         private final File indexDir;
         private final AsyncLineageSubmission submission;
+        private final LineageCache.Collector collector;
 
-        public ComputeLineageRunnable(final Collection<String> flowFileUuids, final AsyncLineageSubmission submission, final File indexDir) {
+        public ComputeLineageRunnable(final Collection<String> flowFileUuids, final AsyncLineageSubmission submission, final File indexDir,
+                final LineageCache.Collector collector) {
             this.flowFileUuids = flowFileUuids;
             this.submission = submission;
             this.indexDir = indexDir;
+            this.collector = collector;
         }
 
         @Override
         public void run() {
             if (submission.isCanceled()) {
+                collector.stepFailed();
                 return;
             }
 
@@ -2371,12 +2587,15 @@ public class PersistentProvenanceRepository implements ProvenanceEventRepository
                 final Set<ProvenanceEventRecord> matchingRecords = LineageQuery.computeLineageForFlowFiles(PersistentProvenanceRepository.this,
                     indexManager, indexDir, null, flowFileUuids, maxAttributeChars);
 
+                // add the records to the cache before updating the result, so that once the result is finished, it is also cached
+                collector.stepComplete(matchingRecords);
                 final StandardLineageResult result = submission.getResult();
                 result.update(matchingRecords);
 
                 logger.info("Successfully created Lineage for FlowFiles with UUIDs {} in {} milliseconds; Lineage contains {} nodes and {} edges",
                         flowFileUuids, result.getComputationTime(TimeUnit.MILLISECONDS), result.getNodes().size(), result.getEdges().size());
             } catch (final Throwable t) {
+                collector.stepFailed();
                 logger.error("Failed to query provenance repository due to {}", t.toString());
                 if (logger.isDebugEnabled()) {
                     logger.error("", t);
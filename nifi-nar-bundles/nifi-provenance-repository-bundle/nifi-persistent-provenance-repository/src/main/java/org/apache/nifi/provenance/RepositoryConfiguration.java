@@ -32,7 +32,9 @@ public class RepositoryConfiguration {
     private long eventFileMillis = TimeUnit.MILLISECONDS.convert(5, TimeUnit.MINUTES);
     private long eventFileBytes = 1024L * 1024L * 5L;   // 5 MB
     private long desiredIndexBytes = 1024L * 1024L * 500L; // 500 MB
+    private long desiredIndexMillis = TimeUnit.MILLISECONDS.convert(6, TimeUnit.HOURS);
     private int journalCount = 16;
+    private int ingestBufferSize = 0;
     private int compressionBlockBytes = 1024 * 1024;
     private int maxAttributeChars = 65536;
 
@@ -257,6 +259,30 @@ public class RepositoryConfiguration {
         return desiredIndexBytes;
     }
 
+    /**
+     * Specifies the span of event time that a single index shard should cover.
+     * Once the events being indexed are more than this amount of time newer
+     * than the first event in the current shard, a new shard is started, even
+     * if the shard has not yet reached its desired size. Bounding the time
+     * range of each shard allows a query that is interested only in the most
+     * recent events to avoid reading from shards that cannot contain them.
+     *
+     * @param duration the span of event time that a single shard should cover
+     * @param timeUnit the units for the value supplied by duration
+     */
+    public void setDesiredIndexDuration(final long duration, final TimeUnit timeUnit) {
+        this.desiredIndexMillis = TimeUnit.MILLISECONDS.convert(duration, timeUnit);
+    }
+
+    /**
+     * @param timeUnit the desired time unit for the returned value
+     * @return the span of event time that a single index shard should cover. See
+     * the {@link #setDesiredIndexDuration} method for more information.
+     */
+    public long getDesiredIndexDuration(final TimeUnit timeUnit) {
+        return timeUnit.convert(desiredIndexMillis, TimeUnit.MILLISECONDS);
+    }
+
     /**
      * @param numJournals the number of Journal files to use when persisting records.
      */
@@ -275,6 +301,31 @@ public class RepositoryConfiguration {
         return journalCount;
     }
 
+    /**
+     * @return the number of events that may be waiting to be written to each Journal file, or 0 if each thread that
+     * registers events writes them to a Journal itself
+     */
+    public int getIngestBufferSize() {
+        return ingestBufferSize;
+    }
+
+    /**
+     * Specifies how many events may be waiting to be written to each Journal file. If greater than 0, registering an
+     * event only adds it to a buffer, and a dedicated thread for each Journal writes the buffered events in batches.
+     * Threads that register events then wait only if the buffer is full, rather than for the Journal to be written or
+     * for the repository to roll over. Buffered events that have not yet been written are lost if the process ends
+     * abruptly. This is ignored if {@link #isAlwaysSync()} is <code>true</code>.
+     *
+     * @param ingestBufferSize the number of events that may be waiting to be written to each Journal file
+     */
+    public void setIngestBufferSize(final int ingestBufferSize) {
+        if (ingestBufferSize < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.ingestBufferSize = ingestBufferSize;
+    }
+
     /**
      * @return <code>true</code> if the repository will perform an 'fsync' for all updates to disk
      */
@@ -21,9 +21,11 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -36,6 +38,7 @@ import org.apache.nifi.stream.io.BufferedInputStream;
 import org.apache.nifi.stream.io.ByteCountingInputStream;
 import org.apache.nifi.stream.io.LimitingInputStream;
 import org.apache.nifi.stream.io.StreamUtils;
+import org.apache.nifi.stream.io.VarIntUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,6 +57,12 @@ public class StandardRecordReader implements RecordReader {
     private DataInputStream dis;
     private ByteCountingInputStream byteCountingIn;
 
+    // State of the compact encoding for the current block; see CompactRecordFormat
+    private final List<String> dictionary = new ArrayList<>();
+    private final Map<String, Map<String, String>> attributeStates = CompactRecordFormat.createAttributeStates();
+    private long previousEventId = 0L;
+    private long previousEventTime = 0L;
+
     public StandardRecordReader(final InputStream in, final String filename, final int maxAttributeChars) throws IOException {
         this(in, filename, null, maxAttributeChars);
     }
@@ -92,8 +101,8 @@ public class StandardRecordReader implements RecordReader {
         final int serializationVersion = dis.readInt();
         headerLength = repoClassName.getBytes(StandardCharsets.UTF_8).length + 2 + 4; // 2 bytes for string length, 4 for integer.
 
-        if (serializationVersion < 1 || serializationVersion > 8) {
-            throw new IllegalArgumentException("Unable to deserialize record because the version is " + serializationVersion + " and supported versions are 1-8");
+        if (serializationVersion < 1 || serializationVersion > 9) {
+            throw new IllegalArgumentException("Unable to deserialize record because the version is " + serializationVersion + " and supported versions are 1-9");
         }
 
         this.serializationVersion = serializationVersion;
@@ -157,6 +166,11 @@ public class StandardRecordReader implements RecordReader {
 
         byteCountingIn = new ByteCountingInputStream(readableStream, rawInputStream.getBytesConsumed());
         dis = new DataInputStream(byteCountingIn);
+
+        dictionary.clear();
+        attributeStates.clear();
+        previousEventId = 0L;
+        previousEventTime = 0L;
     }
 
 
@@ -270,6 +284,9 @@ public class StandardRecordReader implements RecordReader {
         if (serializationVersion < 6) {
             return readPreVersion6Record();
         }
+        if (serializationVersion >= CompactRecordFormat.COMPACT_VERSION) {
+            return readCompactRecord();
+        }
 
         final long startOffset = byteCountingIn.getBytesConsumed();
 
@@ -367,6 +384,218 @@ public class StandardRecordReader implements RecordReader {
         return record;
     }
 
+    private StandardProvenanceEventRecord readCompactRecord() throws IOException {
+        final long startOffset = byteCountingIn.getBytesConsumed();
+
+        if (!isData()) {
+            return null;
+        }
+
+        final StandardProvenanceEventRecord.Builder builder = new StandardProvenanceEventRecord.Builder();
+
+        final long eventId = previousEventId + VarIntUtils.readSignedVarLong(dis);
+        final ProvenanceEventType eventType = ProvenanceEventType.valueOf(readDictionaryString(dis));
+        final long eventTime = previousEventTime + VarIntUtils.readSignedVarLong(dis);
+        previousEventId = eventId;
+        previousEventTime = eventTime;
+
+        builder.setEventType(eventType);
+        builder.setEventTime(eventTime);
+        builder.setFlowFileEntryDate(eventTime - VarIntUtils.readSignedVarLong(dis));
+        builder.setEventDuration(VarIntUtils.readSignedVarLong(dis));
+
+        final int numLineageIdentifiers = VarIntUtils.readVarInt(dis);
+        final Set<String> lineageIdentifiers = new HashSet<>(numLineageIdentifiers);
+        for (int i = 0; i < numLineageIdentifiers; i++) {
+            lineageIdentifiers.add(readCompactUUID(dis));
+        }
+        builder.setLineageIdentifiers(lineageIdentifiers);
+        builder.setLineageStartDate(eventTime - VarIntUtils.readSignedVarLong(dis));
+
+        builder.setComponentId(readNullableDictionaryString(dis));
+        builder.setComponentType(readNullableDictionaryString(dis));
+
+        final String uuid = readCompactUUID(dis);
+        builder.setFlowFileUUID(uuid);
+        builder.setDetails(readNullableVarString(dis));
+
+        readCompactAttributes(dis, uuid, builder);
+
+        final int claimType = dis.read();
+        String claimContainer = null;
+        String claimSection = null;
+        String claimIdentifier = null;
+        Long claimOffset = null;
+        long fileSize = 0L;
+        if (claimType == CompactRecordFormat.CLAIM) {
+            claimContainer = readDictionaryString(dis);
+            claimSection = readDictionaryString(dis);
+            claimIdentifier = CompactRecordFormat.readVarString(dis);
+            claimOffset = VarIntUtils.readSignedVarLong(dis);
+            fileSize = VarIntUtils.readSignedVarLong(dis);
+        } else if (claimType == CompactRecordFormat.NO_CLAIM_WITH_SIZE) {
+            fileSize = VarIntUtils.readSignedVarLong(dis);
+        } else if (claimType != CompactRecordFormat.NO_CLAIM) {
+            throw new IOException("Failed to parse Provenance Event Record: invalid Content Claim qualifier " + claimType);
+        }
+        builder.setCurrentContentClaim(claimContainer, claimSection, claimIdentifier, claimOffset, fileSize);
+
+        final int previousClaimType = dis.read();
+        if (previousClaimType == CompactRecordFormat.CLAIM) {
+            builder.setPreviousContentClaim(readDictionaryString(dis), readDictionaryString(dis), CompactRecordFormat.readVarString(dis),
+                VarIntUtils.readSignedVarLong(dis), VarIntUtils.readSignedVarLong(dis));
+        } else if (previousClaimType == CompactRecordFormat.SAME_AS_CURRENT_CLAIM && claimType == CompactRecordFormat.CLAIM) {
+            builder.setPreviousContentClaim(claimContainer, claimSection, claimIdentifier, claimOffset, fileSize);
+        } else if (previousClaimType == CompactRecordFormat.NO_CLAIM_WITH_SIZE) {
+            builder.setPreviousContentClaim(null, null, null, null, VarIntUtils.readSignedVarLong(dis));
+        } else if (previousClaimType != CompactRecordFormat.NO_CLAIM) {
+            throw new IOException("Failed to parse Provenance Event Record: invalid Previous Content Claim qualifier " + previousClaimType);
+        }
+
+        builder.setSourceQueueIdentifier(readNullableDictionaryString(dis));
+
+        // Read Event-Type specific fields.
+        if (eventType == ProvenanceEventType.FORK || eventType == ProvenanceEventType.JOIN || eventType == ProvenanceEventType.CLONE || eventType == ProvenanceEventType.REPLAY) {
+            final int numParents = VarIntUtils.readVarInt(dis);
+            for (int i = 0; i < numParents; i++) {
+                builder.addParentUuid(readCompactUUID(dis));
+            }
+
+            final int numChildren = VarIntUtils.readVarInt(dis);
+            for (int i = 0; i < numChildren; i++) {
+                builder.addChildUuid(readCompactUUID(dis));
+            }
+        } else if (eventType == ProvenanceEventType.RECEIVE) {
+            builder.setTransitUri(readNullableVarString(dis));
+            builder.setSourceSystemFlowFileIdentifier(readNullableVarString(dis));
+        } else if (eventType == ProvenanceEventType.FETCH) {
+            builder.setTransitUri(readNullableVarString(dis));
+        } else if (eventType == ProvenanceEventType.SEND) {
+            builder.setTransitUri(readNullableVarString(dis));
+        } else if (eventType == ProvenanceEventType.ADDINFO) {
+            builder.setAlternateIdentifierUri(readNullableVarString(dis));
+        } else if (eventType == ProvenanceEventType.ROUTE) {
+            builder.setRelationship(readNullableDictionaryString(dis));
+        }
+
+        builder.setStorageLocation(filename, startOffset);
+
+        final StandardProvenanceEventRecord record = builder.build();
+        record.setEventId(eventId);
+        return record;
+    }
+
+    /**
+     * Reads the previous and updated attributes of an event, applying the previous attributes to the attributes that
+     * the FlowFile had after the last event for it in this block if they were written as a delta.
+     */
+    private void readCompactAttributes(final DataInputStream in, final String flowFileUuid, final StandardProvenanceEventRecord.Builder builder) throws IOException {
+        final Map<String, String> lastKnownAttributes = attributeStates.remove(flowFileUuid);
+
+        final Map<String, String> previousAttributes;
+        final int attributesType = in.read();
+        if (attributesType == CompactRecordFormat.ATTRIBUTES_FULL) {
+            final int numAttributes = VarIntUtils.readVarInt(in);
+            previousAttributes = new HashMap<>(numAttributes);
+            for (int i = 0; i < numAttributes; i++) {
+                previousAttributes.put(readDictionaryString(in), CompactRecordFormat.readVarString(in));
+            }
+        } else if (attributesType == CompactRecordFormat.ATTRIBUTES_DELTA) {
+            if (lastKnownAttributes == null) {
+                throw new IOException("Failed to parse Provenance Event Record: found changes to the attributes of FlowFile " + flowFileUuid
+                    + " but no previous event for it in the current block");
+            }
+
+            previousAttributes = new HashMap<>(lastKnownAttributes);
+            final int numRemoved = VarIntUtils.readVarInt(in);
+            for (int i = 0; i < numRemoved; i++) {
+                previousAttributes.remove(readDictionaryString(in));
+            }
+
+            final int numChanged = VarIntUtils.readVarInt(in);
+            for (int i = 0; i < numChanged; i++) {
+                previousAttributes.put(readDictionaryString(in), CompactRecordFormat.readVarString(in));
+            }
+        } else {
+            throw new IOException("Failed to parse Provenance Event Record: invalid attributes qualifier " + attributesType);
+        }
+
+        final Map<String, String> currentAttributes = new HashMap<>(previousAttributes);
+        final int numUpdates = VarIntUtils.readVarInt(in);
+        final Map<String, String> updatedAttributes = new HashMap<>(numUpdates);
+        for (int i = 0; i < numUpdates; i++) {
+            final String key = readDictionaryString(in);
+            final String value = readNullableVarString(in);
+            updatedAttributes.put(key, truncate(value));
+
+            if (value == null) {
+                currentAttributes.remove(key);
+            } else {
+                currentAttributes.put(key, value);
+            }
+        }
+
+        if (flowFileUuid != null) {
+            attributeStates.put(flowFileUuid, currentAttributes);
+        }
+
+        // the remembered attributes must not be truncated so that later deltas apply to the values that were written
+        final Map<String, String> truncatedPreviousAttributes = new HashMap<>(previousAttributes.size());
+        for (final Map.Entry<String, String> entry : previousAttributes.entrySet()) {
+            truncatedPreviousAttributes.put(entry.getKey(), truncate(entry.getValue()));
+        }
+
+        builder.setAttributes(truncatedPreviousAttributes, updatedAttributes);
+    }
+
+    private String truncate(final String value) {
+        if (value == null || value.length() <= maxAttributeChars) {
+            return value;
+        }
+        return value.substring(0, maxAttributeChars);
+    }
+
+    private String readCompactUUID(final DataInputStream in) throws IOException {
+        final int uuidType = in.read();
+        if (uuidType == CompactRecordFormat.UUID_BINARY) {
+            final byte[] uuidBytes = new byte[16];
+            StreamUtils.fillBuffer(in, uuidBytes);
+            return CompactRecordFormat.formatUUID(uuidBytes);
+        } else if (uuidType == CompactRecordFormat.UUID_STRING) {
+            return CompactRecordFormat.readVarString(in);
+        } else if (uuidType < 0) {
+            throw new EOFException();
+        }
+
+        throw new IOException("Failed to parse Provenance Event Record: invalid UUID qualifier " + uuidType);
+    }
+
+    private String readNullableVarString(final DataInputStream in) throws IOException {
+        final boolean valueExists = in.readBoolean();
+        return valueExists ? CompactRecordFormat.readVarString(in) : null;
+    }
+
+    private String readNullableDictionaryString(final DataInputStream in) throws IOException {
+        final boolean valueExists = in.readBoolean();
+        return valueExists ? readDictionaryString(in) : null;
+    }
+
+    private String readDictionaryString(final DataInputStream in) throws IOException {
+        final int index = VarIntUtils.readVarInt(in);
+        if (index > 0) {
+            if (index > dictionary.size()) {
+                throw new IOException("Failed to parse Provenance Event Record: found reference to unknown dictionary entry " + index);
+            }
+            return dictionary.get(index - 1);
+        }
+
+        final String value = CompactRecordFormat.readVarString(in);
+        if (dictionary.size() < CompactRecordFormat.MAX_DICTIONARY_SIZE) {
+            dictionary.add(value);
+        }
+        return value;
+    }
+
     private Map<String, String> readAttributes(final DataInputStream dis, final boolean valueNullable) throws IOException {
         final int numAttributes = dis.readInt();
         final Map<String, String> attrs = new HashMap<>();
@@ -503,6 +732,17 @@ public class StandardRecordReader implements RecordReader {
             throw new IOException("Cannot skip to byte offset " + position + " in stream because already at byte offset " + currentPosition);
         }
 
+        if (serializationVersion >= CompactRecordFormat.COMPACT_VERSION) {
+            // records refer to dictionary entries and attributes that were written earlier in the block, so we must
+            // read through the records that we are skipping rather than skipping over their bytes.
+            while (byteCountingIn.getBytesConsumed() - headerLength < position) {
+                if (nextRecord() == null) {
+                    throw new EOFException("Cannot skip to byte offset " + position + " in stream because the end of the stream was reached");
+                }
+            }
+            return;
+        }
+
         final long toSkip = position - currentPosition;
         StreamUtils.skip(dis, toSkip);
     }
@@ -20,7 +20,10 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
@@ -33,6 +36,7 @@ import org.apache.nifi.stream.io.ByteCountingOutputStream;
 import org.apache.nifi.stream.io.DataOutputStream;
 import org.apache.nifi.stream.io.GZIPOutputStream;
 import org.apache.nifi.stream.io.NonCloseableOutputStream;
+import org.apache.nifi.stream.io.VarIntUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,6 +59,12 @@ public class StandardRecordWriter implements RecordWriter {
 
     private final Lock lock = new ReentrantLock();
 
+    // State of the compact encoding for the current block; see CompactRecordFormat
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final Map<String, Map<String, String>> attributeStates = CompactRecordFormat.createAttributeStates();
+    private long previousEventId = 0L;
+    private long previousEventTime = 0L;
+
 
     public StandardRecordWriter(final File file, final TocWriter writer, final boolean compressed, final int uncompressedBlockSize) throws IOException {
         logger.trace("Creating Record Writer for {}", file.getName());
@@ -131,6 +141,11 @@ public class StandardRecordWriter implements RecordWriter {
 
             this.byteCountingOut = new ByteCountingOutputStream(writableStream, byteOffset);
             this.out = new DataOutputStream(byteCountingOut);
+
+            dictionary.clear();
+            attributeStates.clear();
+            previousEventId = 0L;
+            previousEventTime = 0L;
             dirtyFlag.set(false);
         } catch (final IOException ioe) {
             markDirty();
@@ -160,74 +175,61 @@ public class StandardRecordWriter implements RecordWriter {
                 }
             }
 
-            out.writeLong(recordIdentifier);
-            out.writeUTF(record.getEventType().name());
-            out.writeLong(record.getEventTime());
-            out.writeLong(record.getFlowFileEntryDate());
-            out.writeLong(record.getEventDuration());
+            VarIntUtils.writeSignedVarLong(recordIdentifier - previousEventId, out);
+            writeDictionaryString(out, recordType.name());
+            VarIntUtils.writeSignedVarLong(record.getEventTime() - previousEventTime, out);
+            VarIntUtils.writeSignedVarLong(record.getEventTime() - record.getFlowFileEntryDate(), out);
+            VarIntUtils.writeSignedVarLong(record.getEventDuration(), out);
+            previousEventId = recordIdentifier;
+            previousEventTime = record.getEventTime();
 
             writeUUIDs(out, record.getLineageIdentifiers());
-            out.writeLong(record.getLineageStartDate());
+            VarIntUtils.writeSignedVarLong(record.getEventTime() - record.getLineageStartDate(), out);
 
-            writeNullableString(out, record.getComponentId());
-            writeNullableString(out, record.getComponentType());
+            writeNullableDictionaryString(out, record.getComponentId());
+            writeNullableDictionaryString(out, record.getComponentType());
             writeUUID(out, record.getFlowFileUuid());
             writeNullableString(out, record.getDetails());
 
             // Write FlowFile attributes
-            final Map<String, String> attrs = record.getPreviousAttributes();
-            out.writeInt(attrs.size());
-            for (final Map.Entry<String, String> entry : attrs.entrySet()) {
-                writeLongString(out, entry.getKey());
-                writeLongString(out, entry.getValue());
-            }
-
-            final Map<String, String> attrUpdates = record.getUpdatedAttributes();
-            out.writeInt(attrUpdates.size());
-            for (final Map.Entry<String, String> entry : attrUpdates.entrySet()) {
-                writeLongString(out, entry.getKey());
-                writeLongNullableString(out, entry.getValue());
-            }
-
-            // If Content Claim Info is present, write out a 'TRUE' followed by claim info. Else, write out 'false'.
-            if (record.getContentClaimSection() != null && record.getContentClaimContainer() != null && record.getContentClaimIdentifier() != null) {
-                out.writeBoolean(true);
-                out.writeUTF(record.getContentClaimContainer());
-                out.writeUTF(record.getContentClaimSection());
-                out.writeUTF(record.getContentClaimIdentifier());
-                if (record.getContentClaimOffset() == null) {
-                    out.writeLong(0L);
-                } else {
-                    out.writeLong(record.getContentClaimOffset());
-                }
-                out.writeLong(record.getFileSize());
+            writeAttributes(out, record.getFlowFileUuid(), record.getPreviousAttributes(), record.getUpdatedAttributes());
+
+            // Write the Content Claim, followed by the Previous Content Claim, which is frequently the same claim.
+            final boolean hasClaim = record.getContentClaimSection() != null && record.getContentClaimContainer() != null && record.getContentClaimIdentifier() != null;
+            final long claimOffset = record.getContentClaimOffset() == null ? 0L : record.getContentClaimOffset();
+            if (hasClaim) {
+                out.write(CompactRecordFormat.CLAIM);
+                writeClaim(out, record.getContentClaimContainer(), record.getContentClaimSection(), record.getContentClaimIdentifier(), claimOffset, record.getFileSize());
+            } else if (record.getFileSize() != 0L) {
+                out.write(CompactRecordFormat.NO_CLAIM_WITH_SIZE);
+                VarIntUtils.writeSignedVarLong(record.getFileSize(), out);
             } else {
-                out.writeBoolean(false);
+                out.write(CompactRecordFormat.NO_CLAIM);
             }
 
-            // If Previous Content Claim Info is present, write out a 'TRUE' followed by claim info. Else, write out 'false'.
             if (record.getPreviousContentClaimSection() != null && record.getPreviousContentClaimContainer() != null && record.getPreviousContentClaimIdentifier() != null) {
-                out.writeBoolean(true);
-                out.writeUTF(record.getPreviousContentClaimContainer());
-                out.writeUTF(record.getPreviousContentClaimSection());
-                out.writeUTF(record.getPreviousContentClaimIdentifier());
-                if (record.getPreviousContentClaimOffset() == null) {
-                    out.writeLong(0L);
-                } else {
-                    out.writeLong(record.getPreviousContentClaimOffset());
-                }
-
-                if (record.getPreviousFileSize() == null) {
-                    out.writeLong(0L);
+                final long previousOffset = record.getPreviousContentClaimOffset() == null ? 0L : record.getPreviousContentClaimOffset();
+                final long previousSize = record.getPreviousFileSize() == null ? 0L : record.getPreviousFileSize();
+
+                if (hasClaim && previousOffset == claimOffset && previousSize == record.getFileSize()
+                    && record.getPreviousContentClaimContainer().equals(record.getContentClaimContainer())
+                    && record.getPreviousContentClaimSection().equals(record.getContentClaimSection())
+                    && record.getPreviousContentClaimIdentifier().equals(record.getContentClaimIdentifier())) {
+                    out.write(CompactRecordFormat.SAME_AS_CURRENT_CLAIM);
                 } else {
-                    out.writeLong(record.getPreviousFileSize());
+                    out.write(CompactRecordFormat.CLAIM);
+                    writeClaim(out, record.getPreviousContentClaimContainer(), record.getPreviousContentClaimSection(),
+                        record.getPreviousContentClaimIdentifier(), previousOffset, previousSize);
                 }
+            } else if (record.getPreviousFileSize() != null) {
+                out.write(CompactRecordFormat.NO_CLAIM_WITH_SIZE);
+                VarIntUtils.writeSignedVarLong(record.getPreviousFileSize(), out);
             } else {
-                out.writeBoolean(false);
+                out.write(CompactRecordFormat.NO_CLAIM);
             }
 
             // write out the identifier of the destination queue.
-            writeNullableString(out, record.getSourceQueueIdentifier());
+            writeNullableDictionaryString(out, record.getSourceQueueIdentifier());
 
             // Write type-specific info
             if (recordType == ProvenanceEventType.FORK || recordType == ProvenanceEventType.JOIN || recordType == ProvenanceEventType.CLONE || recordType == ProvenanceEventType.REPLAY) {
@@ -243,7 +245,7 @@ public class StandardRecordWriter implements RecordWriter {
             } else if (recordType == ProvenanceEventType.ADDINFO) {
                 writeNullableString(out, record.getAlternateIdentifierUri());
             } else if (recordType == ProvenanceEventType.ROUTE) {
-                writeNullableString(out, record.getRelationship());
+                writeNullableDictionaryString(out, record.getRelationship());
             }
 
             out.flush();
@@ -255,15 +257,90 @@ public class StandardRecordWriter implements RecordWriter {
         }
     }
 
+    /**
+     * Writes the previous attributes of the event as the changes from the attributes that the FlowFile had after the
+     * last event for it in this block, if there was one, followed by the updated attributes.
+     */
+    private void writeAttributes(final DataOutputStream out, final String flowFileUuid, final Map<String, String> previousAttributes,
+            final Map<String, String> updatedAttributes) throws IOException {
+        final Map<String, String> lastKnownAttributes = attributeStates.remove(flowFileUuid);
+        if (lastKnownAttributes == null) {
+            out.write(CompactRecordFormat.ATTRIBUTES_FULL);
+            VarIntUtils.writeVarInt(previousAttributes.size(), out);
+            for (final Map.Entry<String, String> entry : previousAttributes.entrySet()) {
+                writeDictionaryString(out, entry.getKey());
+                CompactRecordFormat.writeVarString(entry.getValue(), out);
+            }
+        } else {
+            out.write(CompactRecordFormat.ATTRIBUTES_DELTA);
+
+            final List<String> removed = new ArrayList<>();
+            for (final String key : lastKnownAttributes.keySet()) {
+                if (!previousAttributes.containsKey(key)) {
+                    removed.add(key);
+                }
+            }
+            VarIntUtils.writeVarInt(removed.size(), out);
+            for (final String key : removed) {
+                writeDictionaryString(out, key);
+            }
+
+            final List<Map.Entry<String, String>> changed = new ArrayList<>();
+            for (final Map.Entry<String, String> entry : previousAttributes.entrySet()) {
+                if (!entry.getValue().equals(lastKnownAttributes.get(entry.getKey()))) {
+                    changed.add(entry);
+                }
+            }
+            VarIntUtils.writeVarInt(changed.size(), out);
+            for (final Map.Entry<String, String> entry : changed) {
+                writeDictionaryString(out, entry.getKey());
+                CompactRecordFormat.writeVarString(entry.getValue(), out);
+            }
+        }
+
+        final Map<String, String> currentAttributes = new HashMap<>(previousAttributes);
+        VarIntUtils.writeVarInt(updatedAttributes.size(), out);
+        for (final Map.Entry<String, String> entry : updatedAttributes.entrySet()) {
+            writeDictionaryString(out, entry.getKey());
+            writeNullableString(out, entry.getValue());
+
+            if (entry.getValue() == null) {
+                currentAttributes.remove(entry.getKey());
+            } else {
+                currentAttributes.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        if (flowFileUuid != null) {
+            attributeStates.put(flowFileUuid, currentAttributes);
+        }
+    }
+
+    private void writeClaim(final DataOutputStream out, final String container, final String section, final String identifier,
+            final long offset, final long size) throws IOException {
+        writeDictionaryString(out, container);
+        writeDictionaryString(out, section);
+        CompactRecordFormat.writeVarString(identifier, out);
+        VarIntUtils.writeSignedVarLong(offset, out);
+        VarIntUtils.writeSignedVarLong(size, out);
+    }
+
     protected void writeUUID(final DataOutputStream out, final String uuid) throws IOException {
-        out.writeUTF(uuid);
+        final byte[] uuidBytes = CompactRecordFormat.parseUUID(uuid);
+        if (uuidBytes == null) {
+            out.write(CompactRecordFormat.UUID_STRING);
+            CompactRecordFormat.writeVarString(uuid, out);
+        } else {
+            out.write(CompactRecordFormat.UUID_BINARY);
+            out.write(uuidBytes);
+        }
     }
 
     protected void writeUUIDs(final DataOutputStream out, final Collection<String> list) throws IOException {
         if (list == null) {
-            out.writeInt(0);
+            VarIntUtils.writeVarInt(0, out);
         } else {
-            out.writeInt(list.size());
+            VarIntUtils.writeVarInt(list.size(), out);
             for (final String value : list) {
                 writeUUID(out, value);
             }
@@ -275,23 +352,31 @@ public class StandardRecordWriter implements RecordWriter {
             out.writeBoolean(false);
         } else {
             out.writeBoolean(true);
-            out.writeUTF(toWrite);
+            CompactRecordFormat.writeVarString(toWrite, out);
         }
     }
 
-    private void writeLongNullableString(final DataOutputStream out, final String toWrite) throws IOException {
+    private void writeNullableDictionaryString(final DataOutputStream out, final String toWrite) throws IOException {
         if (toWrite == null) {
             out.writeBoolean(false);
         } else {
             out.writeBoolean(true);
-            writeLongString(out, toWrite);
+            writeDictionaryString(out, toWrite);
         }
     }
 
-    private void writeLongString(final DataOutputStream out, final String value) throws IOException {
-        final byte[] bytes = value.getBytes("UTF-8");
-        out.writeInt(bytes.length);
-        out.write(bytes);
+    private void writeDictionaryString(final DataOutputStream out, final String value) throws IOException {
+        final Integer index = dictionary.get(value);
+        if (index != null) {
+            VarIntUtils.writeVarInt(index + 1, out);
+            return;
+        }
+
+        VarIntUtils.writeVarInt(0, out);
+        CompactRecordFormat.writeVarString(value, out);
+        if (dictionary.size() < CompactRecordFormat.MAX_DICTIONARY_SIZE) {
+            dictionary.put(value, dictionary.size());
+        }
     }
 
     @Override
@@ -19,22 +19,33 @@ package org.apache.nifi.provenance.lucene;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TotalHitCountCollector;
 import org.apache.nifi.provenance.PersistentProvenanceRepository;
 import org.apache.nifi.provenance.ProvenanceEventRecord;
+import org.apache.nifi.provenance.SearchableFields;
 import org.apache.nifi.provenance.StandardQueryResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class IndexSearch {
+    private static final Sort NEWEST_FIRST = new Sort(new SortField(SearchableFields.EventTime.getSearchableFieldName(), SortField.Type.LONG, true));
+
     private final Logger logger = LoggerFactory.getLogger(IndexSearch.class);
     private final PersistentProvenanceRepository repository;
     private final File indexDirectory;
@@ -48,7 +59,19 @@ public class IndexSearch {
         this.maxAttributeChars = maxAttributeChars;
     }
 
-    public StandardQueryResult search(final org.apache.nifi.provenance.search.Query provenanceQuery, final AtomicInteger retrievedCount, final long firstEventTimestamp) throws IOException {
+    /**
+     * Searches this index for the events that match the given query. Matching events are considered newest first, and
+     * only those that the given tracker accepts as being among the newest events found by any index searched on behalf
+     * of the query are read from the event files.
+     *
+     * @param provenanceQuery the query to perform
+     * @param newestEvents tracks the newest events found by all of the indices that are searched for the query
+     * @param firstEventTimestamp the time of the oldest event that is still in the repository
+     * @return the result of searching this index
+     * @throws IOException if unable to search the index or read the matching events
+     */
+    public StandardQueryResult search(final org.apache.nifi.provenance.search.Query provenanceQuery, final NewestEventsTracker newestEvents,
+            final long firstEventTimestamp) throws IOException {
         if (!indexDirectory.exists() && !indexDirectory.mkdirs()) {
             throw new IOException("Unable to create Indexing Directory " + indexDirectory);
         }
@@ -77,7 +100,21 @@ public class IndexSearch {
             final long searchStartNanos = System.nanoTime();
             final long openSearcherNanos = searchStartNanos - start;
 
-            final TopDocs topDocs = searcher.search(luceneQuery, provenanceQuery.getMaxResults());
+            // The directory is modified whenever events are added to the index, so if it was last modified before the oldest
+            // event that the query still needs, every event in this index is older than the events already found elsewhere.
+            // In that case there is no need to sort the matches; we only need to know how many there are.
+            final Long oldestNeededEventTime = newestEvents.getOldestNeededEventTime();
+            if (oldestNeededEventTime != null && indexDirectory.lastModified() < oldestNeededEventTime) {
+                final TotalHitCountCollector hitCountCollector = new TotalHitCountCollector();
+                searcher.search(luceneQuery, hitCountCollector);
+                logger.debug("Skipped reading events from {} because all of its events are older than those already found; counting hits took {} millis",
+                    this, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - searchStartNanos));
+
+                sqr.update(Collections.<ProvenanceEventRecord>emptyList(), hitCountCollector.getTotalHits());
+                return sqr;
+            }
+
+            final TopFieldDocs topDocs = searcher.search(luceneQuery, null, provenanceQuery.getMaxResults(), NEWEST_FIRST, false, false);
             final long finishSearch = System.nanoTime();
             final long searchNanos = finishSearch - searchStartNanos;
 
@@ -89,9 +126,20 @@ public class IndexSearch {
                 return sqr;
             }
 
+            // The matches are sorted newest first, so once an event is refused, all of the remaining ones would be as well.
+            final List<ScoreDoc> newestDocs = new ArrayList<>(topDocs.scoreDocs.length);
+            for (final ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                final Object eventTime = ((FieldDoc) scoreDoc).fields[0];
+                if (!(eventTime instanceof Long) || !newestEvents.offer((Long) eventTime)) {
+                    break;
+                }
+                newestDocs.add(scoreDoc);
+            }
+
+            final TopDocs docsToRead = new TopDocs(topDocs.totalHits, newestDocs.toArray(new ScoreDoc[newestDocs.size()]), Float.NaN);
             final DocsReader docsReader = new DocsReader();
-            matchingRecords = docsReader.read(topDocs, searcher.getIndexReader(), repository.getAllLogFiles(), retrievedCount,
-                provenanceQuery.getMaxResults(), maxAttributeChars);
+            matchingRecords = docsReader.read(docsToRead, searcher.getIndexReader(), repository.getAllLogFiles(), new AtomicInteger(0),
+                newestDocs.size(), maxAttributeChars);
 
             final long readRecordsNanos = System.nanoTime() - finishSearch;
             logger.debug("Reading {} records took {} millis for {}", matchingRecords.size(), TimeUnit.NANOSECONDS.toMillis(readRecordsNanos), this);
@@ -16,41 +16,48 @@
  */
 package org.apache.nifi.provenance.lucene;
 
-import static java.util.Objects.requireNonNull;
-
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.lucene.index.Term;
-import org.apache.lucene.search.BooleanClause.Occur;
-import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.BytesRef;
 import org.apache.nifi.provenance.PersistentProvenanceRepository;
 import org.apache.nifi.provenance.ProvenanceEventRecord;
 import org.apache.nifi.provenance.SearchableFields;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Computes the lineage of a set of FlowFiles from a single Provenance Index.
+ * Because each event is indexed under the UUID of the FlowFile that it describes as well as
+ * the UUIDs of the children (FORK, CLONE, REPLAY) or parents (JOIN) that it links to, the
+ * FlowFileUUID postings of the index serve as an adjacency list from FlowFile to event. Rather
+ * than building a (size-limited) boolean query, the postings for each UUID are walked directly,
+ * so the number of FlowFiles and events that make up a lineage is not bounded.
+ */
 public class LineageQuery {
 
-    public static final int MAX_QUERY_RESULTS = 5000;
-    public static final int MAX_LINEAGE_UUIDS = 100;
     private static final Logger logger = LoggerFactory.getLogger(LineageQuery.class);
 
     public static Set<ProvenanceEventRecord> computeLineageForFlowFiles(final PersistentProvenanceRepository repo, final IndexManager indexManager, final File indexDirectory,
         final String lineageIdentifier, final Collection<String> flowFileUuids, final int maxAttributeChars) throws IOException {
-        if (requireNonNull(flowFileUuids).size() > MAX_LINEAGE_UUIDS) {
-            throw new IllegalArgumentException(String.format("Cannot compute lineage for more than %s FlowFiles. This lineage contains %s.", MAX_LINEAGE_UUIDS, flowFileUuids.size()));
-        }
-
         if (lineageIdentifier == null && (flowFileUuids == null || flowFileUuids.isEmpty())) {
             throw new IllegalArgumentException("Must specify either Lineage Identifier or FlowFile UUIDs to compute lineage");
         }
@@ -59,43 +66,29 @@ public class LineageQuery {
         try {
             searcher = indexManager.borrowIndexSearcher(indexDirectory);
             try {
-                // Create a query for all Events related to the FlowFiles of interest. We do this by adding all ID's as
-                // "SHOULD" clauses and then setting the minimum required to 1.
-                final BooleanQuery flowFileIdQuery;
-                if (flowFileUuids == null || flowFileUuids.isEmpty()) {
-                    flowFileIdQuery = null;
-                } else {
-                    flowFileIdQuery = new BooleanQuery();
+                final IndexReader indexReader = searcher.getIndexReader();
+
+                final long searchStart = System.nanoTime();
+                final BitSet matchingDocs = new BitSet(indexReader.maxDoc());
+                if (flowFileUuids != null) {
+                    final List<String> terms = new ArrayList<>(flowFileUuids.size());
                     for (final String flowFileUuid : flowFileUuids) {
-                        flowFileIdQuery.add(new TermQuery(new Term(SearchableFields.FlowFileUUID.getSearchableFieldName(), flowFileUuid)), Occur.SHOULD);
+                        terms.add(flowFileUuid.toLowerCase());
                     }
-                    flowFileIdQuery.setMinimumNumberShouldMatch(1);
+                    collectDocs(indexReader, SearchableFields.FlowFileUUID.getSearchableFieldName(), terms, matchingDocs);
                 }
-
-                BooleanQuery query;
-                if (lineageIdentifier == null) {
-                    query = flowFileIdQuery;
-                } else {
-                    final BooleanQuery lineageIdQuery = new BooleanQuery();
-                    lineageIdQuery.add(new TermQuery(new Term(SearchableFields.LineageIdentifier.getSearchableFieldName(), lineageIdentifier)), Occur.MUST);
-
-                    if (flowFileIdQuery == null) {
-                        query = lineageIdQuery;
-                    } else {
-                        query = new BooleanQuery();
-                        query.add(flowFileIdQuery, Occur.SHOULD);
-                        query.add(lineageIdQuery, Occur.SHOULD);
-                        query.setMinimumNumberShouldMatch(1);
-                    }
+                if (lineageIdentifier != null) {
+                    collectDocs(indexReader, SearchableFields.LineageIdentifier.getSearchableFieldName(), Collections.singleton(lineageIdentifier), matchingDocs);
                 }
 
-                final long searchStart = System.nanoTime();
-                final TopDocs uuidQueryTopDocs = searcher.search(query, MAX_QUERY_RESULTS);
+                final List<Document> docs = new ArrayList<>(matchingDocs.cardinality());
+                for (int docId = matchingDocs.nextSetBit(0); docId >= 0; docId = matchingDocs.nextSetBit(docId + 1)) {
+                    docs.add(indexReader.document(docId));
+                }
                 final long searchEnd = System.nanoTime();
 
                 final DocsReader docsReader = new DocsReader();
-                final Set<ProvenanceEventRecord> recs = docsReader.read(uuidQueryTopDocs, searcher.getIndexReader(), repo.getAllLogFiles(),
-                    new AtomicInteger(0), Integer.MAX_VALUE, maxAttributeChars);
+                final Set<ProvenanceEventRecord> recs = docsReader.read(docs, repo.getAllLogFiles(), new AtomicInteger(0), Integer.MAX_VALUE, maxAttributeChars);
 
                 final long readDocsEnd = System.nanoTime();
                 logger.debug("Finished Lineage Query against {}; Lucene search took {} millis, reading records took {} millis",
@@ -116,4 +109,27 @@ public class LineageQuery {
         }
     }
 
+    private static void collectDocs(final IndexReader indexReader, final String fieldName, final Collection<String> values, final BitSet matchingDocs) throws IOException {
+        for (final AtomicReaderContext context : indexReader.leaves()) {
+            final AtomicReader reader = context.reader();
+            final Terms terms = reader.terms(fieldName);
+            if (terms == null) {
+                continue;
+            }
+
+            final TermsEnum termsEnum = terms.iterator(null);
+            DocsEnum docsEnum = null;
+            for (final String value : values) {
+                if (!termsEnum.seekExact(new BytesRef(value))) {
+                    continue;
+                }
+
+                docsEnum = termsEnum.docs(reader.getLiveDocs(), docsEnum, DocsEnum.FLAG_NONE);
+                int docId;
+                while ((docId = docsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                    matchingDocs.set(context.docBase + docId);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance.lucene;
+
+import java.util.PriorityQueue;
+
+/**
+ * Keeps track of the event times of the newest events that have been selected
+ * by any of the index shards that are searched on behalf of a single query. A
+ * shard offers the times of its matching events, newest first, and stops as
+ * soon as one is refused, because the query has already found enough events
+ * that are at least as new in other shards. This allows a query for the most
+ * recent N events to read only those events from the event files, regardless of
+ * how many shards match.
+ */
+public class NewestEventsTracker {
+    private final int maxResults;
+
+    // guarded by synchronizing on this
+    private final PriorityQueue<Long> newestEventTimes;
+
+    public NewestEventsTracker(final int maxResults) {
+        this.maxResults = maxResults;
+        this.newestEventTimes = new PriorityQueue<>(Math.max(1, Math.min(maxResults, 1024)));
+    }
+
+    /**
+     * Records that an event with the given time matched the query, if it is
+     * among the newest events seen so far.
+     *
+     * @param eventTime the time of the matching event
+     * @return <code>true</code> if the event is among the newest events seen so
+     *         far and should be retrieved, <code>false</code> if enough newer
+     *         events have already been found
+     */
+    public synchronized boolean offer(final long eventTime) {
+        if (maxResults <= 0) {
+            return false;
+        }
+
+        if (newestEventTimes.size() < maxResults) {
+            newestEventTimes.add(eventTime);
+            return true;
+        }
+
+        if (eventTime <= newestEventTimes.peek()) {
+            return false;
+        }
+
+        newestEventTimes.poll();
+        newestEventTimes.add(eventTime);
+        return true;
+    }
+
+    /**
+     * @return the time of the oldest event that is still needed to satisfy the
+     *         query, or <code>null</code> if fewer than the maximum number of
+     *         results have been found so that any matching event is needed
+     */
+    public synchronized Long getOldestNeededEventTime() {
+        if (newestEventTimes.size() < maxResults) {
+            return null;
+        }
+
+        return maxResults <= 0 ? Long.MAX_VALUE : newestEventTimes.peek();
+    }
+}
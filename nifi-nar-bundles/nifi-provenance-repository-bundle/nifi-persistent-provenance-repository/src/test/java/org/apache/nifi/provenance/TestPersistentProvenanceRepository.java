@@ -19,6 +19,7 @@ package org.apache.nifi.provenance;
 import static org.apache.nifi.provenance.TestUtil.createFlowFile;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
@@ -280,6 +281,58 @@ public class TestPersistentProvenanceRepository {
         }
     }
 
+    @Test
+    public void testBufferedEventsAreWrittenOnClose() throws IOException, InterruptedException {
+        final RepositoryConfiguration config = createConfiguration();
+        config.setMaxEventFileLife(1, TimeUnit.MINUTES);
+        config.setJournalCount(4);
+        config.setIngestBufferSize(10);
+        repo = new PersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter());
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("uuid", UUID.randomUUID().toString());
+
+        final ProvenanceEventBuilder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventTime(System.currentTimeMillis());
+        builder.setEventType(ProvenanceEventType.RECEIVE);
+        builder.setTransitUri("nifi://unit-test");
+        builder.fromFlowFile(createFlowFile(3L, 3000L, attributes));
+        builder.setComponentId("1234");
+        builder.setComponentType("dummy processor");
+        final ProvenanceEventRecord record = builder.build();
+
+        // register more events from several threads than the buffers can hold, so that some threads must wait for room
+        final int numThreads = 4;
+        final int eventsPerThread = 250;
+        final Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < eventsPerThread; j++) {
+                        repo.registerEvent(record);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        repo.close();
+
+        repo = new PersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter());
+        final List<ProvenanceEventRecord> recoveredRecords = repo.getEvents(0L, numThreads * eventsPerThread + 10);
+
+        assertEquals(numThreads * eventsPerThread, recoveredRecords.size());
+        for (int i = 0; i < recoveredRecords.size(); i++) {
+            assertEquals(i, recoveredRecords.get(i).getEventId());
+        }
+    }
+
     @Test
     public void testAddToMultipleLogsAndRecover() throws IOException, InterruptedException {
         final List<SearchableField> searchableFields = new ArrayList<>();
@@ -835,6 +888,66 @@ public class TestPersistentProvenanceRepository {
         assertEquals(1, edges.size());
     }
 
+    @Test
+    public void testExpandChildrenOfLargeFork() throws IOException, InterruptedException {
+        final RepositoryConfiguration config = createConfiguration();
+        config.setMaxEventFileLife(500, TimeUnit.MILLISECONDS);
+        config.setSearchableFields(new ArrayList<>(SearchableFields.getStandardFields()));
+
+        repo = new PersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter());
+
+        final String parentId = "00000000-0000-0000-0000-000000000000";
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("uuid", parentId);
+
+        final StandardProvenanceEventRecord.Builder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventTime(System.currentTimeMillis());
+        builder.setEventType(ProvenanceEventType.FORK);
+        builder.fromFlowFile(createFlowFile(1L, 3000L, attributes));
+        builder.setComponentId("1234");
+        builder.setComponentType("dummy processor");
+
+        // more children than could be combined into a single boolean query
+        final int numChildren = 1500;
+        final List<String> childIds = new ArrayList<>();
+        for (int i = 0; i < numChildren; i++) {
+            final String childId = String.format("00000000-0000-0000-0001-%012d", i);
+            childIds.add(childId);
+            builder.addChildUuid(childId);
+        }
+        builder.addParentUuid(parentId);
+        repo.registerEvent(builder.build());
+
+        for (final String childId : childIds) {
+            attributes.put("uuid", childId);
+            final StandardProvenanceEventRecord.Builder dropBuilder = new StandardProvenanceEventRecord.Builder();
+            dropBuilder.setEventTime(System.currentTimeMillis());
+            dropBuilder.setEventType(ProvenanceEventType.DROP);
+            dropBuilder.fromFlowFile(createFlowFile(2L, 3000L, attributes));
+            dropBuilder.setComponentId("1234");
+            dropBuilder.setComponentType("dummy processor");
+            repo.registerEvent(dropBuilder.build());
+        }
+
+        repo.waitForRollover();
+
+        final AsyncLineageSubmission submission = repo.submitExpandChildren(0L);
+        while (!submission.getResult().isFinished()) {
+            Thread.sleep(100L);
+        }
+        assertNull(submission.getResult().getError());
+
+        // the FORK event, each child FlowFile and each DROP event
+        final int expectedNodes = 1 + 2 * numChildren;
+        assertEquals(expectedNodes, submission.getResult().getNodes().size());
+
+        // expanding the same event again is served from the lineage cache
+        final AsyncLineageSubmission cachedSubmission = repo.submitExpandChildren(0L);
+        assertTrue(cachedSubmission.getResult().isFinished());
+        assertEquals(expectedNodes, cachedSubmission.getResult().getNodes().size());
+    }
+
     @Test
     public void testCorrectProvenanceEventIdOnRestore() throws IOException {
         final RepositoryConfiguration config = createConfiguration();
@@ -1031,6 +1144,62 @@ public class TestPersistentProvenanceRepository {
     }
 
 
+    @Test
+    public void testQueryReturnsNewestEventsAcrossIndexShards() throws IOException, InterruptedException {
+        final RepositoryConfiguration config = createConfiguration();
+        config.setMaxEventFileLife(500, TimeUnit.MILLISECONDS);
+        config.setSearchableFields(new ArrayList<>(SearchableFields.getStandardFields()));
+        config.setDesiredIndexSize(10); // force new index to be created for each rollover
+
+        repo = new PersistentProvenanceRepository(config, DEFAULT_ROLLOVER_MILLIS);
+        repo.initialize(getEventReporter());
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("filename", "file-1");
+
+        final ProvenanceEventBuilder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventType(ProvenanceEventType.RECEIVE);
+        builder.setTransitUri("nifi://unit-test");
+        builder.setComponentId("1234");
+        builder.setComponentType("dummy processor");
+
+        // write three batches of events, each of which is indexed into its own shard
+        final long firstEventTime = System.currentTimeMillis();
+        for (int batch = 0; batch < 3; batch++) {
+            for (int i = 0; i < 10; i++) {
+                final int eventIndex = batch * 10 + i;
+                attributes.put("uuid", "00000000-0000-0000-0000-0000000000" + (10 + eventIndex));
+                builder.fromFlowFile(createFlowFile(eventIndex, 3000L, attributes));
+                builder.setEventTime(firstEventTime + eventIndex);
+                repo.registerEvent(builder.build());
+            }
+
+            repo.waitForRollover();
+            Thread.sleep(1000L);
+        }
+
+        final File[] indexDirs = config.getStorageDirectories().get(0).listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File pathname) {
+                return pathname.getName().startsWith("index");
+            }
+        });
+        assertEquals(3, indexDirs.length);
+
+        final Query query = new Query(UUID.randomUUID().toString());
+        query.addSearchTerm(SearchTerms.newSearchTerm(SearchableFields.ComponentID, "1234"));
+        query.setMaxResults(5);
+
+        final QueryResult result = repo.queryEvents(query);
+        assertEquals(30, result.getTotalHitCount());
+
+        final List<ProvenanceEventRecord> matchingEvents = result.getMatchingEvents();
+        assertEquals(5, matchingEvents.size());
+        for (final ProvenanceEventRecord event : matchingEvents) {
+            assertTrue(event.getEventTime() >= firstEventTime + 25);
+        }
+    }
+
     @Test
     public void testBackPressure() throws IOException, InterruptedException {
         final RepositoryConfiguration config = createConfiguration();
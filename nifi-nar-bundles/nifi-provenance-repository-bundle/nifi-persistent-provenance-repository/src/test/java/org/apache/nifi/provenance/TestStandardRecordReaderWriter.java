@@ -20,11 +20,14 @@ import static org.apache.nifi.provenance.TestUtil.createFlowFile;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -88,6 +91,50 @@ public class TestStandardRecordReaderWriter {
     }
 
 
+    @Test
+    public void testFileSizeWithoutContentClaim() throws IOException {
+        final File journalFile = new File("target/storage/" + UUID.randomUUID().toString() + "/testFileSizeWithoutContentClaim");
+        final File tocFile = TocUtil.getTocFile(journalFile);
+        final TocWriter tocWriter = new StandardTocWriter(tocFile, false, false);
+        final StandardRecordWriter writer = new StandardRecordWriter(journalFile, tocWriter, false, 1024 * 1024);
+
+        // content held inline with the FlowFile has a size but no Content Claim
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("uuid", UUID.randomUUID().toString());
+        final ProvenanceEventBuilder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventTime(System.currentTimeMillis());
+        builder.setEventType(ProvenanceEventType.CONTENT_MODIFIED);
+        builder.fromFlowFile(createFlowFile(3L, 3000L, attributes));
+        builder.setPreviousContentClaim(null, null, null, null, 12L);
+        builder.setComponentId("1234");
+        builder.setComponentType("dummy processor");
+
+        writer.writeHeader(1L);
+        writer.writeRecord(builder.build(), 1L);
+        writer.writeRecord(createEvent(), 2L);
+        writer.close();
+
+        final TocReader tocReader = new StandardTocReader(tocFile);
+
+        try (final FileInputStream fis = new FileInputStream(journalFile);
+            final StandardRecordReader reader = new StandardRecordReader(fis, journalFile.getName(), tocReader, 2048)) {
+            final StandardProvenanceEventRecord recovered = reader.nextRecord();
+            assertNotNull(recovered);
+            assertNull(recovered.getContentClaimIdentifier());
+            assertEquals(3000L, recovered.getFileSize());
+            assertNull(recovered.getPreviousContentClaimIdentifier());
+            assertEquals(Long.valueOf(12L), recovered.getPreviousFileSize());
+
+            final StandardProvenanceEventRecord next = reader.nextRecord();
+            assertNotNull(next);
+            assertEquals(3000L, next.getFileSize());
+            assertNull(next.getPreviousFileSize());
+            assertNull(reader.nextRecord());
+        }
+
+        FileUtils.deleteFile(journalFile.getParentFile(), true);
+    }
+
     @Test
     public void testSingleRecordCompressed() throws IOException {
         final File journalFile = new File("target/storage/" + UUID.randomUUID().toString() + "/testSimpleWrite.gz");
@@ -186,4 +233,101 @@ public class TestStandardRecordReaderWriter {
 
         FileUtils.deleteFile(journalFile.getParentFile(), true);
     }
+
+    @Test
+    public void testAttributeChangesAcrossBlocksCompressed() throws IOException {
+        final File journalFile = new File("target/storage/" + UUID.randomUUID().toString() + "/testAttributeChanges.gz");
+        final File tocFile = TocUtil.getTocFile(journalFile);
+        final TocWriter tocWriter = new StandardTocWriter(tocFile, false, false);
+        // new block each 1000 bytes
+        final StandardRecordWriter writer = new StandardRecordWriter(journalFile, tocWriter, true, 1000);
+
+        final String uuid = UUID.randomUUID().toString();
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("filename", "1.txt");
+        attributes.put("uuid", uuid);
+
+        final List<ProvenanceEventRecord> events = new ArrayList<>();
+        writer.writeHeader(1L);
+        for (int i = 0; i < 50; i++) {
+            final Map<String, String> updatedAttributes = new HashMap<>();
+            updatedAttributes.put("counter", String.valueOf(i));
+            if (i % 5 == 0) {
+                updatedAttributes.put("filename", null);
+            }
+
+            final StandardProvenanceEventRecord.Builder builder = new StandardProvenanceEventRecord.Builder();
+            builder.setEventTime(System.currentTimeMillis());
+            builder.setEventType(i % 2 == 0 ? ProvenanceEventType.CLONE : ProvenanceEventType.ROUTE);
+            builder.fromFlowFile(createFlowFile(3L, 3000L, attributes));
+            builder.setAttributes(new HashMap<>(attributes), updatedAttributes);
+            builder.setComponentId("1234");
+            builder.setComponentType("dummy processor");
+            if (i % 2 == 0) {
+                builder.addChildUuid("NOT-A-UUID-" + i);
+            } else {
+                builder.setRelationship("success");
+            }
+            builder.setCurrentContentClaim("container", "section", "claim-" + i, 10L, 3000L);
+            builder.setPreviousContentClaim("container", "section", "claim-" + i, 10L, 3000L);
+            final ProvenanceEventRecord event = builder.build();
+
+            writer.writeRecord(event, i);
+            events.add(event);
+
+            for (final Map.Entry<String, String> entry : updatedAttributes.entrySet()) {
+                if (entry.getValue() == null) {
+                    attributes.remove(entry.getKey());
+                } else {
+                    attributes.put(entry.getKey(), entry.getValue());
+                }
+            }
+            if (i % 5 == 4) {
+                attributes.put("filename", i + ".txt");
+            }
+        }
+        writer.close();
+
+        final TocReader tocReader = new StandardTocReader(tocFile);
+        assertTrue(tocReader.getLastBlockOffset() > 0);
+
+        try (final FileInputStream fis = new FileInputStream(journalFile);
+            final StandardRecordReader reader = new StandardRecordReader(fis, journalFile.getName(), tocReader, 2048)) {
+            for (int i = 0; i < 50; i++) {
+                final StandardProvenanceEventRecord recovered = reader.nextRecord();
+                assertNotNull(recovered);
+                assertEvent(events.get(i), recovered);
+            }
+
+            assertNull(reader.nextRecord());
+        }
+
+        // a block that is read directly must not depend on anything written in an earlier block
+        final int lastBlockIndex = tocReader.getBlockIndex(tocReader.getLastBlockOffset());
+        try (final FileInputStream fis = new FileInputStream(journalFile);
+            final StandardRecordReader reader = new StandardRecordReader(fis, journalFile.getName(), new StandardTocReader(tocFile), 2048)) {
+            reader.skipToBlock(lastBlockIndex);
+            final StandardProvenanceEventRecord recovered = reader.nextRecord();
+            assertNotNull(recovered);
+            assertTrue(recovered.getEventId() > 0);
+            assertEvent(events.get((int) recovered.getEventId()), recovered);
+        }
+
+        FileUtils.deleteFile(journalFile.getParentFile(), true);
+    }
+
+    private void assertEvent(final ProvenanceEventRecord expected, final StandardProvenanceEventRecord actual) {
+        assertEquals(expected.getEventType(), actual.getEventType());
+        assertEquals(expected.getEventTime(), actual.getEventTime());
+        assertEquals(expected.getFlowFileUuid(), actual.getFlowFileUuid());
+        assertEquals(expected.getPreviousAttributes(), actual.getPreviousAttributes());
+        assertEquals(expected.getUpdatedAttributes(), actual.getUpdatedAttributes());
+        assertEquals(expected.getAttributes(), actual.getAttributes());
+        assertEquals(expected.getComponentId(), actual.getComponentId());
+        assertEquals(expected.getRelationship(), actual.getRelationship());
+        assertEquals(expected.getContentClaimIdentifier(), actual.getContentClaimIdentifier());
+        assertEquals(expected.getPreviousContentClaimIdentifier(), actual.getPreviousContentClaimIdentifier());
+        assertEquals(expected.getPreviousFileSize(), actual.getPreviousFileSize());
+        assertEquals(expected.getChildUuids(), actual.getChildUuids());
+    }
 }
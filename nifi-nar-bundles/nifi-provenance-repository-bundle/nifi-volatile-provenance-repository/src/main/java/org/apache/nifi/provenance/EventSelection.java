@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Describes the events that a search or lineage computation is interested in, so that a {@link ProvenanceEventStore}
+ * can avoid looking at events that cannot match. A selection narrows down the candidate events only; it does not
+ * replace the filter that the caller applies to each event. All criteria are optional.
+ */
+class EventSelection {
+
+    static final EventSelection ALL = new EventSelection(null, null, null, null, null);
+
+    private final Collection<String> flowFileUuids;
+    private final String componentId;
+    private final ProvenanceEventType eventType;
+    private final Long startTime;
+    private final Long endTime;
+
+    /**
+     * @param flowFileUuids events whose FlowFile, or one of whose parents or children, has one of these UUIDs, ignoring case
+     * @param componentId events generated by the component with this identifier, ignoring case
+     * @param eventType events of this type
+     * @param startTime events that occurred no earlier than this time
+     * @param endTime events that occurred no later than this time
+     */
+    EventSelection(final Collection<String> flowFileUuids, final String componentId, final ProvenanceEventType eventType, final Long startTime, final Long endTime) {
+        this.flowFileUuids = flowFileUuids == null ? null : Collections.unmodifiableCollection(flowFileUuids);
+        this.componentId = componentId;
+        this.eventType = eventType;
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    static EventSelection forFlowFiles(final Collection<String> flowFileUuids) {
+        return new EventSelection(flowFileUuids, null, null, null, null);
+    }
+
+    Collection<String> getFlowFileUuids() {
+        return flowFileUuids;
+    }
+
+    String getComponentId() {
+        return componentId;
+    }
+
+    ProvenanceEventType getEventType() {
+        return eventType;
+    }
+
+    Long getStartTime() {
+        return startTime;
+    }
+
+    Long getEndTime() {
+        return endTime;
+    }
+
+    boolean isTimeSelected(final long eventTime) {
+        return (startTime == null || eventTime >= startTime) && (endTime == null || eventTime <= endTime);
+    }
+}
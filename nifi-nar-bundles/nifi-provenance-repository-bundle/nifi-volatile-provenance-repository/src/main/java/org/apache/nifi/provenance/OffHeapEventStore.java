@@ -0,0 +1,615 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.nifi.util.RingBuffer.ForEachEvaluator;
+import org.apache.nifi.util.RingBuffer.IterationDirection;
+
+/**
+ * <p>
+ * A {@link ProvenanceEventStore} that holds events outside of the Java heap, in a fixed amount of direct memory.
+ * </p>
+ *
+ * <p>
+ * The fields that searches select on are held in primitive columns with one entry per event slot: the event identifier,
+ * event time, event type, file size, and a dictionary code for the component identifier. The remaining fields of each event
+ * are serialized into a ring of bytes, and the columns record where. Event slots and bytes are both reused in ring order,
+ * so the number of events that are held depends on how large the events are. An event is available for as long as neither
+ * its slot nor its bytes have been overwritten by a newer event.
+ * </p>
+ *
+ * <p>
+ * Two {@link OffHeapHashIndex}es allow events to be found without looking at every event: one on the component identifier,
+ * and one on the UUIDs of the FlowFile and of its parents and children. Searches on other fields scan the columns, and only
+ * the events whose columns match are deserialized.
+ * </p>
+ */
+class OffHeapEventStore implements ProvenanceEventStore {
+
+    static final long MIN_SIZE = 1024L * 1024L;
+    static final int ESTIMATED_BYTES_PER_EVENT = 512;
+    static final int COLUMN_BYTES_PER_EVENT = 8 + 8 + 8 + 8 + 4 + 4 + 1;
+
+    // each event is indexed under its own FlowFile UUID and those of its parents and children, so allow for more postings than events
+    private static final int FLOWFILE_POSTINGS_PER_EVENT = 2;
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE / (8 * FLOWFILE_POSTINGS_PER_EVENT);
+    private static final int NO_VALUE = -1;
+
+    private static final ProvenanceEventType[] EVENT_TYPES = ProvenanceEventType.values();
+
+    private final int capacity;
+    private final LongBuffer eventIds;
+    private final LongBuffer eventTimes;
+    private final LongBuffer fileSizes;
+    private final LongBuffer dataPositions;
+    private final IntBuffer dataLengths;
+    private final IntBuffer componentCodes;
+    private final ByteBuffer eventTypes;
+
+    private final ByteBuffer data;
+    private final int dataCapacity;
+
+    private final OffHeapHashIndex componentIndex;
+    private final OffHeapHashIndex flowFileIndex;
+    private final Dictionary dictionary = new Dictionary();
+
+    private final Lock readLock;
+    private final Lock writeLock;
+
+    private long nextEventId = 0L;
+    private long dataWritePosition = 0L;
+    private final AtomicLong droppedEventCount = new AtomicLong(0L);
+
+    /**
+     * @param maxBytes the number of bytes of direct memory that the store may use, which must be at least {@link #MIN_SIZE}
+     */
+    OffHeapEventStore(final long maxBytes) {
+        if (maxBytes < MIN_SIZE) {
+            throw new IllegalArgumentException("Off-heap Provenance Event store must be at least " + MIN_SIZE + " bytes but was configured with " + maxBytes + " bytes");
+        }
+
+        capacity = (int) Math.min(maxBytes / ESTIMATED_BYTES_PER_EVENT, MAX_CAPACITY);
+        final int flowFilePostings = capacity * FLOWFILE_POSTINGS_PER_EVENT;
+        final int componentBuckets = bucketsFor(capacity);
+        final int flowFileBuckets = bucketsFor(flowFilePostings);
+
+        final long fixedBytes = (long) capacity * COLUMN_BYTES_PER_EVENT
+            + OffHeapHashIndex.bytesRequired(capacity, componentBuckets)
+            + OffHeapHashIndex.bytesRequired(flowFilePostings, flowFileBuckets);
+        dataCapacity = (int) Math.min(maxBytes - fixedBytes, Integer.MAX_VALUE);
+
+        eventIds = ByteBuffer.allocateDirect(capacity * 8).asLongBuffer();
+        eventTimes = ByteBuffer.allocateDirect(capacity * 8).asLongBuffer();
+        fileSizes = ByteBuffer.allocateDirect(capacity * 8).asLongBuffer();
+        dataPositions = ByteBuffer.allocateDirect(capacity * 8).asLongBuffer();
+        dataLengths = ByteBuffer.allocateDirect(capacity * 4).asIntBuffer();
+        componentCodes = ByteBuffer.allocateDirect(capacity * 4).asIntBuffer();
+        eventTypes = ByteBuffer.allocateDirect(capacity);
+        data = ByteBuffer.allocateDirect(dataCapacity);
+
+        componentIndex = new OffHeapHashIndex(capacity, componentBuckets);
+        flowFileIndex = new OffHeapHashIndex(flowFilePostings, flowFileBuckets);
+
+        final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+        readLock = rwLock.readLock();
+        writeLock = rwLock.writeLock();
+    }
+
+    private static int bucketsFor(final int postings) {
+        return Integer.highestOneBit(Math.max(postings / 4, 1024));
+    }
+
+    /**
+     * @return the number of events that could not be added because they were larger than the store
+     */
+    long getDroppedEventCount() {
+        return droppedEventCount.get();
+    }
+
+    @Override
+    public void add(final ProvenanceEventRecord event) {
+        final int componentCode = dictionary.encode(event.getComponentId());
+        final byte[] payload = serialize(event);
+        if (payload.length > dataCapacity) {
+            droppedEventCount.incrementAndGet();
+            return;
+        }
+
+        writeLock.lock();
+        try {
+            // an event's bytes are never split, so if they do not fit before the end of the ring, skip to the start
+            long position = dataWritePosition;
+            final int offset = (int) (position % dataCapacity);
+            if ((long) offset + payload.length > dataCapacity) {
+                position += dataCapacity - offset;
+            }
+
+            final ByteBuffer dataView = data.duplicate();
+            dataView.position((int) (position % dataCapacity));
+            dataView.put(payload);
+            dataWritePosition = position + payload.length;
+
+            final long eventId = nextEventId++;
+            final int slot = slot(eventId);
+            eventIds.put(slot, eventId);
+            eventTimes.put(slot, event.getEventTime());
+            fileSizes.put(slot, event.getFileSize());
+            dataPositions.put(slot, position);
+            dataLengths.put(slot, payload.length);
+            componentCodes.put(slot, componentCode);
+            eventTypes.put(slot, (byte) event.getEventType().ordinal());
+
+            if (event.getComponentId() != null) {
+                componentIndex.add(OffHeapHashIndex.hashIgnoreCase(event.getComponentId()), eventId);
+            }
+            for (final String uuid : getFlowFileUuids(event)) {
+                flowFileIndex.add(OffHeapHashIndex.hashIgnoreCase(uuid), eventId);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static Collection<String> getFlowFileUuids(final ProvenanceEventRecord event) {
+        final List<String> parentUuids = event.getParentUuids();
+        final List<String> childUuids = event.getChildUuids();
+        final boolean hasRelatives = (parentUuids != null && !parentUuids.isEmpty()) || (childUuids != null && !childUuids.isEmpty());
+        if (!hasRelatives) {
+            return event.getFlowFileUuid() == null ? Collections.<String>emptySet() : Collections.singleton(event.getFlowFileUuid());
+        }
+
+        final Set<String> uuids = new HashSet<>();
+        if (event.getFlowFileUuid() != null) {
+            uuids.add(event.getFlowFileUuid().toLowerCase());
+        }
+        if (parentUuids != null) {
+            for (final String uuid : parentUuids) {
+                uuids.add(uuid.toLowerCase());
+            }
+        }
+        if (childUuids != null) {
+            for (final String uuid : childUuids) {
+                uuids.add(uuid.toLowerCase());
+            }
+        }
+        return uuids;
+    }
+
+    @Override
+    public ProvenanceEventRecord getEvent(final long id) {
+        readLock.lock();
+        try {
+            return readEvent(id, EventSelection.ALL);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public List<ProvenanceEventRecord> getEvents(final long firstEventId, final int maxRecords) {
+        final List<ProvenanceEventRecord> events = new ArrayList<>(Math.min(maxRecords, 1000));
+
+        readLock.lock();
+        try {
+            for (long id = Math.max(firstEventId, getOldestEventId()); id < nextEventId && events.size() < maxRecords; id++) {
+                final ProvenanceEventRecord event = readEvent(id, EventSelection.ALL);
+                if (event != null) {
+                    events.add(event);
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+
+        return events;
+    }
+
+    @Override
+    public Long getMaxEventId() {
+        readLock.lock();
+        try {
+            return nextEventId == 0L ? null : nextEventId - 1;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void forEach(final EventSelection selection, final ForEachEvaluator<ProvenanceEventRecord> evaluator, final IterationDirection direction) {
+        final long oldestEventId;
+        final long newestEventId;
+        final TreeSet<Long> candidates;
+
+        readLock.lock();
+        try {
+            oldestEventId = getOldestEventId();
+            newestEventId = nextEventId - 1;
+            candidates = getIndexedCandidates(selection, oldestEventId);
+        } finally {
+            readLock.unlock();
+        }
+
+        if (candidates != null) {
+            final Iterator<Long> itr = direction == IterationDirection.FORWARD ? candidates.iterator() : candidates.descendingIterator();
+            while (itr.hasNext()) {
+                if (!evaluate(itr.next(), selection, evaluator)) {
+                    return;
+                }
+            }
+            return;
+        }
+
+        if (direction == IterationDirection.FORWARD) {
+            for (long id = oldestEventId; id <= newestEventId; id++) {
+                if (!evaluate(id, selection, evaluator)) {
+                    return;
+                }
+            }
+        } else {
+            for (long id = newestEventId; id >= oldestEventId; id--) {
+                if (!evaluate(id, selection, evaluator)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean evaluate(final long eventId, final EventSelection selection, final ForEachEvaluator<ProvenanceEventRecord> evaluator) {
+        final ProvenanceEventRecord event;
+        readLock.lock();
+        try {
+            event = readEvent(eventId, selection);
+        } finally {
+            readLock.unlock();
+        }
+
+        // the evaluator is called without holding the lock, so that a slow evaluator does not hold up new events
+        return event == null || evaluator.evaluate(event);
+    }
+
+    /**
+     * Must be called while holding the read lock.
+     *
+     * @return the identifiers of the events that may match the given selection in ascending order, or <code>null</code> if the
+     *         selection cannot be answered from an index
+     */
+    private TreeSet<Long> getIndexedCandidates(final EventSelection selection, final long oldestEventId) {
+        final TreeSet<Long> candidates = new TreeSet<>();
+        if (selection.getFlowFileUuids() != null) {
+            for (final String uuid : selection.getFlowFileUuids()) {
+                if (!flowFileIndex.getEventIds(OffHeapHashIndex.hashIgnoreCase(uuid), oldestEventId, candidates)) {
+                    // some of the postings have been overwritten while the events are still held; fall back to a scan
+                    return null;
+                }
+            }
+            return candidates;
+        }
+
+        if (selection.getComponentId() != null) {
+            if (!componentIndex.getEventIds(OffHeapHashIndex.hashIgnoreCase(selection.getComponentId()), oldestEventId, candidates)) {
+                return null;
+            }
+            return candidates;
+        }
+
+        return null;
+    }
+
+    /**
+     * Must be called while holding the read lock.
+     *
+     * @return the identifier of the oldest event whose slot and bytes have not been overwritten
+     */
+    private long getOldestEventId() {
+        // the data positions increase with the event identifier, so the oldest event whose bytes are intact can be found by binary search
+        final long oldestIntactPosition = dataWritePosition - dataCapacity;
+        long low = Math.max(0L, nextEventId - capacity);
+        long high = nextEventId;
+        while (low < high) {
+            final long mid = (low + high) >>> 1;
+            if (dataPositions.get(slot(mid)) >= oldestIntactPosition) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Must be called while holding the read lock.
+     *
+     * @return the event with the given identifier if it is still held and its columns match the given selection, <code>null</code> otherwise
+     */
+    private ProvenanceEventRecord readEvent(final long eventId, final EventSelection selection) {
+        if (eventId < 0L || eventId >= nextEventId || eventId < nextEventId - capacity) {
+            return null;
+        }
+
+        final int slot = slot(eventId);
+        final long position = dataPositions.get(slot);
+        if (eventIds.get(slot) != eventId || position < dataWritePosition - dataCapacity) {
+            return null;
+        }
+
+        final long eventTime = eventTimes.get(slot);
+        if (!selection.isTimeSelected(eventTime)) {
+            return null;
+        }
+
+        final ProvenanceEventType eventType = EVENT_TYPES[eventTypes.get(slot)];
+        if (selection.getEventType() != null && selection.getEventType() != eventType) {
+            return null;
+        }
+
+        final String componentId = dictionary.decode(componentCodes.get(slot));
+        if (selection.getComponentId() != null && !selection.getComponentId().equalsIgnoreCase(componentId)) {
+            return null;
+        }
+
+        final byte[] payload = new byte[dataLengths.get(slot)];
+        final ByteBuffer dataView = data.duplicate();
+        dataView.position((int) (position % dataCapacity));
+        dataView.get(payload);
+
+        return deserialize(payload, eventId, eventTime, eventType, componentId, fileSizes.get(slot));
+    }
+
+    private int slot(final long eventId) {
+        return (int) (eventId % capacity);
+    }
+
+    @Override
+    public void close() {
+        // direct memory is released once the buffers are garbage collected
+    }
+
+    private byte[] serialize(final ProvenanceEventRecord event) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+        try (final DataOutputStream out = new DataOutputStream(baos)) {
+            out.writeLong(event.getFlowFileEntryDate());
+            out.writeLong(event.getLineageStartDate());
+            out.writeLong(event.getEventDuration());
+            out.writeInt(dictionary.encode(event.getComponentType()));
+            writeString(out, event.getFlowFileUuid());
+            writeStrings(out, event.getLineageIdentifiers());
+            writeStrings(out, event.getParentUuids());
+            writeStrings(out, event.getChildUuids());
+
+            writeString(out, event.getDetails());
+            writeString(out, event.getTransitUri());
+            writeString(out, event.getSourceSystemFlowFileIdentifier());
+            writeString(out, event.getAlternateIdentifierUri());
+            writeString(out, event.getRelationship());
+            writeString(out, event.getSourceQueueIdentifier());
+
+            writeString(out, event.getContentClaimContainer());
+            writeString(out, event.getContentClaimSection());
+            writeString(out, event.getContentClaimIdentifier());
+            writeLong(out, event.getContentClaimOffset());
+            writeString(out, event.getPreviousContentClaimContainer());
+            writeString(out, event.getPreviousContentClaimSection());
+            writeString(out, event.getPreviousContentClaimIdentifier());
+            writeLong(out, event.getPreviousContentClaimOffset());
+            writeLong(out, event.getPreviousFileSize());
+
+            writeAttributes(out, event.getPreviousAttributes());
+            writeAttributes(out, event.getUpdatedAttributes());
+        } catch (final IOException ioe) {
+            // cannot happen when writing to a byte array
+            throw new IllegalStateException(ioe);
+        }
+
+        return baos.toByteArray();
+    }
+
+    private ProvenanceEventRecord deserialize(final byte[] payload, final long eventId, final long eventTime, final ProvenanceEventType eventType,
+            final String componentId, final long fileSize) {
+        final StandardProvenanceEventRecord.Builder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventType(eventType);
+        builder.setEventTime(eventTime);
+        builder.setComponentId(componentId);
+
+        try (final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            builder.setFlowFileEntryDate(in.readLong());
+            builder.setLineageStartDate(in.readLong());
+            builder.setEventDuration(in.readLong());
+            builder.setComponentType(dictionary.decode(in.readInt()));
+            builder.setFlowFileUUID(readString(in));
+            builder.setLineageIdentifiers(new HashSet<>(readStrings(in)));
+            for (final String parentUuid : readStrings(in)) {
+                builder.addParentUuid(parentUuid);
+            }
+            for (final String childUuid : readStrings(in)) {
+                builder.addChildUuid(childUuid);
+            }
+
+            builder.setDetails(readString(in));
+            builder.setTransitUri(readString(in));
+            builder.setSourceSystemFlowFileIdentifier(readString(in));
+            builder.setAlternateIdentifierUri(readString(in));
+            builder.setRelationship(readString(in));
+            builder.setSourceQueueIdentifier(readString(in));
+
+            builder.setCurrentContentClaim(readString(in), readString(in), readString(in), readLong(in), fileSize);
+            final String previousContainer = readString(in);
+            final String previousSection = readString(in);
+            final String previousIdentifier = readString(in);
+            final Long previousOffset = readLong(in);
+            final Long previousFileSize = readLong(in);
+            // the previous size is kept even when there was no previous content claim, as with FlowFiles that have no content
+            if (previousIdentifier != null || previousFileSize != null) {
+                builder.setPreviousContentClaim(previousContainer, previousSection, previousIdentifier, previousOffset, previousFileSize == null ? 0L : previousFileSize);
+            }
+
+            final Map<String, String> previousAttributes = readAttributes(in);
+            final Map<String, String> updatedAttributes = readAttributes(in);
+            builder.setAttributes(previousAttributes, updatedAttributes);
+        } catch (final IOException ioe) {
+            // cannot happen when reading from a byte array
+            throw new IllegalStateException(ioe);
+        }
+
+        final StandardProvenanceEventRecord event = builder.build();
+        event.setEventId(eventId);
+        return event;
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NO_VALUE);
+            return;
+        }
+
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length == NO_VALUE) {
+            return null;
+        }
+
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStrings(final DataOutputStream out, final Collection<String> values) throws IOException {
+        if (values == null) {
+            out.writeInt(0);
+            return;
+        }
+
+        out.writeInt(values.size());
+        for (final String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static List<String> readStrings(final DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+
+        final String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = readString(in);
+        }
+        return Arrays.asList(values);
+    }
+
+    private static void writeLong(final DataOutputStream out, final Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readLong(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static void writeAttributes(final DataOutputStream out, final Map<String, String> attributes) throws IOException {
+        if (attributes == null) {
+            out.writeInt(0);
+            return;
+        }
+
+        out.writeInt(attributes.size());
+        for (final Map.Entry<String, String> entry : attributes.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, String> readAttributes(final DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        final Map<String, String> attributes = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            attributes.put(readString(in), readString(in));
+        }
+        return attributes;
+    }
+
+    /**
+     * Assigns a code to each distinct component identifier and type. The number of components in a flow is small, so the
+     * dictionary lives on the heap and is never pruned.
+     */
+    private static class Dictionary {
+
+        private final ConcurrentMap<String, Integer> codes = new ConcurrentHashMap<>();
+        private volatile String[] values = new String[0];
+
+        int encode(final String value) {
+            if (value == null) {
+                return NO_VALUE;
+            }
+
+            final Integer code = codes.get(value);
+            if (code != null) {
+                return code;
+            }
+
+            synchronized (this) {
+                final Integer existing = codes.get(value);
+                if (existing != null) {
+                    return existing;
+                }
+
+                final String[] updated = Arrays.copyOf(values, values.length + 1);
+                updated[values.length] = value;
+                values = updated;
+                codes.put(value, values.length - 1);
+                return values.length - 1;
+            }
+        }
+
+        String decode(final int code) {
+            return code == NO_VALUE ? null : values[code];
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Collection;
+
+/**
+ * <p>
+ * A hash index from a 64-bit key to event identifiers that lives outside of the Java heap. Postings are appended to a
+ * ring of fixed capacity, and each posting links to the previous posting in the same hash bucket, so looking up a key
+ * follows a chain from the newest to the oldest posting in its bucket. When the ring wraps, the oldest postings are
+ * overwritten, which ages the index along with the events that it refers to without any additional bookkeeping.
+ * </p>
+ *
+ * <p>
+ * This class is not thread-safe; the {@link OffHeapEventStore} guards it with its own lock.
+ * </p>
+ */
+class OffHeapHashIndex {
+
+    static final int BYTES_PER_POSTING = 24;
+    static final int BYTES_PER_BUCKET = 8;
+
+    private static final long NO_POSTING = -1L;
+
+    private final int capacity;
+    private final int bucketMask;
+    private final LongBuffer heads;
+    private final LongBuffer keys;
+    private final LongBuffer eventIds;
+    private final LongBuffer previousPostings;
+    private long nextPosition = 0L;
+
+    /**
+     * @param capacity the number of postings that the index holds before it starts overwriting the oldest
+     * @param buckets the number of hash buckets, which must be a power of two
+     */
+    OffHeapHashIndex(final int capacity, final int buckets) {
+        if (Integer.bitCount(buckets) != 1) {
+            throw new IllegalArgumentException("Number of buckets must be a power of two");
+        }
+
+        this.capacity = capacity;
+        this.bucketMask = buckets - 1;
+        this.heads = ByteBuffer.allocateDirect(buckets * BYTES_PER_BUCKET).asLongBuffer();
+        this.keys = ByteBuffer.allocateDirect(capacity * 8).asLongBuffer();
+        this.eventIds = ByteBuffer.allocateDirect(capacity * 8).asLongBuffer();
+        this.previousPostings = ByteBuffer.allocateDirect(capacity * 8).asLongBuffer();
+
+        for (int i = 0; i < buckets; i++) {
+            heads.put(i, NO_POSTING);
+        }
+    }
+
+    static long bytesRequired(final int capacity, final int buckets) {
+        return (long) capacity * BYTES_PER_POSTING + (long) buckets * BYTES_PER_BUCKET;
+    }
+
+    /**
+     * @param value the value to hash
+     * @return a 64-bit FNV-1a hash of the given value, ignoring case
+     */
+    static long hashIgnoreCase(final String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= Character.toLowerCase(value.charAt(i));
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    void add(final long key, final long eventId) {
+        final int bucket = bucket(key);
+        final int slot = (int) (nextPosition % capacity);
+
+        keys.put(slot, key);
+        eventIds.put(slot, eventId);
+        previousPostings.put(slot, heads.get(bucket));
+        heads.put(bucket, nextPosition);
+        nextPosition++;
+    }
+
+    /**
+     * Adds the identifiers of the events that were indexed with the given key to the given collection, newest first. Because keys
+     * are hashes, some of the events may not actually have the value that was hashed.
+     *
+     * @param key the key to look up
+     * @param minEventId the identifier of the oldest event that is still of interest; the lookup stops at older events
+     * @param ids the collection to add the event identifiers to
+     * @return <code>true</code> if all postings for the key down to <code>minEventId</code> were found, <code>false</code> if the
+     *         oldest of them have already been overwritten
+     */
+    boolean getEventIds(final long key, final long minEventId, final Collection<Long> ids) {
+        final long oldestPosition = nextPosition - capacity;
+
+        long position = heads.get(bucket(key));
+        while (position != NO_POSTING) {
+            if (position < oldestPosition) {
+                return false;
+            }
+
+            final int slot = (int) (position % capacity);
+            final long eventId = eventIds.get(slot);
+            if (eventId < minEventId) {
+                return true;
+            }
+
+            if (keys.get(slot) == key) {
+                ids.add(eventId);
+            }
+            position = previousPostings.get(slot);
+        }
+
+        return true;
+    }
+
+    private int bucket(final long key) {
+        return (int) (key ^ (key >>> 32)) & bucketMask;
+    }
+}
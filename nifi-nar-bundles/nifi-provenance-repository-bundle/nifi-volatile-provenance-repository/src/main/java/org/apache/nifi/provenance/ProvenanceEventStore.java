@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.nifi.provenance;
+
+import java.util.List;
+
+import org.apache.nifi.util.RingBuffer.ForEachEvaluator;
+import org.apache.nifi.util.RingBuffer.IterationDirection;
+
+/**
+ * Holds the most recent Provenance Events for the {@link VolatileProvenanceRepository}. Once a store is full,
+ * adding an event evicts the oldest events.
+ */
+interface ProvenanceEventStore {
+
+    /**
+     * Adds the given event to the store, assigning it the next event identifier
+     *
+     * @param event the event to add
+     */
+    void add(ProvenanceEventRecord event);
+
+    /**
+     * @param id the identifier of the event
+     * @return the event with the given identifier, or <code>null</code> if it has been evicted or does not exist
+     */
+    ProvenanceEventRecord getEvent(long id);
+
+    /**
+     * @param firstEventId the smallest identifier of the events to return
+     * @param maxRecords the maximum number of events to return
+     * @return the oldest events whose identifier is at least <code>firstEventId</code>, oldest first
+     */
+    List<ProvenanceEventRecord> getEvents(long firstEventId, int maxRecords);
+
+    /**
+     * @return the identifier of the newest event, or <code>null</code> if no event has been added
+     */
+    Long getMaxEventId();
+
+    /**
+     * Passes each event that may match the given selection to the given evaluator, until the evaluator returns <code>false</code>.
+     * The store may skip events that cannot match the selection, but it is not required to, so the evaluator must check
+     * each event itself.
+     *
+     * @param selection the events of interest
+     * @param evaluator the evaluator to pass events to
+     * @param direction whether to start with the oldest (FORWARD) or the newest (BACKWARD) event
+     */
+    void forEach(EventSelection selection, ForEachEvaluator<ProvenanceEventRecord> evaluator, IterationDirection direction);
+
+    /**
+     * Releases the resources that are held by the store
+     */
+    void close();
+}
@@ -24,7 +24,6 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
@@ -34,7 +33,6 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import org.apache.nifi.events.EventReporter;
@@ -51,7 +49,6 @@ import org.apache.nifi.provenance.search.SearchTerm;
 import org.apache.nifi.provenance.search.SearchableField;
 import org.apache.nifi.util.IntegerHolder;
 import org.apache.nifi.util.NiFiProperties;
-import org.apache.nifi.util.RingBuffer;
 import org.apache.nifi.util.RingBuffer.Filter;
 import org.apache.nifi.util.RingBuffer.ForEachEvaluator;
 import org.apache.nifi.util.RingBuffer.IterationDirection;
@@ -60,11 +57,12 @@ public class VolatileProvenanceRepository implements ProvenanceEventRepository {
 
     // properties
     public static final String BUFFER_SIZE = "nifi.provenance.repository.buffer.size";
+    public static final String OFF_HEAP_SIZE = "nifi.provenance.repository.off.heap.size";
 
     // default property values
     public static final int DEFAULT_BUFFER_SIZE = 10000;
 
-    private final RingBuffer<ProvenanceEventRecord> ringBuffer;
+    private final ProvenanceEventStore eventStore;
     private final List<SearchableField> searchableFields;
     private final List<SearchableField> searchableAttributes;
     private final ExecutorService queryExecService;
@@ -72,14 +70,19 @@ public class VolatileProvenanceRepository implements ProvenanceEventRepository {
 
     private final ConcurrentMap<String, AsyncQuerySubmission> querySubmissionMap = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, AsyncLineageSubmission> lineageSubmissionMap = new ConcurrentHashMap<>();
-    private final AtomicLong idGenerator = new AtomicLong(0L);
     private final AtomicBoolean initialized = new AtomicBoolean(false);
 
     public VolatileProvenanceRepository() {
         final NiFiProperties properties = NiFiProperties.getInstance();
 
-        final int bufferSize = properties.getIntegerProperty(BUFFER_SIZE, DEFAULT_BUFFER_SIZE);
-        ringBuffer = new RingBuffer<>(bufferSize);
+        // when an off-heap size is configured, the number of events held depends on how large they are, and the buffer size is not used
+        final String offHeapSize = properties.getProperty(OFF_HEAP_SIZE);
+        if (offHeapSize == null || offHeapSize.trim().isEmpty()) {
+            final int bufferSize = properties.getIntegerProperty(BUFFER_SIZE, DEFAULT_BUFFER_SIZE);
+            eventStore = new RingBufferEventStore(bufferSize);
+        } else {
+            eventStore = new OffHeapEventStore(DataUnit.parseDataSize(offHeapSize.trim(), DataUnit.B).longValue());
+        }
 
         final String indexedFieldString = properties.getProperty(NiFiProperties.PROVENANCE_INDEXED_FIELDS);
         final String indexedAttrString = properties.getProperty(NiFiProperties.PROVENANCE_INDEXED_ATTRIBUTES);
@@ -118,8 +121,7 @@ public class VolatileProvenanceRepository implements ProvenanceEventRepository {
 
     @Override
     public void registerEvent(final ProvenanceEventRecord event) {
-        final long id = idGenerator.getAndIncrement();
-        ringBuffer.add(new IdEnrichedProvEvent(event, id));
+        eventStore.add(event);
     }
 
     @Override
@@ -131,46 +133,39 @@ public class VolatileProvenanceRepository implements ProvenanceEventRepository {
 
     @Override
     public List<ProvenanceEventRecord> getEvents(final long firstRecordId, final int maxRecords) throws IOException {
-        return ringBuffer.getSelectedElements(new Filter<ProvenanceEventRecord>() {
-            @Override
-            public boolean select(final ProvenanceEventRecord value) {
-                return value.getEventId() >= firstRecordId;
-            }
-        }, maxRecords);
+        return eventStore.getEvents(firstRecordId, maxRecords);
     }
 
     @Override
     public Long getMaxEventId() {
-        final ProvenanceEventRecord newest = ringBuffer.getNewestElement();
-        return (newest == null) ? null : newest.getEventId();
+        return eventStore.getMaxEventId();
     }
 
     public ProvenanceEventRecord getEvent(final String identifier) throws IOException {
-        final List<ProvenanceEventRecord> records = ringBuffer.getSelectedElements(new Filter<ProvenanceEventRecord>() {
+        final List<ProvenanceEventRecord> records = new ArrayList<>(1);
+        eventStore.forEach(EventSelection.forFlowFiles(Collections.singleton(identifier)), new ForEachEvaluator<ProvenanceEventRecord>() {
             @Override
-            public boolean select(final ProvenanceEventRecord event) {
-                return identifier.equals(event.getFlowFileUuid());
+            public boolean evaluate(final ProvenanceEventRecord event) {
+                if (identifier.equals(event.getFlowFileUuid())) {
+                    records.add(event);
+                    return false;
+                }
+                return true;
             }
-        }, 1);
+        }, IterationDirection.FORWARD);
         return records.isEmpty() ? null : records.get(0);
     }
 
     @Override
     public ProvenanceEventRecord getEvent(final long id) {
-        final List<ProvenanceEventRecord> records = ringBuffer.getSelectedElements(new Filter<ProvenanceEventRecord>() {
-            @Override
-            public boolean select(final ProvenanceEventRecord event) {
-                return event.getEventId() == id;
-            }
-        }, 1);
-
-        return records.isEmpty() ? null : records.get(0);
+        return eventStore.getEvent(id);
     }
 
     @Override
     public void close() throws IOException {
         queryExecService.shutdownNow();
         scheduledExecService.shutdown();
+        eventStore.close();
     }
 
     @Override
@@ -309,6 +304,40 @@ public class VolatileProvenanceRepository implements ProvenanceEventRepository {
         };
     }
 
+    /**
+     * Creates a selection from the search terms that the event store may be able to answer without looking at every event. Terms
+     * that contain wildcards are left to the filter.
+     */
+    private EventSelection createSelection(final Query query) {
+        Collection<String> flowFileUuids = null;
+        String componentId = null;
+        ProvenanceEventType eventType = null;
+
+        for (final SearchTerm searchTerm : query.getSearchTerms()) {
+            final String searchValue = searchTerm.getValue();
+            if (searchValue.contains("?") || searchValue.contains("*")) {
+                continue;
+            }
+
+            final SearchableField searchableField = searchTerm.getSearchableField();
+            if (SearchableFields.FlowFileUUID.equals(searchableField)) {
+                flowFileUuids = Collections.singleton(searchValue);
+            } else if (SearchableFields.ComponentID.equals(searchableField)) {
+                componentId = searchValue;
+            } else if (SearchableFields.EventType.equals(searchableField)) {
+                try {
+                    eventType = ProvenanceEventType.valueOf(searchValue.toUpperCase());
+                } catch (final IllegalArgumentException iae) {
+                    // not a valid event type, so the filter will not match any event
+                }
+            }
+        }
+
+        final Long startTime = query.getStartDate() == null ? null : query.getStartDate().getTime();
+        final Long endTime = query.getEndDate() == null ? null : query.getEndDate().getTime();
+        return new EventSelection(flowFileUuids, componentId, eventType, startTime, endTime);
+    }
+
     private Object getFieldValue(final ProvenanceEventRecord record, final SearchableField field) {
         if (SearchableFields.AlternateIdentifierURI.equals(field)) {
             return record.getAlternateIdentifierUri();
@@ -355,14 +384,14 @@ public class VolatileProvenanceRepository implements ProvenanceEventRepository {
 
         if (query.getSearchTerms().isEmpty() && query.getStartDate() == null && query.getEndDate() == null) {
             final AsyncQuerySubmission result = new AsyncQuerySubmission(query, 1);
-            queryExecService.submit(new QueryRunnable(ringBuffer, createFilter(query), query.getMaxResults(), result));
+            queryExecService.submit(new QueryRunnable(eventStore, createSelection(query), createFilter(query), query.getMaxResults(), result));
             querySubmissionMap.put(query.getIdentifier(), result);
             return result;
         }
 
         final AsyncQuerySubmission result = new AsyncQuerySubmission(query, 1);
         querySubmissionMap.put(query.getIdentifier(), result);
-        queryExecService.submit(new QueryRunnable(ringBuffer, createFilter(query), query.getMaxResults(), result));
+        queryExecService.submit(new QueryRunnable(eventStore, createSelection(query), createFilter(query), query.getMaxResults(), result));
 
         return result;
     }
@@ -488,20 +517,23 @@ public class VolatileProvenanceRepository implements ProvenanceEventRepository {
             }
         };
 
-        queryExecService.submit(new ComputeLineageRunnable(ringBuffer, filter, result));
+        queryExecService.submit(new ComputeLineageRunnable(eventStore, EventSelection.forFlowFiles(flowFileUuids), filter, result));
 
         return result;
     }
 
     private static class QueryRunnable implements Runnable {
 
-        private final RingBuffer<ProvenanceEventRecord> ringBuffer;
+        private final ProvenanceEventStore eventStore;
+        private final EventSelection selection;
         private final Filter<ProvenanceEventRecord> filter;
         private final AsyncQuerySubmission submission;
         private final int maxRecords;
 
-        public QueryRunnable(final RingBuffer<ProvenanceEventRecord> ringBuffer, final Filter<ProvenanceEventRecord> filter, final int maxRecords, final AsyncQuerySubmission submission) {
-            this.ringBuffer = ringBuffer;
+        public QueryRunnable(final ProvenanceEventStore eventStore, final EventSelection selection, final Filter<ProvenanceEventRecord> filter, final int maxRecords,
+                final AsyncQuerySubmission submission) {
+            this.eventStore = eventStore;
+            this.selection = selection;
             this.filter = filter;
             this.submission = submission;
             this.maxRecords = maxRecords;
@@ -512,7 +544,7 @@ public class VolatileProvenanceRepository implements ProvenanceEventRepository {
             // Retrieve the most recent results and count the total number of matches
             final IntegerHolder matchingCount = new IntegerHolder(0);
             final List<ProvenanceEventRecord> matchingRecords = new ArrayList<>(maxRecords);
-            ringBuffer.forEach(new ForEachEvaluator<ProvenanceEventRecord>() {
+            eventStore.forEach(selection, new ForEachEvaluator<ProvenanceEventRecord>() {
                 @Override
                 public boolean evaluate(final ProvenanceEventRecord record) {
                     if (filter.select(record)) {
@@ -532,19 +564,32 @@ public class VolatileProvenanceRepository implements ProvenanceEventRepository {
 
     private static class ComputeLineageRunnable implements Runnable {
 
-        private final RingBuffer<ProvenanceEventRecord> ringBuffer;
+        private final ProvenanceEventStore eventStore;
+        private final EventSelection selection;
         private final Filter<ProvenanceEventRecord> filter;
         private final AsyncLineageSubmission submission;
 
-        public ComputeLineageRunnable(final RingBuffer<ProvenanceEventRecord> ringBuffer, final Filter<ProvenanceEventRecord> filter, final AsyncLineageSubmission submission) {
-            this.ringBuffer = ringBuffer;
+        public ComputeLineageRunnable(final ProvenanceEventStore eventStore, final EventSelection selection, final Filter<ProvenanceEventRecord> filter,
+                final AsyncLineageSubmission submission) {
+            this.eventStore = eventStore;
+            this.selection = selection;
             this.filter = filter;
             this.submission = submission;
         }
 
         @Override
         public void run() {
-            final List<ProvenanceEventRecord> records = ringBuffer.getSelectedElements(filter);
+            final List<ProvenanceEventRecord> records = new ArrayList<>();
+            eventStore.forEach(selection, new ForEachEvaluator<ProvenanceEventRecord>() {
+                @Override
+                public boolean evaluate(final ProvenanceEventRecord event) {
+                    if (filter.select(event)) {
+                        records.add(event);
+                    }
+                    return true;
+                }
+            }, IterationDirection.FORWARD);
+
             submission.getResult().update(records);
         }
     }
@@ -576,170 +621,4 @@ public class VolatileProvenanceRepository implements ProvenanceEventRepository {
             }
         }
     }
-
-    private static class IdEnrichedProvEvent implements ProvenanceEventRecord {
-
-        private final ProvenanceEventRecord record;
-        private final long id;
-
-        public IdEnrichedProvEvent(final ProvenanceEventRecord record, final long id) {
-            this.record = record;
-            this.id = id;
-        }
-
-        @Override
-        public long getEventId() {
-            return id;
-        }
-
-        @Override
-        public long getEventTime() {
-            return record.getEventTime();
-        }
-
-        @Override
-        public long getFlowFileEntryDate() {
-            return record.getFlowFileEntryDate();
-        }
-
-        @Override
-        public long getLineageStartDate() {
-            return record.getLineageStartDate();
-        }
-
-        @Override
-        public Set<String> getLineageIdentifiers() {
-            return record.getLineageIdentifiers();
-        }
-
-        @Override
-        public long getFileSize() {
-            return record.getFileSize();
-        }
-
-        @Override
-        public Long getPreviousFileSize() {
-            return record.getPreviousFileSize();
-        }
-
-        @Override
-        public long getEventDuration() {
-            return record.getEventDuration();
-        }
-
-        @Override
-        public ProvenanceEventType getEventType() {
-            return record.getEventType();
-        }
-
-        @Override
-        public Map<String, String> getAttributes() {
-            return record.getAttributes();
-        }
-
-        @Override
-        public Map<String, String> getPreviousAttributes() {
-            return record.getPreviousAttributes();
-        }
-
-        @Override
-        public Map<String, String> getUpdatedAttributes() {
-            return record.getUpdatedAttributes();
-        }
-
-        @Override
-        public String getComponentId() {
-            return record.getComponentId();
-        }
-
-        @Override
-        public String getComponentType() {
-            return record.getComponentType();
-        }
-
-        @Override
-        public String getTransitUri() {
-            return record.getTransitUri();
-        }
-
-        @Override
-        public String getSourceSystemFlowFileIdentifier() {
-            return record.getSourceSystemFlowFileIdentifier();
-        }
-
-        @Override
-        public String getFlowFileUuid() {
-            return record.getFlowFileUuid();
-        }
-
-        @Override
-        public List<String> getParentUuids() {
-            return record.getParentUuids();
-        }
-
-        @Override
-        public List<String> getChildUuids() {
-            return record.getChildUuids();
-        }
-
-        @Override
-        public String getAlternateIdentifierUri() {
-            return record.getAlternateIdentifierUri();
-        }
-
-        @Override
-        public String getDetails() {
-            return record.getDetails();
-        }
-
-        @Override
-        public String getRelationship() {
-            return record.getRelationship();
-        }
-
-        @Override
-        public String getSourceQueueIdentifier() {
-            return record.getSourceQueueIdentifier();
-        }
-
-        @Override
-        public String getContentClaimSection() {
-            return record.getContentClaimSection();
-        }
-
-        @Override
-        public String getPreviousContentClaimSection() {
-            return record.getPreviousContentClaimSection();
-        }
-
-        @Override
-        public String getContentClaimContainer() {
-            return record.getContentClaimContainer();
-        }
-
-        @Override
-        public String getPreviousContentClaimContainer() {
-            return record.getPreviousContentClaimContainer();
-        }
-
-        @Override
-        public String getContentClaimIdentifier() {
-            return record.getContentClaimIdentifier();
-        }
-
-        @Override
-        public String getPreviousContentClaimIdentifier() {
-            return record.getPreviousContentClaimIdentifier();
-        }
-
-        @Override
-        public Long getContentClaimOffset() {
-            return record.getContentClaimOffset();
-        }
-
-        @Override
-        public Long getPreviousContentClaimOffset() {
-            return record.getPreviousContentClaimOffset();
-        }
-    }
 }
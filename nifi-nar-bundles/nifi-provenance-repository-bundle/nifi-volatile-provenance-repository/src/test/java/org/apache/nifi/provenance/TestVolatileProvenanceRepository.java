@@ -17,8 +17,10 @@
 package org.apache.nifi.provenance;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -27,11 +29,15 @@ import java.util.Set;
 import java.util.UUID;
 
 import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.provenance.lineage.Lineage;
+import org.apache.nifi.provenance.lineage.LineageNode;
+import org.apache.nifi.provenance.lineage.LineageNodeType;
 import org.apache.nifi.provenance.search.Query;
 import org.apache.nifi.provenance.search.QuerySubmission;
 import org.apache.nifi.provenance.search.SearchTerms;
 import org.apache.nifi.util.NiFiProperties;
 
+import org.junit.After;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -44,6 +50,14 @@ public class TestVolatileProvenanceRepository {
         System.setProperty(NiFiProperties.PROPERTIES_FILE_PATH, "src/test/resources/nifi.properties");
     }
 
+    @After
+    public void closeRepo() throws IOException {
+        if (repo != null) {
+            repo.close();
+        }
+        NiFiProperties.getInstance().remove(VolatileProvenanceRepository.OFF_HEAP_SIZE);
+    }
+
     @Test
     public void testAddAndGet() throws IOException, InterruptedException {
         repo = new VolatileProvenanceRepository();
@@ -119,6 +133,182 @@ public class TestVolatileProvenanceRepository {
         }
     }
 
+    @Test
+    public void testAddAndGetOffHeap() throws IOException {
+        NiFiProperties.getInstance().setProperty(VolatileProvenanceRepository.OFF_HEAP_SIZE, "1 MB");
+        repo = new VolatileProvenanceRepository();
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("abc", "xyz");
+        attributes.put("xyz", "abc");
+        attributes.put("uuid", UUID.randomUUID().toString());
+
+        final ProvenanceEventBuilder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventTime(System.currentTimeMillis());
+        builder.setEventType(ProvenanceEventType.RECEIVE);
+        builder.setTransitUri("nifi://unit-test");
+        builder.fromFlowFile(createFlowFile(3L, 3000L, attributes));
+        builder.setComponentId("1234");
+        builder.setComponentType("dummy processor");
+        builder.setDetails("some details");
+
+        for (int i = 0; i < 10; i++) {
+            repo.registerEvent(builder.build());
+        }
+
+        assertEquals(Long.valueOf(9L), repo.getMaxEventId());
+
+        final List<ProvenanceEventRecord> retrieved = repo.getEvents(0L, 12);
+        assertEquals(10, retrieved.size());
+        for (int i = 0; i < 10; i++) {
+            final ProvenanceEventRecord recovered = retrieved.get(i);
+            assertEquals((long) i, recovered.getEventId());
+            assertEquals("nifi://unit-test", recovered.getTransitUri());
+            assertEquals(ProvenanceEventType.RECEIVE, recovered.getEventType());
+            assertEquals("1234", recovered.getComponentId());
+            assertEquals("dummy processor", recovered.getComponentType());
+            assertEquals("some details", recovered.getDetails());
+            assertEquals(3000L, recovered.getFileSize());
+            assertEquals(attributes, recovered.getAttributes());
+        }
+
+        assertEquals(5L, repo.getEvent(5L).getEventId());
+        assertNull(repo.getEvent(10L));
+        assertEquals(attributes.get("uuid"), repo.getEvent(attributes.get("uuid")).getFlowFileUuid());
+    }
+
+    @Test
+    public void testOffHeapPreviousFileSizeWithoutContentClaim() throws IOException {
+        NiFiProperties.getInstance().setProperty(VolatileProvenanceRepository.OFF_HEAP_SIZE, "1 MB");
+        repo = new VolatileProvenanceRepository();
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("uuid", UUID.randomUUID().toString());
+
+        final ProvenanceEventBuilder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventTime(System.currentTimeMillis());
+        builder.setEventType(ProvenanceEventType.ATTRIBUTES_MODIFIED);
+        builder.fromFlowFile(createFlowFile(3L, 2000L, attributes));
+        builder.setComponentId("1234");
+        builder.setComponentType("dummy processor");
+        builder.setPreviousContentClaim(null, null, null, null, 2000L);
+        repo.registerEvent(builder.build());
+
+        final ProvenanceEventRecord recovered = repo.getEvent(0L);
+        assertNull(recovered.getPreviousContentClaimIdentifier());
+        assertEquals(Long.valueOf(2000L), recovered.getPreviousFileSize());
+    }
+
+    @Test
+    public void testOffHeapEvictsOldestEvents() throws IOException {
+        NiFiProperties.getInstance().setProperty(VolatileProvenanceRepository.OFF_HEAP_SIZE, "1 MB");
+        repo = new VolatileProvenanceRepository();
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("filename", "file.txt");
+
+        final ProvenanceEventBuilder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventTime(System.currentTimeMillis());
+        builder.setEventType(ProvenanceEventType.RECEIVE);
+        builder.setTransitUri("nifi://unit-test");
+        builder.setComponentId("1234");
+        builder.setComponentType("dummy processor");
+
+        final int numEvents = 20000;
+        for (int i = 0; i < numEvents; i++) {
+            attributes.put("uuid", UUID.randomUUID().toString());
+            builder.fromFlowFile(createFlowFile(i, 3000L, attributes));
+            repo.registerEvent(builder.build());
+        }
+
+        assertEquals(Long.valueOf(numEvents - 1), repo.getMaxEventId());
+        assertNull(repo.getEvent(0L));
+        assertEquals(numEvents - 1, repo.getEvent(numEvents - 1).getEventId());
+
+        final List<ProvenanceEventRecord> retrieved = repo.getEvents(0L, 100);
+        assertEquals(100, retrieved.size());
+        final long oldestId = retrieved.get(0).getEventId();
+        for (int i = 0; i < retrieved.size(); i++) {
+            assertEquals(oldestId + i, retrieved.get(i).getEventId());
+        }
+    }
+
+    @Test
+    public void testOffHeapSearchAndLineage() throws IOException, InterruptedException {
+        NiFiProperties.getInstance().setProperty(VolatileProvenanceRepository.OFF_HEAP_SIZE, "1 MB");
+        repo = new VolatileProvenanceRepository();
+
+        final Map<String, String> attributes = new HashMap<>();
+        attributes.put("filename", "file.txt");
+
+        final ProvenanceEventBuilder builder = new StandardProvenanceEventRecord.Builder();
+        builder.setEventTime(System.currentTimeMillis());
+        builder.setEventType(ProvenanceEventType.RECEIVE);
+        builder.setTransitUri("nifi://unit-test");
+        builder.setComponentType("dummy processor");
+
+        for (int i = 0; i < 100; i++) {
+            attributes.put("uuid", UUID.randomUUID().toString());
+            builder.fromFlowFile(createFlowFile(i, 3000L, attributes));
+            builder.setComponentId("component-" + (i % 10));
+            repo.registerEvent(builder.build());
+        }
+
+        final String parentUuid = UUID.randomUUID().toString();
+        final String childUuid = UUID.randomUUID().toString();
+        attributes.put("uuid", parentUuid);
+        final FlowFile parent = createFlowFile(100L, 3000L, attributes);
+        attributes.put("uuid", childUuid);
+        final FlowFile child = createFlowFile(101L, 3000L, attributes);
+
+        builder.setComponentId("component-fork");
+        builder.fromFlowFile(parent);
+        repo.registerEvent(builder.build());
+
+        builder.setEventType(ProvenanceEventType.FORK);
+        builder.addChildFlowFile(child);
+        repo.registerEvent(builder.build());
+
+        final ProvenanceEventBuilder dropBuilder = new StandardProvenanceEventRecord.Builder();
+        dropBuilder.setEventTime(System.currentTimeMillis());
+        dropBuilder.setEventType(ProvenanceEventType.DROP);
+        dropBuilder.setComponentId("component-fork");
+        dropBuilder.setComponentType("dummy processor");
+        dropBuilder.fromFlowFile(child);
+        repo.registerEvent(dropBuilder.build());
+
+        final Query componentQuery = new Query(UUID.randomUUID().toString());
+        componentQuery.addSearchTerm(SearchTerms.newSearchTerm(SearchableFields.ComponentID, "COMPONENT-3"));
+        componentQuery.setMaxResults(100);
+        assertEquals(10, runQuery(componentQuery).size());
+
+        final Query uuidQuery = new Query(UUID.randomUUID().toString());
+        uuidQuery.addSearchTerm(SearchTerms.newSearchTerm(SearchableFields.FlowFileUUID, parentUuid));
+        uuidQuery.addSearchTerm(SearchTerms.newSearchTerm(SearchableFields.EventType, "fork"));
+        uuidQuery.setMaxResults(100);
+        final List<ProvenanceEventRecord> forkEvents = runQuery(uuidQuery);
+        assertEquals(1, forkEvents.size());
+        assertEquals(ProvenanceEventType.FORK, forkEvents.get(0).getEventType());
+        assertEquals(Collections.singletonList(childUuid), forkEvents.get(0).getChildUuids());
+
+        final Lineage lineage = repo.computeLineage(childUuid);
+        int eventNodes = 0;
+        for (final LineageNode node : lineage.getNodes()) {
+            if (node.getNodeType() == LineageNodeType.PROVENANCE_EVENT_NODE) {
+                eventNodes++;
+            }
+        }
+        assertEquals(2, eventNodes);
+    }
+
+    private List<ProvenanceEventRecord> runQuery(final Query query) throws InterruptedException {
+        final QuerySubmission submission = repo.submitQuery(query);
+        while (!submission.getResult().isFinished()) {
+            Thread.sleep(100L);
+        }
+        return submission.getResult().getMatchingEvents();
+    }
+
     private FlowFile createFlowFile(final long id, final long fileSize, final Map<String, String> attributes) {
         final Map<String, String> attrCopy = new HashMap<>(attributes);
 
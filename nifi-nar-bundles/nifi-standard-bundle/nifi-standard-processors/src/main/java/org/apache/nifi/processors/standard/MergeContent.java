@@ -375,6 +375,20 @@ public class MergeContent extends BinFiles {
         return processed;
     }
 
+    @Override
+    protected String getGroupingAttribute(final ProcessContext context) {
+        // the attribute name can be known up front only if it does not depend on the FlowFile
+        if (context.getProperty(CORRELATION_ATTRIBUTE_NAME).isSet()) {
+            return context.isExpressionLanguagePresent(CORRELATION_ATTRIBUTE_NAME) ? null : context.getProperty(CORRELATION_ATTRIBUTE_NAME).getValue();
+        }
+
+        if (MERGE_STRATEGY_DEFRAGMENT.equals(context.getProperty(MERGE_STRATEGY).getValue())) {
+            return FRAGMENT_ID_ATTRIBUTE;
+        }
+
+        return null;
+    }
+
     @Override
     protected String getGroupId(final ProcessContext context, final FlowFile flowFile) {
         final String correlationAttributeName = context.getProperty(CORRELATION_ATTRIBUTE_NAME)